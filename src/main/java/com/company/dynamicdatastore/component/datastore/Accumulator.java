@@ -0,0 +1,149 @@
+package com.company.dynamicdatastore.component.datastore;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.List;
+
+/**
+ * Giá trị gộp count/sum/avg/min/max của một nhóm, cộng dồn từng giá trị trong một lần duyệt.
+ * Tổng được giữ bằng long khi mọi giá trị là số nguyên, bằng double khi có số thực, chỉ chuyển sang BigDecimal khi
+ * gặp BigDecimal (hoặc chuỗi số) hay tổng long bị tràn, nên nhóm số nguyên/số thực không tạo object nào khi cộng.
+ * <p>
+ * Giá trị null bị bỏ qua; sum/avg/min/max không có giá trị nào là null. sum là Long, Double hoặc BigDecimal theo
+ * cách giữ tổng ở trên; avg là Double, là BigDecimal nếu tổng là BigDecimal. min/max so theo kiểu khai báo như RowSort.
+ */
+public final class Accumulator {
+
+    public static final List<String> FUNCTIONS = List.of("count", "sum", "avg", "min", "max");
+
+    private static final int LONG = 0;
+    private static final int DOUBLE = 1;
+    private static final int DECIMAL = 2;
+
+    private final String function;
+    private final String property;
+    private final OrderedType type;
+
+    private long count;
+    private int mode = LONG;
+    private long longSum;
+    private double doubleSum;
+    private BigDecimal decimalSum;
+    private Object extreme;
+
+    /**
+     * property null là count(*) (đếm bằng addRow), type là kiểu khai báo của thuộc tính để so min/max
+     */
+    public Accumulator(String function, String property, Class<?> type) {
+        this(function, property, OrderedType.of(type));
+    }
+
+    Accumulator(String function, String property, OrderedType type) {
+        if (!FUNCTIONS.contains(function))
+            throw new IllegalArgumentException("Unknown aggregate function: " + function);
+        if (property == null && !function.equals("count"))
+            throw new IllegalArgumentException(function + "(*) is not supported");
+        this.function = function;
+        this.property = property;
+        this.type = type;
+    }
+
+    public String getFunction() {
+        return function;
+    }
+
+    public String getProperty() {
+        return property;
+    }
+
+    /**
+     * Một row của nhóm, cho count(*)
+     */
+    public void addRow() {
+        count++;
+    }
+
+    /**
+     * Giá trị của thuộc tính ở một row của nhóm
+     */
+    public void add(Object value) {
+        if (value == null)
+            return;
+        count++;
+        switch (function) {
+            case "sum", "avg" -> addNumber(value);
+            case "min" -> {
+                if (extreme == null || RowSort.compareValues(value, extreme, type) < 0)
+                    extreme = value;
+            }
+            case "max" -> {
+                if (extreme == null || RowSort.compareValues(value, extreme, type) > 0)
+                    extreme = value;
+            }
+            default -> {
+            }
+        }
+    }
+
+    private void addNumber(Object value) {
+        if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+            long number = ((Number) value).longValue();
+            switch (mode) {
+                case LONG -> {
+                    long sum = longSum + number;
+                    // Tràn khi hai số cùng dấu mà tổng khác dấu
+                    if (((longSum ^ sum) & (number ^ sum)) < 0) {
+                        mode = DECIMAL;
+                        decimalSum = BigDecimal.valueOf(longSum).add(BigDecimal.valueOf(number));
+                    } else {
+                        longSum = sum;
+                    }
+                }
+                case DOUBLE -> doubleSum += number;
+                default -> decimalSum = decimalSum.add(BigDecimal.valueOf(number));
+            }
+            return;
+        }
+        if ((value instanceof Double || value instanceof Float) && mode != DECIMAL) {
+            if (mode == LONG) {
+                mode = DOUBLE;
+                doubleSum = longSum;
+            }
+            doubleSum += ((Number) value).doubleValue();
+            return;
+        }
+        BigDecimal number = (BigDecimal) OrderedType.NUMBER.convert(value);
+        if (number == null)
+            throw new IllegalArgumentException("Cannot " + function + " non-numeric value of " + property + ": " + value);
+        if (mode != DECIMAL) {
+            decimalSum = mode == LONG ? BigDecimal.valueOf(longSum) : BigDecimal.valueOf(doubleSum);
+            mode = DECIMAL;
+        }
+        decimalSum = decimalSum.add(number);
+    }
+
+    public Object result() {
+        switch (function) {
+            case "count":
+                return count;
+            case "min":
+            case "max":
+                return extreme;
+            default:
+                if (count == 0)
+                    return null;
+        }
+        if (function.equals("sum")) {
+            return switch (mode) {
+                case LONG -> longSum;
+                case DOUBLE -> doubleSum;
+                default -> decimalSum;
+            };
+        }
+        return switch (mode) {
+            case LONG -> (double) longSum / count;
+            case DOUBLE -> doubleSum / count;
+            default -> decimalSum.divide(BigDecimal.valueOf(count), MathContext.DECIMAL64);
+        };
+    }
+}
@@ -0,0 +1,37 @@
+package com.company.dynamicdatastore.component.datastore;
+
+/**
+ * Một thay đổi trên entity: ghi row theo id, hoặc xóa id khi row là null
+ */
+public final class EntityChange {
+
+    private final String entityName;
+    private final Object id;
+    private final Object row;
+
+    public EntityChange(String entityName, Object id, Object row) {
+        this.entityName = entityName;
+        this.id = id;
+        this.row = row;
+    }
+
+    public static EntityChange delete(String entityName, Object id) {
+        return new EntityChange(entityName, id, null);
+    }
+
+    public String getEntityName() {
+        return entityName;
+    }
+
+    public Object getId() {
+        return id;
+    }
+
+    public Object getRow() {
+        return row;
+    }
+
+    public boolean isDelete() {
+        return row == null;
+    }
+}
@@ -0,0 +1,923 @@
+package com.company.dynamicdatastore.component.datastore;
+
+import com.company.dynamicdatastore.component.storage.LayeredRowStore;
+import com.company.dynamicdatastore.component.storage.MappedRowStore;
+import com.company.dynamicdatastore.component.storage.RowStore;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.IntUnaryOperator;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+/**
+ * Phân vùng dữ liệu của một entity trong VirtualDataStore.
+ * Giữ chỉ mục id -> vị trí để loadEntity/saveEntity/deleteEntity chạy O(1),
+ * vị trí được cấp theo thứ tự chèn nên loadAll trả về thứ tự ổn định.
+ * <p>
+ * Dữ liệu được đọc qua EntitySnapshot: mỗi lần ghi thêm row mới vào RowStore (không sửa tại chỗ)
+ * rồi công bố snapshot mới qua biến volatile, thread đọc giữ snapshot cũ vẫn thấy dữ liệu nhất quán.
+ * Các ghi trên cùng phân vùng được tuần tự hóa bằng StampedLock, đọc theo id dùng optimistic read.
+ * Khi phần row cũ vượt quá phần còn sống, phân vùng được dồn lại sang RowStore mới.
+ * <p>
+ * Khi store vượt giới hạn bộ nhớ, rows còn sống có thể được chuyển ra file tạm đã map (spill);
+ * chỉ mục id vẫn nằm trên heap. Lần dồn kế tiếp hoặc reload() đưa rows trở lại RowStore trong bộ nhớ.
+ * <p>
+ * Chỉ mục phụ (HashIndex, RangeIndex, TextIndex) theo thuộc tính được cập nhật khi công bố mỗi lần ghi và mô tả snapshot hiện tại;
+ * tra cứu trên snapshot cũ hơn trả về null để người gọi quét toàn bộ.
+ * <p>
+ * Sketch theo thuộc tính (số giá trị khác nhau, phân vị) được cộng thêm các row mới khi công bố
+ * và dựng lại từ rows còn sống khi dồn phân vùng.
+ */
+class EntityPartition {
+
+    private static final int MIN_COMPACT_GARBAGE = 32;
+    private static final int MAX_RETAINED_SNAPSHOTS = 16;
+    private static final long RETENTION_NANOS = TimeUnit.MINUTES.toNanos(10);
+    private static final Object NULL_ID = new Object();
+
+    private final String entityName;
+    private final Supplier<RowStore> rowStoreFactory;
+    private final AtomicLong versionClock;
+    private final Journal journal;
+    private final StampedLock lock = new StampedLock();
+    private volatile EntitySnapshot current;
+    private volatile Map<Object, Integer> positionsById = new ConcurrentHashMap<>();
+    private Object[] idsByPosition = new Object[16];
+    private final Map<Long, Retained> retained = new LinkedHashMap<>();
+    private final Map<String, KeyedIndex> indexes = new HashMap<>();
+    private final Map<String, TextIndex> textIndexes = new HashMap<>();
+    // Mọi chỉ mục phải cập nhật khi ghi, dựng lại khi tạo/xóa chỉ mục
+    private PropertyIndex[] maintained = new PropertyIndex[0];
+    private final PropertySketches sketches = new PropertySketches();
+    private volatile Path spillFile;
+    private volatile long spilledBytes;
+    private volatile boolean referenced;
+    // Ghi trong Batch trước khi công bố snapshot nên spill đọc current rồi mới đọc cờ này
+    private volatile boolean spillable = true;
+    private boolean released;
+
+    EntityPartition(String entityName, Supplier<RowStore> rowStoreFactory, AtomicLong versionClock, Journal journal) {
+        this.entityName = entityName;
+        this.rowStoreFactory = rowStoreFactory;
+        this.versionClock = versionClock;
+        this.journal = journal;
+        this.current = new EntitySnapshot(versionClock.get(), rowStoreFactory.get(), SlotVector.EMPTY, 0);
+    }
+
+    EntitySnapshot snapshot() {
+        return current;
+    }
+
+    /**
+     * Snapshot sau khi mọi lần ghi đang chạy trên phân vùng đã công bố xong
+     */
+    EntitySnapshot stableSnapshot() {
+        long stamp = lock.readLock();
+        try {
+            return current;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Nạp sẵn rows khôi phục từ file, row thứ i nằm ở slot i của RowStore và có id ids.get(i)
+     */
+    void restore(RowStore rows, List<Object> ids) {
+        long stamp = lock.writeLock();
+        try {
+            SlotVector.Editor slots = SlotVector.EMPTY.edit();
+            Map<Object, Integer> positions = new ConcurrentHashMap<>(ids.size() * 2);
+            Object[] byPosition = new Object[Math.max(16, ids.size())];
+            for (int i = 0; i < ids.size(); i++) {
+                Object key = key(ids.get(i));
+                Integer previous = positions.put(key, slots.append(i));
+                if (previous != null)
+                    throw new IllegalStateException("Duplicate id in restored rows: " + ids.get(i));
+                byPosition[i] = key;
+            }
+            idsByPosition = byPosition;
+            positionsById = positions;
+            current = new EntitySnapshot(versionClock.incrementAndGet(), rows, slots.build(), ids.size());
+            for (PropertyIndex index : maintained) {
+                build(index, current);
+            }
+            sketches.rebuild(current);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    Object get(Object id) {
+        Object key = key(id);
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            try {
+                Object row = read(current, positionsById, key);
+                if (lock.validate(stamp))
+                    return row;
+            } catch (RuntimeException e) {
+                // Phân vùng vừa được dồn lại, đọc lại dưới read lock
+            }
+        }
+        stamp = lock.readLock();
+        try {
+            return read(current, positionsById, key);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Thêm mới hoặc ghi đè row theo id, row đã tồn tại giữ nguyên vị trí
+     */
+    void put(Object id, Object row) {
+        long stamp = lock.writeLock();
+        try {
+            Batch batch = new Batch();
+            batch.put(id, row);
+            commit(batch);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Đọc-sửa-ghi nguyên tử một row, updater nhận row hiện tại và trả về row mới.
+     * Trả về null (không ghi gì) nếu row không tồn tại.
+     */
+    Object update(Object id, UnaryOperator<Object> updater) {
+        long stamp = lock.writeLock();
+        try {
+            Batch batch = new Batch();
+            Object existing = batch.get(id);
+            if (existing == null)
+                return null;
+            Object updated = updater.apply(existing);
+            batch.put(id, updated);
+            commit(batch);
+            return updated;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    boolean remove(Object id) {
+        long stamp = lock.writeLock();
+        try {
+            Batch batch = new Batch();
+            if (!batch.remove(id))
+                return false;
+            commit(batch);
+            return true;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Ghi một nhóm thay đổi (id -> row, SaveTransaction.DELETED để xóa) thành một snapshot duy nhất
+     */
+    void apply(Map<Object, Object> changes) {
+        long stamp = lock.writeLock();
+        try {
+            commit(prepare(changes));
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Dựng sẵn các thay đổi mà chưa công bố, yêu cầu đã giữ write lock.
+     * Dùng khi commit transaction trên nhiều phân vùng: mọi phân vùng được chuẩn bị xong
+     * rồi mới cùng công bố với một version.
+     */
+    Batch prepare(Map<Object, Object> changes) {
+        Batch batch = new Batch();
+        for (Map.Entry<Object, Object> e : changes.entrySet()) {
+            if (e.getValue() == SaveTransaction.DELETED)
+                batch.remove(e.getKey());
+            else
+                batch.put(e.getKey(), e.getValue());
+        }
+        return batch;
+    }
+
+    long lockWrite() {
+        return lock.writeLock();
+    }
+
+    void unlockWrite(long stamp) {
+        lock.unlockWrite(stamp);
+    }
+
+    int size() {
+        return current.size();
+    }
+
+    /**
+     * Giữ lại snapshot hiện tại để có thể đọc lại theo version trong một khoảng thời gian
+     */
+    EntitySnapshot retain() {
+        return retain(current);
+    }
+
+    /**
+     * Giữ lại snapshot đã đọc trước đó của phân vùng này (ví dụ khi trang đọc trên nó có trang sau)
+     */
+    EntitySnapshot retain(EntitySnapshot snapshot) {
+        long now = System.nanoTime();
+        synchronized (retained) {
+            purgeExpired(now);
+            retained.remove(snapshot.getVersion());
+            retained.put(snapshot.getVersion(), new Retained(snapshot, now));
+            if (retained.size() > MAX_RETAINED_SNAPSHOTS) {
+                retained.remove(retained.keySet().iterator().next());
+            }
+        }
+        return snapshot;
+    }
+
+    /**
+     * Snapshot tại version đã được giữ lại trước đó, null nếu version không còn được giữ
+     */
+    EntitySnapshot snapshotAt(long version) {
+        EntitySnapshot snapshot = current;
+        if (snapshot.getVersion() <= version)
+            return snapshot;
+        synchronized (retained) {
+            purgeExpired(System.nanoTime());
+            Retained entry = retained.get(version);
+            return entry != null ? entry.snapshot : null;
+        }
+    }
+
+    String getEntityName() {
+        return entityName;
+    }
+
+    /**
+     * Tạo chỉ mục trên thuộc tính từ dữ liệu hiện có: có thứ tự nếu type là kiểu số/ngày, băm nếu không.
+     * Trả về false nếu đã có chỉ mục cùng loại; chỉ mục khác loại được thay thế.
+     */
+    boolean createIndex(String property, Class<?> type) {
+        long stamp = lock.writeLock();
+        try {
+            KeyedIndex index = KeyedIndex.of(property, type);
+            KeyedIndex existing = indexes.get(property);
+            if (existing != null && existing.getType().equals(index.getType()))
+                return false;
+            build(index, current);
+            indexes.put(property, index);
+            refreshMaintained();
+            return true;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Tạo chỉ mục văn bản trên thuộc tính, trả về false nếu đã có
+     */
+    boolean createTextIndex(String property) {
+        long stamp = lock.writeLock();
+        try {
+            if (textIndexes.containsKey(property))
+                return false;
+            TextIndex index = new TextIndex(property);
+            build(index, current);
+            textIndexes.put(property, index);
+            refreshMaintained();
+            return true;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    boolean dropIndex(String property) {
+        long stamp = lock.writeLock();
+        try {
+            boolean dropped = indexes.remove(property) != null;
+            refreshMaintained();
+            return dropped;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    boolean dropTextIndex(String property) {
+        long stamp = lock.writeLock();
+        try {
+            boolean dropped = textIndexes.remove(property) != null;
+            refreshMaintained();
+            return dropped;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Thuộc tính có chỉ mục -> các loại chỉ mục trên thuộc tính đó
+     */
+    Map<String, List<String>> indexTypes() {
+        long stamp = lock.readLock();
+        try {
+            Map<String, List<String>> types = new TreeMap<>();
+            for (PropertyIndex index : maintained) {
+                types.computeIfAbsent(index.getProperty(), k -> new ArrayList<>(2)).add(index.getType());
+            }
+            return types;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Rows của snapshot có thuộc tính khớp giá trị (có thể thừa, người gọi so lại), theo thứ tự chèn.
+     * Trả về null nếu thuộc tính không có chỉ mục, chỉ mục không trả lời được giá trị này
+     * hoặc snapshot không còn là snapshot hiện tại.
+     */
+    List<Object> lookup(EntitySnapshot snapshot, String property, Object value) {
+        int[] positions;
+        long stamp = lock.readLock();
+        try {
+            KeyedIndex index = indexes.get(property);
+            if (index == null || snapshot != current)
+                return null;
+            positions = index.find(value);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+        return positions != null ? rows(snapshot, positions) : null;
+    }
+
+    /**
+     * Rows của snapshot có giá trị thuộc tính trong khoảng, qua chỉ mục có thứ tự.
+     * valueOrder: theo thứ tự giá trị (descending, tối đa limit row); nếu không thì theo thứ tự chèn.
+     * Trả về null nếu thuộc tính không có chỉ mục có thứ tự, cận không đúng kiểu
+     * hoặc snapshot không còn là snapshot hiện tại.
+     */
+    List<Object> range(EntitySnapshot snapshot, String property, Object from, boolean fromInclusive,
+                       Object to, boolean toInclusive, boolean valueOrder, boolean descending, int limit) {
+        int[] positions;
+        long stamp = lock.readLock();
+        try {
+            KeyedIndex index = indexes.get(property);
+            if (!(index instanceof RangeIndex) || snapshot != current)
+                return null;
+            positions = ((RangeIndex) index).range(from, fromInclusive, to, toInclusive,
+                    valueOrder && descending, valueOrder ? limit : Integer.MAX_VALUE);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+        if (positions == null)
+            return null;
+        if (!valueOrder)
+            Arrays.sort(positions);
+        return rows(snapshot, positions);
+    }
+
+    /**
+     * Rows ứng viên của snapshot cho phép tìm văn bản (người gọi lọc lại), theo thứ tự chèn.
+     * Trả về null nếu thuộc tính không có chỉ mục văn bản, chuỗi tìm kiếm quá ngắn
+     * hoặc snapshot không còn là snapshot hiện tại.
+     */
+    List<Object> search(EntitySnapshot snapshot, String property, TextSearch search, String text) {
+        int[] positions;
+        long stamp = lock.readLock();
+        try {
+            TextIndex index = textIndexes.get(property);
+            if (index == null || snapshot != current)
+                return null;
+            positions = index.search(search, text);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+        return positions != null ? rows(snapshot, positions) : null;
+    }
+
+    /**
+     * Thống kê của các thuộc tính có chỉ mục băm/có thứ tự
+     */
+    Map<String, PropertyStatistics> statistics() {
+        long stamp = lock.readLock();
+        try {
+            Map<String, PropertyStatistics> statistics = new TreeMap<>();
+            for (KeyedIndex index : indexes.values()) {
+                statistics.put(index.getProperty(), index.statistics(current.size()));
+            }
+            return statistics;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Bản sao sketch theo thuộc tính, người gọi được gộp/sửa tự do
+     */
+    Map<String, PropertySketch> sketches() {
+        long stamp = lock.readLock();
+        try {
+            return sketches.copy();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    PropertySketch sketch(String property) {
+        long stamp = lock.readLock();
+        try {
+            return sketches.copy(property);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Số row ước lượng probe trả về, -1 nếu không có chỉ mục trả lời được probe
+     * hoặc snapshot không còn là snapshot hiện tại
+     */
+    long estimate(EntitySnapshot snapshot, IndexProbe probe) {
+        long stamp = lock.readLock();
+        try {
+            if (snapshot != current)
+                return -1;
+            KeyedIndex index = indexes.get(probe.getProperty());
+            return switch (probe.getKind()) {
+                case EQUAL -> index != null ? index.estimate(probe.getValue()) : -1;
+                case RANGE -> index instanceof RangeIndex range ? range.estimate(probe.getFrom(), probe.getTo()) : -1;
+                case TEXT -> {
+                    TextIndex text = textIndexes.get(probe.getProperty());
+                    yield text != null ? text.estimate(probe.getSearch(), (String) probe.getValue()) : -1;
+                }
+            };
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Vị trí các row probe trả về (có thể thừa, người gọi so lại) dưới dạng bitmap để giao/hợp nhiều chỉ mục.
+     * Trả về null như estimate.
+     */
+    BitSet positions(EntitySnapshot snapshot, IndexProbe probe) {
+        int[] positions;
+        long stamp = lock.readLock();
+        try {
+            if (snapshot != current)
+                return null;
+            KeyedIndex index = indexes.get(probe.getProperty());
+            positions = switch (probe.getKind()) {
+                case EQUAL -> index != null ? index.find(probe.getValue()) : null;
+                case RANGE -> index instanceof RangeIndex range
+                        ? range.range(probe.getFrom(), probe.isFromInclusive(), probe.getTo(), probe.isToInclusive(),
+                        false, Integer.MAX_VALUE)
+                        : null;
+                case TEXT -> {
+                    TextIndex text = textIndexes.get(probe.getProperty());
+                    yield text != null ? text.search(probe.getSearch(), (String) probe.getValue()) : null;
+                }
+            };
+        } finally {
+            lock.unlockRead(stamp);
+        }
+        if (positions == null)
+            return null;
+        BitSet bits = new BitSet(snapshot.getSlots().size());
+        for (int position : positions) {
+            bits.set(position);
+        }
+        return bits;
+    }
+
+    /**
+     * Rows của snapshot tại các vị trí, theo thứ tự chèn
+     */
+    static List<Object> rows(EntitySnapshot snapshot, BitSet positions) {
+        SlotVector slots = snapshot.getSlots();
+        List<Object> rows = new ArrayList<>(positions.cardinality());
+        for (int position = positions.nextSetBit(0); position >= 0 && position < slots.size();
+             position = positions.nextSetBit(position + 1)) {
+            int slot = slots.get(position);
+            if (slot != SlotVector.DELETED)
+                rows.add(snapshot.getRowStore().row(slot));
+        }
+        return rows;
+    }
+
+    /**
+     * Snapshot bất biến nên đọc rows sau khi nhả lock
+     */
+    private static List<Object> rows(EntitySnapshot snapshot, int[] positions) {
+        SlotVector slots = snapshot.getSlots();
+        List<Object> rows = new ArrayList<>(positions.length);
+        for (int position : positions) {
+            int slot = slots.get(position);
+            if (slot != SlotVector.DELETED)
+                rows.add(snapshot.getRowStore().row(slot));
+        }
+        return rows;
+    }
+
+    /**
+     * Đánh dấu vừa được truy cập, dùng cho thuật toán clock khi chọn phân vùng để spill
+     */
+    void touch() {
+        referenced = true;
+    }
+
+    /**
+     * Xóa bit truy cập, trả về giá trị trước đó
+     */
+    boolean clearReferenced() {
+        boolean was = referenced;
+        referenced = false;
+        return was;
+    }
+
+    boolean isSpilled() {
+        return spillFile != null;
+    }
+
+    /**
+     * Số bytes ước tính của rows trước khi spill, 0 nếu phân vùng đang nằm trong bộ nhớ
+     */
+    long getSpilledBytes() {
+        return spilledBytes;
+    }
+
+    /**
+     * Bộ nhớ của rows hiện tại cộng các RowStore cũ (trước lần dồn/nạp lại) mà snapshot được giữ lại còn ghim
+     */
+    long estimatedBytes() {
+        RowStore rows = current.getRowStore();
+        long bytes = rows.estimatedBytes();
+        synchronized (retained) {
+            if (retained.isEmpty())
+                return bytes;
+            purgeExpired(System.nanoTime());
+            Set<RowStore> pinned = Collections.newSetFromMap(new IdentityHashMap<>());
+            for (Retained entry : retained.values()) {
+                RowStore old = entry.snapshot.getRowStore();
+                if (old != rows && pinned.add(old))
+                    bytes += old.estimatedBytes();
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Chuyển rows còn sống ra file rồi đọc qua bản map của file, các row ghi sau đó vào RowStore mới.
+     * Phân vùng đã spill được spill lại (gồm cả các row ghi thêm) sang file mới.
+     * File được ghi từ snapshot hiện tại ngoài lock; lock ghi chỉ giữ khi đổi sang file, và nếu trong lúc ghi
+     * phân vùng đã đổi snapshot (ghi, dồn lại, nạp lại) thì file bị bỏ, lần evict sau sẽ spill lại.
+     * Trả về số bytes ước tính được giải phóng, 0 nếu phân vùng rỗng, đã đổi hoặc chứa entity không phải Map.
+     */
+    long spill(Path file) throws IOException {
+        EntitySnapshot snapshot = current;
+        if (!spillable || snapshot.size() == 0)
+            return 0;
+        long bytes = snapshot.getRowStore().estimatedBytes();
+        MappedRowStore mapped;
+        try {
+            mapped = MappedRowStore.spill(file, snapshot.getRows());
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(file);
+            throw e;
+        }
+        long stamp = lock.writeLock();
+        try {
+            if (released || current != snapshot) {
+                Files.deleteIfExists(file);
+                return 0;
+            }
+            int[] next = new int[1];
+            relocate(snapshot.getVersion(), snapshot.getSlots(), new LayeredRowStore(mapped, rowStoreFactory.get()),
+                    snapshot.size(), slot -> next[0]++);
+            long previousBytes = spilledBytes;
+            deleteSpillFile();
+            spillFile = file;
+            spilledBytes = previousBytes + bytes;
+            return bytes;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Đưa rows đã spill trở lại RowStore trong bộ nhớ, trả về false nếu phân vùng không còn ở trạng thái spill
+     */
+    boolean reload() {
+        long stamp = lock.writeLock();
+        try {
+            if (spillFile == null)
+                return false;
+            EntitySnapshot snapshot = current;
+            RowStore from = snapshot.getRowStore();
+            RowStore to = rowStoreFactory.get();
+            relocate(snapshot.getVersion(), snapshot.getSlots(), to, snapshot.size(), slot -> to.append(from.read(slot)));
+            deleteSpillFile();
+            return true;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    void release() {
+        long stamp = lock.writeLock();
+        try {
+            released = true;
+            current.getRowStore().release();
+            synchronized (retained) {
+                retained.clear();
+            }
+            deleteSpillFile();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Đánh lại vị trí các row còn sống theo thứ tự chèn; move đưa row ở slot cũ sang RowStore đích
+     * và trả về slot mới. RowStore cũ vẫn được giữ bởi các snapshot đang đọc nó nên không được release ở đây:
+     * snapshot không giữ lại và row view trong QueryCache (dồn lại không đổi version) không được đếm, bộ nhớ của nó
+     * (kể cả slab ngoài heap) được GC thu hồi khi không còn ai tham chiếu.
+     */
+    private void relocate(long version, SlotVector source, RowStore to, int live, IntUnaryOperator move) {
+        SlotVector.Editor relocated = SlotVector.EMPTY.edit();
+        Map<Object, Integer> positions = new ConcurrentHashMap<>(live * 2);
+        Object[] ids = new Object[Math.max(16, live)];
+        int[] moved = maintained.length == 0 ? null : new int[source.size()];
+        for (int position = 0; position < source.size(); position++) {
+            int slot = source.get(position);
+            if (slot == SlotVector.DELETED) {
+                if (moved != null)
+                    moved[position] = -1;
+                continue;
+            }
+            int next = relocated.append(move.applyAsInt(slot));
+            ids[next] = idsByPosition[position];
+            positions.put(ids[next], next);
+            if (moved != null)
+                moved[position] = next;
+        }
+        idsByPosition = ids;
+        positionsById = positions;
+        current = new EntitySnapshot(version, to, relocated.build(), live);
+        if (moved != null) {
+            for (PropertyIndex index : maintained) {
+                index.remap(moved, current);
+            }
+        }
+    }
+
+    private void refreshMaintained() {
+        List<PropertyIndex> all = new ArrayList<>(indexes.values());
+        all.addAll(textIndexes.values());
+        maintained = all.toArray(new PropertyIndex[0]);
+    }
+
+    private static void build(PropertyIndex index, EntitySnapshot snapshot) {
+        SlotVector slots = snapshot.getSlots();
+        for (int position = 0; position < slots.size(); position++) {
+            int slot = slots.get(position);
+            if (slot != SlotVector.DELETED)
+                index.add(snapshot.getRowStore().row(slot), position);
+        }
+    }
+
+    /**
+     * File spill có thể vẫn đang được map bởi snapshot cũ; trên Linux vùng map vẫn đọc được sau khi xóa
+     */
+    private void deleteSpillFile() {
+        Path file = spillFile;
+        if (file == null)
+            return;
+        spillFile = null;
+        spilledBytes = 0;
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            file.toFile().deleteOnExit();
+        }
+    }
+
+    private void commit(Batch batch) {
+        long version = versionClock.incrementAndGet();
+        if (batch.getChanges() != null)
+            journal.record(version, batch.getChanges());
+        batch.publish(version);
+    }
+
+    private void purgeExpired(long now) {
+        Iterator<Retained> it = retained.values().iterator();
+        while (it.hasNext()) {
+            if (now - it.next().retainedAt > RETENTION_NANOS)
+                it.remove();
+        }
+    }
+
+    private static Object read(EntitySnapshot snapshot, Map<Object, Integer> positions, Object key) {
+        Integer position = positions.get(key);
+        SlotVector slots = snapshot.getSlots();
+        if (position == null || position >= slots.size())
+            return null;
+        int slot = slots.get(position);
+        return slot != SlotVector.DELETED ? snapshot.getRowStore().read(slot) : null;
+    }
+
+    private static Object key(Object id) {
+        return id != null ? id : NULL_ID;
+    }
+
+    /**
+     * Một lần ghi trên phân vùng, chạy khi đã giữ write lock. Thay đổi chỉ hiện ra với thread đọc
+     * khi publish; nếu lỗi giữa chừng các row đã ghi vào RowStore chỉ trở thành rác chờ dồn.
+     */
+    class Batch {
+
+        private final EntitySnapshot base = current;
+        private final SlotVector.Editor slots = base.getSlots().edit();
+        private final Map<Object, Integer> added = new HashMap<>();
+        private final List<Object> removed = new ArrayList<>();
+        private final List<EntityChange> changes = journal.isEnabled() ? new ArrayList<>() : null;
+        // Row đã ghi, cộng vào sketch khi công bố
+        private final List<Object> written = new ArrayList<>();
+        // Vị trí đã thay đổi, có thể lặp lại; chỉ ghi nhận khi phân vùng có chỉ mục phụ
+        private int[] touched = maintained.length == 0 ? null : new int[8];
+        private int touchedCount;
+        private int live = base.size();
+
+        /**
+         * Các thay đổi đã ghi vào batch, chỉ được ghi nhận khi journal đang bật
+         */
+        List<EntityChange> getChanges() {
+            return changes;
+        }
+
+        Object get(Object id) {
+            int position = position(key(id));
+            if (position < 0)
+                return null;
+            int slot = slots.get(position);
+            return slot != SlotVector.DELETED ? base.getRowStore().read(slot) : null;
+        }
+
+        void put(Object id, Object row) {
+            Object key = key(id);
+            if (!(row instanceof Map))
+                spillable = false;
+            int slot = base.getRowStore().append(row);
+            if (changes != null)
+                changes.add(new EntityChange(entityName, id, row));
+            written.add(row);
+            int position = position(key);
+            if (position >= 0 && slots.get(position) != SlotVector.DELETED) {
+                slots.set(position, slot);
+                touch(position);
+                return;
+            }
+            position = slots.append(slot);
+            added.put(key, position);
+            touch(position);
+            live++;
+        }
+
+        boolean remove(Object id) {
+            Object key = key(id);
+            int position = position(key);
+            if (position < 0 || slots.get(position) == SlotVector.DELETED)
+                return false;
+            slots.set(position, SlotVector.DELETED);
+            touch(position);
+            if (changes != null)
+                changes.add(EntityChange.delete(entityName, id));
+            if (added.remove(key) == null)
+                removed.add(key);
+            live--;
+            return true;
+        }
+
+        void publish(long version) {
+            Map<Object, Integer> positions = positionsById;
+            for (Object key : removed) {
+                int position = positions.remove(key);
+                idsByPosition[position] = null;
+            }
+            for (Map.Entry<Object, Integer> e : added.entrySet()) {
+                int position = e.getValue();
+                if (position >= idsByPosition.length)
+                    idsByPosition = Arrays.copyOf(idsByPosition, Math.max(idsByPosition.length * 2, position + 1));
+                idsByPosition[position] = e.getKey();
+                positions.put(e.getKey(), position);
+            }
+            updateIndexes();
+            RowStore rows = base.getRowStore();
+            int garbage = rows.size() - live;
+            if (garbage >= MIN_COMPACT_GARBAGE && garbage > live) {
+                compact(version, slots.build());
+            } else {
+                current = new EntitySnapshot(version, rows, slots.build(), live);
+                for (Object row : written) {
+                    sketches.add(row);
+                }
+            }
+        }
+
+        private void touch(int position) {
+            if (touched == null)
+                return;
+            if (touchedCount == touched.length)
+                touched = Arrays.copyOf(touched, touchedCount * 2);
+            touched[touchedCount++] = position;
+        }
+
+        /**
+         * Bỏ khỏi chỉ mục giá trị cũ của các vị trí đã thay đổi rồi mới thêm giá trị mới,
+         * để vị trí được ghi nhiều lần trong batch vẫn chỉ còn giá trị cuối cùng
+         */
+        private void updateIndexes() {
+            if (touched == null)
+                return;
+            SlotVector before = base.getSlots();
+            RowStore rows = base.getRowStore();
+            for (int i = 0; i < touchedCount; i++) {
+                int position = touched[i];
+                int slot = position < before.size() ? before.get(position) : SlotVector.DELETED;
+                if (slot == SlotVector.DELETED)
+                    continue;
+                Object row = rows.row(slot);
+                for (PropertyIndex index : maintained) {
+                    index.remove(row, position);
+                }
+            }
+            for (int i = 0; i < touchedCount; i++) {
+                int position = touched[i];
+                int slot = slots.get(position);
+                if (slot == SlotVector.DELETED)
+                    continue;
+                Object row = rows.row(slot);
+                for (PropertyIndex index : maintained) {
+                    index.add(row, position);
+                }
+            }
+        }
+
+        private int position(Object key) {
+            Integer position = added.get(key);
+            if (position == null)
+                position = positionsById.get(key);
+            return position != null && position < slots.size() ? position : -1;
+        }
+
+        /**
+         * Chép các row còn sống sang RowStore mới, phân vùng đã spill cũng trở lại bộ nhớ
+         */
+        private void compact(long version, SlotVector source) {
+            RowStore from = base.getRowStore();
+            RowStore to = rowStoreFactory.get();
+            relocate(version, source, to, live, slot -> to.append(from.read(slot)));
+            deleteSpillFile();
+            sketches.rebuild(current);
+        }
+    }
+
+    /**
+     * Nơi ghi nhận thay đổi trước khi công bố, do VirtualDataStore cung cấp
+     */
+    interface Journal {
+
+        boolean isEnabled();
+
+        void record(long version, List<EntityChange> changes);
+    }
+
+    private static final class Retained {
+
+        private final EntitySnapshot snapshot;
+        private final long retainedAt;
+
+        private Retained(EntitySnapshot snapshot, long retainedAt) {
+            this.snapshot = snapshot;
+            this.retainedAt = retainedAt;
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package com.company.dynamicdatastore.component.datastore;
+
+import com.company.dynamicdatastore.component.storage.RowStore;
+
+import java.util.AbstractList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+
+/**
+ * Phiên bản bất biến của dữ liệu một entity tại một thời điểm.
+ * Đọc snapshot không cần khóa và không chép danh sách: các ghi sau đó tạo phiên bản mới
+ * chứ không sửa phiên bản đang được đọc.
+ */
+public final class EntitySnapshot {
+
+    private final long version;
+    private final RowStore rows;
+    private final SlotVector slots;
+    private final int live;
+    private volatile int[] liveSlots;
+
+    EntitySnapshot(long version, RowStore rows, SlotVector slots, int live) {
+        this.version = version;
+        this.rows = rows;
+        this.slots = slots;
+        this.live = live;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public int size() {
+        return live;
+    }
+
+    /**
+     * Danh sách rows chỉ đọc theo thứ tự chèn. Với storage dạng cột/ngoài heap mỗi row là view đọc từng thuộc tính
+     * qua RowStore.value (xem RowStore#row), cả row chỉ được dựng lại khi bị duyệt toàn bộ.
+     */
+    public List<Object> getRows() {
+        return new Rows();
+    }
+
+    RowStore getRowStore() {
+        return rows;
+    }
+
+    SlotVector getSlots() {
+        return slots;
+    }
+
+    private int slotAt(int index) {
+        if (live == slots.size())
+            return slots.get(index);
+        int[] dense = liveSlots;
+        if (dense == null) {
+            dense = new int[live];
+            int next = 0;
+            for (int position = 0; position < slots.size(); position++) {
+                int slot = slots.get(position);
+                if (slot != SlotVector.DELETED)
+                    dense[next++] = slot;
+            }
+            liveSlots = dense;
+        }
+        return dense[index];
+    }
+
+    private class Rows extends AbstractList<Object> implements RandomAccess {
+
+        @Override
+        public Object get(int index) {
+            if (index < 0 || index >= live)
+                throw new IndexOutOfBoundsException("Index " + index + " out of " + live);
+            return rows.row(slotAt(index));
+        }
+
+        @Override
+        public int size() {
+            return live;
+        }
+
+        @Override
+        public Iterator<Object> iterator() {
+            return new Iterator<>() {
+                private int position = advance(0);
+
+                @Override
+                public boolean hasNext() {
+                    return position < slots.size();
+                }
+
+                @Override
+                public Object next() {
+                    if (!hasNext())
+                        throw new NoSuchElementException();
+                    Object row = rows.row(slots.get(position));
+                    position = advance(position + 1);
+                    return row;
+                }
+            };
+        }
+
+        private int advance(int position) {
+            while (position < slots.size() && slots.get(position) == SlotVector.DELETED) {
+                position++;
+            }
+            return position;
+        }
+    }
+}
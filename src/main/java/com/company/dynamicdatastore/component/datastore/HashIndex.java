@@ -0,0 +1,43 @@
+package com.company.dynamicdatastore.component.datastore;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Chỉ mục băm phụ trên một thuộc tính, dùng cho lọc bằng.
+ * Khóa được chuẩn hóa theo cùng quy tắc với so sánh equalsIgnoreCase trên String.valueOf của query,
+ * nên mọi row khớp bộ lọc đều nằm trong kết quả tra cứu; người gọi vẫn so lại từng row.
+ */
+final class HashIndex extends KeyedIndex {
+
+    private static final Object NULL_KEY = new Object();
+
+    HashIndex(String property) {
+        super(property);
+    }
+
+    @Override
+    String getType() {
+        return "hash";
+    }
+
+    @Override
+    Map<Object, Object> newMap() {
+        return new HashMap<>();
+    }
+
+    /**
+     * Hai giá trị bằng nhau theo equalsIgnoreCase luôn cho cùng khóa (xem TextSearch.fold)
+     */
+    @Override
+    Object key(Object value) {
+        return value != null ? TextSearch.fold(String.valueOf(value)) : NULL_KEY;
+    }
+
+    @Override
+    PropertyStatistics statistics(long rows) {
+        Object nulls = positions.get(NULL_KEY);
+        return new PropertyStatistics(getProperty(), getType(), rows, count - sizeOf(nulls),
+                positions.size() - (nulls != null ? 1 : 0), null, null);
+    }
+}
@@ -0,0 +1,97 @@
+package com.company.dynamicdatastore.component.datastore;
+
+import java.util.Arrays;
+import java.util.UUID;
+
+/**
+ * Ước lượng số giá trị khác nhau bằng HyperLogLog với 2^PRECISION thanh ghi một byte: bộ nhớ cố định 2KB,
+ * sai số chuẩn khoảng 1.04 / sqrt(2048) = 2.3%. Hai sketch gộp được bằng max từng thanh ghi nên kết quả gộp
+ * giống hệt sketch dựng từ hợp hai tập giá trị. Không xóa được giá trị.
+ */
+public final class HyperLogLog {
+
+    static final int PRECISION = 11;
+    private static final int REGISTERS = 1 << PRECISION;
+    private static final double ALPHA = 0.7213 / (1 + 1.079 / REGISTERS);
+
+    private final byte[] registers;
+
+    public HyperLogLog() {
+        this.registers = new byte[REGISTERS];
+    }
+
+    private HyperLogLog(byte[] registers) {
+        this.registers = registers;
+    }
+
+    public void add(Object value) {
+        if (value != null)
+            addHash(hash(value));
+    }
+
+    void addHash(long hash) {
+        int index = (int) (hash >>> (64 - PRECISION));
+        // Vị trí bit 1 đầu tiên trong phần còn lại, thêm bit chặn để không vượt quá 64 - PRECISION + 1
+        int rank = Long.numberOfLeadingZeros((hash << PRECISION) | (1L << (PRECISION - 1))) + 1;
+        if (rank > registers[index])
+            registers[index] = (byte) rank;
+    }
+
+    public void merge(HyperLogLog other) {
+        for (int i = 0; i < REGISTERS; i++) {
+            if (other.registers[i] > registers[i])
+                registers[i] = other.registers[i];
+        }
+    }
+
+    public HyperLogLog copy() {
+        return new HyperLogLog(registers.clone());
+    }
+
+    public long estimate() {
+        double sum = 0;
+        int zeros = 0;
+        for (byte register : registers) {
+            sum += 1.0 / (1L << register);
+            if (register == 0)
+                zeros++;
+        }
+        double estimate = ALPHA * REGISTERS * REGISTERS / sum;
+        // Tập nhỏ: đếm tuyến tính theo số thanh ghi còn trống chính xác hơn
+        if (estimate <= 2.5 * REGISTERS && zeros > 0)
+            estimate = REGISTERS * Math.log((double) REGISTERS / zeros);
+        return Math.round(estimate);
+    }
+
+    public void clear() {
+        Arrays.fill(registers, (byte) 0);
+    }
+
+    /**
+     * Băm 64 bit của giá trị: số nguyên theo giá trị long (10 và 10L như nhau), chuỗi theo nội dung, còn lại theo
+     * dạng chuỗi của giá trị
+     */
+    static long hash(Object value) {
+        if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte)
+            return mix(((Number) value).longValue());
+        if (value instanceof UUID uuid)
+            return mix(uuid.getMostSignificantBits() ^ mix(uuid.getLeastSignificantBits()));
+        String text = value instanceof String s ? s : value.toString();
+        // FNV-1a 64 bit trên từng ký tự (không tạo mảng byte) rồi trộn lại để các bit cao phân bố đều
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < text.length(); i++) {
+            hash ^= text.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return mix(hash);
+    }
+
+    /**
+     * Bước cuối của SplitMix64
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
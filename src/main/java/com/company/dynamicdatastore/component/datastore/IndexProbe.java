@@ -0,0 +1,96 @@
+package com.company.dynamicdatastore.component.datastore;
+
+/**
+ * Một lần tra chỉ mục trên một thuộc tính: bằng (chỉ mục băm hoặc có thứ tự), khoảng (chỉ mục có thứ tự)
+ * hoặc tìm văn bản (chỉ mục văn bản). Dùng cho VirtualDataStore.estimate/positions khi lập kế hoạch query.
+ */
+public final class IndexProbe {
+
+    public enum Kind {
+        EQUAL, RANGE, TEXT
+    }
+
+    private final Kind kind;
+    private final String property;
+    private final Object value;
+    private final Object from;
+    private final boolean fromInclusive;
+    private final Object to;
+    private final boolean toInclusive;
+    private final TextSearch search;
+
+    private IndexProbe(Kind kind, String property, Object value, Object from, boolean fromInclusive,
+                       Object to, boolean toInclusive, TextSearch search) {
+        this.kind = kind;
+        this.property = property;
+        this.value = value;
+        this.from = from;
+        this.fromInclusive = fromInclusive;
+        this.to = to;
+        this.toInclusive = toInclusive;
+        this.search = search;
+    }
+
+    /**
+     * Rows có thuộc tính bằng value; value null là thuộc tính rỗng (chỉ chỉ mục băm trả lời được)
+     */
+    public static IndexProbe equal(String property, Object value) {
+        return new IndexProbe(Kind.EQUAL, property, value, null, false, null, false, null);
+    }
+
+    /**
+     * Rows có giá trị trong khoảng, cận null là không giới hạn
+     */
+    public static IndexProbe range(String property, Object from, boolean fromInclusive, Object to, boolean toInclusive) {
+        return new IndexProbe(Kind.RANGE, property, null, from, fromInclusive, to, toInclusive, null);
+    }
+
+    /**
+     * Ứng viên cho phép tìm văn bản, value là chuỗi tìm kiếm
+     */
+    public static IndexProbe text(String property, TextSearch search, String text) {
+        return new IndexProbe(Kind.TEXT, property, text, null, false, null, false, search);
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public String getProperty() {
+        return property;
+    }
+
+    public Object getValue() {
+        return value;
+    }
+
+    public Object getFrom() {
+        return from;
+    }
+
+    public boolean isFromInclusive() {
+        return fromInclusive;
+    }
+
+    public Object getTo() {
+        return to;
+    }
+
+    public boolean isToInclusive() {
+        return toInclusive;
+    }
+
+    public TextSearch getSearch() {
+        return search;
+    }
+
+    @Override
+    public String toString() {
+        return switch (kind) {
+            case EQUAL -> property + " = " + value;
+            case RANGE -> property + " in " + (from == null ? "(-inf" : (fromInclusive ? "[" : "(") + from)
+                    + ", " + (to == null ? "+inf)" : to + (toInclusive ? "]" : ")"));
+            case TEXT -> property + " " + search.getOperator() + " " + value;
+        };
+    }
+}
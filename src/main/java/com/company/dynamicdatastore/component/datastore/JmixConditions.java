@@ -0,0 +1,94 @@
+package com.company.dynamicdatastore.component.datastore;
+
+import io.jmix.core.querycondition.Condition;
+import io.jmix.core.querycondition.LogicalCondition;
+import io.jmix.core.querycondition.PropertyCondition;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Dịch cây điều kiện của Jmix (PropertyCondition/LogicalCondition trong LoadContext.Query) sang bộ lọc của query
+ * (xem QueryFilter) để loadAll/countAll dùng chung cách lọc và chỉ mục với REST.
+ */
+final class JmixConditions {
+
+    private JmixConditions() {
+    }
+
+    /**
+     * Bộ lọc tương ứng, rỗng nếu không có điều kiện nào còn hiệu lực. Giá trị của điều kiện lấy từ chính điều kiện,
+     * không có thì từ tham số của query theo tên tham số. Điều kiện không dịch được ném IllegalArgumentException
+     */
+    static Map<String, Object> toFilters(Condition condition, Map<String, Object> parameters) {
+        Map<String, Object> params = parameters != null ? parameters : Map.of();
+        Condition actual = condition != null ? condition.actualize(params.keySet(), false) : null;
+        return actual != null ? translate(actual, params) : Map.of();
+    }
+
+    private static Map<String, Object> translate(Condition condition, Map<String, Object> parameters) {
+        if (condition instanceof LogicalCondition logical) {
+            List<Map<String, Object>> parts = new ArrayList<>();
+            for (Condition part : logical.getConditions()) {
+                Map<String, Object> filters = translate(part, parameters);
+                if (!filters.isEmpty())
+                    parts.add(filters);
+            }
+            if (parts.isEmpty())
+                return Map.of();
+            if (parts.size() == 1)
+                return parts.get(0);
+            return Map.of(logical.getType() == LogicalCondition.Type.OR ? "or" : "and", parts);
+        }
+        if (condition instanceof PropertyCondition property)
+            return translate(property, parameters);
+        throw new IllegalArgumentException("Unsupported condition for virtual data store: " + condition);
+    }
+
+    private static Map<String, Object> translate(PropertyCondition condition, Map<String, Object> parameters) {
+        String operation = condition.getOperation();
+        Object value = condition.getParameterValue() != null
+                ? condition.getParameterValue() : parameters.get(condition.getParameterName());
+        String operator = switch (operation) {
+            case PropertyCondition.Operation.EQUAL -> value == null ? "isNull" : "eq";
+            case PropertyCondition.Operation.NOT_EQUAL -> value == null ? "isNull" : "ne";
+            case PropertyCondition.Operation.GREATER -> "gt";
+            case PropertyCondition.Operation.GREATER_OR_EQUAL -> "gte";
+            case PropertyCondition.Operation.LESS -> "lt";
+            case PropertyCondition.Operation.LESS_OR_EQUAL -> "lte";
+            case PropertyCondition.Operation.CONTAINS, PropertyCondition.Operation.NOT_CONTAINS -> "contains";
+            case PropertyCondition.Operation.STARTS_WITH -> "startsWith";
+            case PropertyCondition.Operation.ENDS_WITH -> "endsWith";
+            case PropertyCondition.Operation.IS_SET -> "isNull";
+            case PropertyCondition.Operation.IN_LIST, PropertyCondition.Operation.NOT_IN_LIST -> "in";
+            default -> throw new IllegalArgumentException("Unsupported condition operation for virtual data store: " + operation);
+        };
+        Object operand = switch (operator) {
+            // = null là rỗng, <> null là có giá trị; is_set mang giá trị true/false
+            case "isNull" -> operation.equals(PropertyCondition.Operation.IS_SET)
+                    ? !Boolean.TRUE.equals(value) : operation.equals(PropertyCondition.Operation.EQUAL);
+            case "in" -> list(value);
+            default -> value;
+        };
+        Map<String, Object> operators = new HashMap<>();
+        operators.put(operator, operand);
+        Map<String, Object> filter = Map.of(condition.getProperty(), operators);
+        boolean negated = operation.equals(PropertyCondition.Operation.NOT_CONTAINS)
+                || operation.equals(PropertyCondition.Operation.NOT_IN_LIST);
+        return negated ? Map.of("not", filter) : filter;
+    }
+
+    private static List<Object> list(Object value) {
+        if (value instanceof Collection<?> values)
+            return new ArrayList<>(values);
+        if (value instanceof Object[] values)
+            return new ArrayList<>(Arrays.asList(values));
+        List<Object> single = new ArrayList<>();
+        single.add(value);
+        return single;
+    }
+}
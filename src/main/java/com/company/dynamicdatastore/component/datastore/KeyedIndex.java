@@ -0,0 +1,165 @@
+package com.company.dynamicdatastore.component.datastore;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Chỉ mục theo khóa: khóa (giá trị đã chuẩn hóa) -> các vị trí của row trong phân vùng.
+ */
+abstract class KeyedIndex extends PropertyIndex {
+
+    // Giá trị là Integer khi chỉ có một vị trí, Set<Integer> khi có nhiều
+    protected Map<Object, Object> positions;
+    // Tổng số vị trí trong chỉ mục
+    protected int count;
+
+    KeyedIndex(String property) {
+        super(property);
+        this.positions = newMap();
+    }
+
+    /**
+     * Chỉ mục có thứ tự cho thuộc tính kiểu số/ngày, chỉ mục băm cho các kiểu còn lại
+     */
+    static KeyedIndex of(String property, Class<?> type) {
+        OrderedType ordered = OrderedType.of(type);
+        return ordered != null ? new RangeIndex(property, ordered) : new HashIndex(property);
+    }
+
+    /**
+     * Khóa của giá trị, null nếu giá trị không được đưa vào chỉ mục
+     */
+    abstract Object key(Object value);
+
+    abstract Map<Object, Object> newMap();
+
+    int size() {
+        return positions.size();
+    }
+
+    @Override
+    void add(Object row, int position) {
+        Object key = key(valueOf(row, getProperty()));
+        if (key == null)
+            return;
+        Object existing = positions.get(key);
+        if (existing == null) {
+            positions.put(key, position);
+            count++;
+        } else if (existing instanceof Integer) {
+            if ((Integer) existing != position) {
+                Set<Integer> set = new HashSet<>(4);
+                set.add((Integer) existing);
+                set.add(position);
+                positions.put(key, set);
+                count++;
+            }
+        } else if (postings(existing).add(position)) {
+            count++;
+        }
+    }
+
+    @Override
+    void remove(Object row, int position) {
+        Object key = key(valueOf(row, getProperty()));
+        if (key == null)
+            return;
+        Object existing = positions.get(key);
+        if (existing instanceof Integer) {
+            if ((Integer) existing == position) {
+                positions.remove(key);
+                count--;
+            }
+        } else if (existing != null) {
+            Set<Integer> set = postings(existing);
+            if (set.remove(position))
+                count--;
+            if (set.size() == 1)
+                positions.put(key, set.iterator().next());
+        }
+    }
+
+    /**
+     * Các vị trí có giá trị bằng value, tăng dần để kết quả giữ thứ tự chèn.
+     * Null nếu value không chuyển được thành khóa (chỉ mục không trả lời được).
+     */
+    @Override
+    int[] find(Object value) {
+        Object key = key(value);
+        if (key == null)
+            return null;
+        return positionsOf(positions.get(key));
+    }
+
+    /**
+     * Số vị trí có giá trị bằng value (chính xác), -1 nếu chỉ mục không trả lời được
+     */
+    int estimate(Object value) {
+        Object key = key(value);
+        return key != null ? sizeOf(positions.get(key)) : -1;
+    }
+
+    PropertyStatistics statistics(long rows) {
+        return new PropertyStatistics(getProperty(), getType(), rows, count, positions.size(), null, null);
+    }
+
+    @Override
+    void remap(int[] moved, EntitySnapshot relocated) {
+        Map<Object, Object> remapped = newMap();
+        int remappedCount = 0;
+        for (Map.Entry<Object, Object> e : positions.entrySet()) {
+            if (e.getValue() instanceof Integer) {
+                int position = moved[(Integer) e.getValue()];
+                if (position >= 0) {
+                    remapped.put(e.getKey(), position);
+                    remappedCount++;
+                }
+                continue;
+            }
+            Set<Integer> set = postings(e.getValue());
+            Set<Integer> next = new HashSet<>(set.size() * 2);
+            for (Integer old : set) {
+                if (moved[old] >= 0)
+                    next.add(moved[old]);
+            }
+            if (next.size() == 1)
+                remapped.put(e.getKey(), next.iterator().next());
+            else if (!next.isEmpty())
+                remapped.put(e.getKey(), next);
+            remappedCount += next.size();
+        }
+        positions = remapped;
+        count = remappedCount;
+    }
+
+    /**
+     * Các vị trí của một khóa, tăng dần
+     */
+    static int[] positionsOf(Object postings) {
+        if (postings == null)
+            return new int[0];
+        if (postings instanceof Integer)
+            return new int[]{(Integer) postings};
+        Set<Integer> set = postings(postings);
+        int[] result = new int[set.size()];
+        int i = 0;
+        for (Integer position : set) {
+            result[i++] = position;
+        }
+        Arrays.sort(result);
+        return result;
+    }
+
+    static int sizeOf(Object postings) {
+        if (postings == null)
+            return 0;
+        return postings instanceof Integer ? 1 : postings(postings).size();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Set<Integer> postings(Object value) {
+        return (Set<Integer>) value;
+    }
+}
@@ -0,0 +1,212 @@
+package com.company.dynamicdatastore.component.datastore;
+
+import java.util.Arrays;
+
+/**
+ * Sketch phân vị KLL trên số thực: các giá trị nằm trong nhiều tầng, giá trị ở tầng h đại diện cho 2^h giá trị gốc.
+ * Tầng đầy thì được sắp xếp và nén nửa (giữ xen kẽ từ vị trí chẵn hoặc lẻ ngẫu nhiên) lên tầng trên; sức chứa giảm
+ * theo hệ số 2/3 từ tầng cao xuống nên tổng số giá trị giữ lại bị chặn khoảng 3K bất kể số giá trị đã thêm.
+ * Sai số thứ hạng khoảng 1.7 / K. Hai sketch gộp được bằng cách nối từng tầng rồi nén lại.
+ */
+public final class KllSketch {
+
+    static final int K = 128;
+    private static final double C = 2.0 / 3.0;
+    private static final int MIN_CAPACITY = 8;
+
+    private double[][] levels;
+    private int[] sizes;
+    private long count;
+    private double min = Double.NaN;
+    private double max = Double.NaN;
+    private long seed = 0x9e3779b97f4a7c15L;
+
+    public KllSketch() {
+        this.levels = new double[][]{new double[MIN_CAPACITY]};
+        this.sizes = new int[1];
+    }
+
+    public void add(double value) {
+        if (Double.isNaN(value))
+            return;
+        append(0, value);
+        count++;
+        min = Double.isNaN(min) ? value : Math.min(min, value);
+        max = Double.isNaN(max) ? value : Math.max(max, value);
+        if (retained() > totalCapacity())
+            compress();
+    }
+
+    public void merge(KllSketch other) {
+        if (other.count == 0)
+            return;
+        for (int h = 0; h < other.levels.length; h++) {
+            for (int i = 0; i < other.sizes[h]; i++) {
+                append(h, other.levels[h][i]);
+            }
+        }
+        count += other.count;
+        min = Double.isNaN(min) ? other.min : Math.min(min, other.min);
+        max = Double.isNaN(max) ? other.max : Math.max(max, other.max);
+        while (retained() > totalCapacity())
+            compress();
+    }
+
+    public KllSketch copy() {
+        KllSketch copy = new KllSketch();
+        copy.levels = new double[levels.length][];
+        for (int h = 0; h < levels.length; h++) {
+            copy.levels[h] = Arrays.copyOf(levels[h], levels[h].length);
+        }
+        copy.sizes = sizes.clone();
+        copy.count = count;
+        copy.min = min;
+        copy.max = max;
+        copy.seed = seed;
+        return copy;
+    }
+
+    /**
+     * Số giá trị đã thêm (kể cả qua merge)
+     */
+    public long getCount() {
+        return count;
+    }
+
+    public double getMin() {
+        return min;
+    }
+
+    public double getMax() {
+        return max;
+    }
+
+    /**
+     * Giá trị ước lượng tại phân vị q (0..1), NaN nếu sketch rỗng. q = 0 và q = 1 là min/max chính xác
+     */
+    public double quantile(double q) {
+        if (count == 0)
+            return Double.NaN;
+        if (q <= 0)
+            return min;
+        if (q >= 1)
+            return max;
+        double[] values = new double[retained()];
+        long[] weights = new long[values.length];
+        sorted(values, weights);
+        double target = q * count;
+        long cumulative = 0;
+        for (int i = 0; i < values.length; i++) {
+            cumulative += weights[i];
+            if (cumulative >= target)
+                return values[i];
+        }
+        return max;
+    }
+
+    /**
+     * Tỉ lệ ước lượng các giá trị nhỏ hơn hoặc bằng value (inclusive) hoặc nhỏ hơn hẳn, 0 nếu sketch rỗng
+     */
+    public double rank(double value, boolean inclusive) {
+        if (count == 0)
+            return 0;
+        long weight = 0;
+        for (int h = 0; h < levels.length; h++) {
+            for (int i = 0; i < sizes[h]; i++) {
+                double v = levels[h][i];
+                if (v < value || (inclusive && v == value))
+                    weight += 1L << h;
+            }
+        }
+        return Math.min(1, weight / (double) count);
+    }
+
+    /**
+     * Số giá trị đang giữ, bị chặn theo K
+     */
+    int retained() {
+        int retained = 0;
+        for (int size : sizes) {
+            retained += size;
+        }
+        return retained;
+    }
+
+    private void sorted(double[] values, long[] weights) {
+        // Sắp xếp theo giá trị các cặp (giá trị, trọng số) qua chỉ số để giữ trọng số đi kèm
+        Integer[] order = new Integer[values.length];
+        double[] flat = new double[values.length];
+        long[] flatWeights = new long[values.length];
+        int n = 0;
+        for (int h = 0; h < levels.length; h++) {
+            for (int i = 0; i < sizes[h]; i++) {
+                flat[n] = levels[h][i];
+                flatWeights[n] = 1L << h;
+                order[n] = n;
+                n++;
+            }
+        }
+        Arrays.sort(order, (a, b) -> Double.compare(flat[a], flat[b]));
+        for (int i = 0; i < n; i++) {
+            values[i] = flat[order[i]];
+            weights[i] = flatWeights[order[i]];
+        }
+    }
+
+    private void append(int level, double value) {
+        while (level >= levels.length) {
+            levels = Arrays.copyOf(levels, levels.length + 1);
+            levels[levels.length - 1] = new double[MIN_CAPACITY];
+            sizes = Arrays.copyOf(sizes, sizes.length + 1);
+        }
+        if (sizes[level] == levels[level].length)
+            levels[level] = Arrays.copyOf(levels[level], levels[level].length * 2);
+        levels[level][sizes[level]++] = value;
+    }
+
+    private int capacity(int level) {
+        int depth = levels.length - 1 - level;
+        return Math.max(MIN_CAPACITY, (int) Math.ceil(K * Math.pow(C, depth)));
+    }
+
+    private int totalCapacity() {
+        int total = 0;
+        for (int h = 0; h < levels.length; h++) {
+            total += capacity(h);
+        }
+        return total;
+    }
+
+    /**
+     * Nén tầng thấp nhất đã đầy: sắp xếp, đưa một nửa số giá trị (cách một lấy một) lên tầng trên.
+     * Tầng có số giá trị lẻ giữ lại giá trị lớn nhất
+     */
+    private void compress() {
+        for (int h = 0; h < levels.length; h++) {
+            if (sizes[h] < capacity(h))
+                continue;
+            double[] items = levels[h];
+            int size = sizes[h];
+            Arrays.sort(items, 0, size);
+            int even = size & ~1;
+            int offset = nextBit();
+            double kept = items[size - 1];
+            for (int i = offset; i < even; i += 2) {
+                append(h + 1, items[i]);
+            }
+            // append có thể thay mảng của levels nhưng không đổi mảng của tầng h
+            sizes[h] = 0;
+            if (even < size)
+                levels[h][sizes[h]++] = kept;
+            return;
+        }
+    }
+
+    private int nextBit() {
+        // xorshift64
+        seed ^= seed << 13;
+        seed ^= seed >>> 7;
+        seed ^= seed << 17;
+        return (int) (seed & 1);
+    }
+}
@@ -0,0 +1,219 @@
+package com.company.dynamicdatastore.component.datastore;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Giới hạn bộ nhớ cho từng store và cho toàn bộ các store.
+ * Sau mỗi lần ghi, nếu bộ nhớ ước tính của rows vượt giới hạn thì rows của các entity ít được truy cập
+ * được spill (trên thread riêng, thread ghi không chờ) ra file tạm đã map vào bộ nhớ, chọn theo thuật toán clock: phân vùng vừa được truy cập
+ * được bỏ qua một lượt (xóa bit truy cập), phân vùng đầu tiên không có bit bị spill.
+ * Đọc entity đã spill là một lần miss; rows được nạp lại vào bộ nhớ nếu đủ nhỏ so với giới hạn,
+ * nếu không thì tiếp tục được đọc thẳng từ file.
+ * Giới hạn 0 là không giới hạn; mặc định không giới hạn.
+ */
+@Component
+public class MemoryBudget {
+
+    private static final Logger log = LoggerFactory.getLogger(MemoryBudget.class);
+    private static final String SUFFIX = ".spill";
+    // Spill phân vùng nhỏ hơn mức này không giải phóng đáng kể bộ nhớ
+    private static final long MIN_SPILL_BYTES = 64 << 10;
+
+    private final long storeLimitBytes;
+    private final long globalLimitBytes;
+    private final Path configuredDirectory;
+    private final List<VirtualDataStore> stores = new CopyOnWriteArrayList<>();
+    // Một thread duy nhất chạy evict nên hand không cần khóa; store đã chờ evict không được xếp hàng thêm
+    private final ExecutorService evictor;
+    private final Set<VirtualDataStore> pending = ConcurrentHashMap.newKeySet();
+    private final AtomicLong spillSequence = new AtomicLong();
+    private volatile Path spillDirectory;
+    private int hand;
+
+    public MemoryBudget(
+            @Value("${virtual-datastore.memory.store-limit:0}") DataSize storeLimit,
+            @Value("${virtual-datastore.memory.global-limit:0}") DataSize globalLimit,
+            @Value("${virtual-datastore.memory.spill-directory:}") String spillDirectory) {
+        this.storeLimitBytes = storeLimit.toBytes();
+        this.globalLimitBytes = globalLimit.toBytes();
+        this.configuredDirectory = spillDirectory == null || spillDirectory.isBlank() ? null : Paths.get(spillDirectory);
+        if (isEnabled()) {
+            evictor = Executors.newSingleThreadExecutor(r -> {
+                Thread thread = new Thread(r, "vds-memory-budget");
+                thread.setDaemon(true);
+                return thread;
+            });
+        } else {
+            evictor = null;
+        }
+    }
+
+    public boolean isEnabled() {
+        return storeLimitBytes > 0 || globalLimitBytes > 0;
+    }
+
+    public void register(VirtualDataStore store) {
+        stores.add(store);
+    }
+
+    public void unregister(VirtualDataStore store) {
+        stores.remove(store);
+    }
+
+    /**
+     * Gọi trên thread ghi sau khi đã nhả lock của phân vùng; evict chạy sau trên thread của MemoryBudget
+     */
+    void afterWrite(VirtualDataStore store) {
+        schedule(store);
+    }
+
+    /**
+     * Gọi khi đọc một phân vùng đã spill
+     */
+    void afterMiss(VirtualDataStore store, EntityPartition partition) {
+        if (!isEnabled())
+            return;
+        long limit = storeLimitBytes > 0 && globalLimitBytes > 0
+                ? Math.min(storeLimitBytes, globalLimitBytes)
+                : Math.max(storeLimitBytes, globalLimitBytes);
+        // Phân vùng chiếm quá nửa giới hạn sẽ bị spill lại ngay, đọc thẳng từ file thay vì nạp lại
+        if (partition.getSpilledBytes() > limit / 2)
+            return;
+        if (partition.reload()) {
+            store.recordReload();
+            schedule(store);
+        }
+    }
+
+    /**
+     * Chờ các lần evict đã xếp hàng chạy xong
+     */
+    void awaitEviction() throws InterruptedException {
+        if (evictor == null)
+            return;
+        try {
+            evictor.submit(() -> { }).get();
+        } catch (ExecutionException | RejectedExecutionException e) {
+            // Đã đóng: không còn evict nào
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        if (evictor != null) {
+            evictor.shutdownNow();
+            try {
+                evictor.awaitTermination(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        Path directory = spillDirectory;
+        if (directory == null || !Files.isDirectory(directory))
+            return;
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                if (file.getFileName().toString().endsWith(SUFFIX))
+                    Files.deleteIfExists(file);
+            }
+        } catch (IOException e) {
+            log.warn("Failed to clean spill directory {}", directory, e);
+        }
+    }
+
+    private void schedule(VirtualDataStore store) {
+        if (evictor == null || !pending.add(store))
+            return;
+        try {
+            evictor.execute(() -> {
+                pending.remove(store);
+                enforce(store);
+            });
+        } catch (RejectedExecutionException e) {
+            pending.remove(store);
+        }
+    }
+
+    private void enforce(VirtualDataStore store) {
+        if (storeLimitBytes > 0 && stores.contains(store))
+            evict(List.of(store), storeLimitBytes);
+        if (globalLimitBytes > 0)
+            evict(stores, globalLimitBytes);
+    }
+
+    private void evict(List<VirtualDataStore> scope, long limit) {
+        List<EntityPartition> partitions = new ArrayList<>();
+        List<VirtualDataStore> owners = new ArrayList<>();
+        long used = 0;
+        for (VirtualDataStore store : scope) {
+            for (EntityPartition partition : store.partitions()) {
+                partitions.add(partition);
+                owners.add(store);
+                used += partition.estimatedBytes();
+            }
+        }
+        // Hai vòng quét: vòng đầu xóa bit truy cập, vòng sau chắc chắn gặp lại mọi phân vùng
+        for (int scanned = 0; used > limit && scanned < 2 * partitions.size(); scanned++) {
+            int index = Math.floorMod(hand++, partitions.size());
+            EntityPartition partition = partitions.get(index);
+            long before = partition.estimatedBytes();
+            if (before < MIN_SPILL_BYTES || partition.clearReferenced())
+                continue;
+            VirtualDataStore owner = owners.get(index);
+            try {
+                if (partition.spill(spillFile(owner, partition)) > 0) {
+                    used -= before - partition.estimatedBytes();
+                    owner.recordSpill();
+                    log.debug("Spilled entity {} of store {} ({} bytes)", partition.getEntityName(), owner.getName(), before);
+                }
+            } catch (IOException | RuntimeException e) {
+                log.warn("Failed to spill entity {} of store {}", partition.getEntityName(), owner.getName(), e);
+            }
+        }
+    }
+
+    private Path spillFile(VirtualDataStore store, EntityPartition partition) throws IOException {
+        Path directory = spillDirectory;
+        if (directory == null) {
+            synchronized (this) {
+                if (spillDirectory == null) {
+                    if (configuredDirectory != null) {
+                        Files.createDirectories(configuredDirectory);
+                        spillDirectory = configuredDirectory;
+                    } else {
+                        spillDirectory = Files.createTempDirectory("vds-spill");
+                    }
+                }
+                directory = spillDirectory;
+            }
+        }
+        String name = URLEncoder.encode(store.getName(), StandardCharsets.UTF_8) + "-"
+                + URLEncoder.encode(partition.getEntityName(), StandardCharsets.UTF_8) + "-"
+                + spillSequence.incrementAndGet() + SUFFIX;
+        return directory.resolve(name);
+    }
+}
@@ -0,0 +1,126 @@
+package com.company.dynamicdatastore.component.datastore;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+
+/**
+ * Các kiểu thuộc tính so sánh được theo thứ tự (số, ngày, ngày giờ) và cách đưa giá trị về dạng so sánh được.
+ * Số được đưa về BigDecimal nên 10, 10L và 10.0 bằng nhau; chuỗi ISO được đọc thành ngày/ngày giờ.
+ */
+public enum OrderedType {
+
+    NUMBER {
+        @Override
+        public Comparable<?> convert(Object value) {
+            if (value instanceof BigDecimal)
+                return (BigDecimal) value;
+            if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte)
+                return BigDecimal.valueOf(((Number) value).longValue());
+            if (value instanceof Double || value instanceof Float) {
+                // Đi qua toString để khớp với dạng chuỗi của giá trị (0.1f là 0.1, không phải 0.100000001...)
+                double d = ((Number) value).doubleValue();
+                return Double.isFinite(d) ? new BigDecimal(value.toString()) : null;
+            }
+            if (value instanceof BigInteger)
+                return new BigDecimal((BigInteger) value);
+            if (value instanceof Number || value instanceof String) {
+                try {
+                    return new BigDecimal(value.toString().trim());
+                } catch (NumberFormatException e) {
+                    return null;
+                }
+            }
+            return null;
+        }
+    },
+
+    DATE {
+        @Override
+        public Comparable<?> convert(Object value) {
+            if (value instanceof LocalDate)
+                return (LocalDate) value;
+            if (value instanceof String) {
+                try {
+                    return LocalDate.parse(((String) value).trim());
+                } catch (DateTimeParseException e) {
+                    return null;
+                }
+            }
+            return null;
+        }
+    },
+
+    DATE_TIME {
+        @Override
+        public Comparable<?> convert(Object value) {
+            if (value instanceof LocalDateTime)
+                return (LocalDateTime) value;
+            if (value instanceof LocalDate)
+                return ((LocalDate) value).atStartOfDay();
+            if (value instanceof String) {
+                String text = ((String) value).trim();
+                try {
+                    return LocalDateTime.parse(text);
+                } catch (DateTimeParseException e) {
+                    LocalDate date = (LocalDate) DATE.convert(text);
+                    return date != null ? date.atStartOfDay() : null;
+                }
+            }
+            return null;
+        }
+    };
+
+    /**
+     * Giá trị ở dạng so sánh được với các giá trị khác cùng kiểu, null nếu không chuyển được
+     */
+    public abstract Comparable<?> convert(Object value);
+
+    /**
+     * Kiểu thứ tự của kiểu khai báo trong definition, null nếu kiểu đó không có thứ tự
+     */
+    public static OrderedType of(Class<?> type) {
+        if (type == null)
+            return null;
+        if (Number.class.isAssignableFrom(type))
+            return NUMBER;
+        if (type == LocalDate.class)
+            return DATE;
+        if (type == LocalDateTime.class)
+            return DATE_TIME;
+        return null;
+    }
+
+    /**
+     * Đoán kiểu thứ tự từ một giá trị khi thuộc tính không được khai báo kiểu
+     */
+    public static OrderedType infer(Object value) {
+        if (value instanceof Number)
+            return NUMBER;
+        if (value instanceof LocalDate)
+            return DATE;
+        if (value instanceof LocalDateTime)
+            return DATE_TIME;
+        if (value instanceof String) {
+            if (NUMBER.convert(value) != null)
+                return NUMBER;
+            if (DATE.convert(value) != null)
+                return DATE;
+            if (DATE_TIME.convert(value) != null)
+                return DATE_TIME;
+        }
+        return null;
+    }
+
+    /**
+     * So sánh hai giá trị sau khi chuyển về kiểu này, null nếu một trong hai không chuyển được
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public Integer compare(Object left, Object right) {
+        Comparable a = convert(left);
+        Comparable b = convert(right);
+        return a != null && b != null ? a.compareTo(b) : null;
+    }
+}
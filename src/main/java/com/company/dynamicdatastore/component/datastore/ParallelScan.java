@@ -0,0 +1,182 @@
+package com.company.dynamicdatastore.component.datastore;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Quét song song trên một ForkJoinPool riêng (không dùng common pool để không tranh với các stream khác).
+ * Danh sách nhỏ hơn ngưỡng được quét tuần tự; danh sách lớn được chia thành các đoạn liên tiếp, mỗi đoạn
+ * quét trên một thread và kết quả được nối lại theo đúng thứ tự đoạn nên giống hệt quét tuần tự.
+ * <p>
+ * parallelism 0 là số CPU; mỗi store có thể giới hạn thêm số đoạn của riêng nó (xem VirtualDataStore#setScanParallelism).
+ */
+@Component
+public class ParallelScan {
+
+    /**
+     * Không dùng thread phụ, cho store tạo ngoài Spring
+     */
+    public static final ParallelScan SEQUENTIAL = new ParallelScan(1, Integer.MAX_VALUE);
+
+    // Đoạn nhỏ hơn mức này không bù được chi phí chia việc
+    private static final int MIN_SEGMENT_ROWS = 4096;
+    // Chia nhiều đoạn hơn số thread để thread rảnh lấy được việc của thread chậm
+    private static final int SEGMENTS_PER_THREAD = 4;
+
+    private final int parallelism;
+    private final int threshold;
+    private final ForkJoinPool pool;
+
+    public ParallelScan(
+            @Value("${virtual-datastore.scan.parallelism:0}") int parallelism,
+            @Value("${virtual-datastore.scan.threshold:50000}") int threshold) {
+        this.parallelism = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        this.threshold = Math.max(threshold, MIN_SEGMENT_ROWS);
+        this.pool = this.parallelism > 1
+                ? new ForkJoinPool(this.parallelism, ParallelScan::newThread, null, false)
+                : null;
+    }
+
+    private static ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+        ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+        thread.setName("virtual-datastore-scan-" + thread.getPoolIndex());
+        return thread;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public int getThreshold() {
+        return threshold;
+    }
+
+    /**
+     * Áp mapper lên từng row và giữ các kết quả khác null, theo thứ tự của rows.
+     * maxParallelism giới hạn số thread dùng cho lần quét này (0 là không giới hạn thêm).
+     * mapper được gọi đồng thời từ nhiều thread nên không được có trạng thái dùng chung
+     */
+    public <T, R> List<R> collect(List<T> rows, int maxParallelism, Function<? super T, ? extends R> mapper) {
+        int threads = maxParallelism > 0 ? Math.min(maxParallelism, parallelism) : parallelism;
+        int segments = Math.min(threads * SEGMENTS_PER_THREAD, rows.size() / MIN_SEGMENT_ROWS);
+        if (pool == null || threads <= 1 || rows.size() < threshold || segments <= 1)
+            return collect(rows, 0, rows.size(), mapper);
+
+        List<Segment<T, R>> tasks = new ArrayList<>(segments);
+        for (int i = 0; i < segments; i++) {
+            tasks.add(new Segment<>(rows, (int) ((long) rows.size() * i / segments),
+                    (int) ((long) rows.size() * (i + 1) / segments), mapper));
+        }
+        List<List<R>> parts = pool.invoke(new Scan<>(tasks));
+        int size = 0;
+        for (List<R> part : parts) {
+            size += part.size();
+        }
+        List<R> result = new ArrayList<>(size);
+        for (List<R> part : parts) {
+            result.addAll(part);
+        }
+        return result;
+    }
+
+    private static <T, R> List<R> collect(List<T> rows, int from, int to, Function<? super T, ? extends R> mapper) {
+        List<R> result = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            R value = mapper.apply(rows.get(i));
+            if (value != null)
+                result.add(value);
+        }
+        return result;
+    }
+
+    /**
+     * Số row thỏa test, chia đoạn như collect nhưng mỗi đoạn chỉ đếm nên không tạo danh sách nào
+     */
+    public <T> long count(List<T> rows, int maxParallelism, Predicate<? super T> test) {
+        int threads = maxParallelism > 0 ? Math.min(maxParallelism, parallelism) : parallelism;
+        int segments = Math.min(threads * SEGMENTS_PER_THREAD, rows.size() / MIN_SEGMENT_ROWS);
+        if (pool == null || threads <= 1 || rows.size() < threshold || segments <= 1)
+            return count(rows, 0, rows.size(), test);
+
+        List<ForkJoinTask<Long>> tasks = new ArrayList<>(segments);
+        for (int i = 0; i < segments; i++) {
+            int from = (int) ((long) rows.size() * i / segments);
+            int to = (int) ((long) rows.size() * (i + 1) / segments);
+            tasks.add(ForkJoinTask.adapt(() -> count(rows, from, to, test)));
+        }
+        return pool.invoke(ForkJoinTask.adapt(() -> {
+            long count = 0;
+            for (ForkJoinTask<Long> task : ForkJoinTask.invokeAll(tasks)) {
+                count += task.join();
+            }
+            return count;
+        }));
+    }
+
+    private static <T> long count(List<T> rows, int from, int to, Predicate<? super T> test) {
+        long count = 0;
+        for (int i = from; i < to; i++) {
+            if (test.test(rows.get(i)))
+                count++;
+        }
+        return count;
+    }
+
+    @PreDestroy
+    public void close() {
+        if (pool != null)
+            pool.shutdownNow();
+    }
+
+    private static final class Segment<T, R> extends RecursiveTask<List<R>> {
+
+        private final List<T> rows;
+        private final int from;
+        private final int to;
+        private final Function<? super T, ? extends R> mapper;
+
+        Segment(List<T> rows, int from, int to, Function<? super T, ? extends R> mapper) {
+            this.rows = rows;
+            this.from = from;
+            this.to = to;
+            this.mapper = mapper;
+        }
+
+        @Override
+        protected List<R> compute() {
+            return collect(rows, from, to, mapper);
+        }
+    }
+
+    /**
+     * Chạy mọi đoạn trong pool và trả về kết quả theo thứ tự đoạn
+     */
+    private static final class Scan<T, R> extends RecursiveTask<List<List<R>>> {
+
+        private final List<Segment<T, R>> segments;
+
+        Scan(List<Segment<T, R>> segments) {
+            this.segments = segments;
+        }
+
+        @Override
+        protected List<List<R>> compute() {
+            ForkJoinTask.invokeAll(segments);
+            List<List<R>> parts = new ArrayList<>(segments.size());
+            for (Segment<T, R> segment : segments) {
+                parts.add(segment.join());
+            }
+            return parts;
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package com.company.dynamicdatastore.component.datastore;
+
+import io.jmix.core.entity.EntityValues;
+
+import java.util.Map;
+
+/**
+ * Chỉ mục phụ trên một thuộc tính của entity, ánh xạ giá trị tới vị trí của row trong phân vùng.
+ * Chỉ được sửa khi giữ write lock và đọc khi giữ read lock của phân vùng.
+ */
+abstract class PropertyIndex {
+
+    private final String property;
+
+    PropertyIndex(String property) {
+        this.property = property;
+    }
+
+    String getProperty() {
+        return property;
+    }
+
+    /**
+     * Loại chỉ mục, ví dụ "hash", "range(NUMBER)" hoặc "text"
+     */
+    abstract String getType();
+
+    abstract void add(Object row, int position);
+
+    abstract void remove(Object row, int position);
+
+    /**
+     * Đánh lại vị trí sau khi phân vùng được dồn, moved[cũ] là vị trí mới hoặc -1 nếu row đã bị xóa;
+     * relocated là snapshot sau khi dồn
+     */
+    abstract void remap(int[] moved, EntitySnapshot relocated);
+
+    /**
+     * Các vị trí có giá trị bằng value theo thứ tự tăng dần, null nếu chỉ mục không trả lời được
+     */
+    int[] find(Object value) {
+        return null;
+    }
+
+    static Object valueOf(Object row, String property) {
+        if (row instanceof Map)
+            return ((Map<?, ?>) row).get(property);
+        return EntityValues.getValue(row, property);
+    }
+}
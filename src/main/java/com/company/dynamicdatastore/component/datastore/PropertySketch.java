@@ -0,0 +1,92 @@
+package com.company.dynamicdatastore.component.datastore;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Thống kê xấp xỉ của một thuộc tính với bộ nhớ cố định: số giá trị khác nhau (HyperLogLog)
+ * và phân vị của giá trị số (KLL). Gộp được giữa các phân vùng/store cùng thuộc tính.
+ */
+public final class PropertySketch {
+
+    private static final double[] QUANTILES = {0.25, 0.5, 0.75, 0.9, 0.99};
+    private static final String[] QUANTILE_NAMES = {"p25", "p50", "p75", "p90", "p99"};
+
+    private final HyperLogLog distinct;
+    private KllSketch numbers;
+    private long values;
+
+    public PropertySketch() {
+        this.distinct = new HyperLogLog();
+    }
+
+    private PropertySketch(HyperLogLog distinct, KllSketch numbers, long values) {
+        this.distinct = distinct;
+        this.numbers = numbers;
+        this.values = values;
+    }
+
+    /**
+     * Bỏ qua null và giá trị lồng (Map, Collection); chỉ giá trị số được đưa vào phân vị
+     */
+    public void add(Object value) {
+        if (value == null || value instanceof Map || value instanceof Collection)
+            return;
+        distinct.add(value);
+        values++;
+        if (value instanceof Number number) {
+            if (numbers == null)
+                numbers = new KllSketch();
+            numbers.add(number.doubleValue());
+        }
+    }
+
+    public void merge(PropertySketch other) {
+        distinct.merge(other.distinct);
+        values += other.values;
+        if (other.numbers != null) {
+            if (numbers == null)
+                numbers = new KllSketch();
+            numbers.merge(other.numbers);
+        }
+    }
+
+    public PropertySketch copy() {
+        return new PropertySketch(distinct.copy(), numbers != null ? numbers.copy() : null, values);
+    }
+
+    /**
+     * Số giá trị khác null đã ghi nhận
+     */
+    public long getValues() {
+        return values;
+    }
+
+    public long getDistinct() {
+        return Math.min(distinct.estimate(), values);
+    }
+
+    /**
+     * Phân vị của các giá trị số, null nếu thuộc tính chưa có giá trị số
+     */
+    public KllSketch getNumbers() {
+        return numbers;
+    }
+
+    public Map<String, Object> summary() {
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("values", values);
+        summary.put("distinct", getDistinct());
+        if (numbers != null && numbers.getCount() > 0) {
+            Map<String, Object> quantiles = new LinkedHashMap<>();
+            quantiles.put("min", numbers.getMin());
+            for (int i = 0; i < QUANTILES.length; i++) {
+                quantiles.put(QUANTILE_NAMES[i], numbers.quantile(QUANTILES[i]));
+            }
+            quantiles.put("max", numbers.getMax());
+            summary.put("quantiles", quantiles);
+        }
+        return summary;
+    }
+}
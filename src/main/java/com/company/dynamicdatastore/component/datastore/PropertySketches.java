@@ -0,0 +1,59 @@
+package com.company.dynamicdatastore.component.datastore;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Sketch theo thuộc tính của một phân vùng, chỉ thay đổi khi giữ write lock của phân vùng.
+ * Được cập nhật với các row vừa ghi; giá trị của row đã xóa hoặc bị ghi đè chỉ mất đi khi dựng lại
+ * lúc dồn phân vùng, nên giữa hai lần dồn các con số có thể lớn hơn dữ liệu hiện tại.
+ */
+class PropertySketches {
+
+    // Giới hạn số thuộc tính để bộ nhớ cố định với entity có quá nhiều field động
+    static final int MAX_PROPERTIES = 128;
+
+    private final Map<String, PropertySketch> sketches = new HashMap<>();
+
+    void add(Object row) {
+        if (!(row instanceof Map<?, ?> map))
+            return;
+        for (Map.Entry<?, ?> e : map.entrySet()) {
+            if (!(e.getKey() instanceof String property) || property.startsWith("_") || e.getValue() == null)
+                continue;
+            PropertySketch sketch = sketches.get(property);
+            if (sketch == null) {
+                if (sketches.size() >= MAX_PROPERTIES)
+                    continue;
+                sketch = new PropertySketch();
+                sketches.put(property, sketch);
+            }
+            sketch.add(e.getValue());
+        }
+    }
+
+    /**
+     * Dựng lại từ các row còn sống của snapshot
+     */
+    void rebuild(EntitySnapshot snapshot) {
+        sketches.clear();
+        SlotVector slots = snapshot.getSlots();
+        for (int position = 0; position < slots.size(); position++) {
+            int slot = slots.get(position);
+            if (slot != SlotVector.DELETED)
+                add(snapshot.getRowStore().read(slot));
+        }
+    }
+
+    PropertySketch copy(String property) {
+        PropertySketch sketch = sketches.get(property);
+        return sketch != null ? sketch.copy() : null;
+    }
+
+    Map<String, PropertySketch> copy() {
+        Map<String, PropertySketch> copy = new TreeMap<>();
+        sketches.forEach((property, sketch) -> copy.put(property, sketch.copy()));
+        return copy;
+    }
+}
@@ -0,0 +1,67 @@
+package com.company.dynamicdatastore.component.datastore;
+
+/**
+ * Thống kê của một thuộc tính có chỉ mục băm hoặc có thứ tự, được chỉ mục cập nhật theo mỗi lần ghi
+ * nên đọc ra không tốn thêm lần quét nào. min/max chỉ có với chỉ mục có thứ tự.
+ */
+public final class PropertyStatistics {
+
+    private final String property;
+    private final String indexType;
+    private final long rows;
+    private final long values;
+    private final long distinct;
+    private final Object min;
+    private final Object max;
+
+    PropertyStatistics(String property, String indexType, long rows, long values, long distinct, Object min, Object max) {
+        this.property = property;
+        this.indexType = indexType;
+        this.rows = rows;
+        this.values = values;
+        this.distinct = distinct;
+        this.min = min;
+        this.max = max;
+    }
+
+    public String getProperty() {
+        return property;
+    }
+
+    public String getIndexType() {
+        return indexType;
+    }
+
+    /**
+     * Số row của entity
+     */
+    public long getRows() {
+        return rows;
+    }
+
+    /**
+     * Số row có giá trị (khác null, đúng kiểu với chỉ mục có thứ tự)
+     */
+    public long getValues() {
+        return values;
+    }
+
+    /**
+     * Số giá trị khác nhau
+     */
+    public long getDistinct() {
+        return distinct;
+    }
+
+    public double getNullFraction() {
+        return rows > 0 ? Math.max(0, rows - values) / (double) rows : 0;
+    }
+
+    public Object getMin() {
+        return min;
+    }
+
+    public Object getMax() {
+        return max;
+    }
+}
@@ -0,0 +1,415 @@
+package com.company.dynamicdatastore.component.datastore;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Function;
+import java.util.function.IntPredicate;
+import java.util.function.Predicate;
+
+import com.company.dynamicdatastore.component.entity.VirtualEntityDefinition;
+
+/**
+ * Bộ lọc của query và aggregate, được dịch một lần thành cây điều kiện rồi dùng cho mọi row.
+ * <ul>
+ * <li>{thuộc tính: giá trị} là bằng, giá trị null là thuộc tính rỗng</li>
+ * <li>{thuộc tính: {toán tử: toán hạng}} với eq, ne, gt, gte, lt, lte, in [..], between [từ, đến], isNull true/false,
+ * contains, startsWith, endsWith, match; nhiều toán tử trên một thuộc tính là "và"</li>
+ * <li>{"and": [bộ lọc, ...]}, {"or": [bộ lọc, ...]}, {"not": bộ lọc}</li>
+ * </ul>
+ * Các khóa của một bộ lọc là "và". Bằng/khác/in so không phân biệt hoa thường trên dạng chuỗi như trước, so sánh
+ * khoảng theo kiểu khai báo của thuộc tính (không khai báo thì đoán từ giá trị). Với kiểu đã biết, toán hạng được
+ * chuyển một lần khi dịch và giá trị số nguyên, số thực, BigDecimal, UUID, ngày, chuỗi được so trực tiếp mà không đổi
+ * sang chuỗi.
+ */
+public final class QueryFilter {
+
+    private static final QueryFilter ALL = new QueryFilter(values -> true);
+
+    private final Predicate<Function<String, Object>> root;
+
+    private QueryFilter(Predicate<Function<String, Object>> root) {
+        this.root = root;
+    }
+
+    /**
+     * Dịch bộ lọc; types trả về kiểu khai báo của thuộc tính, null nếu không biết.
+     * Bộ lọc sai cú pháp ném IllegalArgumentException.
+     */
+    public static QueryFilter compile(Map<String, Object> filters, Function<String, Class<?>> types) {
+        if (filters == null || filters.isEmpty())
+            return ALL;
+        return new QueryFilter(compileAll(filters, types));
+    }
+
+    /**
+     * Kiểu khai báo của các thuộc tính trong definition
+     */
+    public static Function<String, Class<?>> typesOf(VirtualEntityDefinition definition) {
+        if (definition == null)
+            return property -> null;
+        return property -> {
+            VirtualEntityDefinition.VirtualPropertyDefinition p = definition.getProperty(property);
+            return p != null ? p.getType() : null;
+        };
+    }
+
+    /**
+     * Tên các thuộc tính được bộ lọc tham chiếu, kể cả trong and/or/not
+     */
+    public static Set<String> properties(Map<String, Object> filters) {
+        Set<String> properties = new HashSet<>();
+        collectProperties(filters, properties);
+        return properties;
+    }
+
+    private static void collectProperties(Map<?, ?> filters, Set<String> properties) {
+        if (filters == null)
+            return;
+        for (Map.Entry<?, ?> f : filters.entrySet()) {
+            String key = String.valueOf(f.getKey());
+            if (!isLogical(key)) {
+                properties.add(key);
+            } else if (f.getValue() instanceof Map<?, ?> part) {
+                collectProperties(part, properties);
+            } else if (f.getValue() instanceof List<?> parts) {
+                for (Object part : parts) {
+                    if (part instanceof Map<?, ?> map)
+                        collectProperties(map, properties);
+                }
+            }
+        }
+    }
+
+    public boolean matches(Map<String, Object> row) {
+        return root.test(row::get);
+    }
+
+    /**
+     * Như trên với giá trị thuộc tính đọc qua values, dùng khi row không có sẵn dạng Map (ví dụ các row đã join)
+     */
+    public boolean matches(Function<String, Object> values) {
+        return root.test(values);
+    }
+
+    private static Predicate<Function<String, Object>> compileAll(Map<String, Object> filters, Function<String, Class<?>> types) {
+        List<Predicate<Function<String, Object>>> parts = new ArrayList<>(filters.size());
+        for (Map.Entry<String, Object> f : filters.entrySet()) {
+            parts.add(isLogical(f.getKey())
+                    ? compileLogical(f.getKey(), f.getValue(), types)
+                    : compileProperty(f.getKey(), f.getValue(), types));
+        }
+        return allOf(parts);
+    }
+
+    private static Predicate<Function<String, Object>> compileLogical(String operator, Object operand, Function<String, Class<?>> types) {
+        if (operator.equals("not")) {
+            if (!(operand instanceof Map<?, ?>))
+                throw new IllegalArgumentException("Operand of not must be a filter object");
+            return compileAll(asFilters(operand), types).negate();
+        }
+        if (!(operand instanceof List<?> list) || list.isEmpty())
+            throw new IllegalArgumentException("Operand of " + operator + " must be a non-empty list of filter objects");
+        List<Predicate<Function<String, Object>>> parts = new ArrayList<>(list.size());
+        for (Object part : list) {
+            if (!(part instanceof Map<?, ?>))
+                throw new IllegalArgumentException("Operand of " + operator + " must be a non-empty list of filter objects");
+            parts.add(compileAll(asFilters(part), types));
+        }
+        return operator.equals("and") ? allOf(parts) : anyOf(parts);
+    }
+
+    private static Predicate<Function<String, Object>> compileProperty(String property, Object filter, Function<String, Class<?>> types) {
+        Class<?> type = types.apply(property);
+        Predicate<Object> test;
+        if (filter instanceof Map<?, ?> operators) {
+            if (operators.isEmpty())
+                throw new IllegalArgumentException("Filter on " + property + " has no operators");
+            if ((operators.containsKey("gt") && operators.containsKey("gte"))
+                    || (operators.containsKey("lt") && operators.containsKey("lte")))
+                throw new IllegalArgumentException("Range filter on " + property + " has conflicting bounds");
+            List<Predicate<Object>> parts = new ArrayList<>(operators.size());
+            for (Map.Entry<?, ?> operator : operators.entrySet()) {
+                parts.add(compileOperator(property, String.valueOf(operator.getKey()), operator.getValue(), type));
+            }
+            test = parts.size() == 1 ? parts.get(0) : allOf(parts);
+        } else {
+            test = equalTo(filter, type);
+        }
+        return values -> test.test(values.apply(property));
+    }
+
+    private static Predicate<Object> compileOperator(String property, String operator, Object operand, Class<?> type) {
+        TextSearch search = TextSearch.fromOperator(operator);
+        if (search != null)
+            return search.predicate(String.valueOf(requireOperand(property, operator, operand)));
+        switch (operator) {
+            case "eq":
+                return equalTo(operand, type);
+            case "ne":
+                if (operand == null)
+                    return Objects::nonNull;
+                Predicate<Object> equal = equalTo(operand, type);
+                return value -> value != null && !equal.test(value);
+            case "gt":
+            case "gte":
+            case "lt":
+            case "lte":
+                return compare(operator, requireOperand(property, operator, operand), type);
+            case "between":
+                if (!(operand instanceof List<?> bounds) || bounds.size() != 2 || bounds.stream().anyMatch(Objects::isNull))
+                    throw new IllegalArgumentException("Operand of between on " + property + " must be [from, to]");
+                return compare("gte", bounds.get(0), type).and(compare("lte", bounds.get(1), type));
+            case "in":
+                if (!(operand instanceof Collection<?> values))
+                    throw new IllegalArgumentException("Operand of in on " + property + " must be a list");
+                return in(values, type);
+            case "isNull":
+                if (!(operand instanceof Boolean isNull))
+                    throw new IllegalArgumentException("Operand of isNull on " + property + " must be true or false");
+                return isNull ? Objects::isNull : Objects::nonNull;
+            default:
+                throw new IllegalArgumentException("Unsupported filter operator: " + operator);
+        }
+    }
+
+    private static Object requireOperand(String property, String operator, Object operand) {
+        if (operand == null)
+            throw new IllegalArgumentException("Operand of " + operator + " on " + property + " is null");
+        return operand;
+    }
+
+    /**
+     * Bằng theo dạng chuỗi không phân biệt hoa thường. Với thuộc tính số nguyên, số thực, BigDecimal, UUID, ngày và
+     * ngày giờ, toán hạng ở dạng chuẩn được chuyển một lần về kiểu khai báo và giá trị cùng kiểu được so trực tiếp:
+     * hai cách so cho cùng kết quả nên chỉ mục băm (khóa theo dạng chuỗi) vẫn đúng.
+     */
+    private static Predicate<Object> equalTo(Object operand, Class<?> type) {
+        if (operand == null)
+            return Objects::isNull;
+        String expected = String.valueOf(operand);
+        Predicate<Object> text = value -> value instanceof String s
+                ? s.equalsIgnoreCase(expected)
+                : value != null && String.valueOf(value).equalsIgnoreCase(expected);
+        if (isIntegral(type)) {
+            Long number = canonicalLong(expected);
+            if (number == null)
+                return value -> !isIntegral(value) && text.test(value);
+            long n = number;
+            return value -> isIntegral(value) ? ((Number) value).longValue() == n : text.test(value);
+        }
+        Object typed = typedOperand(expected, type);
+        if (typed == null)
+            return text;
+        Class<?> typedClass = typed.getClass();
+        return value -> value != null && value.getClass() == typedClass ? typed.equals(value) : text.test(value);
+    }
+
+    private static Predicate<Object> in(Collection<?> values, Class<?> type) {
+        Set<String> keys = new HashSet<>();
+        boolean nulls = false;
+        for (Object value : values) {
+            if (value == null)
+                nulls = true;
+            else
+                keys.add(TextSearch.fold(String.valueOf(value)));
+        }
+        boolean matchesNull = nulls;
+        Predicate<Object> text = value -> value == null ? matchesNull : keys.contains(TextSearch.fold(String.valueOf(value)));
+        if (isIntegral(type)) {
+            long[] numbers = keys.stream().map(QueryFilter::canonicalLong).filter(Objects::nonNull)
+                    .mapToLong(Long::longValue).sorted().toArray();
+            return value -> isIntegral(value) ? Arrays.binarySearch(numbers, ((Number) value).longValue()) >= 0 : text.test(value);
+        }
+        Class<?> typedClass = typedClass(type);
+        if (typedClass == null)
+            return text;
+        // Toán hạng không chuyển được thì giá trị cùng kiểu vẫn phải thử theo dạng chuỗi
+        Set<Object> typedKeys = new HashSet<>();
+        boolean untyped = false;
+        for (Object value : values) {
+            Object typed = value != null ? typedOperand(String.valueOf(value), type) : null;
+            if (typed != null)
+                typedKeys.add(typed);
+            else if (value != null)
+                untyped = true;
+        }
+        boolean textFallback = untyped;
+        return value -> value != null && value.getClass() == typedClass
+                ? typedKeys.contains(value) || (textFallback && text.test(value))
+                : text.test(value);
+    }
+
+    /**
+     * Lớp giá trị của các kiểu khai báo có dạng chuỗi chuẩn duy nhất cho mỗi giá trị, null với kiểu khác
+     */
+    private static Class<?> typedClass(Class<?> type) {
+        if (type == Double.class || type == double.class)
+            return Double.class;
+        if (type == Float.class || type == float.class)
+            return Float.class;
+        if (type == BigDecimal.class || type == UUID.class || type == LocalDate.class || type == LocalDateTime.class)
+            return type;
+        return null;
+    }
+
+    /**
+     * Toán hạng ở kiểu khai báo khi dạng chuỗi của nó bằng text không phân biệt hoa thường; khi đó giá trị cùng kiểu
+     * bằng toán hạng theo equals khi và chỉ khi bằng theo dạng chuỗi. null nếu kiểu không có dạng chuẩn hoặc text
+     * không ở dạng chuẩn.
+     */
+    private static Object typedOperand(String text, Class<?> type) {
+        Class<?> typedClass = typedClass(type);
+        if (typedClass == null)
+            return null;
+        Object typed;
+        try {
+            if (typedClass == Double.class)
+                typed = Double.valueOf(text);
+            else if (typedClass == Float.class)
+                typed = Float.valueOf(text);
+            else if (typedClass == BigDecimal.class)
+                typed = new BigDecimal(text);
+            else if (typedClass == UUID.class)
+                typed = UUID.fromString(text);
+            else if (typedClass == LocalDate.class)
+                typed = LocalDate.parse(text);
+            else
+                typed = LocalDateTime.parse(text);
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            return null;
+        }
+        return typed.toString().equalsIgnoreCase(text) ? typed : null;
+    }
+
+    /**
+     * So sánh theo kiểu thứ tự của thuộc tính với cận đã chuyển sẵn; số nguyên được so với cận đã làm tròn
+     * (x > 10.5 khi và chỉ khi x > 10), số thực với cận double khi cận biểu diễn đúng được bằng double
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Predicate<Object> compare(String operator, Object bound, Class<?> type) {
+        OrderedType ordered = OrderedType.of(type);
+        Comparable converted = ordered != null ? ordered.convert(bound) : null;
+        if (converted == null)
+            return value -> matchesBound(value, operator, bound);
+        IntPredicate accept = accept(operator);
+        Predicate<Object> typed = value -> {
+            Comparable c = value != null ? ordered.convert(value) : null;
+            return c != null && accept.test(c.compareTo(converted));
+        };
+        if (ordered != OrderedType.NUMBER)
+            return typed;
+        BigDecimal number = (BigDecimal) converted;
+        Long rounded = roundToLong(operator, number);
+        boolean integral = rounded != null;
+        long limit = integral ? rounded : 0;
+        double d = number.doubleValue();
+        boolean exactDouble = Double.isFinite(d) && new BigDecimal(Double.toString(d)).compareTo(number) == 0;
+        return value -> {
+            if (integral && isIntegral(value))
+                return accept.test(Long.compare(((Number) value).longValue(), limit));
+            if (exactDouble && value instanceof Double x)
+                return Double.isFinite(x) && accept.test(x < d ? -1 : x > d ? 1 : 0);
+            return typed.test(value);
+        };
+    }
+
+    private static Long roundToLong(String operator, BigDecimal bound) {
+        RoundingMode mode = operator.equals("gt") || operator.equals("lte") ? RoundingMode.FLOOR : RoundingMode.CEILING;
+        try {
+            return bound.setScale(0, mode).longValueExact();
+        } catch (ArithmeticException e) {
+            return null;
+        }
+    }
+
+    private static IntPredicate accept(String operator) {
+        return switch (operator) {
+            case "gt" -> order -> order > 0;
+            case "gte" -> order -> order >= 0;
+            case "lt" -> order -> order < 0;
+            default -> order -> order <= 0;
+        };
+    }
+
+    /**
+     * Khi thuộc tính không có kiểu thứ tự: giá trị và cận được so theo kiểu của giá trị (số, ngày, ngày giờ),
+     * giá trị chuỗi theo kiểu của cận; giá trị không so được với cận thì không khớp
+     */
+    private static boolean matchesBound(Object value, String operator, Object bound) {
+        if (value == null)
+            return false;
+        OrderedType type = OrderedType.infer(value instanceof String ? bound : value);
+        Integer order = type != null ? type.compare(value, bound) : null;
+        return order != null && accept(operator).test(order);
+    }
+
+    private static boolean isIntegral(Class<?> type) {
+        return type == Integer.class || type == Long.class || type == Short.class || type == Byte.class
+                || type == int.class || type == long.class || type == short.class || type == byte.class;
+    }
+
+    private static boolean isIntegral(Object value) {
+        return value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte;
+    }
+
+    /**
+     * Số nguyên có dạng chuỗi đúng bằng text, null nếu không có
+     */
+    private static Long canonicalLong(String text) {
+        try {
+            long n = Long.parseLong(text);
+            return Long.toString(n).equals(text) ? n : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static boolean isLogical(String key) {
+        return key.equals("and") || key.equals("or") || key.equals("not");
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> asFilters(Object filter) {
+        return (Map<String, Object>) filter;
+    }
+
+    private static <T> Predicate<T> allOf(List<Predicate<T>> parts) {
+        if (parts.size() == 1)
+            return parts.get(0);
+        @SuppressWarnings("unchecked")
+        Predicate<T>[] array = parts.toArray(new Predicate[0]);
+        return value -> {
+            for (Predicate<T> part : array) {
+                if (!part.test(value))
+                    return false;
+            }
+            return true;
+        };
+    }
+
+    private static <T> Predicate<T> anyOf(List<Predicate<T>> parts) {
+        if (parts.size() == 1)
+            return parts.get(0);
+        @SuppressWarnings("unchecked")
+        Predicate<T>[] array = parts.toArray(new Predicate[0]);
+        return value -> {
+            for (Predicate<T> part : array) {
+                if (part.test(value))
+                    return true;
+            }
+            return false;
+        };
+    }
+}
@@ -0,0 +1,44 @@
+package com.company.dynamicdatastore.component.datastore;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Kết quả của một query cùng kế hoạch đã chạy: đường truy cập (quét hay chỉ mục), cây giao/hợp chỉ mục,
+ * chi phí ước lượng và số row ước lượng so với thực tế ở từng bước.
+ */
+public final class QueryPlan {
+
+    private final List<Map<String, Object>> rows;
+    private final Map<String, Object> explain;
+
+    QueryPlan(List<Map<String, Object>> rows, Map<String, Object> explain) {
+        // Có thể được dùng chung qua QueryCache
+        this.rows = Collections.unmodifiableList(rows);
+        this.explain = explain;
+    }
+
+    /**
+     * Cùng rows, kế hoạch ghi nhận lần này được lấy từ QueryCache
+     */
+    public QueryPlan fromCache() {
+        Map<String, Object> cached = new LinkedHashMap<>();
+        cached.put("access", "cache");
+        cached.put("actualRows", rows.size());
+        cached.put("cachedPlan", explain);
+        return new QueryPlan(rows, cached);
+    }
+
+    public List<Map<String, Object>> getRows() {
+        return rows;
+    }
+
+    /**
+     * Kế hoạch dạng map để trả về qua REST (tham số explain của query)
+     */
+    public Map<String, Object> getExplain() {
+        return explain;
+    }
+}
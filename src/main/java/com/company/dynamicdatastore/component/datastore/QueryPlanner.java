@@ -0,0 +1,470 @@
+package com.company.dynamicdatastore.component.datastore;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Lập kế hoạch cho query theo chi phí. Mỗi bộ lọc dùng được chỉ mục được ước lượng số row qua chỉ mục
+ * (chính xác với bằng, nội suy theo min/max với khoảng, cận trên với tìm văn bản); các nhánh "và" được giao bằng
+ * bitmap theo thứ tự từ chọn lọc nhất, chỉ thêm chỉ mục khi số row phải lọc lại giảm đủ bù chi phí đọc chỉ mục;
+ * "or" và "in" được hợp bằng bitmap khi mọi nhánh đều dùng được chỉ mục. Kế hoạch qua chỉ mục chỉ được chọn
+ * khi rẻ hơn quét toàn bộ; mọi row ứng viên vẫn được lọc lại bằng QueryFilter.
+ * Thuộc tính không có chỉ mục được ước lượng qua sketch (số giá trị khác nhau, phân vị) trước khi dùng giá trị mặc định.
+ */
+public final class QueryPlanner {
+
+    // Chi phí tương đối: quét và lọc một row, đặt một bit từ chỉ mục, đọc và lọc lại một row ứng viên
+    private static final double SCAN_ROW = 1.0;
+    private static final double POSTING = 0.1;
+    private static final double FETCH_ROW = 1.5;
+    // Độ chọn lọc khi thuộc tính không có chỉ mục để ước lượng
+    private static final double DEFAULT_EQUAL = 0.05;
+    private static final double DEFAULT_RANGE = 0.3;
+    private static final double DEFAULT_TEXT = 0.1;
+    private static final double DEFAULT_NULL = 0.1;
+
+    private final VirtualDataStore store;
+    private final String entityName;
+    private final EntitySnapshot snapshot;
+    private final long rows;
+    private final Map<String, PropertyStatistics> statistics;
+    private final Map<String, PropertySketch> sketches = new HashMap<>();
+
+    public QueryPlanner(VirtualDataStore store, String entityName, EntitySnapshot snapshot) {
+        this.store = store;
+        this.entityName = entityName;
+        this.snapshot = snapshot;
+        this.rows = snapshot.size();
+        this.statistics = store.getStatistics(entityName);
+    }
+
+    /**
+     * Lập kế hoạch rồi chạy: lấy ứng viên theo kế hoạch (hoặc quét) và lọc lại bằng filter
+     */
+    public QueryPlan execute(Map<String, Object> filters, QueryFilter filter, Function<Object, Map<String, Object>> toMap) {
+        Candidates candidates = candidates(filters);
+        // Quét lớn được chia đoạn chạy song song, kết quả giữ thứ tự của snapshot
+        List<Map<String, Object>> result = store.scan(candidates.rows, row -> {
+            Map<String, Object> map = toMap.apply(row);
+            return filter.matches(map) ? map : null;
+        });
+
+        Map<String, Object> plan = new LinkedHashMap<>();
+        plan.put("access", candidates.positions != null ? "index" : "scan");
+        if (candidates.useIndex && candidates.positions == null)
+            plan.put("fallback", "snapshot changed while planning");
+        if (candidates.access != null)
+            plan.put("indexPlan", candidates.access.describe());
+        plan.put("rows", rows);
+        plan.put("scanCost", candidates.scanCost);
+        plan.put("indexCost", candidates.access != null ? candidates.indexCost : null);
+        plan.put("estimatedCandidates", candidates.positions != null ? candidates.access.estimated : rows);
+        plan.put("actualCandidates", candidates.rows.size());
+        plan.put("estimatedRows", Math.round(rows * (filters != null ? selectivity(filters) : 1)));
+        plan.put("actualRows", result.size());
+        return new QueryPlan(result, plan);
+    }
+
+    /**
+     * Như execute nhưng chỉ đếm số row khớp, không tạo danh sách kết quả
+     */
+    public long count(Map<String, Object> filters, QueryFilter filter, Function<Object, Map<String, Object>> toMap) {
+        if (filters == null || filters.isEmpty())
+            return rows;
+        return store.count(candidates(filters).rows, row -> filter.matches(toMap.apply(row)));
+    }
+
+    /**
+     * Chọn giữa quét toàn bộ và kế hoạch qua chỉ mục theo chi phí ước lượng
+     */
+    private Candidates candidates(Map<String, Object> filters) {
+        Candidates candidates = new Candidates();
+        candidates.access = filters != null && !filters.isEmpty() ? planAll(filters) : null;
+        candidates.scanCost = rows * SCAN_ROW;
+        candidates.indexCost = candidates.access != null
+                ? candidates.access.cost + candidates.access.estimated * FETCH_ROW : Double.POSITIVE_INFINITY;
+        candidates.useIndex = candidates.indexCost < candidates.scanCost;
+        candidates.positions = candidates.useIndex ? candidates.access.execute() : null;
+        candidates.rows = candidates.positions != null ? store.rows(snapshot, candidates.positions) : snapshot.getRows();
+        return candidates;
+    }
+
+    /**
+     * Kế hoạch cho các bộ lọc "và" của một map, null nếu không bộ lọc nào dùng được chỉ mục
+     */
+    private Access planAll(Map<String, Object> filters) {
+        List<Access> accesses = new ArrayList<>();
+        for (Map.Entry<String, Object> f : filters.entrySet()) {
+            switch (f.getKey()) {
+                case "and" -> {
+                    for (Object part : (List<?>) f.getValue()) {
+                        Access access = planAll(asFilters(part));
+                        if (access != null)
+                            accesses.add(access);
+                    }
+                }
+                case "or" -> {
+                    List<Access> branches = new ArrayList<>();
+                    for (Object part : (List<?>) f.getValue()) {
+                        Access access = planAll(asFilters(part));
+                        if (access == null) {
+                            branches = null;
+                            break;
+                        }
+                        branches.add(access);
+                    }
+                    if (branches != null)
+                        accesses.add(new OrAccess(branches));
+                }
+                case "not" -> {
+                    // Phủ định không thu hẹp được bằng chỉ mục
+                }
+                default -> {
+                    Access access = planProperty(f.getKey(), f.getValue());
+                    if (access != null)
+                        accesses.add(access);
+                }
+            }
+        }
+        return intersect(accesses);
+    }
+
+    private Access planProperty(String property, Object filter) {
+        if (!(filter instanceof Map<?, ?> operators))
+            return index(IndexProbe.equal(property, filter));
+        List<Access> options = new ArrayList<>();
+        for (Map.Entry<?, ?> operator : operators.entrySet()) {
+            String name = String.valueOf(operator.getKey());
+            TextSearch search = TextSearch.fromOperator(name);
+            if (search != null)
+                options.add(index(IndexProbe.text(property, search, String.valueOf(operator.getValue()))));
+            else if (name.equals("eq"))
+                options.add(index(IndexProbe.equal(property, operator.getValue())));
+            else if (name.equals("isNull") && Boolean.TRUE.equals(operator.getValue()))
+                options.add(index(IndexProbe.equal(property, null)));
+            else if (name.equals("in"))
+                options.add(union(property, (Collection<?>) operator.getValue()));
+        }
+        IndexProbe range = rangeProbe(property, operators);
+        if (range != null)
+            options.add(index(range));
+        options.removeIf(access -> access == null);
+        return intersect(options);
+    }
+
+    /**
+     * Giao các đường truy cập từ chọn lọc nhất; mỗi chỉ mục thêm vào phải rẻ hơn số lần lọc lại nó tiết kiệm được
+     */
+    private Access intersect(List<Access> accesses) {
+        if (accesses.isEmpty())
+            return null;
+        accesses.sort(Comparator.comparingLong(access -> access.estimated));
+        List<Access> chosen = new ArrayList<>();
+        chosen.add(accesses.get(0));
+        double estimated = accesses.get(0).estimated;
+        double cost = accesses.get(0).cost;
+        for (Access next : accesses.subList(1, accesses.size())) {
+            double selectivity = rows > 0 ? Math.min(1, next.estimated / (double) rows) : 0;
+            if (next.cost >= estimated * (1 - selectivity) * FETCH_ROW)
+                continue;
+            chosen.add(next);
+            estimated *= selectivity;
+            cost += next.cost;
+        }
+        return chosen.size() == 1 ? chosen.get(0) : new AndAccess(chosen, Math.round(estimated), cost);
+    }
+
+    private Access union(String property, Collection<?> values) {
+        List<Access> branches = new ArrayList<>(values.size());
+        for (Object value : values) {
+            Access access = index(IndexProbe.equal(property, value));
+            if (access == null)
+                return null;
+            branches.add(access);
+        }
+        return new OrAccess(branches);
+    }
+
+    private Access index(IndexProbe probe) {
+        long estimated = store.estimate(entityName, snapshot, probe);
+        return estimated >= 0 ? new IndexAccess(probe, estimated) : null;
+    }
+
+    private static IndexProbe rangeProbe(String property, Map<?, ?> operators) {
+        Object from = null;
+        Object to = null;
+        if (operators.get("between") instanceof List<?> bounds) {
+            from = bounds.get(0);
+            to = bounds.get(1);
+        }
+        if (operators.containsKey("gt") || operators.containsKey("gte"))
+            from = operators.containsKey("gt") ? operators.get("gt") : operators.get("gte");
+        if (operators.containsKey("lt") || operators.containsKey("lte"))
+            to = operators.containsKey("lt") ? operators.get("lt") : operators.get("lte");
+        if (from == null && to == null)
+            return null;
+        return IndexProbe.range(property, from, !operators.containsKey("gt"), to, !operators.containsKey("lt"));
+    }
+
+    /**
+     * Tỉ lệ row khớp bộ lọc, các bộ lọc coi như độc lập
+     */
+    private double selectivity(Map<String, Object> filters) {
+        double selectivity = 1;
+        for (Map.Entry<String, Object> f : filters.entrySet()) {
+            switch (f.getKey()) {
+                case "and" -> {
+                    for (Object part : (List<?>) f.getValue()) {
+                        selectivity *= selectivity(asFilters(part));
+                    }
+                }
+                case "or" -> {
+                    double none = 1;
+                    for (Object part : (List<?>) f.getValue()) {
+                        none *= 1 - selectivity(asFilters(part));
+                    }
+                    selectivity *= 1 - none;
+                }
+                case "not" -> selectivity *= 1 - selectivity(asFilters(f.getValue()));
+                default -> selectivity *= selectivity(f.getKey(), f.getValue());
+            }
+        }
+        return selectivity;
+    }
+
+    private double selectivity(String property, Object filter) {
+        if (!(filter instanceof Map<?, ?> operators))
+            return equalSelectivity(property, filter);
+        double selectivity = 1;
+        for (Map.Entry<?, ?> operator : operators.entrySet()) {
+            String name = String.valueOf(operator.getKey());
+            TextSearch search = TextSearch.fromOperator(name);
+            if (search != null) {
+                selectivity *= fraction(IndexProbe.text(property, search, String.valueOf(operator.getValue())), DEFAULT_TEXT);
+                continue;
+            }
+            switch (name) {
+                case "eq" -> selectivity *= equalSelectivity(property, operator.getValue());
+                case "ne" -> selectivity *= Math.max(0, 1 - equalSelectivity(property, operator.getValue()) - nullFraction(property));
+                case "in" -> {
+                    double sum = 0;
+                    for (Object value : (Collection<?>) operator.getValue()) {
+                        sum += equalSelectivity(property, value);
+                    }
+                    selectivity *= Math.min(1, sum);
+                }
+                case "isNull" -> selectivity *= Boolean.TRUE.equals(operator.getValue())
+                        ? nullFraction(property) : 1 - nullFraction(property);
+                default -> {
+                    // Các cận được ước lượng một lần cho cả khoảng bên dưới
+                }
+            }
+        }
+        IndexProbe range = rangeProbe(property, operators);
+        if (range != null)
+            selectivity *= fraction(range, DEFAULT_RANGE);
+        return selectivity;
+    }
+
+    private double equalSelectivity(String property, Object value) {
+        long estimated = store.estimate(entityName, snapshot, IndexProbe.equal(property, value));
+        if (estimated >= 0)
+            return rows > 0 ? Math.min(1, estimated / (double) rows) : 0;
+        if (value == null)
+            return nullFraction(property);
+        PropertyStatistics stats = statistics.get(property);
+        if (stats != null && stats.getDistinct() > 0)
+            return (1 - stats.getNullFraction()) / stats.getDistinct();
+        PropertySketch sketch = sketch(property);
+        if (sketch != null && sketch.getDistinct() > 0)
+            return (1 - nullFraction(property)) / sketch.getDistinct();
+        return DEFAULT_EQUAL;
+    }
+
+    private double nullFraction(String property) {
+        PropertyStatistics stats = statistics.get(property);
+        if (stats != null)
+            return stats.getNullFraction();
+        PropertySketch sketch = sketch(property);
+        if (sketch != null && rows > 0)
+            return Math.max(0, 1 - sketch.getValues() / (double) rows);
+        return DEFAULT_NULL;
+    }
+
+    private double fraction(IndexProbe probe, double fallback) {
+        long estimated = store.estimate(entityName, snapshot, probe);
+        if (estimated < 0)
+            return probe.getKind() == IndexProbe.Kind.RANGE ? rangeFraction(probe, fallback) : fallback;
+        return rows > 0 ? Math.min(1, estimated / (double) rows) : 0;
+    }
+
+    /**
+     * Tỉ lệ row trong khoảng số theo phân vị của sketch, fallback nếu cận không phải số hoặc chưa có sketch
+     */
+    private double rangeFraction(IndexProbe probe, double fallback) {
+        Object from = probe.getFrom();
+        Object to = probe.getTo();
+        if ((from != null && !(from instanceof Number)) || (to != null && !(to instanceof Number)))
+            return fallback;
+        PropertySketch sketch = sketch(probe.getProperty());
+        KllSketch numbers = sketch != null ? sketch.getNumbers() : null;
+        if (numbers == null || numbers.getCount() == 0)
+            return fallback;
+        double lower = from != null ? numbers.rank(((Number) from).doubleValue(), !probe.isFromInclusive()) : 0;
+        double upper = to != null ? numbers.rank(((Number) to).doubleValue(), probe.isToInclusive()) : 1;
+        return Math.max(0, upper - lower) * (1 - nullFraction(probe.getProperty()));
+    }
+
+    private PropertySketch sketch(String property) {
+        if (!sketches.containsKey(property))
+            sketches.put(property, store.getPropertySketch(entityName, property));
+        return sketches.get(property);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> asFilters(Object filter) {
+        return (Map<String, Object>) filter;
+    }
+
+    /**
+     * Một nút của kế hoạch truy cập: số ứng viên ước lượng, chi phí lấy bitmap và số ứng viên thực tế sau khi chạy
+     */
+    private abstract class Access {
+
+        long estimated;
+        double cost;
+        long actual = -1;
+
+        /**
+         * Bitmap vị trí ứng viên, null nếu chỉ mục không còn dùng được (snapshot đã đổi)
+         */
+        abstract BitSet execute();
+
+        abstract Map<String, Object> describe();
+
+        Map<String, Object> describe(String type) {
+            Map<String, Object> node = new LinkedHashMap<>();
+            node.put("type", type);
+            node.put("estimatedRows", estimated);
+            if (actual >= 0)
+                node.put("actualRows", actual);
+            return node;
+        }
+    }
+
+    private final class IndexAccess extends Access {
+
+        private final IndexProbe probe;
+
+        IndexAccess(IndexProbe probe, long estimated) {
+            this.probe = probe;
+            this.estimated = estimated;
+            this.cost = estimated * POSTING;
+        }
+
+        @Override
+        BitSet execute() {
+            BitSet positions = store.positions(entityName, snapshot, probe);
+            if (positions != null)
+                actual = positions.cardinality();
+            return positions;
+        }
+
+        @Override
+        Map<String, Object> describe() {
+            Map<String, Object> node = describe("index");
+            PropertyStatistics stats = statistics.get(probe.getProperty());
+            node.put("index", probe.getKind() == IndexProbe.Kind.TEXT ? "text" : stats != null ? stats.getIndexType() : null);
+            node.put("condition", probe.toString());
+            return node;
+        }
+    }
+
+    private final class AndAccess extends Access {
+
+        private final List<Access> inputs;
+
+        AndAccess(List<Access> inputs, long estimated, double cost) {
+            this.inputs = inputs;
+            this.estimated = estimated;
+            this.cost = cost;
+        }
+
+        @Override
+        BitSet execute() {
+            BitSet result = null;
+            for (Access input : inputs) {
+                BitSet positions = input.execute();
+                if (positions == null)
+                    return null;
+                if (result == null)
+                    result = positions;
+                else
+                    result.and(positions);
+                if (result.isEmpty())
+                    break;
+            }
+            actual = result.cardinality();
+            return result;
+        }
+
+        @Override
+        Map<String, Object> describe() {
+            Map<String, Object> node = describe("and");
+            node.put("inputs", inputs.stream().map(Access::describe).toList());
+            return node;
+        }
+    }
+
+    private final class OrAccess extends Access {
+
+        private final List<Access> inputs;
+
+        OrAccess(List<Access> inputs) {
+            this.inputs = inputs;
+            long sum = 0;
+            for (Access input : inputs) {
+                sum += input.estimated;
+                cost += input.cost;
+            }
+            this.estimated = Math.min(rows, sum);
+        }
+
+        @Override
+        BitSet execute() {
+            BitSet result = new BitSet();
+            for (Access input : inputs) {
+                BitSet positions = input.execute();
+                if (positions == null)
+                    return null;
+                result.or(positions);
+            }
+            actual = result.cardinality();
+            return result;
+        }
+
+        @Override
+        Map<String, Object> describe() {
+            Map<String, Object> node = describe("or");
+            node.put("inputs", inputs.stream().map(Access::describe).toList());
+            return node;
+        }
+    }
+
+    private static final class Candidates {
+
+        private Access access;
+        private double scanCost;
+        private double indexCost;
+        private boolean useIndex;
+        private BitSet positions;
+        private List<Object> rows;
+    }
+}
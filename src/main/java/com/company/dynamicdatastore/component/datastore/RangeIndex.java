@@ -0,0 +1,122 @@
+package com.company.dynamicdatastore.component.datastore;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Chỉ mục có thứ tự trên thuộc tính kiểu số/ngày/ngày giờ, phục vụ lọc theo khoảng, min/max
+ * và duyệt theo thứ tự giá trị trong O(log n + k). Giá trị null hoặc không chuyển được sang kiểu
+ * của chỉ mục không nằm trong chỉ mục.
+ */
+final class RangeIndex extends KeyedIndex {
+
+    private final OrderedType type;
+
+    RangeIndex(String property, OrderedType type) {
+        super(property);
+        this.type = type;
+    }
+
+    OrderedType getOrderedType() {
+        return type;
+    }
+
+    @Override
+    String getType() {
+        return "range(" + type + ")";
+    }
+
+    @Override
+    Map<Object, Object> newMap() {
+        return new TreeMap<>();
+    }
+
+    @Override
+    Object key(Object value) {
+        return value != null ? type.convert(value) : null;
+    }
+
+    @Override
+    PropertyStatistics statistics(long rows) {
+        TreeMap<Object, Object> sorted = (TreeMap<Object, Object>) positions;
+        return new PropertyStatistics(getProperty(), getType(), rows, count, sorted.size(),
+                sorted.isEmpty() ? null : sorted.firstKey(), sorted.isEmpty() ? null : sorted.lastKey());
+    }
+
+    /**
+     * Số row ước lượng trong khoảng, nội suy tuyến tính giữa min và max (coi giá trị phân bố đều);
+     * -1 nếu cận không chuyển được sang kiểu của chỉ mục
+     */
+    long estimate(Object from, Object to) {
+        Object low = from != null ? key(from) : null;
+        Object high = to != null ? key(to) : null;
+        if ((from != null && low == null) || (to != null && high == null))
+            return -1;
+        TreeMap<Object, Object> sorted = (TreeMap<Object, Object>) positions;
+        if (sorted.isEmpty())
+            return 0;
+        double min = scale(sorted.firstKey());
+        double max = scale(sorted.lastKey());
+        double lo = low != null ? Math.max(scale(low), min) : min;
+        double hi = high != null ? Math.min(scale(high), max) : max;
+        if (lo > hi)
+            return 0;
+        if (max <= min)
+            return count;
+        return Math.max(1, Math.round(count * (hi - lo) / (max - min)));
+    }
+
+    /**
+     * Khóa trên trục số để nội suy
+     */
+    private double scale(Object key) {
+        return switch (type) {
+            case NUMBER -> ((BigDecimal) key).doubleValue();
+            case DATE -> ((LocalDate) key).toEpochDay();
+            case DATE_TIME -> ((LocalDateTime) key).toEpochSecond(ZoneOffset.UTC) + ((LocalDateTime) key).getNano() / 1e9;
+        };
+    }
+
+    /**
+     * Vị trí các row có giá trị trong khoảng theo thứ tự giá trị, các row cùng giá trị theo thứ tự chèn.
+     * Cận null là không giới hạn; trả về null nếu cận không chuyển được sang kiểu của chỉ mục.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    int[] range(Object from, boolean fromInclusive, Object to, boolean toInclusive, boolean descending, int limit) {
+        Object low = from != null ? key(from) : null;
+        Object high = to != null ? key(to) : null;
+        if ((from != null && low == null) || (to != null && high == null))
+            return null;
+        NavigableMap<Object, Object> view = (NavigableMap<Object, Object>) positions;
+        if (low != null && high != null) {
+            int order = ((Comparable) low).compareTo(high);
+            if (order > 0 || (order == 0 && !(fromInclusive && toInclusive)))
+                return new int[0];
+            view = view.subMap(low, fromInclusive, high, toInclusive);
+        } else if (low != null) {
+            view = view.tailMap(low, fromInclusive);
+        } else if (high != null) {
+            view = view.headMap(high, toInclusive);
+        }
+        if (descending)
+            view = view.descendingMap();
+        int[] result = new int[16];
+        int count = 0;
+        for (Object postings : view.values()) {
+            for (int position : positionsOf(postings)) {
+                if (count == limit)
+                    return Arrays.copyOf(result, count);
+                if (count == result.length)
+                    result = Arrays.copyOf(result, count * 2);
+                result[count++] = position;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+}
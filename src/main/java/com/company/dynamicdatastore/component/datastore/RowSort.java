@@ -0,0 +1,169 @@
+package com.company.dynamicdatastore.component.datastore;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.Function;
+
+/**
+ * Thứ tự sắp xếp theo nhiều thuộc tính và cách lấy một trang theo thứ tự đó bằng heap giới hạn (top-K):
+ * chỉ giữ offset + limit row đứng đầu nên tốn O(n log k) thay vì sắp xếp cả entity.
+ * <p>
+ * Thuộc tính kiểu số/ngày được so theo OrderedType như chỉ mục có thứ tự; null (hoặc giá trị không chuyển được)
+ * đứng cuối khi tăng dần, đầu khi giảm dần. Thuộc tính không khai báo kiểu so theo nhóm kiểu trước (số, ngày, chuỗi,
+ * còn lại) rồi mới so trong nhóm. Các row bằng nhau giữ thứ tự trong danh sách đầu vào (thứ tự chèn).
+ */
+public final class RowSort {
+
+    /**
+     * Một thuộc tính sắp xếp
+     */
+    public static final class Order {
+
+        private final String property;
+        private final boolean descending;
+
+        public Order(String property, boolean descending) {
+            this.property = property;
+            this.descending = descending;
+        }
+
+        public String getProperty() {
+            return property;
+        }
+
+        public boolean isDescending() {
+            return descending;
+        }
+
+        @Override
+        public String toString() {
+            return (descending ? "-" : "") + property;
+        }
+    }
+
+    private final List<Order> orders;
+    private final OrderedType[] types;
+
+    /**
+     * types trả về kiểu khai báo của thuộc tính, null nếu không biết
+     */
+    public RowSort(List<Order> orders, Function<String, Class<?>> types) {
+        this.orders = List.copyOf(orders);
+        this.types = new OrderedType[orders.size()];
+        for (int i = 0; i < orders.size(); i++) {
+            this.types[i] = OrderedType.of(types.apply(orders.get(i).getProperty()));
+        }
+    }
+
+    public List<Order> getOrders() {
+        return orders;
+    }
+
+    public boolean isEmpty() {
+        return orders.isEmpty();
+    }
+
+    public int compare(Object left, Object right) {
+        for (int i = 0; i < types.length; i++) {
+            String property = orders.get(i).getProperty();
+            int order = compareValues(PropertyIndex.valueOf(left, property), PropertyIndex.valueOf(right, property), types[i]);
+            if (order != 0)
+                return orders.get(i).isDescending() ? -order : order;
+        }
+        return 0;
+    }
+
+    /**
+     * Chỉ số (trong rows) của các row thứ offset đến offset + limit - 1 theo thứ tự này, chỉ xét các row đứng sau
+     * row có chỉ số after (-1 là từ đầu). limit âm là không giới hạn.
+     */
+    public List<Integer> page(List<?> rows, int after, int offset, int limit) {
+        long wanted = limit < 0 ? Long.MAX_VALUE : (long) offset + limit;
+        Comparator<Integer> comparator = (a, b) -> {
+            int order = compare(rows.get(a), rows.get(b));
+            return order != 0 ? order : Integer.compare(a, b);
+        };
+        List<Integer> top;
+        if (isEmpty()) {
+            top = new ArrayList<>();
+            for (int i = after + 1; i < rows.size() && top.size() < wanted; i++) {
+                top.add(i);
+            }
+        } else if (wanted >= rows.size()) {
+            top = new ArrayList<>(rows.size());
+            for (int i = 0; i < rows.size(); i++) {
+                if (after < 0 || comparator.compare(i, after) > 0)
+                    top.add(i);
+            }
+            top.sort(comparator);
+        } else {
+            // Heap lớn nhất ở đỉnh giữ k row nhỏ nhất đã gặp
+            int k = (int) wanted;
+            PriorityQueue<Integer> heap = new PriorityQueue<>(Math.max(1, k), comparator.reversed());
+            for (int i = 0; i < rows.size() && k > 0; i++) {
+                if (after >= 0 && comparator.compare(i, after) <= 0)
+                    continue;
+                if (heap.size() < k) {
+                    heap.add(i);
+                } else if (comparator.compare(i, heap.peek()) < 0) {
+                    heap.poll();
+                    heap.add(i);
+                }
+            }
+            top = new ArrayList<>(heap);
+            top.sort(comparator);
+        }
+        return offset >= top.size() ? List.of() : top.subList(offset, top.size());
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    static int compareValues(Object left, Object right, OrderedType type) {
+        if (isIntegral(left) && isIntegral(right))
+            return Long.compare(((Number) left).longValue(), ((Number) right).longValue());
+        if (type != null) {
+            left = left != null ? type.convert(left) : null;
+            right = right != null ? type.convert(right) : null;
+        }
+        if (left == null || right == null)
+            return left == null ? (right == null ? 0 : 1) : -1;
+        // Khác nhóm kiểu thì so theo nhóm để thứ tự bắc cầu khi thuộc tính không khai báo kiểu và chứa giá trị lẫn lộn
+        int rank = Integer.compare(rank(left), rank(right));
+        if (rank != 0)
+            return rank;
+        if (left instanceof Number) {
+            Comparable a = OrderedType.NUMBER.convert(left);
+            Comparable b = OrderedType.NUMBER.convert(right);
+            if (a != null && b != null)
+                return a.compareTo(b);
+            return Double.compare(((Number) left).doubleValue(), ((Number) right).doubleValue());
+        }
+        if (left instanceof LocalDate || left instanceof LocalDateTime)
+            return ((Comparable) OrderedType.DATE_TIME.convert(left)).compareTo(OrderedType.DATE_TIME.convert(right));
+        if (left.getClass() != right.getClass())
+            return left.getClass().getName().compareTo(right.getClass().getName());
+        if (left instanceof Comparable)
+            return ((Comparable) left).compareTo(right);
+        return String.valueOf(left).compareTo(String.valueOf(right));
+    }
+
+    /**
+     * Nhóm kiểu của giá trị khác null: số, ngày/ngày giờ, chuỗi, còn lại
+     */
+    private static int rank(Object value) {
+        if (value instanceof Number)
+            return 0;
+        if (value instanceof LocalDate || value instanceof LocalDateTime)
+            return 1;
+        if (value instanceof String)
+            return 2;
+        return 3;
+    }
+
+    private static boolean isIntegral(Object value) {
+        return value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte;
+    }
+}
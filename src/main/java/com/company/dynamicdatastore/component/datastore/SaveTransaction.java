@@ -0,0 +1,60 @@
+package com.company.dynamicdatastore.component.datastore;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Bộ đệm ghi của một save transaction trên VirtualDataStore.
+ * Các thay đổi được gom theo entity và id (ghi sau đè ghi trước), chỉ được áp dụng khi commit;
+ * rollback chỉ cần bỏ bộ đệm.
+ */
+final class SaveTransaction {
+
+    /**
+     * Đánh dấu id bị xóa trong bộ đệm
+     */
+    static final Object DELETED = new Object();
+
+    private final SaveTransaction outer;
+    // Sắp theo tên entity để các transaction luôn khóa phân vùng theo cùng thứ tự
+    private final Map<String, Map<Object, Object>> changes = new TreeMap<>();
+    private boolean completed;
+
+    SaveTransaction(SaveTransaction outer) {
+        this.outer = outer;
+    }
+
+    SaveTransaction getOuter() {
+        return outer;
+    }
+
+    void put(String entityName, Object id, Object row) {
+        changes.computeIfAbsent(entityName, k -> new LinkedHashMap<>()).put(id, row);
+    }
+
+    void remove(String entityName, Object id) {
+        put(entityName, id, DELETED);
+    }
+
+    /**
+     * Row đang chờ ghi theo id: DELETED nếu đã bị xóa, null nếu transaction không đụng tới id này
+     */
+    Object get(String entityName, Object id) {
+        Map<Object, Object> rows = changes.get(entityName);
+        return rows != null ? rows.get(id) : null;
+    }
+
+    Map<String, Map<Object, Object>> getChanges() {
+        return changes;
+    }
+
+    boolean isCompleted() {
+        return completed;
+    }
+
+    void complete() {
+        completed = true;
+        changes.clear();
+    }
+}
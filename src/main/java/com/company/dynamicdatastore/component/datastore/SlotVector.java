@@ -0,0 +1,109 @@
+package com.company.dynamicdatastore.component.datastore;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Vector bất biến ánh xạ vị trí (thứ tự chèn) -> slot trong RowStore, chia thành các segment 1024 phần tử.
+ * Sửa một vị trí chỉ chép thư mục segment và segment chứa vị trí đó, các segment còn lại dùng chung
+ * giữa các phiên bản. Ghi thêm vào cuối được ghi thẳng vào segment dùng chung vì các phiên bản cũ
+ * không bao giờ đọc quá size của chúng.
+ */
+final class SlotVector {
+
+    static final int DELETED = -1;
+    static final SlotVector EMPTY = new SlotVector(new int[0][], 0);
+
+    private static final int SHIFT = 10;
+    private static final int SEGMENT_SIZE = 1 << SHIFT;
+    private static final int MASK = SEGMENT_SIZE - 1;
+
+    private final int[][] segments;
+    private final int size;
+
+    private SlotVector(int[][] segments, int size) {
+        this.segments = segments;
+        this.size = size;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Slot của vị trí, DELETED nếu row ở vị trí đó đã bị xóa
+     */
+    int get(int position) {
+        if (position >= size)
+            throw new IndexOutOfBoundsException("Position " + position + " out of " + size);
+        return segments[position >>> SHIFT][position & MASK];
+    }
+
+    Editor edit() {
+        return new Editor(this);
+    }
+
+    /**
+     * Gom các thay đổi của một lần ghi, mỗi segment bị sửa chỉ được chép một lần
+     */
+    static final class Editor {
+
+        private int[][] segments;
+        private int size;
+        private boolean directoryOwned;
+        private final BitSet ownedSegments = new BitSet();
+
+        private Editor(SlotVector base) {
+            this.segments = base.segments;
+            this.size = base.size;
+        }
+
+        int size() {
+            return size;
+        }
+
+        int get(int position) {
+            return segments[position >>> SHIFT][position & MASK];
+        }
+
+        /**
+         * Thêm slot vào cuối và trả về vị trí của nó
+         */
+        int append(int slot) {
+            int position = size;
+            int segment = position >>> SHIFT;
+            if (segment == segments.length) {
+                segments = Arrays.copyOf(segments, Math.max(4, segments.length * 2));
+                directoryOwned = true;
+            }
+            if ((position & MASK) == 0 && !ownedSegments.get(segment)) {
+                segments[segment] = new int[SEGMENT_SIZE];
+                ownedSegments.set(segment);
+            }
+            segments[segment][position & MASK] = slot;
+            size++;
+            return position;
+        }
+
+        void set(int position, int slot) {
+            int segment = position >>> SHIFT;
+            if (!directoryOwned) {
+                segments = segments.clone();
+                directoryOwned = true;
+            }
+            if (!ownedSegments.get(segment)) {
+                segments[segment] = segments[segment].clone();
+                ownedSegments.set(segment);
+            }
+            segments[segment][position & MASK] = slot;
+        }
+
+        SlotVector build() {
+            SlotVector result = new SlotVector(segments, size);
+            // Sau khi công bố, các segment lại được dùng chung với phiên bản vừa tạo
+            directoryOwned = false;
+            ownedSegments.clear();
+            return result;
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.company.dynamicdatastore.component.datastore;
+
+import com.company.dynamicdatastore.component.entity.VirtualEntityDefinition;
+
+import java.util.List;
+
+/**
+ * Nhận các thay đổi của VirtualDataStore, dùng cho ghi log/persist dữ liệu.
+ */
+public interface StoreChangeListener {
+
+    /**
+     * Gọi khi đang giữ write lock của các phân vùng liên quan, trước khi thay đổi hiện ra với thread đọc.
+     * Thứ tự các lần gọi trên cùng entity đúng bằng thứ tự áp dụng; ném exception sẽ hủy cả lần ghi.
+     */
+    void onChanges(long version, List<EntityChange> changes);
+
+    default void onDefinitionRegistered(VirtualEntityDefinition definition) {
+    }
+
+    default void onDefinitionRemoved(String entityName) {
+    }
+
+    /**
+     * Gọi trên thread ghi sau khi đã nhả lock, trước khi thao tác ghi trả về cho caller
+     */
+    default void afterChanges() {
+    }
+}
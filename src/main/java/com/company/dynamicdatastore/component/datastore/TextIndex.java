@@ -0,0 +1,187 @@
+package com.company.dynamicdatastore.component.datastore;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Chỉ mục văn bản trên thuộc tính chuỗi: chỉ mục đảo theo trigram (3 ký tự liên tiếp, đã fold) cho
+ * contains/startsWith và theo từ cho match. Kết quả tra cứu là tập ứng viên, người gọi lọc lại từng row.
+ * <p>
+ * Khi row đổi giá trị hoặc bị xóa, vị trí cũ không bị gỡ khỏi danh sách (gỡ khỏi danh sách lớn tốn O(n)
+ * mỗi lần ghi); các vị trí thừa bị loại khi lọc lại và được dọn khi phân vùng được dồn.
+ */
+final class TextIndex extends PropertyIndex {
+
+    private static final int GRAM = 3;
+    // Đánh dấu đầu chuỗi để startsWith dùng được trigram
+    private static final char BEGIN = '\u0002';
+
+    private Map<Long, Postings> grams = new HashMap<>();
+    private Map<String, Postings> tokens = new HashMap<>();
+
+    TextIndex(String property) {
+        super(property);
+    }
+
+    @Override
+    String getType() {
+        return "text";
+    }
+
+    @Override
+    void add(Object row, int position) {
+        Object value = valueOf(row, getProperty());
+        if (value == null)
+            return;
+        String folded = TextSearch.fold(String.valueOf(value));
+        String padded = BEGIN + folded;
+        for (int i = 0; i + GRAM <= padded.length(); i++) {
+            grams.computeIfAbsent(gram(padded, i), k -> new Postings()).add(position);
+        }
+        for (String token : TextSearch.tokens(folded)) {
+            tokens.computeIfAbsent(token, k -> new Postings()).add(position);
+        }
+    }
+
+    @Override
+    void remove(Object row, int position) {
+        // Gỡ khi dồn phân vùng
+    }
+
+    @Override
+    void remap(int[] moved, EntitySnapshot relocated) {
+        grams = new HashMap<>();
+        tokens = new HashMap<>();
+        SlotVector slots = relocated.getSlots();
+        for (int position = 0; position < slots.size(); position++) {
+            int slot = slots.get(position);
+            if (slot != SlotVector.DELETED)
+                add(relocated.getRowStore().row(slot), position);
+        }
+    }
+
+    /**
+     * Vị trí ứng viên tăng dần, null nếu chuỗi tìm kiếm quá ngắn để dùng chỉ mục
+     * (contains/endsWith cần ít nhất 3 ký tự, startsWith ít nhất 2, match ít nhất một từ)
+     */
+    int[] search(TextSearch search, String text) {
+        List<Postings> lists = postings(search, text);
+        if (lists == null)
+            return null;
+        if (lists.isEmpty())
+            return new int[0];
+        // Giao từ danh sách ngắn nhất
+        lists.sort(Comparator.comparingInt(p -> p.size));
+        int[] result = Arrays.copyOf(lists.get(0).positions, lists.get(0).size);
+        for (int i = 1; i < lists.size() && result.length > 0; i++) {
+            result = lists.get(i).retain(result);
+        }
+        return result;
+    }
+
+    /**
+     * Cận trên của số ứng viên (độ dài danh sách ngắn nhất), -1 nếu chuỗi tìm kiếm quá ngắn để dùng chỉ mục
+     */
+    int estimate(TextSearch search, String text) {
+        List<Postings> lists = postings(search, text);
+        if (lists == null)
+            return -1;
+        int min = Integer.MAX_VALUE;
+        for (Postings postings : lists) {
+            min = Math.min(min, postings.size);
+        }
+        return lists.isEmpty() ? 0 : min;
+    }
+
+    /**
+     * Các danh sách vị trí cần giao, rỗng nếu có trigram/từ không có trong chỉ mục (không row nào khớp),
+     * null nếu chuỗi tìm kiếm quá ngắn
+     */
+    private List<Postings> postings(TextSearch search, String text) {
+        String folded = TextSearch.fold(text);
+        List<Postings> lists = new ArrayList<>();
+        switch (search) {
+            case MATCH -> {
+                Set<String> words = TextSearch.tokens(folded);
+                if (words.isEmpty())
+                    return null;
+                for (String word : words) {
+                    Postings postings = tokens.get(word);
+                    if (postings == null)
+                        return List.of();
+                    lists.add(postings);
+                }
+            }
+            // Không có dấu kết thúc: endsWith dùng trigram như contains, các ứng viên được lọc lại
+            case STARTS_WITH, CONTAINS, ENDS_WITH -> {
+                String pattern = search == TextSearch.STARTS_WITH ? BEGIN + folded : folded;
+                if (pattern.length() < GRAM)
+                    return null;
+                for (int i = 0; i + GRAM <= pattern.length(); i++) {
+                    Postings postings = grams.get(gram(pattern, i));
+                    if (postings == null)
+                        return List.of();
+                    lists.add(postings);
+                }
+            }
+        }
+        return lists;
+    }
+
+    private static long gram(String text, int start) {
+        return ((long) text.charAt(start) << 32) | ((long) text.charAt(start + 1) << 16) | text.charAt(start + 2);
+    }
+
+    /**
+     * Danh sách vị trí tăng dần, không trùng
+     */
+    private static final class Postings {
+
+        private int[] positions = new int[2];
+        private int size;
+
+        void add(int position) {
+            if (size > 0 && positions[size - 1] >= position) {
+                // Row cũ được ghi lại tại vị trí của nó
+                int index = Arrays.binarySearch(positions, 0, size, position);
+                if (index >= 0)
+                    return;
+                insert(-index - 1, position);
+                return;
+            }
+            insert(size, position);
+        }
+
+        /**
+         * Các phần tử của sorted cũng có trong danh sách này
+         */
+        int[] retain(int[] sorted) {
+            int[] result = new int[Math.min(sorted.length, size)];
+            int count = 0;
+            int j = 0;
+            for (int position : sorted) {
+                while (j < size && positions[j] < position) {
+                    j++;
+                }
+                if (j == size)
+                    break;
+                if (positions[j] == position)
+                    result[count++] = position;
+            }
+            return Arrays.copyOf(result, count);
+        }
+
+        private void insert(int index, int position) {
+            if (size == positions.length)
+                positions = Arrays.copyOf(positions, size * 2);
+            System.arraycopy(positions, index, positions, index + 1, size - index);
+            positions[index] = position;
+            size++;
+        }
+    }
+}
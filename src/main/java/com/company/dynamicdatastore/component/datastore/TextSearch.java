@@ -0,0 +1,144 @@
+package com.company.dynamicdatastore.component.datastore;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * Các phép tìm văn bản không phân biệt hoa thường trên dạng chuỗi của giá trị.
+ * Chỉ mục văn bản (TextIndex) và phần lọc lại của query dùng chung các hàm ở đây nên cho cùng kết quả.
+ */
+public enum TextSearch {
+
+    /**
+     * Chứa chuỗi con
+     */
+    CONTAINS("contains") {
+        @Override
+        public boolean matches(Object value, String text) {
+            return value != null && fold(String.valueOf(value)).contains(fold(text));
+        }
+    },
+
+    /**
+     * Bắt đầu bằng chuỗi
+     */
+    STARTS_WITH("startsWith") {
+        @Override
+        public boolean matches(Object value, String text) {
+            return value != null && fold(String.valueOf(value)).startsWith(fold(text));
+        }
+    },
+
+    /**
+     * Kết thúc bằng chuỗi
+     */
+    ENDS_WITH("endsWith") {
+        @Override
+        public boolean matches(Object value, String text) {
+            return value != null && fold(String.valueOf(value)).endsWith(fold(text));
+        }
+    },
+
+    /**
+     * Chứa mọi từ của chuỗi tìm kiếm (từ là dãy chữ/số liền nhau), không cần đúng thứ tự
+     */
+    MATCH("match") {
+        @Override
+        public boolean matches(Object value, String text) {
+            return value != null && tokens(fold(String.valueOf(value))).containsAll(tokens(fold(text)));
+        }
+    };
+
+    private final String operator;
+
+    TextSearch(String operator) {
+        this.operator = operator;
+    }
+
+    /**
+     * Tên toán tử trong bộ lọc của query
+     */
+    public String getOperator() {
+        return operator;
+    }
+
+    public abstract boolean matches(Object value, String text);
+
+    /**
+     * Như matches với text cố định: text được fold một lần, giá trị chuỗi được so từng ký tự đã fold
+     * nên contains/startsWith/endsWith không tạo chuỗi mới cho mỗi row
+     */
+    public Predicate<Object> predicate(String text) {
+        String folded = fold(text);
+        if (this == MATCH) {
+            Set<String> words = tokens(folded);
+            return value -> value != null && tokens(fold(String.valueOf(value))).containsAll(words);
+        }
+        return value -> {
+            if (!(value instanceof String s))
+                return matches(value, text);
+            int last = s.length() - folded.length();
+            int first = this == ENDS_WITH ? last : 0;
+            if (this == STARTS_WITH)
+                last = Math.min(0, last);
+            for (int offset = first; offset <= last; offset++) {
+                if (regionMatches(s, offset, folded))
+                    return true;
+            }
+            return false;
+        };
+    }
+
+    private static boolean regionMatches(String value, int offset, String folded) {
+        for (int i = 0; i < folded.length(); i++) {
+            if (fold(value.charAt(offset + i)) != folded.charAt(i))
+                return false;
+        }
+        return true;
+    }
+
+    public static TextSearch fromOperator(String operator) {
+        for (TextSearch search : values()) {
+            if (search.operator.equals(operator))
+                return search;
+        }
+        return null;
+    }
+
+    /**
+     * Đưa về dạng so sánh không phân biệt hoa thường: từng ký tự lên chữ hoa rồi xuống chữ thường,
+     * giống cách String.equalsIgnoreCase so sánh
+     */
+    public static String fold(String text) {
+        StringBuilder folded = null;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            char f = fold(c);
+            if (f != c && folded == null)
+                folded = new StringBuilder(text.length()).append(text, 0, i);
+            if (folded != null)
+                folded.append(f);
+        }
+        return folded != null ? folded.toString() : text;
+    }
+
+    private static char fold(char c) {
+        return Character.toLowerCase(Character.toUpperCase(c));
+    }
+
+    static Set<String> tokens(String folded) {
+        Set<String> tokens = new LinkedHashSet<>();
+        int start = -1;
+        for (int i = 0; i <= folded.length(); i++) {
+            boolean word = i < folded.length() && Character.isLetterOrDigit(folded.charAt(i));
+            if (word && start < 0) {
+                start = i;
+            } else if (!word && start >= 0) {
+                tokens.add(folded.substring(start, i));
+                start = -1;
+            }
+        }
+        return tokens;
+    }
+}
@@ -0,0 +1,531 @@
+package com.company.dynamicdatastore.component.datastore;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+
+/**
+ * Query giá trị của loadAllValues/countAllValues (DataManager.loadValues), tính trực tiếp trên store:
+ * <pre>
+ * select group, count(*) as n, sum(price) as total, avg(price), min(name), max(price)
+ * from Citizen
+ * where price &gt;= :min and (name like 'item-1%' or group is null) and group not in (1, 2)
+ * group by group
+ * order by total desc, group
+ * </pre>
+ * <ul>
+ * <li>select: thuộc tính, hàm gộp count(*), count/sum/avg/min/max(thuộc tính) với "as" tùy chọn, hoặc "*" (cả row,
+ * không gộp); tên cột là alias, không có thì là thuộc tính hoặc dạng "sum(price)"</li>
+ * <li>where: =, &lt;&gt;, !=, &gt;, &gt;=, &lt;, &lt;=, [not] in (..), [not] like, between .. and .., is [not] null
+ * với and/or/not và ngoặc; toán hạng là số, 'chuỗi', true/false, null hoặc tham số :tên. Được dịch sang bộ lọc của
+ * query (xem QueryFilter) nên dùng chỉ mục như query qua REST; like chỉ nhận 'a%', '%a', '%a%'</li>
+ * <li>group by: các thuộc tính; cột không gộp của select phải có trong group by. Có hàm gộp mà không group by
+ * là một row (count 0 khi không có row nào)</li>
+ * <li>order by: tên cột của select (alias hoặc dạng trên), asc/desc</li>
+ * </ul>
+ * Từ khóa không phân biệt hoa thường. Chỉ một tên entity (không có select) là "select * from" entity đó như trước.
+ * Query sai cú pháp ném IllegalArgumentException.
+ */
+final class ValueQuery {
+
+    /**
+     * Một cột của select: property null là count(*), function null là giá trị của thuộc tính
+     */
+    static final class Column {
+
+        private final String function;
+        private final String property;
+        private final String name;
+
+        Column(String function, String property, String alias) {
+            this.function = function;
+            this.property = property;
+            this.name = alias != null ? alias
+                    : function == null ? property : function + "(" + (property != null ? property : "*") + ")";
+        }
+
+        String getName() {
+            return name;
+        }
+
+        boolean isAggregate() {
+            return function != null;
+        }
+    }
+
+    private final String entityName;
+    private final List<Column> columns;
+    private final Map<String, Object> filters;
+    private final List<String> groupBy;
+    private final List<RowSort.Order> orderBy;
+
+    private ValueQuery(String entityName, List<Column> columns, Map<String, Object> filters,
+                       List<String> groupBy, List<RowSort.Order> orderBy) {
+        this.entityName = entityName;
+        this.columns = columns;
+        this.filters = filters;
+        this.groupBy = groupBy;
+        this.orderBy = orderBy;
+    }
+
+    /**
+     * Dịch query; tham số :tên lấy từ parameters, thiếu tham số ném IllegalArgumentException
+     */
+    static ValueQuery parse(String text, Map<String, Object> parameters) {
+        if (text == null || text.isBlank())
+            throw new IllegalArgumentException("Value query is empty");
+        Parser parser = new Parser(text, parameters != null ? parameters : Map.of());
+        ValueQuery query = parser.query();
+        query.validate();
+        return query;
+    }
+
+    String getEntityName() {
+        return entityName;
+    }
+
+    /**
+     * Cột của select, rỗng với "select *"
+     */
+    List<Column> getColumns() {
+        return columns;
+    }
+
+    Map<String, Object> getFilters() {
+        return filters;
+    }
+
+    List<RowSort.Order> getOrderBy() {
+        return orderBy;
+    }
+
+    boolean isAggregate() {
+        return !groupBy.isEmpty() || columns.stream().anyMatch(Column::isAggregate);
+    }
+
+    private void validate() {
+        if (columns.isEmpty() && !groupBy.isEmpty())
+            throw new IllegalArgumentException("select * cannot be grouped");
+        List<String> names = new ArrayList<>();
+        for (Column column : columns) {
+            if (names.contains(column.name))
+                throw new IllegalArgumentException("Duplicate column in value query: " + column.name);
+            names.add(column.name);
+            if (isAggregate() && !column.isAggregate() && !groupBy.contains(column.property))
+                throw new IllegalArgumentException("Column " + column.name + " must be aggregated or listed in group by");
+        }
+        for (RowSort.Order order : orderBy) {
+            if (!columns.isEmpty() && !names.contains(order.getProperty()))
+                throw new IllegalArgumentException("Order by must name a selected column: " + order.getProperty());
+        }
+    }
+
+    /**
+     * Các row kết quả (tên cột -> giá trị, theo thứ tự cột của select) tính từ rows đã lọc, chưa sắp xếp.
+     * types trả về kiểu khai báo của thuộc tính, dùng để so sánh min/max
+     */
+    List<Map<String, Object>> evaluate(List<?> rows, Function<String, Class<?>> types) {
+        if (columns.isEmpty()) {
+            List<Map<String, Object>> result = new ArrayList<>(rows.size());
+            for (Object row : rows) {
+                Map<String, Object> values = new LinkedHashMap<>();
+                for (Map.Entry<?, ?> e : ((Map<?, ?>) row).entrySet()) {
+                    String property = String.valueOf(e.getKey());
+                    if (!property.startsWith("_"))
+                        values.put(property, e.getValue());
+                }
+                result.add(values);
+            }
+            return result;
+        }
+        if (!isAggregate()) {
+            List<Map<String, Object>> result = new ArrayList<>(rows.size());
+            for (Object row : rows) {
+                Map<String, Object> values = new LinkedHashMap<>();
+                for (Column column : columns) {
+                    values.put(column.name, PropertyIndex.valueOf(row, column.property));
+                }
+                result.add(values);
+            }
+            return result;
+        }
+
+        OrderedType[] orderedTypes = new OrderedType[columns.size()];
+        for (int i = 0; i < columns.size(); i++) {
+            Column column = columns.get(i);
+            orderedTypes[i] = column.property != null ? OrderedType.of(types.apply(column.property)) : null;
+        }
+        // Nhóm theo thứ tự gặp lần đầu; không group by thì chỉ có một nhóm kể cả khi không có row
+        Map<List<Object>, Accumulator[]> groups = new LinkedHashMap<>();
+        if (groupBy.isEmpty())
+            groups.put(List.of(), accumulators(orderedTypes));
+        for (Object row : rows) {
+            List<Object> key = new ArrayList<>(groupBy.size());
+            for (String property : groupBy) {
+                key.add(PropertyIndex.valueOf(row, property));
+            }
+            Accumulator[] accumulators = groups.computeIfAbsent(key, k -> accumulators(orderedTypes));
+            for (Accumulator accumulator : accumulators) {
+                if (accumulator == null)
+                    continue;
+                if (accumulator.getProperty() == null)
+                    accumulator.addRow();
+                else
+                    accumulator.add(PropertyIndex.valueOf(row, accumulator.getProperty()));
+            }
+        }
+
+        List<Map<String, Object>> result = new ArrayList<>(groups.size());
+        for (Map.Entry<List<Object>, Accumulator[]> group : groups.entrySet()) {
+            Map<String, Object> values = new LinkedHashMap<>();
+            for (int i = 0; i < columns.size(); i++) {
+                Column column = columns.get(i);
+                values.put(column.name, column.isAggregate()
+                        ? group.getValue()[i].result()
+                        : group.getKey().get(groupBy.indexOf(column.property)));
+            }
+            result.add(values);
+        }
+        return result;
+    }
+
+    private Accumulator[] accumulators(OrderedType[] orderedTypes) {
+        Accumulator[] accumulators = new Accumulator[columns.size()];
+        for (int i = 0; i < columns.size(); i++) {
+            Column column = columns.get(i);
+            if (column.isAggregate())
+                accumulators[i] = new Accumulator(column.function, column.property, orderedTypes[i]);
+        }
+        return accumulators;
+    }
+
+    /**
+     * Đọc query theo kiểu đệ quy xuống; token là từ, số, 'chuỗi', :tham số hoặc ký hiệu
+     */
+    private static final class Parser {
+
+        private final String text;
+        private final Map<String, Object> parameters;
+        private int position;
+
+        Parser(String text, Map<String, Object> parameters) {
+            this.text = text;
+            this.parameters = parameters;
+        }
+
+        ValueQuery query() {
+            String first = peek();
+            if (!isKeyword(first, "select")) {
+                // Chỉ tên entity như trước
+                String entity = identifier();
+                end();
+                return new ValueQuery(entity, List.of(), Map.of(), List.of(), List.of());
+            }
+            next();
+            List<Column> columns = new ArrayList<>();
+            if (accept("*")) {
+                // select *
+            } else {
+                do {
+                    columns.add(column());
+                } while (accept(","));
+            }
+            expectKeyword("from");
+            String entity = identifier();
+            Map<String, Object> filters = Map.of();
+            if (acceptKeyword("where"))
+                filters = or();
+            List<String> groupBy = new ArrayList<>();
+            if (acceptKeyword("group")) {
+                expectKeyword("by");
+                do {
+                    groupBy.add(identifier());
+                } while (accept(","));
+            }
+            List<RowSort.Order> orderBy = new ArrayList<>();
+            if (acceptKeyword("order")) {
+                expectKeyword("by");
+                do {
+                    String name = columnName();
+                    boolean descending = acceptKeyword("desc");
+                    if (!descending)
+                        acceptKeyword("asc");
+                    orderBy.add(new RowSort.Order(name, descending));
+                } while (accept(","));
+            }
+            end();
+            return new ValueQuery(entity, columns, filters, groupBy, orderBy);
+        }
+
+        private Column column() {
+            String name = identifier();
+            String function = name.toLowerCase(Locale.ROOT);
+            Column column;
+            if (Accumulator.FUNCTIONS.contains(function) && accept("(")) {
+                String property = accept("*") ? null : identifier();
+                if (property == null && !function.equals("count"))
+                    throw error(function + "(*) is not supported");
+                expect(")");
+                column = new Column(function, property, null);
+            } else {
+                column = new Column(null, name, null);
+            }
+            if (acceptKeyword("as"))
+                return new Column(column.function, column.property, identifier());
+            return column;
+        }
+
+        /**
+         * Tên cột trong order by: alias, thuộc tính hoặc dạng hàm "sum(price)"
+         */
+        private String columnName() {
+            String name = identifier();
+            String function = name.toLowerCase(Locale.ROOT);
+            if (Accumulator.FUNCTIONS.contains(function) && accept("(")) {
+                String property = accept("*") ? "*" : identifier();
+                expect(")");
+                return function + "(" + property + ")";
+            }
+            return name;
+        }
+
+        private Map<String, Object> or() {
+            List<Map<String, Object>> parts = new ArrayList<>();
+            parts.add(and());
+            while (acceptKeyword("or"))
+                parts.add(and());
+            return parts.size() == 1 ? parts.get(0) : Map.of("or", parts);
+        }
+
+        private Map<String, Object> and() {
+            List<Map<String, Object>> parts = new ArrayList<>();
+            parts.add(unary());
+            while (acceptKeyword("and"))
+                parts.add(unary());
+            return parts.size() == 1 ? parts.get(0) : Map.of("and", parts);
+        }
+
+        private Map<String, Object> unary() {
+            if (acceptKeyword("not"))
+                return Map.of("not", unary());
+            if (accept("(")) {
+                Map<String, Object> filters = or();
+                expect(")");
+                return filters;
+            }
+            return predicate();
+        }
+
+        private Map<String, Object> predicate() {
+            String property = identifier();
+            if (acceptKeyword("is")) {
+                boolean not = acceptKeyword("not");
+                expectKeyword("null");
+                return filter(property, "isNull", !not);
+            }
+            boolean not = acceptKeyword("not");
+            Map<String, Object> filter;
+            if (acceptKeyword("in")) {
+                filter = filter(property, "in", values());
+            } else if (acceptKeyword("like")) {
+                filter = like(property, value());
+            } else if (acceptKeyword("between")) {
+                Object from = value();
+                expectKeyword("and");
+                List<Object> range = new ArrayList<>();
+                range.add(from);
+                range.add(value());
+                filter = filter(property, "between", range);
+            } else if (not) {
+                throw error("Expected in, like or between after not");
+            } else {
+                String operator = comparison();
+                Object value = value();
+                if (value == null && (operator.equals("eq") || operator.equals("ne")))
+                    filter = filter(property, "isNull", operator.equals("eq"));
+                else
+                    filter = filter(property, operator, value);
+            }
+            return not ? Map.of("not", filter) : filter;
+        }
+
+        private String comparison() {
+            String symbol = next();
+            return switch (symbol) {
+                case "=" -> "eq";
+                case "<>", "!=" -> "ne";
+                case ">" -> "gt";
+                case ">=" -> "gte";
+                case "<" -> "lt";
+                case "<=" -> "lte";
+                default -> throw error("Expected comparison operator but found " + symbol);
+            };
+        }
+
+        private Map<String, Object> like(String property, Object pattern) {
+            if (!(pattern instanceof String text))
+                throw error("Pattern of like must be a string");
+            boolean leading = text.startsWith("%");
+            boolean trailing = text.length() > (leading ? 1 : 0) && text.endsWith("%");
+            String body = text.substring(leading ? 1 : 0, text.length() - (trailing ? 1 : 0));
+            if (body.contains("%") || body.contains("_"))
+                throw error("Unsupported like pattern: " + text);
+            if (leading && trailing)
+                return filter(property, "contains", body);
+            if (leading)
+                return filter(property, "endsWith", body);
+            if (trailing)
+                return filter(property, "startsWith", body);
+            return filter(property, "eq", body);
+        }
+
+        private static Map<String, Object> filter(String property, String operator, Object operand) {
+            Map<String, Object> operators = new HashMap<>();
+            operators.put(operator, operand);
+            return Map.of(property, operators);
+        }
+
+        /**
+         * Danh sách giá trị trong ngoặc, hoặc một tham số chứa danh sách
+         */
+        private List<Object> values() {
+            List<Object> values = new ArrayList<>();
+            if (!accept("(")) {
+                Object value = value();
+                if (value instanceof Iterable<?> items) {
+                    items.forEach(values::add);
+                    return values;
+                }
+                throw error("Expected list of values after in");
+            }
+            do {
+                values.add(value());
+            } while (accept(","));
+            expect(")");
+            return values;
+        }
+
+        private Object value() {
+            String token = next();
+            if (token == null)
+                throw error("Expected value but reached end of query");
+            if (token.startsWith("'"))
+                return token.substring(1, token.length() - 1).replace("''", "'");
+            if (token.startsWith(":")) {
+                String name = token.substring(1);
+                if (!parameters.containsKey(name))
+                    throw error("Missing value for parameter " + name);
+                return parameters.get(name);
+            }
+            if (token.equals("-") || Character.isDigit(token.charAt(0))) {
+                String number = token.equals("-") ? "-" + next() : token;
+                try {
+                    return number.contains(".") || number.contains("e") || number.contains("E")
+                            ? new BigDecimal(number) : (Object) Long.parseLong(number);
+                } catch (NumberFormatException e) {
+                    throw error("Invalid number " + number);
+                }
+            }
+            if (isKeyword(token, "null"))
+                return null;
+            if (isKeyword(token, "true") || isKeyword(token, "false"))
+                return Boolean.parseBoolean(token.toLowerCase(Locale.ROOT));
+            throw error("Expected value but found " + token);
+        }
+
+        private String identifier() {
+            String token = next();
+            if (token == null || !(Character.isLetter(token.charAt(0)) || token.charAt(0) == '_'))
+                throw error("Expected name but found " + (token != null ? token : "end of query"));
+            return token;
+        }
+
+        private void expect(String symbol) {
+            if (!accept(symbol))
+                throw error("Expected " + symbol + " but found " + Objects.requireNonNullElse(peek(), "end of query"));
+        }
+
+        private void expectKeyword(String keyword) {
+            if (!acceptKeyword(keyword))
+                throw error("Expected " + keyword + " but found " + Objects.requireNonNullElse(peek(), "end of query"));
+        }
+
+        private boolean accept(String symbol) {
+            if (symbol.equals(peek())) {
+                next();
+                return true;
+            }
+            return false;
+        }
+
+        private boolean acceptKeyword(String keyword) {
+            if (isKeyword(peek(), keyword)) {
+                next();
+                return true;
+            }
+            return false;
+        }
+
+        private static boolean isKeyword(String token, String keyword) {
+            return token != null && token.equalsIgnoreCase(keyword);
+        }
+
+        private void end() {
+            if (peek() != null)
+                throw error("Unexpected " + peek());
+        }
+
+        private String peek() {
+            int saved = position;
+            String token = next();
+            position = saved;
+            return token;
+        }
+
+        private String next() {
+            while (position < text.length() && Character.isWhitespace(text.charAt(position)))
+                position++;
+            if (position >= text.length())
+                return null;
+            int start = position;
+            char c = text.charAt(position);
+            if (c == '\'') {
+                position++;
+                while (true) {
+                    if (position >= text.length())
+                        throw error("Unterminated string");
+                    if (text.charAt(position) == '\'') {
+                        if (position + 1 < text.length() && text.charAt(position + 1) == '\'') {
+                            position += 2;
+                            continue;
+                        }
+                        position++;
+                        break;
+                    }
+                    position++;
+                }
+            } else if (Character.isLetterOrDigit(c) || c == '_' || c == ':') {
+                position++;
+                while (position < text.length() && (Character.isLetterOrDigit(text.charAt(position))
+                        || text.charAt(position) == '_' || text.charAt(position) == '.'))
+                    position++;
+            } else if ((c == '<' || c == '>' || c == '!') && position + 1 < text.length()
+                    && (text.charAt(position + 1) == '=' || (c == '<' && text.charAt(position + 1) == '>'))) {
+                position += 2;
+            } else {
+                position++;
+            }
+            return text.substring(start, position);
+        }
+
+        private IllegalArgumentException error(String message) {
+            return new IllegalArgumentException(message + " (value query: " + text + ")");
+        }
+    }
+}
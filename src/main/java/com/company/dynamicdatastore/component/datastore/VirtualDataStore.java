@@ -1,24 +1,92 @@
 package com.company.dynamicdatastore.component.datastore;
 
+import com.company.dynamicdatastore.component.entity.VirtualEntityDefinition;
+import com.company.dynamicdatastore.component.storage.ColumnarRowStore;
+import com.company.dynamicdatastore.component.storage.HeapRowStore;
+import com.company.dynamicdatastore.component.storage.LayeredRowStore;
+import com.company.dynamicdatastore.component.storage.OffHeapRowStore;
+import com.company.dynamicdatastore.component.storage.RowStore;
+import com.company.dynamicdatastore.component.storage.StorageMode;
 import io.jmix.core.LoadContext;
 import io.jmix.core.Metadata;
 import io.jmix.core.SaveContext;
+import io.jmix.core.Sort;
 import io.jmix.core.ValueLoadContext;
 import io.jmix.core.datastore.AbstractDataStore;
 import io.jmix.core.entity.EntityValues;
+import io.jmix.core.entity.KeyValueEntity;
+import io.jmix.core.querycondition.Condition;
 
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
 
 public class VirtualDataStore extends AbstractDataStore {
 
-    private final Map<String, List<Object>> storeData = new ConcurrentHashMap<>();
+    /**
+     * Handle trả về khi tham gia transaction đang mở, commit/rollback của nó do transaction ngoài quyết định
+     */
+    private static final Object JOINED = new Object();
+
+    private final Map<String, EntityPartition> storeData = new ConcurrentHashMap<>();
+    private final Map<String, VirtualEntityDefinition> definitions = new ConcurrentHashMap<>();
     private final String storeName;
     private final Metadata metadata;
+    private final StorageMode storageMode;
+    private final AtomicLong versionClock = new AtomicLong();
+    private final ThreadLocal<SaveTransaction> activeTransaction = new ThreadLocal<>();
+    private final List<StoreChangeListener> listeners = new CopyOnWriteArrayList<>();
+    private final MemoryBudget memoryBudget;
+    private final ParallelScan scanner;
+    private volatile int scanParallelism;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder spills = new LongAdder();
+    private final LongAdder reloads = new LongAdder();
+    private final EntityPartition.Journal journal = new EntityPartition.Journal() {
+        @Override
+        public boolean isEnabled() {
+            return !listeners.isEmpty();
+        }
+
+        @Override
+        public void record(long version, List<EntityChange> changes) {
+            for (StoreChangeListener listener : listeners) {
+                listener.onChanges(version, changes);
+            }
+        }
+    };
 
     public VirtualDataStore(String storeName, Metadata metadata) {
+        this(storeName, metadata, StorageMode.HEAP);
+    }
+
+    public VirtualDataStore(String storeName, Metadata metadata, StorageMode storageMode) {
+        this(storeName, metadata, storageMode, null);
+    }
+
+    /**
+     * Store có giới hạn bộ nhớ: khi vượt giới hạn, rows của các entity ít được truy cập được spill ra file
+     */
+    public VirtualDataStore(String storeName, Metadata metadata, StorageMode storageMode, MemoryBudget memoryBudget) {
+        this(storeName, metadata, storageMode, memoryBudget, ParallelScan.SEQUENTIAL);
+    }
+
+    /**
+     * scanner quét song song các entity lớn (xem scan)
+     */
+    public VirtualDataStore(String storeName, Metadata metadata, StorageMode storageMode, MemoryBudget memoryBudget,
+                            ParallelScan scanner) {
         this.storeName = storeName;
         this.metadata = metadata;
+        this.storageMode = storageMode;
+        this.memoryBudget = memoryBudget;
+        this.scanner = scanner;
     }
 
     @Override
@@ -31,24 +99,119 @@ public class VirtualDataStore extends AbstractDataStore {
         // no-op
     }
 
+    public StorageMode getStorageMode() {
+        return storageMode;
+    }
+
+    /**
+     * Số thread tối đa cho một lần quét của store này, 0 là theo cấu hình chung, 1 là luôn quét tuần tự
+     */
+    public int getScanParallelism() {
+        return scanParallelism;
+    }
+
+    public void setScanParallelism(int scanParallelism) {
+        if (scanParallelism < 0)
+            throw new IllegalArgumentException("scanParallelism must be >= 0: " + scanParallelism);
+        this.scanParallelism = scanParallelism;
+    }
+
+    /**
+     * Áp mapper lên từng row (thường là lọc: trả về null để bỏ row), giữ thứ tự của rows.
+     * Danh sách lớn được chia đoạn và quét song song, mapper phải an toàn khi gọi từ nhiều thread
+     */
+    public <T, R> List<R> scan(List<T> rows, Function<? super T, ? extends R> mapper) {
+        return scanner.collect(rows, scanParallelism, mapper);
+    }
+
+    /**
+     * Số row thỏa test, quét song song như scan
+     */
+    public <T> long count(List<T> rows, Predicate<? super T> test) {
+        return scanner.count(rows, scanParallelism, test);
+    }
+
     // --- Load operations ---
     @Override
     protected Object loadOne(LoadContext<?> context) {
-        List<Object> list = storeData.getOrDefault(context.getEntityMetaClass().getName(), Collections.emptyList());
-        return list.stream()
-                .filter(e -> Objects.equals(EntityValues.getId(e), context.getId()))
-                .findFirst()
-                .orElse(null);
+        return read(context.getEntityMetaClass().getName(), context.getId());
     }
 
+    /**
+     * Tôn trọng điều kiện (xem load), firstResult/maxResults/sort của LoadContext: trang được lấy bằng top-K (xem RowSort)
+     */
     @Override
     protected List<Object> loadAll(LoadContext<?> context) {
-        return new ArrayList<>(storeData.getOrDefault(context.getEntityMetaClass().getName(), Collections.emptyList()));
+        String entityName = context.getEntityMetaClass().getName();
+        LoadContext.Query query = context.getQuery();
+        if (query == null)
+            // Jmix có thể sửa danh sách trả về nên chép từ snapshot
+            return new ArrayList<>(loadAllEntities(entityName));
+        List<Object> rows = load(entityName, query.getCondition(), query.getParameters());
+        RowSort sort = sortOf(entityName, query.getSort());
+        int limit = query.getMaxResults() > 0 ? query.getMaxResults() : -1;
+        if (sort.isEmpty() && query.getFirstResult() == 0 && limit < 0)
+            return new ArrayList<>(rows);
+        List<Object> page = new ArrayList<>();
+        for (int index : sort.page(rows, -1, query.getFirstResult(), limit)) {
+            page.add(rows.get(index));
+        }
+        return page;
+    }
+
+    private RowSort sortOf(String entityName, Sort sort) {
+        List<RowSort.Order> orders = new ArrayList<>();
+        if (sort != null && sort.getOrders() != null) {
+            for (Sort.Order order : sort.getOrders()) {
+                orders.add(new RowSort.Order(order.getProperty(), order.getDirection() == Sort.Direction.DESC));
+            }
+        }
+        return new RowSort(orders, QueryFilter.typesOf(definitions.get(entityName)));
     }
 
+    /**
+     * Đếm số row thỏa điều kiện mà không tạo danh sách kết quả
+     */
     @Override
     protected long countAll(LoadContext<?> context) {
-        return storeData.getOrDefault(context.getEntityMetaClass().getName(), Collections.emptyList()).size();
+        LoadContext.Query query = context.getQuery();
+        return count(context.getEntityMetaClass().getName(),
+                query != null ? query.getCondition() : null, query != null ? query.getParameters() : null);
+    }
+
+    /**
+     * Rows của snapshot hiện tại thỏa điều kiện Jmix (PropertyCondition/LogicalCondition), theo thứ tự chèn.
+     * Điều kiện được dịch sang bộ lọc của query nên được lọc và dùng chỉ mục như query qua REST (xem QueryPlanner)
+     */
+    List<Object> load(String entityName, Condition condition, Map<String, Object> parameters) {
+        return select(entityName, JmixConditions.toFilters(condition, parameters));
+    }
+
+    long count(String entityName, Condition condition, Map<String, Object> parameters) {
+        return count(entityName, JmixConditions.toFilters(condition, parameters));
+    }
+
+    private List<Object> select(String entityName, Map<String, Object> filters) {
+        EntitySnapshot snapshot = snapshot(entityName);
+        if (filters.isEmpty())
+            return snapshot.getRows();
+        QueryFilter filter = QueryFilter.compile(filters, QueryFilter.typesOf(definitions.get(entityName)));
+        List<Map<String, Object>> rows = new QueryPlanner(this, entityName, snapshot)
+                .execute(filters, filter, VirtualDataStore::asMap).getRows();
+        return new ArrayList<>(rows);
+    }
+
+    private long count(String entityName, Map<String, Object> filters) {
+        EntitySnapshot snapshot = snapshot(entityName);
+        if (filters.isEmpty())
+            return snapshot.size();
+        QueryFilter filter = QueryFilter.compile(filters, QueryFilter.typesOf(definitions.get(entityName)));
+        return new QueryPlanner(this, entityName, snapshot).count(filters, filter, VirtualDataStore::asMap);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> asMap(Object row) {
+        return (Map<String, Object>) row;
     }
 
     // --- Save/Delete operations ---
@@ -56,7 +219,7 @@ public class VirtualDataStore extends AbstractDataStore {
     protected Set<Object> saveAll(SaveContext context) {
         Set<Object> result = new HashSet<>();
         for (Object entity : context.getEntitiesToSave()) {
-            storeData.computeIfAbsent(metadata.getClass(entity).getName(), k -> new ArrayList<>()).add(entity);
+            write(metadata.getClass(entity).getName(), EntityValues.getId(entity), entity);
             result.add(entity);
         }
         return result;
@@ -66,44 +229,142 @@ public class VirtualDataStore extends AbstractDataStore {
     protected Set<Object> deleteAll(SaveContext context) {
         Set<Object> result = new HashSet<>();
         for (Object entity : context.getEntitiesToRemove()) {
-            List<Object> list = storeData.get(metadata.getClass(entity).getName());
-            if (list != null) {
-                list.removeIf(e -> Objects.equals(EntityValues.getId(e), EntityValues.getId(entity)));
-            }
+            delete(metadata.getClass(entity).getName(), EntityValues.getId(entity));
             result.add(entity);
         }
         return result;
     }
 
     // --- Values API (KeyValueEntity) ---
+
+    /**
+     * Query giá trị (xem ValueQuery) tính trên snapshot hiện tại: where cùng điều kiện Jmix của query được lọc qua
+     * QueryPlanner, sau đó group by/hàm gộp, order by (sort của query nếu có) và firstResult/maxResults.
+     * Mỗi row là một KeyValueEntity; tên giá trị lấy từ properties của context theo thứ tự cột, không có thì là tên cột
+     */
     @Override
     protected List<Object> loadAllValues(ValueLoadContext context) {
-        return new ArrayList<>(storeData.getOrDefault(context.getQuery().getQueryString(), Collections.emptyList()));
+        ValueLoadContext.Query query = context.getQuery();
+        ValueQuery valueQuery = ValueQuery.parse(query.getQueryString(), query.getParameters());
+        List<String> properties = valueNames(valueQuery, context.getProperties());
+        List<Map<String, Object>> rows = values(valueQuery, query.getCondition(), query.getParameters());
+
+        List<RowSort.Order> orders = valueQuery.getOrderBy();
+        Sort sort = query.getSort();
+        if (sort != null && sort.getOrders() != null && !sort.getOrders().isEmpty()) {
+            orders = new ArrayList<>();
+            for (Sort.Order order : sort.getOrders()) {
+                int column = properties != null ? properties.indexOf(order.getProperty()) : -1;
+                orders.add(new RowSort.Order(column >= 0 ? valueQuery.getColumns().get(column).getName() : order.getProperty(),
+                        order.getDirection() == Sort.Direction.DESC));
+            }
+        }
+        RowSort rowSort = new RowSort(orders, QueryFilter.typesOf(definitions.get(valueQuery.getEntityName())));
+        int limit = query.getMaxResults() > 0 ? query.getMaxResults() : -1;
+        List<Object> result = new ArrayList<>();
+        for (int index : rowSort.page(rows, -1, query.getFirstResult(), limit)) {
+            result.add(keyValue(rows.get(index), properties));
+        }
+        return result;
     }
 
+    /**
+     * Số row của query giá trị, bỏ qua phân trang. Query không gộp chỉ đếm row thỏa bộ lọc
+     */
     @Override
     protected long countAllValues(ValueLoadContext context) {
-        return storeData.getOrDefault(context.getQuery().getQueryString(), Collections.emptyList()).size();
+        ValueLoadContext.Query query = context.getQuery();
+        ValueQuery valueQuery = ValueQuery.parse(query.getQueryString(), query.getParameters());
+        if (!valueQuery.isAggregate())
+            return count(valueQuery.getEntityName(), valueFilters(valueQuery, query.getCondition(), query.getParameters()));
+        return values(valueQuery, query.getCondition(), query.getParameters()).size();
+    }
+
+    /**
+     * Các row kết quả của query giá trị (tên cột -> giá trị), chưa sắp xếp và phân trang
+     */
+    List<Map<String, Object>> values(ValueQuery query, Condition condition, Map<String, Object> parameters) {
+        String entityName = query.getEntityName();
+        List<Object> rows = select(entityName, valueFilters(query, condition, parameters));
+        return query.evaluate(rows, QueryFilter.typesOf(definitions.get(entityName)));
     }
 
-    // --- Transaction mocks ---
+    private static Map<String, Object> valueFilters(ValueQuery query, Condition condition, Map<String, Object> parameters) {
+        Map<String, Object> conditionFilters = JmixConditions.toFilters(condition, parameters);
+        if (conditionFilters.isEmpty())
+            return query.getFilters();
+        if (query.getFilters().isEmpty())
+            return conditionFilters;
+        return Map.of("and", List.of(query.getFilters(), conditionFilters));
+    }
+
+    /**
+     * properties của ValueLoadContext đặt tên cho các cột theo thứ tự; null là dùng tên cột
+     */
+    private static List<String> valueNames(ValueQuery query, List<String> properties) {
+        if (properties == null || properties.isEmpty() || query.getColumns().isEmpty())
+            return null;
+        if (properties.size() != query.getColumns().size())
+            throw new IllegalArgumentException("Value query selects " + query.getColumns().size()
+                    + " columns but " + properties.size() + " properties were requested");
+        return properties;
+    }
+
+    private static KeyValueEntity keyValue(Map<String, Object> values, List<String> properties) {
+        KeyValueEntity entity = new KeyValueEntity();
+        int i = 0;
+        for (Map.Entry<String, Object> value : values.entrySet()) {
+            entity.setValue(properties != null ? properties.get(i++) : value.getKey(), value.getValue());
+        }
+        return entity;
+    }
+
+    // --- Transactions ---
     @Override
     protected Object beginLoadTransaction(boolean joinTransaction) {
         return new Object();
     }
 
+    /**
+     * Mở bộ đệm ghi gắn với thread hiện tại: saveAll/deleteAll (và saveEntity/deleteEntity/updateEntity
+     * gọi trên cùng thread) chỉ ghi vào bộ đệm cho tới khi commit.
+     * Khi joinTransaction và đã có transaction đang mở thì dùng chung transaction đó.
+     */
     @Override
     protected Object beginSaveTransaction(boolean joinTransaction) {
-        return new Object();
+        SaveTransaction outer = activeTransaction.get();
+        if (joinTransaction && outer != null)
+            return JOINED;
+        SaveTransaction transaction = new SaveTransaction(outer);
+        activeTransaction.set(transaction);
+        return transaction;
     }
 
     @Override
     protected void commitTransaction(Object transaction) {
-        // no-op
+        if (!(transaction instanceof SaveTransaction))
+            return;
+        SaveTransaction tx = (SaveTransaction) transaction;
+        if (tx.isCompleted())
+            return;
+        try {
+            publish(tx.getChanges());
+        } finally {
+            end(tx);
+        }
+        afterChanges();
     }
 
+    /**
+     * Bỏ bộ đệm ghi. Jmix luôn gọi rollback trong finally nên gọi sau commit là no-op.
+     */
     @Override
     protected void rollbackTransaction(Object transaction) {
+        if (!(transaction instanceof SaveTransaction))
+            return;
+        SaveTransaction tx = (SaveTransaction) transaction;
+        if (!tx.isCompleted())
+            end(tx);
     }
 
     @Override
@@ -112,48 +373,641 @@ public class VirtualDataStore extends AbstractDataStore {
         };
     }
 
+    private void end(SaveTransaction tx) {
+        tx.complete();
+        if (activeTransaction.get() == tx) {
+            if (tx.getOuter() != null)
+                activeTransaction.set(tx.getOuter());
+            else
+                activeTransaction.remove();
+        }
+    }
+
+    /**
+     * Áp dụng các thay đổi của nhiều entity với một version duy nhất: khóa các phân vùng theo thứ tự tên,
+     * dựng xong mọi thay đổi rồi mới công bố, nên lỗi giữa chừng không để lại dữ liệu dở dang.
+     */
+    private void publish(Map<String, Map<Object, Object>> changes) {
+        if (changes.isEmpty())
+            return;
+        // Tạo đủ phân vùng trước khi khóa: tạo phân vùng cần khóa definitions
+        List<EntityPartition> targets = new ArrayList<>(changes.size());
+        for (String entityName : changes.keySet()) {
+            targets.add(partition(entityName));
+        }
+        List<EntityPartition> partitions = new ArrayList<>(changes.size());
+        List<Long> stamps = new ArrayList<>(changes.size());
+        try {
+            List<EntityPartition.Batch> batches = new ArrayList<>(changes.size());
+            int i = 0;
+            for (Map<Object, Object> entityChanges : changes.values()) {
+                EntityPartition partition = targets.get(i++);
+                stamps.add(partition.lockWrite());
+                partitions.add(partition);
+                batches.add(partition.prepare(entityChanges));
+            }
+            long version = versionClock.incrementAndGet();
+            if (journal.isEnabled()) {
+                List<EntityChange> recorded = new ArrayList<>();
+                for (EntityPartition.Batch batch : batches) {
+                    if (batch.getChanges() != null)
+                        recorded.addAll(batch.getChanges());
+                }
+                journal.record(version, recorded);
+            }
+            for (EntityPartition.Batch batch : batches) {
+                batch.publish(version);
+            }
+        } finally {
+            for (int i = partitions.size() - 1; i >= 0; i--) {
+                partitions.get(i).unlockWrite(stamps.get(i));
+            }
+        }
+    }
+
+    private Object read(String entityName, Object id) {
+        SaveTransaction tx = activeTransaction.get();
+        if (tx != null) {
+            Object staged = tx.get(entityName, id);
+            if (staged != null)
+                return staged != SaveTransaction.DELETED ? staged : null;
+        }
+        EntityPartition partition = readPartition(entityName);
+        return partition != null ? partition.get(id) : null;
+    }
+
+    private void write(String entityName, Object id, Object entity) {
+        SaveTransaction tx = activeTransaction.get();
+        if (tx != null) {
+            tx.put(entityName, id, entity);
+            return;
+        }
+        partition(entityName).put(id, entity);
+        afterChanges();
+    }
+
+    private void delete(String entityName, Object id) {
+        SaveTransaction tx = activeTransaction.get();
+        if (tx != null) {
+            tx.remove(entityName, id);
+            return;
+        }
+        EntityPartition partition = storeData.get(entityName);
+        if (partition != null && partition.remove(id))
+            afterChanges();
+    }
+
+    private void afterChanges() {
+        for (StoreChangeListener listener : listeners) {
+            listener.afterChanges();
+        }
+        if (memoryBudget != null)
+            memoryBudget.afterWrite(this);
+    }
+
+    // --- Snapshot/restore ---
+
+    /**
+     * Snapshot của mọi entity, mỗi snapshot chứa ít nhất mọi thay đổi đã được báo cho listener
+     * trước khi gọi hàm này
+     */
+    public Map<String, EntitySnapshot> stableSnapshots() {
+        Map<String, EntitySnapshot> snapshots = new TreeMap<>();
+        for (Map.Entry<String, EntityPartition> e : storeData.entrySet()) {
+            snapshots.put(e.getKey(), e.getValue().stableSnapshot());
+        }
+        return snapshots;
+    }
+
+    /**
+     * Thay dữ liệu của entity bằng rows khôi phục từ file; các row ghi sau đó được ghi vào RowStore
+     * theo storage mode của store. Gọi khi khởi động, trước khi store nhận thao tác ghi.
+     */
+    public void restoreEntity(String entityName, RowStore rows, List<Object> ids) {
+        EntityPartition partition = newPartition(entityName);
+        partition.restore(new LayeredRowStore(rows, createRowStore(entityName)), ids);
+        EntityPartition previous = storeData.put(entityName, partition);
+        if (previous != null)
+            previous.release();
+    }
+
+    // --- Change listeners ---
+    public void addChangeListener(StoreChangeListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeChangeListener(StoreChangeListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Áp dụng một nhóm thay đổi có thể trên nhiều entity với một version, dùng khi khôi phục dữ liệu
+     */
+    public void apply(List<EntityChange> changes) {
+        Map<String, Map<Object, Object>> grouped = new TreeMap<>();
+        for (EntityChange change : changes) {
+            grouped.computeIfAbsent(change.getEntityName(), k -> new LinkedHashMap<>())
+                    .put(change.getId(), change.isDelete() ? SaveTransaction.DELETED : change.getRow());
+        }
+        publish(grouped);
+        afterChanges();
+    }
+
     // --- Helper methods for registry/diagnostics ---
     public Map<String, Integer> getEntityCounts() {
         Map<String, Integer> map = new HashMap<>();
-        for (Map.Entry<String, List<Object>> e : storeData.entrySet()) {
+        for (Map.Entry<String, EntityPartition> e : storeData.entrySet()) {
             map.put(e.getKey(), e.getValue().size());
         }
         return map;
     }
 
-    public Map<String, Object> getEntityDefinitions() {
-        return Collections.emptyMap();
+    public Map<String, VirtualEntityDefinition> getEntityDefinitions() {
+        return definitions;
+    }
+
+    /**
+     * Giải phóng dữ liệu của tất cả entity, gọi khi store bị xóa khỏi VirtualDataStoreManager
+     */
+    public void release() {
+        for (EntityPartition partition : storeData.values()) {
+            partition.release();
+        }
+        storeData.clear();
+    }
+
+    /**
+     * Bộ nhớ ước tính của rows đang nằm trong bộ nhớ, số entity đã spill và số lần hit/miss/spill/reload
+     */
+    public Map<String, Object> getMemoryStatistics() {
+        long residentBytes = 0;
+        int spilled = 0;
+        for (EntityPartition partition : storeData.values()) {
+            residentBytes += partition.estimatedBytes();
+            if (partition.isSpilled())
+                spilled++;
+        }
+        Map<String, Object> statistics = new LinkedHashMap<>();
+        statistics.put("residentBytes", residentBytes);
+        statistics.put("spilledEntities", spilled);
+        statistics.put("hits", hits.sum());
+        statistics.put("misses", misses.sum());
+        statistics.put("spills", spills.sum());
+        statistics.put("reloads", reloads.sum());
+        return statistics;
+    }
+
+    Collection<EntityPartition> partitions() {
+        return storeData.values();
+    }
+
+    void recordSpill() {
+        spills.increment();
+    }
+
+    void recordReload() {
+        reloads.increment();
+    }
+
+    // --- Entity definitions ---
+
+    /**
+     * Đăng ký definition cho entity. Với storage dạng cột, definition quyết định kiểu các cột
+     * của phân vùng được tạo sau đó; phân vùng đã có dữ liệu giữ nguyên các cột hiện có.
+     */
+    public void registerEntityDefinition(VirtualEntityDefinition definition) {
+        synchronized (definitions) {
+            for (StoreChangeListener listener : listeners) {
+                listener.onDefinitionRegistered(definition);
+            }
+            definitions.put(definition.getEntityName(), definition);
+            syncIndexes(definition.getEntityName());
+        }
+    }
+
+    public VirtualEntityDefinition getEntityDefinition(String entityName) {
+        return definitions.get(entityName);
+    }
+
+    public void removeEntityDefinition(String entityName) {
+        synchronized (definitions) {
+            for (StoreChangeListener listener : listeners) {
+                listener.onDefinitionRemoved(entityName);
+            }
+            definitions.remove(entityName);
+            syncIndexes(entityName);
+        }
+    }
+
+    // --- Secondary indexes ---
+
+    /**
+     * Khai báo chỉ mục trên thuộc tính của entity: chỉ mục có thứ tự nếu definition khai báo thuộc tính
+     * kiểu số/ngày/ngày giờ, chỉ mục băm nếu không. Chỉ mục là một phần của definition
+     * (tạo definition rỗng nếu entity chưa có) nên được lưu cùng definition và dựng lại khi khởi động.
+     */
+    public void createIndex(String entityName, String property) {
+        synchronized (definitions) {
+            VirtualEntityDefinition definition = editableDefinition(entityName);
+            definition.addIndexedProperty(property);
+            registerEntityDefinition(definition);
+        }
+    }
+
+    /**
+     * Bỏ chỉ mục, trả về false nếu thuộc tính không được đánh chỉ mục
+     */
+    public boolean dropIndex(String entityName, String property) {
+        synchronized (definitions) {
+            VirtualEntityDefinition definition = definitions.get(entityName);
+            if (definition == null || !definition.isIndexed(property))
+                return false;
+            VirtualEntityDefinition changed = definition.copy();
+            changed.removeIndexedProperty(property);
+            registerEntityDefinition(changed);
+            return true;
+        }
+    }
+
+    /**
+     * Khai báo chỉ mục văn bản (contains/startsWith/match) trên thuộc tính chuỗi của entity,
+     * lưu cùng definition như createIndex
+     */
+    public void createTextIndex(String entityName, String property) {
+        synchronized (definitions) {
+            VirtualEntityDefinition definition = editableDefinition(entityName);
+            definition.addTextIndexedProperty(property);
+            registerEntityDefinition(definition);
+        }
+    }
+
+    public boolean dropTextIndex(String entityName, String property) {
+        synchronized (definitions) {
+            VirtualEntityDefinition definition = definitions.get(entityName);
+            if (definition == null || !definition.isTextIndexed(property))
+                return false;
+            VirtualEntityDefinition changed = definition.copy();
+            changed.removeTextIndexedProperty(property);
+            registerEntityDefinition(changed);
+            return true;
+        }
+    }
+
+    /**
+     * Bản sao definition của entity (hoặc definition rỗng) để sửa chỉ mục: definition đã đăng ký không bị sửa tại chỗ
+     * nên người đọc đồng thời, listener ném lỗi hay cache gắn với definition cũ đều không thấy thay đổi dở dang
+     */
+    private VirtualEntityDefinition editableDefinition(String entityName) {
+        VirtualEntityDefinition definition = definitions.get(entityName);
+        return definition != null ? definition.copy() : new VirtualEntityDefinition(entityName, storeName);
+    }
+
+    public Set<String> getIndexedProperties(String entityName) {
+        VirtualEntityDefinition definition = definitions.get(entityName);
+        return definition != null ? new TreeSet<>(definition.getIndexedProperties()) : Set.of();
+    }
+
+    /**
+     * Thuộc tính có chỉ mục -> các loại chỉ mục ("hash", "range(NUMBER)", "text") trên thuộc tính đó
+     */
+    public Map<String, List<String>> getIndexTypes(String entityName) {
+        EntityPartition partition = storeData.get(entityName);
+        if (partition != null)
+            return partition.indexTypes();
+        Map<String, List<String>> types = new TreeMap<>();
+        VirtualEntityDefinition definition = definitions.get(entityName);
+        if (definition != null) {
+            for (String property : definition.getIndexedProperties()) {
+                types.computeIfAbsent(property, k -> new ArrayList<>(2))
+                        .add(KeyedIndex.of(property, declaredType(definition, property)).getType());
+            }
+            for (String property : definition.getTextIndexedProperties()) {
+                types.computeIfAbsent(property, k -> new ArrayList<>(2)).add("text");
+            }
+        }
+        return types;
+    }
+
+    /**
+     * Rows của snapshot có thuộc tính bằng value (so sánh không phân biệt hoa thường trên dạng chuỗi)
+     * tra qua chỉ mục băm. Kết quả có thể thừa nên người gọi vẫn phải lọc lại.
+     * Trả về null nếu thuộc tính không có chỉ mục hoặc snapshot không phải snapshot hiện tại của entity.
+     */
+    public List<Object> lookup(String entityName, EntitySnapshot snapshot, String property, Object value) {
+        EntityPartition partition = storeData.get(entityName);
+        return partition != null ? partition.lookup(snapshot, property, value) : null;
+    }
+
+    /**
+     * Rows của snapshot có giá trị thuộc tính trong khoảng [from, to] (cận null là không giới hạn),
+     * theo thứ tự chèn, tra qua chỉ mục có thứ tự. Trả về null nếu thuộc tính không có chỉ mục có thứ tự,
+     * cận không đúng kiểu hoặc snapshot không phải snapshot hiện tại của entity.
+     */
+    public List<Object> range(String entityName, EntitySnapshot snapshot, String property,
+                              Object from, boolean fromInclusive, Object to, boolean toInclusive) {
+        EntityPartition partition = storeData.get(entityName);
+        return partition != null
+                ? partition.range(snapshot, property, from, fromInclusive, to, toInclusive, false, false, Integer.MAX_VALUE)
+                : null;
+    }
+
+    /**
+     * Như range nhưng theo thứ tự giá trị (tăng dần hoặc giảm dần) và tối đa limit row;
+     * limit 1 không có cận cho row có giá trị nhỏ nhất/lớn nhất. Row không có giá trị không được trả về.
+     */
+    public List<Object> orderedScan(String entityName, EntitySnapshot snapshot, String property,
+                                    Object from, boolean fromInclusive, Object to, boolean toInclusive,
+                                    boolean descending, int limit) {
+        EntityPartition partition = storeData.get(entityName);
+        return partition != null
+                ? partition.range(snapshot, property, from, fromInclusive, to, toInclusive, true, descending, limit)
+                : null;
+    }
+
+    /**
+     * Rows ứng viên cho phép tìm văn bản trên thuộc tính, theo thứ tự chèn, tra qua chỉ mục văn bản.
+     * Kết quả có thể thừa nên người gọi vẫn phải lọc lại bằng search.matches. Trả về null nếu thuộc tính
+     * không có chỉ mục văn bản, chuỗi tìm kiếm quá ngắn hoặc snapshot không phải snapshot hiện tại của entity.
+     */
+    public List<Object> search(String entityName, EntitySnapshot snapshot, String property, TextSearch search, String text) {
+        EntityPartition partition = storeData.get(entityName);
+        return partition != null ? partition.search(snapshot, property, search, text) : null;
+    }
+
+    /**
+     * Thống kê (số giá trị khác nhau, tỉ lệ null, min/max) của các thuộc tính có chỉ mục băm/có thứ tự,
+     * được duy trì cùng chỉ mục
+     */
+    public Map<String, PropertyStatistics> getStatistics(String entityName) {
+        EntityPartition partition = storeData.get(entityName);
+        return partition != null ? partition.statistics() : Map.of();
+    }
+
+    /**
+     * Sketch (số giá trị khác nhau, phân vị) theo thuộc tính của entity, duy trì cho mọi thuộc tính
+     * kể cả khi không có chỉ mục. Trả về bản sao gộp được với sketch của store khác.
+     */
+    public Map<String, PropertySketch> getPropertySketches(String entityName) {
+        EntityPartition partition = storeData.get(entityName);
+        return partition != null ? partition.sketches() : Map.of();
+    }
+
+    /**
+     * Tóm tắt sketch (PropertySketch#summary) theo entity -> thuộc tính của store này
+     */
+    public Map<String, Object> getPropertySummaries() {
+        Map<String, Object> properties = new TreeMap<>();
+        for (String entityName : getEntityCounts().keySet()) {
+            Map<String, Object> summaries = new TreeMap<>();
+            getPropertySketches(entityName).forEach((property, sketch) -> summaries.put(property, sketch.summary()));
+            properties.put(entityName, summaries);
+        }
+        return properties;
+    }
+
+    /**
+     * Bản sao sketch của một thuộc tính, null nếu entity chưa có giá trị nào cho thuộc tính
+     */
+    public PropertySketch getPropertySketch(String entityName, String property) {
+        EntityPartition partition = storeData.get(entityName);
+        return partition != null ? partition.sketch(property) : null;
+    }
+
+    /**
+     * Số row ước lượng mà probe trả về qua chỉ mục, -1 nếu không có chỉ mục trả lời được probe
+     * hoặc snapshot không phải snapshot hiện tại của entity
+     */
+    public long estimate(String entityName, EntitySnapshot snapshot, IndexProbe probe) {
+        EntityPartition partition = storeData.get(entityName);
+        return partition != null ? partition.estimate(snapshot, probe) : -1;
+    }
+
+    /**
+     * Bitmap vị trí các row probe trả về qua chỉ mục, để giao/hợp kết quả của nhiều chỉ mục trước khi đọc rows.
+     * Kết quả có thể thừa; null trong các trường hợp như estimate.
+     */
+    public BitSet positions(String entityName, EntitySnapshot snapshot, IndexProbe probe) {
+        EntityPartition partition = storeData.get(entityName);
+        return partition != null ? partition.positions(snapshot, probe) : null;
+    }
+
+    /**
+     * Rows của snapshot tại các vị trí trong bitmap, theo thứ tự chèn
+     */
+    public List<Object> rows(EntitySnapshot snapshot, BitSet positions) {
+        return EntityPartition.rows(snapshot, positions);
+    }
+
+    /**
+     * Đưa chỉ mục của phân vùng về đúng các thuộc tính khai báo trong definition, gọi khi giữ khóa definitions
+     */
+    private void syncIndexes(String entityName) {
+        EntityPartition partition = storeData.get(entityName);
+        if (partition == null)
+            return;
+        VirtualEntityDefinition definition = definitions.get(entityName);
+        Set<String> declared = definition != null ? definition.getIndexedProperties() : Set.of();
+        Set<String> declaredText = definition != null ? definition.getTextIndexedProperties() : Set.of();
+        for (Map.Entry<String, List<String>> e : partition.indexTypes().entrySet()) {
+            boolean text = e.getValue().contains("text");
+            if (text && !declaredText.contains(e.getKey()))
+                partition.dropTextIndex(e.getKey());
+            if (e.getValue().size() > (text ? 1 : 0) && !declared.contains(e.getKey()))
+                partition.dropIndex(e.getKey());
+        }
+        createIndexes(partition, definition);
+    }
+
+    private static void createIndexes(EntityPartition partition, VirtualEntityDefinition definition) {
+        if (definition == null)
+            return;
+        for (String property : definition.getIndexedProperties()) {
+            partition.createIndex(property, declaredType(definition, property));
+        }
+        for (String property : definition.getTextIndexedProperties()) {
+            partition.createTextIndex(property);
+        }
+    }
+
+    private static Class<?> declaredType(VirtualEntityDefinition definition, String property) {
+        VirtualEntityDefinition.VirtualPropertyDefinition declared = definition.getProperty(property);
+        return declared != null ? declared.getType() : null;
+    }
+
+    /**
+     * Bản sao các definition, nhất quán với các thay đổi definition đã được báo cho listener
+     */
+    public List<VirtualEntityDefinition> copyEntityDefinitions() {
+        synchronized (definitions) {
+            return new ArrayList<>(definitions.values());
+        }
     }
 
     // --- Simple entity CRUD for runtime testing ---
     public void saveEntity(String entityName, Object entity) {
-        List<Object> list = storeData.computeIfAbsent(entityName, k -> new ArrayList<>());
         UUID id = getEntityId(entity);
         if (id == null) {
             id = UUID.randomUUID();
             setEntityId(entity, id);
         }
-        final UUID finalId = id;
-        list.removeIf(e -> Objects.equals(getEntityId(e), finalId));
-        list.add(entity);
+        write(entityName, id, entity);
+    }
+
+    /**
+     * Ghi nhiều entity của cùng một loại với một lần khóa và một snapshot mới,
+     * thay vì khóa và công bố lại cho từng entity
+     */
+    public void saveEntities(String entityName, Collection<?> entities) {
+        Map<Object, Object> changes = new LinkedHashMap<>();
+        for (Object entity : entities) {
+            UUID id = getEntityId(entity);
+            if (id == null) {
+                id = UUID.randomUUID();
+                setEntityId(entity, id);
+            }
+            changes.put(id, entity);
+        }
+        SaveTransaction tx = activeTransaction.get();
+        if (tx != null)
+            changes.forEach((id, entity) -> tx.put(entityName, id, entity));
+        else if (!changes.isEmpty()) {
+            partition(entityName).apply(changes);
+            afterChanges();
+        }
+    }
+
+    /**
+     * Gộp các thay đổi vào entity hiện có một cách nguyên tử, id của entity được giữ nguyên.
+     * Row cũ không bị sửa tại chỗ nên các thread đang đọc nó không bị ảnh hưởng.
+     * Trả về null nếu entity không tồn tại.
+     */
+    @SuppressWarnings("unchecked")
+    public Object updateEntity(String entityName, UUID id, Map<String, Object> changes) {
+        UnaryOperator<Object> merge = current -> {
+            if (!(current instanceof Map))
+                throw new IllegalArgumentException("Only map-based entities can be updated by id");
+            Map<String, Object> merged = new HashMap<>((Map<String, Object>) current);
+            if (changes != null)
+                merged.putAll(changes);
+            merged.put("id", id);
+            return merged;
+        };
+        if (activeTransaction.get() != null) {
+            Object current = read(entityName, id);
+            if (current == null)
+                return null;
+            Object merged = merge.apply(current);
+            write(entityName, id, merged);
+            return merged;
+        }
+        EntityPartition partition = storeData.get(entityName);
+        Object updated = partition != null ? partition.update(id, merge) : null;
+        if (updated != null)
+            afterChanges();
+        return updated;
     }
 
+    /**
+     * Danh sách chỉ đọc trên snapshot hiện tại của entity, không chép dữ liệu
+     */
     public List<Object> loadAllEntities(String entityName) {
-        return new ArrayList<>(storeData.getOrDefault(entityName, Collections.emptyList()));
+        return snapshot(entityName).getRows();
+    }
+
+    /**
+     * Snapshot hiện tại của entity
+     */
+    public EntitySnapshot snapshot(String entityName) {
+        EntityPartition partition = readPartition(entityName);
+        return partition != null ? partition.snapshot() : emptySnapshot();
+    }
+
+    /**
+     * Snapshot hiện tại và giữ lại nó để các lần đọc sau (ví dụ phân trang) có thể đọc lại đúng version này
+     */
+    public EntitySnapshot retainSnapshot(String entityName) {
+        EntityPartition partition = readPartition(entityName);
+        return partition != null ? partition.retain() : emptySnapshot();
+    }
+
+    /**
+     * Giữ lại snapshot đã lấy trước đó qua snapshot(entityName), ví dụ khi trang đọc trên nó trả về cursor
+     */
+    public EntitySnapshot retainSnapshot(String entityName, EntitySnapshot snapshot) {
+        EntityPartition partition = readPartition(entityName);
+        return partition != null ? partition.retain(snapshot) : snapshot;
+    }
+
+    /**
+     * Snapshot của entity tại version đã trả về từ retainSnapshot
+     */
+    public EntitySnapshot snapshot(String entityName, long asOfVersion) {
+        EntityPartition partition = readPartition(entityName);
+        if (partition == null)
+            return emptySnapshot();
+        EntitySnapshot snapshot = partition.snapshotAt(asOfVersion);
+        if (snapshot == null)
+            throw new IllegalArgumentException("Snapshot version " + asOfVersion + " is no longer available for entity: " + entityName);
+        return snapshot;
     }
 
     public Object loadEntity(String entityName, UUID id) {
-        List<Object> list = storeData.get(entityName);
-        if (list == null)
-            return null;
-        return list.stream().filter(e -> Objects.equals(getEntityId(e), id)).findFirst().orElse(null);
+        return read(entityName, id);
     }
 
     public void deleteEntity(String entityName, UUID id) {
-        List<Object> list = storeData.get(entityName);
-        if (list == null)
-            return;
-        list.removeIf(e -> Objects.equals(getEntityId(e), id));
+        delete(entityName, id);
+    }
+
+    private EntityPartition partition(String entityName) {
+        EntityPartition partition = storeData.get(entityName);
+        if (partition == null) {
+            // Tạo dưới khóa definitions để không lỡ chỉ mục được khai báo cùng lúc
+            synchronized (definitions) {
+                partition = storeData.computeIfAbsent(entityName, this::newPartition);
+            }
+        }
+        partition.touch();
+        return partition;
+    }
+
+    private EntityPartition newPartition(String entityName) {
+        EntityPartition partition = new EntityPartition(entityName, () -> createRowStore(entityName), versionClock, journal);
+        createIndexes(partition, definitions.get(entityName));
+        return partition;
+    }
+
+    /**
+     * Phân vùng để đọc: ghi nhận hit/miss, rows đã spill có thể được nạp lại vào bộ nhớ
+     */
+    private EntityPartition readPartition(String entityName) {
+        EntityPartition partition = storeData.get(entityName);
+        if (partition == null)
+            return null;
+        partition.touch();
+        if (partition.isSpilled()) {
+            misses.increment();
+            if (memoryBudget != null)
+                memoryBudget.afterMiss(this, partition);
+        } else {
+            hits.increment();
+        }
+        return partition;
+    }
+
+    private EntitySnapshot emptySnapshot() {
+        return new EntitySnapshot(versionClock.get(), new HeapRowStore(), SlotVector.EMPTY, 0);
+    }
+
+    private RowStore createRowStore(String entityName) {
+        switch (storageMode) {
+            case COLUMNAR:
+                return new ColumnarRowStore(definitions.get(entityName));
+            case OFF_HEAP:
+                return new OffHeapRowStore();
+            default:
+                return new HeapRowStore();
+        }
     }
 
     private UUID getEntityId(Object entity) {
@@ -1,6 +1,10 @@
 package com.company.dynamicdatastore.component.datastore;
 
+import com.company.dynamicdatastore.component.persistence.DatabaseWriteBehind;
+import com.company.dynamicdatastore.component.persistence.VirtualStorePersistence;
+import com.company.dynamicdatastore.component.storage.StorageMode;
 import io.jmix.core.Metadata;
+import jakarta.annotation.PostConstruct;
 import org.springframework.stereotype.Component;
 
 import java.util.Map;
@@ -11,19 +15,92 @@ public class VirtualDataStoreManager {
 
     private final Map<String, VirtualDataStore> stores = new ConcurrentHashMap<>();
     private final Metadata metadata;
+    private final VirtualStorePersistence persistence;
+    private final DatabaseWriteBehind writeBehind;
+    private final MemoryBudget memoryBudget;
+    private final ParallelScan scanner;
 
-    public VirtualDataStoreManager(Metadata metadata) {
+    public VirtualDataStoreManager(Metadata metadata, VirtualStorePersistence persistence,
+                                   DatabaseWriteBehind writeBehind, MemoryBudget memoryBudget, ParallelScan scanner) {
         this.metadata = metadata;
+        this.persistence = persistence;
+        this.writeBehind = writeBehind;
+        this.memoryBudget = memoryBudget;
+        this.scanner = scanner;
     }
 
+    /**
+     * Tạo lại các store đã được ghi bền từ lần chạy trước
+     */
+    @PostConstruct
+    public void restoreStores() {
+        persistence.findStores().forEach(this::createStore);
+        // Store đã được khôi phục từ thư mục dữ liệu giữ storage mode của nó
+        writeBehind.findStores().forEach((name, settings) -> {
+            if (!stores.containsKey(name))
+                createStore(name, settings.storageMode(), settings.scanParallelism());
+        });
+    }
+
+    /**
+     * Store hiện có với mọi storage mode, chưa có thì tạo store HEAP
+     */
     public VirtualDataStore createStore(String name) {
-        return stores.computeIfAbsent(name, n -> new VirtualDataStore(n, metadata));
+        return createStore(name, null, null);
+    }
+
+    /**
+     * Tạo store với storage mode chỉ định (null là HEAP nếu phải tạo mới), nếu store đã tồn tại thì trả về store
+     * hiện có; store hiện có với storage mode khác ném IllegalArgumentException
+     */
+    public VirtualDataStore createStore(String name, StorageMode storageMode) {
+        return createStore(name, storageMode, null);
+    }
+
+    /**
+     * Như trên; scanParallelism (null là giữ nguyên) được đặt trước khi store được ghi bền để cấu hình
+     * được khôi phục cùng store
+     */
+    public VirtualDataStore createStore(String name, StorageMode storageMode, Integer scanParallelism) {
+        boolean[] created = new boolean[1];
+        VirtualDataStore store = stores.computeIfAbsent(name, n -> {
+            VirtualDataStore added = new VirtualDataStore(n, metadata,
+                    storageMode != null ? storageMode : StorageMode.HEAP, memoryBudget, scanner);
+            if (scanParallelism != null)
+                added.setScanParallelism(scanParallelism);
+            memoryBudget.register(added);
+            persistence.attach(added);
+            writeBehind.attach(added);
+            created[0] = true;
+            return added;
+        });
+        if (!created[0] && storageMode != null && store.getStorageMode() != storageMode)
+            throw new IllegalArgumentException("Store " + name + " already exists with storage mode "
+                    + store.getStorageMode() + ", requested " + storageMode);
+        if (!created[0] && scanParallelism != null && store.getScanParallelism() != scanParallelism) {
+            store.setScanParallelism(scanParallelism);
+            writeBehind.saveSettings(store);
+        }
+        return store;
     }
 
     public VirtualDataStore getStore(String name) {
         return stores.get(name);
     }
 
+    /**
+     * Xóa store và giải phóng bộ nhớ của nó ngay lập tức
+     */
+    public void removeStore(String name) {
+        VirtualDataStore removed = stores.remove(name);
+        if (removed != null) {
+            persistence.drop(name);
+            writeBehind.drop(name);
+            memoryBudget.unregister(removed);
+            removed.release();
+        }
+    }
+
     public Map<String, VirtualDataStore> getAllStores() {
         return stores;
     }
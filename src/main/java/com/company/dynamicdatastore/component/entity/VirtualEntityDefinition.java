@@ -4,6 +4,8 @@ import java.util.Map;
 import java.util.HashMap;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.Set;
 
 /**
  * Định nghĩa entity ảo runtime với các thuộc tính động
@@ -14,12 +16,16 @@ public class VirtualEntityDefinition {
     private String storeName;
     private Map<String, VirtualPropertyDefinition> properties;
     private List<String> primaryKeyProperties;
+    private Set<String> indexedProperties;
+    private Set<String> textIndexedProperties;
 
     public VirtualEntityDefinition(String entityName, String storeName) {
         this.entityName = entityName;
         this.storeName = storeName;
         this.properties = new HashMap<>();
         this.primaryKeyProperties = new ArrayList<>();
+        this.indexedProperties = new LinkedHashSet<>();
+        this.textIndexedProperties = new LinkedHashSet<>();
     }
 
     public String getEntityName() {
@@ -54,6 +60,52 @@ public class VirtualEntityDefinition {
         this.primaryKeyProperties = primaryKeyProperties;
     }
 
+    /**
+     * Các thuộc tính có chỉ mục băm phụ, dùng cho query lọc theo giá trị bằng
+     */
+    public Set<String> getIndexedProperties() {
+        return indexedProperties;
+    }
+
+    public void setIndexedProperties(Set<String> indexedProperties) {
+        this.indexedProperties = indexedProperties;
+    }
+
+    public void addIndexedProperty(String propertyName) {
+        indexedProperties.add(propertyName);
+    }
+
+    public void removeIndexedProperty(String propertyName) {
+        indexedProperties.remove(propertyName);
+    }
+
+    public boolean isIndexed(String propertyName) {
+        return indexedProperties.contains(propertyName);
+    }
+
+    /**
+     * Các thuộc tính chuỗi có chỉ mục văn bản, dùng cho query contains/startsWith/match
+     */
+    public Set<String> getTextIndexedProperties() {
+        return textIndexedProperties;
+    }
+
+    public void setTextIndexedProperties(Set<String> textIndexedProperties) {
+        this.textIndexedProperties = textIndexedProperties;
+    }
+
+    public void addTextIndexedProperty(String propertyName) {
+        textIndexedProperties.add(propertyName);
+    }
+
+    public void removeTextIndexedProperty(String propertyName) {
+        textIndexedProperties.remove(propertyName);
+    }
+
+    public boolean isTextIndexed(String propertyName) {
+        return textIndexedProperties.contains(propertyName);
+    }
+
     public void addProperty(String name, Class<?> type, boolean nullable) {
         properties.put(name, new VirtualPropertyDefinition(name, type, nullable));
     }
@@ -68,6 +120,54 @@ public class VirtualEntityDefinition {
         }
     }
 
+    /**
+     * Ánh xạ kiểu logic ("string", "integer", "bigdecimal", "localdatetime"...) sang kiểu Java,
+     * kiểu không nhận diện được coi là String
+     */
+    public static Class<?> resolveType(String logicalType) {
+        if (logicalType == null)
+            return String.class;
+        switch (logicalType.trim().toLowerCase()) {
+            case "integer":
+            case "int":
+                return Integer.class;
+            case "long":
+                return Long.class;
+            case "double":
+                return Double.class;
+            case "float":
+                return Float.class;
+            case "bigdecimal":
+                return java.math.BigDecimal.class;
+            case "boolean":
+            case "bool":
+                return Boolean.class;
+            case "uuid":
+                return java.util.UUID.class;
+            case "localdate":
+                return java.time.LocalDate.class;
+            case "localdatetime":
+                return java.time.LocalDateTime.class;
+            case "json":
+                return Object.class;
+            default:
+                return String.class;
+        }
+    }
+
+    /**
+     * Bản sao độc lập (cả các thuộc tính) để sửa rồi đăng ký lại mà không đụng definition đang được dùng
+     */
+    public VirtualEntityDefinition copy() {
+        VirtualEntityDefinition copy = new VirtualEntityDefinition(entityName, storeName);
+        properties.forEach((name, property) -> copy.properties.put(name,
+                new VirtualPropertyDefinition(property.getName(), property.getType(), property.isNullable())));
+        copy.primaryKeyProperties.addAll(primaryKeyProperties);
+        copy.indexedProperties.addAll(indexedProperties);
+        copy.textIndexedProperties.addAll(textIndexedProperties);
+        return copy;
+    }
+
     public VirtualPropertyDefinition getProperty(String name) {
         return properties.get(name);
     }
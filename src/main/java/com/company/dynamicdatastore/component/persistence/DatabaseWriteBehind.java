@@ -0,0 +1,604 @@
+package com.company.dynamicdatastore.component.persistence;
+
+import com.company.dynamicdatastore.component.datastore.EntityChange;
+import com.company.dynamicdatastore.component.datastore.StoreChangeListener;
+import com.company.dynamicdatastore.component.datastore.VirtualDataStore;
+import com.company.dynamicdatastore.component.entity.VirtualEntityDefinition;
+import com.company.dynamicdatastore.component.storage.StorageMode;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ghi bất đồng bộ (write-behind) các thay đổi của VirtualDataStore xuống datasource chính:
+ * row vào bảng VDS_ENTITY_ROW (cột DATA kiểu JSONB), definition vào VDS_ENTITY_DEFINITION, cấu hình store
+ * (storage mode, số thread quét) vào VDS_STORE.
+ * <p>
+ * Thao tác ghi của store chỉ đưa thay đổi vào hàng đợi gộp theo (store, entity, id), nên nhiều lần cập nhật
+ * cùng một id trước lần flush chỉ thành một câu lệnh. Một thread riêng flush khi đủ batchSize thay đổi hoặc
+ * sau flushInterval, dùng addBatch/executeBatch trong một transaction; lỗi thì đưa lại vào hàng đợi và thử lại.
+ * Dữ liệu vẫn được đọc từ bộ nhớ. Tắt mặc định, bật bằng virtual-datastore.write-behind.enabled=true.
+ */
+@Component
+public class DatabaseWriteBehind {
+
+    private static final Logger log = LoggerFactory.getLogger(DatabaseWriteBehind.class);
+
+    private static final String DELETE_ROW =
+            "DELETE FROM VDS_ENTITY_ROW WHERE STORE_NAME = ? AND ENTITY_NAME = ? AND ID = ?";
+    private static final String DELETE_DEFINITION =
+            "DELETE FROM VDS_ENTITY_DEFINITION WHERE STORE_NAME = ? AND ENTITY_NAME = ?";
+    private static final String POSTGRES_UPSERT_ROW =
+            "INSERT INTO VDS_ENTITY_ROW (STORE_NAME, ENTITY_NAME, ID, VERSION, DATA) VALUES (?, ?, ?, ?, CAST(? AS JSONB)) "
+                    + "ON CONFLICT (STORE_NAME, ENTITY_NAME, ID) DO UPDATE SET VERSION = EXCLUDED.VERSION, DATA = EXCLUDED.DATA";
+    private static final String POSTGRES_UPSERT_DEFINITION =
+            "INSERT INTO VDS_ENTITY_DEFINITION (STORE_NAME, ENTITY_NAME, DATA) VALUES (?, ?, CAST(? AS JSONB)) "
+                    + "ON CONFLICT (STORE_NAME, ENTITY_NAME) DO UPDATE SET DATA = EXCLUDED.DATA";
+    private static final String MERGE_ROW =
+            "MERGE INTO VDS_ENTITY_ROW t USING (VALUES (CAST(? AS VARCHAR(255)), CAST(? AS VARCHAR(255)), "
+                    + "CAST(? AS VARCHAR(255)), CAST(? AS BIGINT), CAST(? AS CLOB))) "
+                    + "AS s (STORE_NAME, ENTITY_NAME, ID, VERSION, DATA) "
+                    + "ON t.STORE_NAME = s.STORE_NAME AND t.ENTITY_NAME = s.ENTITY_NAME AND t.ID = s.ID "
+                    + "WHEN MATCHED THEN UPDATE SET t.VERSION = s.VERSION, t.DATA = s.DATA "
+                    + "WHEN NOT MATCHED THEN INSERT (STORE_NAME, ENTITY_NAME, ID, VERSION, DATA) "
+                    + "VALUES (s.STORE_NAME, s.ENTITY_NAME, s.ID, s.VERSION, s.DATA)";
+    private static final String MERGE_DEFINITION =
+            "MERGE INTO VDS_ENTITY_DEFINITION t USING (VALUES (CAST(? AS VARCHAR(255)), CAST(? AS VARCHAR(255)), "
+                    + "CAST(? AS CLOB))) AS s (STORE_NAME, ENTITY_NAME, DATA) "
+                    + "ON t.STORE_NAME = s.STORE_NAME AND t.ENTITY_NAME = s.ENTITY_NAME "
+                    + "WHEN MATCHED THEN UPDATE SET t.DATA = s.DATA "
+                    + "WHEN NOT MATCHED THEN INSERT (STORE_NAME, ENTITY_NAME, DATA) VALUES (s.STORE_NAME, s.ENTITY_NAME, s.DATA)";
+    private static final String POSTGRES_UPSERT_STORE =
+            "INSERT INTO VDS_STORE (STORE_NAME, STORAGE_MODE, SCAN_PARALLELISM) VALUES (?, ?, ?) "
+                    + "ON CONFLICT (STORE_NAME) DO UPDATE SET STORAGE_MODE = EXCLUDED.STORAGE_MODE, "
+                    + "SCAN_PARALLELISM = EXCLUDED.SCAN_PARALLELISM";
+    private static final String MERGE_STORE =
+            "MERGE INTO VDS_STORE t USING (VALUES (CAST(? AS VARCHAR(255)), CAST(? AS VARCHAR(32)), CAST(? AS INT))) "
+                    + "AS s (STORE_NAME, STORAGE_MODE, SCAN_PARALLELISM) ON t.STORE_NAME = s.STORE_NAME "
+                    + "WHEN MATCHED THEN UPDATE SET t.STORAGE_MODE = s.STORAGE_MODE, t.SCAN_PARALLELISM = s.SCAN_PARALLELISM "
+                    + "WHEN NOT MATCHED THEN INSERT (STORE_NAME, STORAGE_MODE, SCAN_PARALLELISM) "
+                    + "VALUES (s.STORE_NAME, s.STORAGE_MODE, s.SCAN_PARALLELISM)";
+    private static final int RESTORE_CHUNK = 1000;
+    private static final long RETRY_DELAY_MILLIS = 1000;
+
+    private final boolean enabled;
+    private final DataSource dataSource;
+    private final int batchSize;
+    private final long flushIntervalNanos;
+    private final int maxPending;
+    private final ObjectMapper mapper = JsonMapper.builder()
+            .addModule(new JavaTimeModule())
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+            .enable(DeserializationFeature.USE_BIG_DECIMAL_FOR_FLOATS)
+            .build();
+    private final Map<String, Listener> listeners = new ConcurrentHashMap<>();
+    private final Object lock = new Object();
+    // Giữ trong suốt một lần ghi xuống database, để drop() không chạy xen giữa
+    private final Object flushLock = new Object();
+    private Map<Key, Pending> pending = new LinkedHashMap<>();
+    private long firstPendingAt;
+    private boolean closed;
+    private Thread flusher;
+
+    public DatabaseWriteBehind(
+            DataSource dataSource,
+            @Value("${virtual-datastore.write-behind.enabled:false}") boolean enabled,
+            @Value("${virtual-datastore.write-behind.batch-size:500}") int batchSize,
+            @Value("${virtual-datastore.write-behind.flush-interval-ms:200}") long flushIntervalMillis,
+            @Value("${virtual-datastore.write-behind.max-pending:100000}") int maxPending) {
+        this.dataSource = dataSource;
+        this.enabled = enabled;
+        this.batchSize = Math.max(1, batchSize);
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis);
+        this.maxPending = Math.max(this.batchSize, maxPending);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Cấu hình được ghi của một store
+     */
+    public record StoreSettings(StorageMode storageMode, int scanParallelism) {
+    }
+
+    /**
+     * Các store có dữ liệu trong database cùng cấu hình của chúng; store chưa có dòng trong VDS_STORE
+     * (ghi trước khi có bảng này) là HEAP với số thread quét theo cấu hình chung
+     */
+    public Map<String, StoreSettings> findStores() {
+        Map<String, StoreSettings> stores = new TreeMap<>();
+        if (!enabled)
+            return stores;
+        try (Connection connection = dataSource.getConnection()) {
+            try (PreparedStatement statement = connection.prepareStatement(
+                    "SELECT STORE_NAME, STORAGE_MODE, SCAN_PARALLELISM FROM VDS_STORE");
+                 ResultSet rs = statement.executeQuery()) {
+                while (rs.next()) {
+                    stores.put(rs.getString(1), new StoreSettings(StorageMode.fromString(rs.getString(2)), rs.getInt(3)));
+                }
+            }
+            try (PreparedStatement statement = connection.prepareStatement(
+                    "SELECT STORE_NAME FROM VDS_ENTITY_DEFINITION UNION SELECT STORE_NAME FROM VDS_ENTITY_ROW");
+                 ResultSet rs = statement.executeQuery()) {
+                while (rs.next()) {
+                    stores.putIfAbsent(rs.getString(1), new StoreSettings(StorageMode.HEAP, 0));
+                }
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("Failed to list virtual stores in database", e);
+        }
+        return stores;
+    }
+
+    /**
+     * Ghi ngay cấu hình của store (storage mode, số thread quét), gọi khi tạo store hoặc đổi cấu hình
+     */
+    public void saveSettings(VirtualDataStore store) {
+        if (!enabled)
+            return;
+        try (Connection connection = dataSource.getConnection()) {
+            boolean postgres = connection.getMetaData().getDatabaseProductName().toLowerCase().contains("postgres");
+            try (PreparedStatement statement = connection.prepareStatement(postgres ? POSTGRES_UPSERT_STORE : MERGE_STORE)) {
+                statement.setString(1, store.getName());
+                statement.setString(2, store.getStorageMode().name());
+                statement.setInt(3, store.getScanParallelism());
+                statement.executeUpdate();
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("Failed to save settings of store " + store.getName(), e);
+        }
+    }
+
+    /**
+     * Nạp dữ liệu từ database nếu store còn trống, sau đó đưa mọi thay đổi của store vào hàng đợi ghi
+     */
+    public void attach(VirtualDataStore store) {
+        if (!enabled)
+            return;
+        if (store.getEntityCounts().isEmpty() && store.getEntityDefinitions().isEmpty())
+            restore(store);
+        saveSettings(store);
+        Listener listener = new Listener(store.getName());
+        listeners.put(store.getName(), listener);
+        store.addChangeListener(listener);
+        synchronized (lock) {
+            if (flusher == null) {
+                flusher = new Thread(this::flushLoop, "vds-write-behind");
+                flusher.setDaemon(true);
+                flusher.start();
+            }
+        }
+    }
+
+    /**
+     * Bỏ các thay đổi đang chờ và xóa dữ liệu của store trong database
+     */
+    public void drop(String storeName) {
+        if (!enabled)
+            return;
+        listeners.remove(storeName);
+        synchronized (flushLock) {
+            synchronized (lock) {
+                pending.keySet().removeIf(key -> key.store.equals(storeName));
+                lock.notifyAll();
+            }
+            try (Connection connection = dataSource.getConnection()) {
+                connection.setAutoCommit(false);
+                try {
+                    for (String table : List.of("VDS_ENTITY_ROW", "VDS_ENTITY_DEFINITION", "VDS_STORE")) {
+                        try (PreparedStatement statement = connection.prepareStatement(
+                                "DELETE FROM " + table + " WHERE STORE_NAME = ?")) {
+                            statement.setString(1, storeName);
+                            statement.executeUpdate();
+                        }
+                    }
+                    connection.commit();
+                } catch (SQLException e) {
+                    connection.rollback();
+                    throw e;
+                }
+            } catch (SQLException e) {
+                throw new IllegalStateException("Failed to delete store " + storeName + " from database", e);
+            }
+        }
+    }
+
+    /**
+     * Ghi ngay mọi thay đổi đang chờ xuống database
+     */
+    public void flush() {
+        synchronized (flushLock) {
+            Map<Key, Pending> batch;
+            synchronized (lock) {
+                batch = pending;
+                pending = new LinkedHashMap<>();
+                lock.notifyAll();
+            }
+            if (batch.isEmpty())
+                return;
+            try {
+                write(batch);
+            } catch (SQLException | RuntimeException e) {
+                synchronized (lock) {
+                    // Thay đổi mới hơn đến trong lúc ghi được giữ lại
+                    batch.putAll(pending);
+                    pending = batch;
+                }
+                throw new IllegalStateException("Write-behind flush failed, " + batch.size() + " changes pending", e);
+            }
+        }
+    }
+
+    public int getPendingCount() {
+        synchronized (lock) {
+            return pending.size();
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        Thread thread;
+        synchronized (lock) {
+            closed = true;
+            lock.notifyAll();
+            thread = flusher;
+        }
+        if (thread != null) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (!enabled)
+            return;
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            log.error("Write-behind changes lost on shutdown", e);
+        }
+    }
+
+    private void enqueue(Key key, Pending value) {
+        synchronized (lock) {
+            if (pending.isEmpty())
+                firstPendingAt = System.nanoTime();
+            // Xóa rồi thêm lại để thứ tự ghi theo lần thay đổi cuối
+            pending.remove(key);
+            pending.put(key, value);
+            if (pending.size() >= batchSize)
+                lock.notifyAll();
+        }
+    }
+
+    /**
+     * Chặn thread ghi khi database không theo kịp, giới hạn bộ nhớ của hàng đợi
+     */
+    private void awaitCapacity() {
+        synchronized (lock) {
+            try {
+                while (pending.size() >= maxPending && !closed) {
+                    lock.notifyAll();
+                    lock.wait(RETRY_DELAY_MILLIS);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void flushLoop() {
+        while (true) {
+            synchronized (lock) {
+                try {
+                    while (!closed && !shouldFlush()) {
+                        if (pending.isEmpty()) {
+                            lock.wait();
+                        } else {
+                            long remaining = flushIntervalNanos - (System.nanoTime() - firstPendingAt);
+                            TimeUnit.NANOSECONDS.timedWait(lock, Math.max(1, remaining));
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (closed)
+                    return;
+            }
+            try {
+                flush();
+            } catch (RuntimeException e) {
+                log.error("Write-behind flush failed, retrying in {} ms", RETRY_DELAY_MILLIS, e);
+                synchronized (lock) {
+                    try {
+                        if (!closed)
+                            lock.wait(RETRY_DELAY_MILLIS);
+                    } catch (InterruptedException ex) {
+                        return;
+                    }
+                }
+            }
+        }
+    }
+
+    private boolean shouldFlush() {
+        return !pending.isEmpty() && (pending.size() >= batchSize
+                || System.nanoTime() - firstPendingAt >= flushIntervalNanos);
+    }
+
+    private void write(Map<Key, Pending> batch) throws SQLException {
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setAutoCommit(false);
+            boolean postgres = connection.getMetaData().getDatabaseProductName().toLowerCase().contains("postgres");
+            try (StatementBatch upsertRows = new StatementBatch(connection, postgres ? POSTGRES_UPSERT_ROW : MERGE_ROW);
+                 StatementBatch deleteRows = new StatementBatch(connection, DELETE_ROW);
+                 StatementBatch upsertDefinitions = new StatementBatch(connection,
+                         postgres ? POSTGRES_UPSERT_DEFINITION : MERGE_DEFINITION);
+                 StatementBatch deleteDefinitions = new StatementBatch(connection, DELETE_DEFINITION)) {
+                for (Map.Entry<Key, Pending> e : batch.entrySet()) {
+                    Key key = e.getKey();
+                    Object value = e.getValue().value;
+                    if (key.id == null) {
+                        if (value == null) {
+                            deleteDefinitions.add(key.store, key.entity);
+                        } else {
+                            upsertDefinitions.add(key.store, key.entity,
+                                    json(StoreRecords.definition((VirtualEntityDefinition) value)));
+                        }
+                    } else if (value == null) {
+                        deleteRows.add(key.store, key.entity, key.id);
+                    } else {
+                        upsertRows.add(key.store, key.entity, key.id, e.getValue().version, json(value));
+                    }
+                }
+                upsertDefinitions.execute();
+                deleteDefinitions.execute();
+                upsertRows.execute();
+                deleteRows.execute();
+                connection.commit();
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            }
+        }
+    }
+
+    private void restore(VirtualDataStore store) {
+        try (Connection connection = dataSource.getConnection()) {
+            try (PreparedStatement statement = connection.prepareStatement(
+                    "SELECT DATA FROM VDS_ENTITY_DEFINITION WHERE STORE_NAME = ? ORDER BY ENTITY_NAME")) {
+                statement.setString(1, store.getName());
+                try (ResultSet rs = statement.executeQuery()) {
+                    while (rs.next()) {
+                        store.registerEntityDefinition(StoreRecords.definition(readMap(rs.getString(1))));
+                    }
+                }
+            }
+            try (PreparedStatement statement = connection.prepareStatement(
+                    "SELECT ENTITY_NAME, ID, DATA FROM VDS_ENTITY_ROW WHERE STORE_NAME = ? ORDER BY ENTITY_NAME, VERSION, ID")) {
+                statement.setString(1, store.getName());
+                statement.setFetchSize(RESTORE_CHUNK);
+                List<EntityChange> changes = new ArrayList<>(RESTORE_CHUNK);
+                int restored = 0;
+                try (ResultSet rs = statement.executeQuery()) {
+                    while (rs.next()) {
+                        String entityName = rs.getString(1);
+                        Map<String, Object> row = readMap(rs.getString(3));
+                        convertTypes(store.getEntityDefinition(entityName), row);
+                        Object id = row.get("id");
+                        changes.add(new EntityChange(entityName, id != null ? id : rs.getString(2), row));
+                        if (changes.size() == RESTORE_CHUNK) {
+                            store.apply(changes);
+                            restored += changes.size();
+                            changes.clear();
+                        }
+                    }
+                }
+                if (!changes.isEmpty()) {
+                    store.apply(changes);
+                    restored += changes.size();
+                }
+                log.info("Virtual store '{}' restored {} rows from database", store.getName(), restored);
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("Failed to restore store " + store.getName() + " from database", e);
+        }
+    }
+
+    /**
+     * JSON không giữ kiểu: đưa id về UUID và giá trị của thuộc tính đã khai báo về kiểu trong definition
+     */
+    private void convertTypes(VirtualEntityDefinition definition, Map<String, Object> row) {
+        Object id = row.get("id");
+        if (id instanceof String) {
+            try {
+                row.put("id", UUID.fromString((String) id));
+            } catch (IllegalArgumentException e) {
+                // id không phải UUID, giữ nguyên
+            }
+        }
+        if (definition == null)
+            return;
+        for (VirtualEntityDefinition.VirtualPropertyDefinition property : definition.getProperties().values()) {
+            Object value = row.get(property.getName());
+            Class<?> type = property.getType();
+            if (value != null && type != null && type != Object.class && !type.isInstance(value)) {
+                try {
+                    row.put(property.getName(), mapper.convertValue(value, type));
+                } catch (IllegalArgumentException e) {
+                    // Giá trị không khớp kiểu đã khai báo, giữ nguyên như khi được lưu
+                }
+            }
+        }
+    }
+
+    private String json(Object value) {
+        try {
+            return mapper.writeValueAsString(value);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Cannot serialize row to JSON: " + e.getOriginalMessage(), e);
+        }
+    }
+
+    private Map<String, Object> readMap(String json) {
+        try {
+            return mapper.readValue(json, new TypeReference<LinkedHashMap<String, Object>>() {
+            });
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Invalid JSON in write-behind table: " + e.getOriginalMessage(), e);
+        }
+    }
+
+    /**
+     * Nhận thay đổi của một store; không làm gì sau khi store đã bị drop
+     */
+    private final class Listener implements StoreChangeListener {
+
+        private final String storeName;
+
+        private Listener(String storeName) {
+            this.storeName = storeName;
+        }
+
+        @Override
+        public void onChanges(long version, List<EntityChange> changes) {
+            if (listeners.get(storeName) != this)
+                return;
+            for (EntityChange change : changes) {
+                // Giống write-ahead log, chỉ row dạng Map được ghi
+                if (!change.isDelete() && !(change.getRow() instanceof Map))
+                    continue;
+                enqueue(new Key(storeName, change.getEntityName(), String.valueOf(change.getId())),
+                        new Pending(change.getRow(), version));
+            }
+        }
+
+        @Override
+        public void onDefinitionRegistered(VirtualEntityDefinition definition) {
+            if (listeners.get(storeName) == this)
+                enqueue(new Key(storeName, definition.getEntityName(), null), new Pending(definition, 0));
+        }
+
+        @Override
+        public void onDefinitionRemoved(String entityName) {
+            if (listeners.get(storeName) == this)
+                enqueue(new Key(storeName, entityName, null), new Pending(null, 0));
+        }
+
+        @Override
+        public void afterChanges() {
+            awaitCapacity();
+        }
+    }
+
+    /**
+     * Khóa gộp thay đổi; id null là definition của entity
+     */
+    private static final class Key {
+
+        private final String store;
+        private final String entity;
+        private final String id;
+
+        private Key(String store, String entity, String id) {
+            this.store = store;
+            this.entity = entity;
+            this.id = id;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o)
+                return true;
+            if (!(o instanceof Key))
+                return false;
+            Key key = (Key) o;
+            return store.equals(key.store) && entity.equals(key.entity) && Objects.equals(id, key.id);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(store, entity, id);
+        }
+    }
+
+    /**
+     * Giá trị mới nhất của khóa, null là xóa
+     */
+    private static final class Pending {
+
+        private final Object value;
+        private final long version;
+
+        private Pending(Object value, long version) {
+            this.value = value;
+            this.version = version;
+        }
+    }
+
+    /**
+     * PreparedStatement gom tham số bằng addBatch, gọi executeBatch mỗi khi đủ batchSize
+     */
+    private final class StatementBatch implements AutoCloseable {
+
+        private final Connection connection;
+        private final String sql;
+        private PreparedStatement statement;
+        private int count;
+
+        private StatementBatch(Connection connection, String sql) {
+            this.connection = connection;
+            this.sql = sql;
+        }
+
+        void add(Object... parameters) throws SQLException {
+            if (statement == null)
+                statement = connection.prepareStatement(sql);
+            for (int i = 0; i < parameters.length; i++) {
+                statement.setObject(i + 1, parameters[i]);
+            }
+            statement.addBatch();
+            if (++count == batchSize)
+                execute();
+        }
+
+        void execute() throws SQLException {
+            if (count > 0) {
+                statement.executeBatch();
+                count = 0;
+            }
+        }
+
+        @Override
+        public void close() throws SQLException {
+            if (statement != null)
+                statement.close();
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.company.dynamicdatastore.component.persistence;
+
+import com.company.dynamicdatastore.component.datastore.EntityChange;
+import com.company.dynamicdatastore.component.entity.VirtualEntityDefinition;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Chuyển thay đổi và entity definition sang dạng Map để mã hóa bằng RowCodec khi ghi xuống file.
+ * Chỉ row dạng Map được ghi bền, entity Jmix thường được bỏ qua.
+ */
+final class StoreRecords {
+
+    private StoreRecords() {
+    }
+
+    /**
+     * Trả về null nếu không có thay đổi nào ghi bền được
+     */
+    static Map<String, Object> changes(long version, List<EntityChange> changes) {
+        List<Object> encoded = new ArrayList<>(changes.size());
+        for (EntityChange change : changes) {
+            if (!change.isDelete() && !(change.getRow() instanceof Map))
+                continue;
+            Map<String, Object> item = new HashMap<>(4);
+            item.put("entity", change.getEntityName());
+            item.put("id", change.getId());
+            if (!change.isDelete())
+                item.put("row", change.getRow());
+            encoded.add(item);
+        }
+        if (encoded.isEmpty())
+            return null;
+        Map<String, Object> record = new HashMap<>(4);
+        record.put("version", version);
+        record.put("changes", encoded);
+        return record;
+    }
+
+    static List<EntityChange> changes(Map<String, Object> record) {
+        List<?> encoded = (List<?>) record.get("changes");
+        List<EntityChange> changes = new ArrayList<>(encoded.size());
+        for (Object item : encoded) {
+            Map<?, ?> map = (Map<?, ?>) item;
+            changes.add(new EntityChange((String) map.get("entity"), map.get("id"), map.get("row")));
+        }
+        return changes;
+    }
+
+    static Map<String, Object> definition(VirtualEntityDefinition definition) {
+        Map<String, Object> properties = new LinkedHashMap<>();
+        for (VirtualEntityDefinition.VirtualPropertyDefinition property : definition.getProperties().values()) {
+            Map<String, Object> spec = new HashMap<>(4);
+            spec.put("type", property.getType() != null ? property.getType().getName() : Object.class.getName());
+            spec.put("nullable", property.isNullable());
+            properties.put(property.getName(), spec);
+        }
+        Map<String, Object> record = new HashMap<>(8);
+        record.put("entity", definition.getEntityName());
+        record.put("store", definition.getStoreName());
+        record.put("properties", properties);
+        record.put("primaryKey", new ArrayList<>(definition.getPrimaryKeyProperties()));
+        record.put("indexes", new ArrayList<>(definition.getIndexedProperties()));
+        record.put("textIndexes", new ArrayList<>(definition.getTextIndexedProperties()));
+        return record;
+    }
+
+    static VirtualEntityDefinition definition(Map<String, Object> record) {
+        VirtualEntityDefinition definition = new VirtualEntityDefinition(
+                (String) record.get("entity"), (String) record.get("store"));
+        Map<?, ?> properties = (Map<?, ?>) record.get("properties");
+        for (Map.Entry<?, ?> e : properties.entrySet()) {
+            Map<?, ?> spec = (Map<?, ?>) e.getValue();
+            definition.addProperty((String) e.getKey(), type((String) spec.get("type")),
+                    !Boolean.FALSE.equals(spec.get("nullable")));
+        }
+        Object primaryKey = record.get("primaryKey");
+        if (primaryKey instanceof List) {
+            for (Object property : (List<?>) primaryKey) {
+                definition.addPrimaryKeyProperty((String) property);
+            }
+        }
+        Object indexes = record.get("indexes");
+        if (indexes instanceof List) {
+            for (Object property : (List<?>) indexes) {
+                definition.addIndexedProperty((String) property);
+            }
+        }
+        Object textIndexes = record.get("textIndexes");
+        if (textIndexes instanceof List) {
+            for (Object property : (List<?>) textIndexes) {
+                definition.addTextIndexedProperty((String) property);
+            }
+        }
+        return definition;
+    }
+
+    private static Class<?> type(String className) {
+        try {
+            return Class.forName(className);
+        } catch (ClassNotFoundException e) {
+            return Object.class;
+        }
+    }
+}
@@ -0,0 +1,224 @@
+package com.company.dynamicdatastore.component.persistence;
+
+import com.company.dynamicdatastore.component.datastore.EntitySnapshot;
+import com.company.dynamicdatastore.component.datastore.VirtualDataStore;
+import com.company.dynamicdatastore.component.entity.VirtualEntityDefinition;
+import com.company.dynamicdatastore.component.storage.MappedFile;
+import com.company.dynamicdatastore.component.storage.MappedFileWriter;
+import com.company.dynamicdatastore.component.storage.MappedRowStore;
+import com.company.dynamicdatastore.component.storage.PropertyDictionary;
+import com.company.dynamicdatastore.component.storage.RowCodec;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+/**
+ * File snapshot nhị phân của một VirtualDataStore, được mở lại bằng FileChannel.map.
+ * <pre>
+ * với mỗi entity: [rows: [độ dài][bytes RowCodec]...][ids][bảng offset long của từng row]
+ * footer: [từ điển tên thuộc tính][definitions][danh mục entity]
+ * trailer: [vị trí footer][lsn][format][magic]
+ * </pre>
+ * Không bản ghi nào nằm vắt qua ranh giới cửa sổ map 1 GB. Khi mở, chỉ footer và bảng id được đọc;
+ * rows được giải mã khi có truy cập.
+ */
+final class StoreSnapshot {
+
+    private static final int MAGIC = 0x56445353;
+    private static final int FORMAT = 1;
+    private static final int TRAILER_BYTES = 2 * Long.BYTES + 2 * Integer.BYTES;
+    private static final String PREFIX = "snapshot-";
+    private static final String SUFFIX = ".bin";
+    private static final byte UUID_ID = 1;
+    private static final byte ENCODED_ID = 2;
+
+    private StoreSnapshot() {
+    }
+
+    static String fileName(long lsn) {
+        return String.format("%s%020d%s", PREFIX, lsn, SUFFIX);
+    }
+
+    /**
+     * Các file snapshot trong thư mục, mới nhất trước
+     */
+    static List<Path> list(Path directory) throws IOException {
+        List<Path> files = new ArrayList<>();
+        if (!Files.isDirectory(directory))
+            return files;
+        try (Stream<Path> stream = Files.list(directory)) {
+            stream.filter(p -> {
+                String name = p.getFileName().toString();
+                return name.startsWith(PREFIX) && name.endsWith(SUFFIX);
+            }).sorted((a, b) -> b.getFileName().compareTo(a.getFileName())).forEach(files::add);
+        }
+        return files;
+    }
+
+    static void write(Path file, long lsn, List<VirtualEntityDefinition> definitions,
+                      Map<String, EntitySnapshot> entities) throws IOException {
+        PropertyDictionary dictionary = new PropertyDictionary();
+        RowCodec rowCodec = new RowCodec(dictionary);
+        RowCodec inlineCodec = new RowCodec();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            MappedFileWriter out = new MappedFileWriter(Channels.newOutputStream(channel));
+            List<Object[]> directory = new ArrayList<>();
+            for (Map.Entry<String, EntitySnapshot> e : entities.entrySet()) {
+                List<Object> ids = new ArrayList<>(e.getValue().size());
+                long[] offsets = new long[e.getValue().size()];
+                for (Object row : e.getValue().getRows()) {
+                    // Chỉ row dạng Map được ghi, giống write-ahead log
+                    if (!(row instanceof Map))
+                        continue;
+                    offsets[ids.size()] = out.writeRow(rowCodec.encode((Map<?, ?>) row));
+                    ids.add(((Map<?, ?>) row).get("id"));
+                }
+                long idsPosition = out.position();
+                for (Object id : ids) {
+                    if (id instanceof UUID) {
+                        out.fit(1 + 2 * Long.BYTES);
+                        out.write(UUID_ID);
+                        out.writeLong(((UUID) id).getMostSignificantBits());
+                        out.writeLong(((UUID) id).getLeastSignificantBits());
+                    } else {
+                        Map<String, Object> holder = new HashMap<>(2);
+                        holder.put("id", id);
+                        byte[] bytes = inlineCodec.encode(holder);
+                        out.fit(1 + Integer.BYTES + bytes.length);
+                        out.write(ENCODED_ID);
+                        out.writeInt(bytes.length);
+                        out.write(bytes);
+                    }
+                }
+                out.align(Long.BYTES);
+                long offsetsPosition = out.position();
+                for (int i = 0; i < ids.size(); i++) {
+                    out.writeLong(offsets[i]);
+                }
+                directory.add(new Object[]{e.getKey(), ids.size(), idsPosition, offsetsPosition});
+            }
+
+            long footerPosition = out.position();
+            out.writeInt(dictionary.size());
+            for (int i = 0; i < dictionary.size(); i++) {
+                out.writeString(dictionary.nameOf(i));
+            }
+            out.writeInt(definitions.size());
+            for (VirtualEntityDefinition definition : definitions) {
+                byte[] bytes = inlineCodec.encode(StoreRecords.definition(definition));
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+            out.writeInt(directory.size());
+            for (Object[] entry : directory) {
+                out.writeString((String) entry[0]);
+                out.writeInt((Integer) entry[1]);
+                out.writeLong((Long) entry[2]);
+                out.writeLong((Long) entry[3]);
+            }
+            out.writeLong(footerPosition);
+            out.writeLong(lsn);
+            out.writeInt(FORMAT);
+            out.writeInt(MAGIC);
+            out.flush();
+            channel.force(true);
+        }
+    }
+
+    /**
+     * Nạp definitions và map rows của snapshot vào store, trả về lsn của snapshot.
+     * Chỉ bảng id được đọc hết để dựng chỉ mục id, rows vẫn nằm trong file.
+     */
+    static long load(Path file, VirtualDataStore store) throws IOException {
+        MappedFile mapped;
+        ByteBuffer footer;
+        long lsn;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < TRAILER_BYTES)
+                throw new IOException("Snapshot file is truncated: " + file);
+            ByteBuffer trailer = read(channel, size - TRAILER_BYTES, TRAILER_BYTES);
+            long footerPosition = trailer.getLong();
+            lsn = trailer.getLong();
+            if (trailer.getInt() != FORMAT || trailer.getInt() != MAGIC
+                    || footerPosition < 0 || footerPosition > size - TRAILER_BYTES)
+                throw new IOException("Not a valid snapshot file: " + file);
+            footer = read(channel, footerPosition, (int) (size - TRAILER_BYTES - footerPosition));
+            mapped = new MappedFile(channel, footerPosition);
+        }
+
+        PropertyDictionary dictionary = new PropertyDictionary();
+        int names = footer.getInt();
+        for (int i = 0; i < names; i++) {
+            dictionary.idOf(readString(footer));
+        }
+        RowCodec inlineCodec = new RowCodec();
+        int definitions = footer.getInt();
+        for (int i = 0; i < definitions; i++) {
+            int length = footer.getInt();
+            store.registerEntityDefinition(StoreRecords.definition(inlineCodec.decode(footer, footer.position())));
+            footer.position(footer.position() + length);
+        }
+        int entities = footer.getInt();
+        for (int i = 0; i < entities; i++) {
+            String entityName = readString(footer);
+            int count = footer.getInt();
+            long idsPosition = footer.getLong();
+            long offsetsPosition = footer.getLong();
+            List<Object> ids = readIds(mapped, idsPosition, count, inlineCodec);
+            store.restoreEntity(entityName, new MappedRowStore(mapped, offsetsPosition, count, dictionary), ids);
+        }
+        return lsn;
+    }
+
+    private static List<Object> readIds(MappedFile file, long position, int count, RowCodec codec) {
+        List<Object> ids = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            byte kind = file.get(position);
+            if (kind == 0) {
+                // Phần đệm ở cuối cửa sổ, bản ghi kế tiếp bắt đầu ở cửa sổ sau
+                position = ((position >>> MappedFile.WINDOW_SHIFT) + 1) << MappedFile.WINDOW_SHIFT;
+                kind = file.get(position);
+            }
+            if (kind == UUID_ID) {
+                ids.add(new UUID(file.getLong(position + 1), file.getLong(position + 1 + Long.BYTES)));
+                position += 1 + 2 * Long.BYTES;
+            } else {
+                int length = file.getInt(position + 1);
+                long start = position + 1 + Integer.BYTES;
+                ids.add(codec.decode(file.window(start), MappedFile.offset(start)).get("id"));
+                position = start + length;
+            }
+        }
+        return ids;
+    }
+
+    private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0)
+                throw new IOException("Unexpected end of snapshot file");
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
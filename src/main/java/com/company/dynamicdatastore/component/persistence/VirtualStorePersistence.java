@@ -0,0 +1,273 @@
+package com.company.dynamicdatastore.component.persistence;
+
+import com.company.dynamicdatastore.component.datastore.EntityChange;
+import com.company.dynamicdatastore.component.datastore.StoreChangeListener;
+import com.company.dynamicdatastore.component.datastore.VirtualDataStore;
+import com.company.dynamicdatastore.component.entity.VirtualEntityDefinition;
+import com.company.dynamicdatastore.component.storage.StorageMode;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Ghi bền các VirtualDataStore xuống thư mục dữ liệu: mỗi store một thư mục gồm store.properties
+ * (storage mode), write-ahead log và file snapshot. Khi khởi động, các store đã có được tạo lại từ
+ * snapshot mới nhất (map vào bộ nhớ, rows giải mã khi được đọc) rồi đọc tiếp phần log sau snapshot.
+ * Snapshot được chụp định kỳ khi log đã đủ dài, sau đó các file log cũ được xóa.
+ * Tắt mặc định, bật bằng virtual-datastore.persistence.enabled=true.
+ */
+@Component
+public class VirtualStorePersistence {
+
+    private static final Logger log = LoggerFactory.getLogger(VirtualStorePersistence.class);
+    private static final String STORE_FILE = "store.properties";
+
+    private final boolean enabled;
+    private final Path directory;
+    private final int fsyncBatchSize;
+    private final long fsyncIntervalMillis;
+    private final boolean syncCommit;
+    private final long snapshotMinRecords;
+    private final Map<String, Attached> attached = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler;
+
+    public VirtualStorePersistence(
+            @Value("${virtual-datastore.persistence.enabled:false}") boolean enabled,
+            @Value("${virtual-datastore.persistence.directory:data/virtual-datastore}") String directory,
+            @Value("${virtual-datastore.wal.fsync-batch-size:256}") int fsyncBatchSize,
+            @Value("${virtual-datastore.wal.fsync-interval-ms:10}") long fsyncIntervalMillis,
+            @Value("${virtual-datastore.wal.sync-commit:true}") boolean syncCommit,
+            @Value("${virtual-datastore.snapshot.interval-seconds:300}") long snapshotIntervalSeconds,
+            @Value("${virtual-datastore.snapshot.min-log-records:10000}") long snapshotMinRecords) {
+        this.enabled = enabled;
+        this.directory = Paths.get(directory);
+        this.fsyncBatchSize = fsyncBatchSize;
+        this.fsyncIntervalMillis = fsyncIntervalMillis;
+        this.syncCommit = syncCommit;
+        this.snapshotMinRecords = snapshotMinRecords;
+        if (enabled && snapshotIntervalSeconds > 0) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "vds-snapshot");
+                thread.setDaemon(true);
+                return thread;
+            });
+            scheduler.scheduleWithFixedDelay(this::checkpointAll,
+                    snapshotIntervalSeconds, snapshotIntervalSeconds, TimeUnit.SECONDS);
+        } else {
+            scheduler = null;
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Tên và storage mode của các store đã được ghi xuống thư mục dữ liệu
+     */
+    public Map<String, StorageMode> findStores() {
+        Map<String, StorageMode> stores = new LinkedHashMap<>();
+        if (!enabled || !Files.isDirectory(directory))
+            return stores;
+        try (Stream<Path> dirs = Files.list(directory)) {
+            for (Path dir : (Iterable<Path>) dirs.sorted()::iterator) {
+                Path file = dir.resolve(STORE_FILE);
+                if (!Files.isRegularFile(file))
+                    continue;
+                Properties properties = new Properties();
+                try (InputStream in = Files.newInputStream(file)) {
+                    properties.load(in);
+                }
+                String name = properties.getProperty("name",
+                        URLDecoder.decode(dir.getFileName().toString(), StandardCharsets.UTF_8));
+                stores.put(name, StorageMode.fromString(properties.getProperty("storageMode")));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to list persisted virtual stores in " + directory, e);
+        }
+        return stores;
+    }
+
+    /**
+     * Khôi phục dữ liệu của store từ log rồi bắt đầu ghi log cho các thay đổi tiếp theo
+     */
+    public void attach(VirtualDataStore store) {
+        if (!enabled)
+            return;
+        Path storeDir = storeDirectory(store.getName());
+        try {
+            Files.createDirectories(storeDir);
+            writeStoreFile(store, storeDir);
+            long snapshotLsn = loadSnapshot(store, storeDir);
+            WriteAheadLog wal = new WriteAheadLog(storeDir, fsyncBatchSize, fsyncIntervalMillis, syncCommit);
+            long lastLsn = wal.replay(snapshotLsn, replayInto(store));
+            wal.start();
+            store.addChangeListener(wal);
+            attached.put(store.getName(), new Attached(store, wal, snapshotLsn));
+            log.info("Virtual store '{}' restored from snapshot lsn {} and write-ahead log up to lsn {}",
+                    store.getName(), snapshotLsn, lastLsn);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open write-ahead log for store " + store.getName(), e);
+        }
+    }
+
+    /**
+     * Chụp snapshot của store và xóa phần log đã nằm trong snapshot
+     */
+    public void checkpoint(String storeName) {
+        Attached entry = attached.get(storeName);
+        if (entry == null)
+            return;
+        synchronized (entry) {
+            Path storeDir = storeDirectory(storeName);
+            try {
+                long lsn = entry.wal.rotate();
+                Path temp = storeDir.resolve("snapshot.tmp");
+                StoreSnapshot.write(temp, lsn, entry.store.copyEntityDefinitions(), entry.store.stableSnapshots());
+                Path file = storeDir.resolve(StoreSnapshot.fileName(lsn));
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                for (Path old : StoreSnapshot.list(storeDir)) {
+                    if (!old.equals(file))
+                        Files.delete(old);
+                }
+                entry.wal.deleteSegmentsUpTo(lsn);
+                entry.snapshotLsn = lsn;
+                log.info("Virtual store '{}' snapshot written at lsn {}", storeName, lsn);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to write snapshot of store " + storeName, e);
+            }
+        }
+    }
+
+    /**
+     * Đóng log và xóa dữ liệu đã ghi của store
+     */
+    public void drop(String storeName) {
+        if (!enabled)
+            return;
+        Attached entry = attached.remove(storeName);
+        try {
+            if (entry != null)
+                entry.wal.close();
+            Path storeDir = storeDirectory(storeName);
+            if (Files.exists(storeDir)) {
+                try (Stream<Path> files = Files.walk(storeDir)) {
+                    for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                        Files.delete(file);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to delete persisted data of store " + storeName, e);
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        if (scheduler != null)
+            scheduler.shutdownNow();
+        for (Map.Entry<String, Attached> e : attached.entrySet()) {
+            try {
+                e.getValue().wal.close();
+            } catch (IOException ex) {
+                log.warn("Failed to close write-ahead log of store {}", e.getKey(), ex);
+            }
+        }
+        attached.clear();
+    }
+
+    private void checkpointAll() {
+        for (Map.Entry<String, Attached> e : attached.entrySet()) {
+            if (e.getValue().wal.getLastLsn() - e.getValue().snapshotLsn < snapshotMinRecords)
+                continue;
+            try {
+                checkpoint(e.getKey());
+            } catch (RuntimeException ex) {
+                log.error("Periodic snapshot of store {} failed", e.getKey(), ex);
+            }
+        }
+    }
+
+    /**
+     * Nạp snapshot hợp lệ mới nhất, trả về lsn của nó hoặc 0 nếu chưa có snapshot
+     */
+    private static long loadSnapshot(VirtualDataStore store, Path storeDir) throws IOException {
+        for (Path file : StoreSnapshot.list(storeDir)) {
+            try {
+                return StoreSnapshot.load(file, store);
+            } catch (IOException e) {
+                log.warn("Skipping unreadable snapshot {}", file, e);
+            }
+        }
+        return 0;
+    }
+
+    private Path storeDirectory(String storeName) {
+        return directory.resolve(URLEncoder.encode(storeName, StandardCharsets.UTF_8));
+    }
+
+    private static void writeStoreFile(VirtualDataStore store, Path storeDir) throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty("name", store.getName());
+        properties.setProperty("storageMode", store.getStorageMode().name());
+        try (OutputStream out = Files.newOutputStream(storeDir.resolve(STORE_FILE))) {
+            properties.store(out, "Virtual DataStore");
+        }
+    }
+
+    private static final class Attached {
+
+        private final VirtualDataStore store;
+        private final WriteAheadLog wal;
+        private volatile long snapshotLsn;
+
+        private Attached(VirtualDataStore store, WriteAheadLog wal, long snapshotLsn) {
+            this.store = store;
+            this.wal = wal;
+            this.snapshotLsn = snapshotLsn;
+        }
+    }
+
+    private static StoreChangeListener replayInto(VirtualDataStore store) {
+        return new StoreChangeListener() {
+            @Override
+            public void onChanges(long version, List<EntityChange> changes) {
+                store.apply(changes);
+            }
+
+            @Override
+            public void onDefinitionRegistered(VirtualEntityDefinition definition) {
+                store.registerEntityDefinition(definition);
+            }
+
+            @Override
+            public void onDefinitionRemoved(String entityName) {
+                store.removeEntityDefinition(entityName);
+            }
+        };
+    }
+}
@@ -0,0 +1,429 @@
+package com.company.dynamicdatastore.component.persistence;
+
+import com.company.dynamicdatastore.component.datastore.EntityChange;
+import com.company.dynamicdatastore.component.datastore.StoreChangeListener;
+import com.company.dynamicdatastore.component.entity.VirtualEntityDefinition;
+import com.company.dynamicdatastore.component.storage.RowCodec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Write-ahead log của một VirtualDataStore, ghi nối tiếp qua FileChannel.
+ * Mỗi record: [độ dài][crc32][lsn][loại][payload RowCodec]. Log được chia thành các file wal-&lt;lsn đầu&gt;.log.
+ * <p>
+ * Group commit: record được ghi vào file ngay trong lần ghi của store, fsync do một thread riêng thực hiện
+ * khi đủ fsyncBatchSize record hoặc record cũ nhất đã chờ quá fsyncInterval. Với syncCommit, thao tác ghi
+ * chỉ trả về sau khi record của nó đã được fsync; các thread ghi đến trong lúc fsync đang chạy dùng chung
+ * lần fsync kế tiếp.
+ */
+public class WriteAheadLog implements StoreChangeListener, Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(WriteAheadLog.class);
+
+    static final byte CHANGES = 1;
+    static final byte DEFINE = 2;
+    static final byte UNDEFINE = 3;
+
+    private static final String PREFIX = "wal-";
+    private static final String SUFFIX = ".log";
+    private static final int HEADER_BYTES = 2 * Integer.BYTES;
+    private static final int MAX_RECORD_BYTES = 256 << 20;
+
+    private final Path directory;
+    private final int fsyncBatchSize;
+    private final long fsyncIntervalNanos;
+    private final boolean syncCommit;
+    private final RowCodec codec = new RowCodec();
+    private final CRC32 crc = new CRC32();
+    private final Object lock = new Object();
+    private final ThreadLocal<long[]> lastWritten = ThreadLocal.withInitial(() -> new long[1]);
+
+    private FileChannel channel;
+    private Thread flusher;
+    private long nextLsn = 1;
+    private long writtenLsn;
+    private long durableLsn;
+    private int pending;
+    private long firstPendingAt;
+    private int waiters;
+    private IOException failure;
+    private boolean closed;
+
+    public WriteAheadLog(Path directory, int fsyncBatchSize, long fsyncIntervalMillis, boolean syncCommit) {
+        this.directory = directory;
+        this.fsyncBatchSize = Math.max(1, fsyncBatchSize);
+        this.fsyncIntervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, fsyncIntervalMillis));
+        this.syncCommit = syncCommit;
+    }
+
+    /**
+     * Đọc lại các record có lsn lớn hơn afterLsn và chuyển cho target, gọi trước start().
+     * Phần đuôi bị ghi dở (crash giữa chừng) của file cuối được cắt bỏ.
+     * Trả về lsn của record cuối cùng trong log.
+     */
+    public long replay(long afterLsn, StoreChangeListener target) throws IOException {
+        Files.createDirectories(directory);
+        List<Path> segments = segments();
+        long lastLsn = afterLsn;
+        for (int i = 0; i < segments.size(); i++) {
+            boolean last = i == segments.size() - 1;
+            lastLsn = Math.max(lastLsn, replaySegment(segments.get(i), last, afterLsn, target));
+        }
+        nextLsn = lastLsn + 1;
+        writtenLsn = lastLsn;
+        durableLsn = lastLsn;
+        return lastLsn;
+    }
+
+    /**
+     * Mở file log để ghi tiếp và chạy thread fsync
+     */
+    public void start() throws IOException {
+        List<Path> segments = segments();
+        Path segment = segments.isEmpty() ? directory.resolve(segmentName(nextLsn)) : segments.get(segments.size() - 1);
+        synchronized (lock) {
+            channel = FileChannel.open(segment, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        }
+        flusher = new Thread(this::flushLoop, "vds-wal-" + directory.getFileName());
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    @Override
+    public void onChanges(long version, List<EntityChange> changes) {
+        Map<String, Object> record = StoreRecords.changes(version, changes);
+        if (record != null)
+            append(CHANGES, record);
+    }
+
+    @Override
+    public void onDefinitionRegistered(VirtualEntityDefinition definition) {
+        append(DEFINE, StoreRecords.definition(definition));
+    }
+
+    @Override
+    public void onDefinitionRemoved(String entityName) {
+        Map<String, Object> record = new HashMap<>(2);
+        record.put("entity", entityName);
+        append(UNDEFINE, record);
+    }
+
+    @Override
+    public void afterChanges() {
+        if (syncCommit)
+            awaitDurable(lastWritten.get()[0]);
+    }
+
+    public long getLastLsn() {
+        synchronized (lock) {
+            return writtenLsn;
+        }
+    }
+
+    public long getDurableLsn() {
+        synchronized (lock) {
+            return durableLsn;
+        }
+    }
+
+    /**
+     * Chờ tới khi mọi record tới lsn đã được fsync
+     */
+    public void awaitDurable(long lsn) {
+        synchronized (lock) {
+            if (durableLsn >= lsn)
+                return;
+            waiters++;
+            lock.notifyAll();
+            try {
+                while (durableLsn < lsn && failure == null && !closed) {
+                    lock.wait();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                waiters--;
+            }
+            if (failure != null)
+                throw new UncheckedIOException("Write-ahead log sync failed", failure);
+        }
+    }
+
+    /**
+     * Chuyển sang file log mới. Trả về lsn của record cuối cùng nằm trong các file cũ:
+     * snapshot chụp sau lời gọi này chứa mọi record tới lsn đó.
+     */
+    public long rotate() throws IOException {
+        synchronized (lock) {
+            if (closed)
+                throw new IllegalStateException("Write-ahead log is closed: " + directory);
+            channel.force(false);
+            channel.close();
+            durableLsn = writtenLsn;
+            pending = 0;
+            lock.notifyAll();
+            channel = FileChannel.open(directory.resolve(segmentName(nextLsn)),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            return nextLsn - 1;
+        }
+    }
+
+    /**
+     * Xóa các file log chỉ chứa record có lsn không lớn hơn lsn đã nằm trong snapshot
+     */
+    public void deleteSegmentsUpTo(long lsn) throws IOException {
+        List<Path> segments = segments();
+        for (int i = 0; i + 1 < segments.size(); i++) {
+            if (firstLsn(segments.get(i + 1)) <= lsn + 1)
+                Files.deleteIfExists(segments.get(i));
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (lock) {
+            if (closed)
+                return;
+            closed = true;
+            lock.notifyAll();
+        }
+        if (flusher != null) {
+            try {
+                flusher.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        synchronized (lock) {
+            if (channel != null) {
+                channel.force(false);
+                channel.close();
+                durableLsn = writtenLsn;
+            }
+        }
+    }
+
+    private void append(byte type, Map<String, Object> payload) {
+        synchronized (lock) {
+            if (closed)
+                throw new IllegalStateException("Write-ahead log is closed: " + directory);
+            if (failure != null)
+                throw new UncheckedIOException("Write-ahead log is unavailable", failure);
+            byte[] body = codec.encode(payload);
+            long lsn = nextLsn;
+            ByteBuffer record = ByteBuffer.allocate(HEADER_BYTES + Long.BYTES + 1 + body.length);
+            record.putInt(Long.BYTES + 1 + body.length);
+            record.putInt(0);
+            record.putLong(lsn);
+            record.put(type);
+            record.put(body);
+            crc.reset();
+            crc.update(record.array(), HEADER_BYTES, record.capacity() - HEADER_BYTES);
+            record.putInt(Integer.BYTES, (int) crc.getValue());
+            record.flip();
+            long start;
+            try {
+                start = channel.size();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to append to write-ahead log", e);
+            }
+            try {
+                while (record.hasRemaining()) {
+                    write(channel, record);
+                }
+            } catch (IOException e) {
+                discardPartial(start, e);
+                throw new UncheckedIOException("Failed to append to write-ahead log", e);
+            }
+            nextLsn++;
+            writtenLsn = lsn;
+            if (pending++ == 0)
+                firstPendingAt = System.nanoTime();
+            lastWritten.get()[0] = lsn;
+            if (pending >= fsyncBatchSize)
+                lock.notifyAll();
+        }
+    }
+
+    /**
+     * Ghi một phần record vào file log, tách riêng để test giả lập lỗi ghi giữa chừng
+     */
+    int write(FileChannel target, ByteBuffer record) throws IOException {
+        return target.write(record);
+    }
+
+    /**
+     * Cắt phần record ghi dở sau lỗi ghi để các record sau không nằm sau nó (lúc đọc lại phần ghi dở bị coi là
+     * đuôi hỏng và mọi record sau nó bị bỏ). Không cắt được thì log ngừng nhận ghi.
+     */
+    private void discardPartial(long start, IOException cause) {
+        try {
+            channel.truncate(start);
+            channel.position(start);
+        } catch (IOException e) {
+            cause.addSuppressed(e);
+            log.error("Write-ahead log cannot discard a partial record: {}", directory, cause);
+            failure = cause;
+            lock.notifyAll();
+        }
+    }
+
+    private void flushLoop() {
+        while (true) {
+            FileChannel target;
+            long lsn;
+            synchronized (lock) {
+                try {
+                    while (!closed && !shouldFlush()) {
+                        if (pending == 0) {
+                            lock.wait();
+                        } else {
+                            long remaining = fsyncIntervalNanos - (System.nanoTime() - firstPendingAt);
+                            TimeUnit.NANOSECONDS.timedWait(lock, Math.max(1, remaining));
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (closed)
+                    return;
+                target = channel;
+                lsn = writtenLsn;
+                pending = 0;
+            }
+            try {
+                target.force(false);
+            } catch (ClosedChannelException e) {
+                // File log vừa được thay, lần đóng file đã fsync xong
+            } catch (IOException e) {
+                log.error("Write-ahead log sync failed: {}", directory, e);
+                synchronized (lock) {
+                    failure = e;
+                    lock.notifyAll();
+                }
+                return;
+            }
+            synchronized (lock) {
+                durableLsn = Math.max(durableLsn, lsn);
+                lock.notifyAll();
+            }
+        }
+    }
+
+    private boolean shouldFlush() {
+        return pending > 0 && (waiters > 0 || pending >= fsyncBatchSize
+                || System.nanoTime() - firstPendingAt >= fsyncIntervalNanos);
+    }
+
+    private long replaySegment(Path segment, boolean last, long afterLsn, StoreChangeListener target) throws IOException {
+        long lastLsn = 0;
+        long validBytes = 0;
+        try (InputStream file = Files.newInputStream(segment);
+             DataInputStream in = new DataInputStream(new BufferedInputStream(file, 1 << 16))) {
+            while (true) {
+                int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                if (length <= Long.BYTES || length > MAX_RECORD_BYTES) {
+                    corrupted(segment, last, validBytes);
+                    break;
+                }
+                int checksum;
+                byte[] body = new byte[length];
+                try {
+                    checksum = in.readInt();
+                    in.readFully(body);
+                } catch (EOFException e) {
+                    corrupted(segment, last, validBytes);
+                    break;
+                }
+                crc.reset();
+                crc.update(body);
+                if ((int) crc.getValue() != checksum) {
+                    corrupted(segment, last, validBytes);
+                    break;
+                }
+                ByteBuffer buffer = ByteBuffer.wrap(body);
+                long lsn = buffer.getLong(0);
+                if (lsn > afterLsn)
+                    dispatch(buffer.get(Long.BYTES), codec.decode(buffer, Long.BYTES + 1), target);
+                lastLsn = lsn;
+                validBytes += HEADER_BYTES + length;
+            }
+        }
+        if (last && validBytes < Files.size(segment)) {
+            try (FileChannel truncate = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+                truncate.truncate(validBytes);
+            }
+        }
+        return lastLsn;
+    }
+
+    private void corrupted(Path segment, boolean last, long validBytes) throws IOException {
+        if (!last)
+            throw new IOException("Corrupted write-ahead log segment " + segment + " at byte " + validBytes);
+        log.warn("Discarding incomplete tail of write-ahead log {} after byte {}", segment, validBytes);
+    }
+
+    private static void dispatch(byte type, Map<String, Object> record, StoreChangeListener target) {
+        switch (type) {
+            case CHANGES:
+                target.onChanges(((Number) record.get("version")).longValue(), StoreRecords.changes(record));
+                break;
+            case DEFINE:
+                target.onDefinitionRegistered(StoreRecords.definition(record));
+                break;
+            case UNDEFINE:
+                target.onDefinitionRemoved((String) record.get("entity"));
+                break;
+            default:
+                throw new IllegalStateException("Unknown write-ahead log record type: " + type);
+        }
+    }
+
+    private List<Path> segments() throws IOException {
+        List<Path> segments = new ArrayList<>();
+        if (!Files.isDirectory(directory))
+            return segments;
+        try (Stream<Path> files = Files.list(directory)) {
+            files.filter(p -> {
+                String name = p.getFileName().toString();
+                return name.startsWith(PREFIX) && name.endsWith(SUFFIX);
+            }).sorted().forEach(segments::add);
+        }
+        return segments;
+    }
+
+    private static long firstLsn(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+    }
+
+    private static String segmentName(long firstLsn) {
+        return String.format("%s%020d%s", PREFIX, firstLsn, SUFFIX);
+    }
+}
@@ -88,6 +88,8 @@ public class DataStoreRegistry {
             Map<String, Object> storeStats = new ConcurrentHashMap<>();
             storeStats.put("entityCounts", store.getEntityCounts());
             storeStats.put("entityDefinitions", store.getEntityDefinitions().keySet());
+            // Sketch theo từng store: entity cùng tên ở các store khác nhau là dữ liệu khác nhau nên không gộp
+            storeStats.put("properties", store.getPropertySummaries());
 
             virtualStoreStats.put(storeName, storeStats);
         }
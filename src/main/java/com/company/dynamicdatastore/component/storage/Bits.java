@@ -0,0 +1,43 @@
+package com.company.dynamicdatastore.component.storage;
+
+import java.util.Arrays;
+
+/**
+ * Bitmap tự mở rộng cho các cột: một thread ghi, nhiều thread đọc.
+ * Mảng được thay bằng bản sao khi mở rộng và công bố qua biến volatile,
+ * thread đọc luôn thấy đủ các bit đã ghi trước khi snapshot được công bố.
+ */
+final class Bits {
+
+    private volatile long[] words = new long[1];
+
+    boolean get(int index) {
+        long[] current = words;
+        int word = index >>> 6;
+        return word < current.length && (current[word] & (1L << index)) != 0;
+    }
+
+    void set(int index, boolean value) {
+        int word = index >>> 6;
+        long[] current = words;
+        if (word >= current.length) {
+            if (!value)
+                return;
+            current = Arrays.copyOf(current, Math.max(current.length * 2, word + 1));
+        }
+        if (value)
+            current[word] |= 1L << index;
+        else
+            current[word] &= ~(1L << index);
+        words = current;
+    }
+
+    /**
+     * Đặt các bit [from, to)
+     */
+    void set(int from, int to) {
+        for (int i = from; i < to; i++) {
+            set(i, true);
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.company.dynamicdatastore.component.storage;
+
+public class BooleanColumn extends Column {
+
+    private final Bits values = new Bits();
+
+    public BooleanColumn(String name) {
+        super(name);
+    }
+
+    @Override
+    protected boolean store(int slot, Object value) {
+        if (!(value instanceof Boolean))
+            return false;
+        values.set(slot, (Boolean) value);
+        return true;
+    }
+
+    @Override
+    protected Object load(int slot) {
+        return values.get(slot);
+    }
+
+    @Override
+    protected void ensureCapacity(int capacity) {
+        // Bits tự mở rộng
+    }
+}
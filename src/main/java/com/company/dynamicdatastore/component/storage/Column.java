@@ -0,0 +1,128 @@
+package com.company.dynamicdatastore.component.storage;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Một cột của ColumnarRowStore.
+ * Giá trị null/không có key được đánh dấu bằng bitmap, giá trị không khớp kiểu cột
+ * (ví dụ chuỗi "999.99" trong cột bigdecimal) được giữ nguyên trong vùng overflow.
+ */
+public abstract class Column {
+
+    private final String name;
+    private final Bits nulls = new Bits();
+    private final Bits absent = new Bits();
+    private final Map<Integer, Object> overflow = new ConcurrentHashMap<>();
+
+    protected Column(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Chọn loại cột theo kiểu Java của thuộc tính
+     */
+    public static Column of(String name, Class<?> type) {
+        if (type == null || type == Object.class)
+            return new ObjectColumn(name);
+        if (type == String.class)
+            return new StringColumn(name);
+        if (type == Integer.class || type == Long.class || type == Double.class || type == Float.class
+                || type == BigDecimal.class || type == BigInteger.class
+                || type == int.class || type == long.class || type == double.class || type == float.class)
+            return new NumberColumn(name);
+        if (type == Boolean.class || type == boolean.class)
+            return new BooleanColumn(name);
+        if (type == LocalDate.class)
+            return new DateColumn(name);
+        if (type == LocalDateTime.class)
+            return new DateTimeColumn(name);
+        if (type == UUID.class)
+            return new UuidColumn(name);
+        return new ObjectColumn(name);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Ghi giá trị cho slot mới cấp phát
+     */
+    public final void set(int slot, Object value) {
+        if (value == null) {
+            nulls.set(slot, true);
+            return;
+        }
+        if (!store(slot, value)) {
+            overflow.put(slot, value);
+        }
+    }
+
+    /**
+     * Đánh dấu row tại slot không chứa key của cột này
+     */
+    public final void setAbsent(int slot) {
+        nulls.set(slot, true);
+        absent.set(slot, true);
+    }
+
+    public final Object get(int slot) {
+        if (nulls.get(slot))
+            return null;
+        if (!overflow.isEmpty()) {
+            Object value = overflow.get(slot);
+            if (value != null)
+                return value;
+        }
+        return load(slot);
+    }
+
+    /**
+     * Row có chứa key của cột này không (kể cả khi giá trị là null)
+     */
+    public final boolean isPresent(int slot) {
+        return !absent.get(slot);
+    }
+
+    public final boolean isNull(int slot) {
+        return nulls.get(slot);
+    }
+
+    /**
+     * Giá trị tại slot nằm trong vùng overflow thay vì mảng primitive
+     */
+    public final boolean isOverflow(int slot) {
+        return !overflow.isEmpty() && overflow.containsKey(slot);
+    }
+
+    /**
+     * Giá trị tại slot được giữ dưới dạng object trên heap (cột chuỗi/object hoặc overflow)
+     * thay vì mã hóa vào mảng primitive
+     */
+    public boolean holdsReference(int slot) {
+        return isOverflow(slot);
+    }
+
+    /**
+     * Đánh dấu các slot [from, to) là không có key, dùng khi cột được tạo sau khi đã có dữ liệu
+     */
+    final void markAbsent(int from, int to) {
+        nulls.set(from, to);
+        absent.set(from, to);
+    }
+
+    /**
+     * Ghi giá trị vào mảng primitive, trả về false nếu giá trị không khớp kiểu cột
+     */
+    protected abstract boolean store(int slot, Object value);
+
+    protected abstract Object load(int slot);
+
+    protected abstract void ensureCapacity(int capacity);
+}
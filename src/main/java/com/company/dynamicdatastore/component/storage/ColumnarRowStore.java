@@ -0,0 +1,142 @@
+package com.company.dynamicdatastore.component.storage;
+
+import com.company.dynamicdatastore.component.entity.VirtualEntityDefinition;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Lưu rows của entity theo cột có kiểu, dựng từ VirtualEntityDefinition.getProperties().
+ * Key không có trong definition được tạo cột theo kiểu của giá trị đầu tiên gặp.
+ * Row chỉ được dựng lại thành Map khi đọc cả row (read), các thao tác theo thuộc tính đọc thẳng cột (xem RowStore#row).
+ * Danh sách cột được công bố qua mảng volatile nên thread đọc không cần khóa khi có cột mới.
+ */
+public class ColumnarRowStore implements RowStore {
+
+    private static final int INITIAL_CAPACITY = 16;
+    // Ước tính trung bình cho một ô của cột primitive: giá trị 8 bytes cộng phần kiểu/bitmap
+    private static final int CELL_BYTES = 10;
+
+    private final Map<String, Column> columnsByName = new ConcurrentHashMap<>();
+    private volatile Column[] columns = new Column[0];
+    private int capacity = INITIAL_CAPACITY;
+    private int size;
+    private long objectBytes;
+
+    public ColumnarRowStore(VirtualEntityDefinition definition) {
+        addColumn(Column.of("id", UUID.class));
+        if (definition != null) {
+            for (VirtualEntityDefinition.VirtualPropertyDefinition property : definition.getProperties().values()) {
+                if (!columnsByName.containsKey(property.getName()))
+                    addColumn(Column.of(property.getName(), property.getType()));
+            }
+        }
+    }
+
+    @Override
+    public StorageMode getMode() {
+        return StorageMode.COLUMNAR;
+    }
+
+    public Column getColumn(String property) {
+        return columnsByName.get(property);
+    }
+
+    @Override
+    public int append(Object row) {
+        if (!(row instanceof Map))
+            throw new IllegalArgumentException("Columnar storage only supports map-based entities");
+        Map<?, ?> map = (Map<?, ?>) row;
+        int slot = size;
+        ensureCapacity(slot + 1);
+        int matched = 0;
+        for (Column column : columns) {
+            Object value = map.get(column.getName());
+            if (value != null || map.containsKey(column.getName())) {
+                column.set(slot, value);
+                matched++;
+                if (value != null && column.holdsReference(slot))
+                    objectBytes += RowSizes.estimate(value);
+            } else {
+                column.setAbsent(slot);
+            }
+        }
+        if (matched < map.size()) {
+            for (Map.Entry<?, ?> e : map.entrySet()) {
+                String key = String.valueOf(e.getKey());
+                if (columnsByName.containsKey(key))
+                    continue;
+                Class<?> type = e.getValue() != null ? e.getValue().getClass() : Object.class;
+                Column column = Column.of(key, type);
+                column.ensureCapacity(capacity);
+                column.markAbsent(0, slot);
+                column.set(slot, e.getValue());
+                publish(column);
+                if (e.getValue() != null && column.holdsReference(slot))
+                    objectBytes += RowSizes.estimate(e.getValue());
+            }
+        }
+        return size++;
+    }
+
+    @Override
+    public Object read(int slot) {
+        Column[] current = columns;
+        Map<String, Object> row = new HashMap<>(current.length * 2);
+        for (Column column : current) {
+            if (column.isPresent(slot))
+                row.put(column.getName(), column.get(slot));
+        }
+        return row;
+    }
+
+    @Override
+    public Object value(int slot, String property) {
+        Column column = columnsByName.get(property);
+        return column != null ? column.get(slot) : null;
+    }
+
+    @Override
+    public boolean contains(int slot, String property) {
+        Column column = columnsByName.get(property);
+        return column != null && column.isPresent(slot);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public long estimatedBytes() {
+        return (long) capacity * columns.length * CELL_BYTES + objectBytes;
+    }
+
+    private void addColumn(Column column) {
+        column.ensureCapacity(capacity);
+        column.markAbsent(0, size);
+        publish(column);
+    }
+
+    /**
+     * Cột phải được ghi đủ bit absent cho các slot cũ trước khi công bố
+     */
+    private void publish(Column column) {
+        Column[] next = Arrays.copyOf(columns, columns.length + 1);
+        next[next.length - 1] = column;
+        columnsByName.put(column.getName(), column);
+        columns = next;
+    }
+
+    private void ensureCapacity(int required) {
+        if (required <= capacity)
+            return;
+        capacity = Math.max(capacity * 2, required);
+        for (Column column : columns) {
+            column.ensureCapacity(capacity);
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.company.dynamicdatastore.component.storage;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+
+/**
+ * Cột LocalDate, lưu dưới dạng số ngày kể từ epoch
+ */
+public class DateColumn extends Column {
+
+    private volatile long[] epochDays = new long[0];
+
+    public DateColumn(String name) {
+        super(name);
+    }
+
+    @Override
+    protected boolean store(int slot, Object value) {
+        if (!(value instanceof LocalDate))
+            return false;
+        epochDays[slot] = ((LocalDate) value).toEpochDay();
+        return true;
+    }
+
+    @Override
+    protected Object load(int slot) {
+        return LocalDate.ofEpochDay(epochDays[slot]);
+    }
+
+    @Override
+    protected void ensureCapacity(int capacity) {
+        if (epochDays.length < capacity)
+            epochDays = Arrays.copyOf(epochDays, capacity);
+    }
+}
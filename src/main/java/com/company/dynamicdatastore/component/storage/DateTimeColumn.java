@@ -0,0 +1,48 @@
+package com.company.dynamicdatastore.component.storage;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+
+/**
+ * Cột LocalDateTime, lưu dưới dạng nano giây kể từ epoch (khoảng năm 1677..2262),
+ * giá trị ngoài khoảng này rơi vào overflow.
+ */
+public class DateTimeColumn extends Column {
+
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+
+    private volatile long[] epochNanos = new long[0];
+
+    public DateTimeColumn(String name) {
+        super(name);
+    }
+
+    @Override
+    protected boolean store(int slot, Object value) {
+        if (!(value instanceof LocalDateTime))
+            return false;
+        LocalDateTime dateTime = (LocalDateTime) value;
+        try {
+            epochNanos[slot] = Math.addExact(
+                    Math.multiplyExact(dateTime.toEpochSecond(ZoneOffset.UTC), NANOS_PER_SECOND),
+                    dateTime.getNano());
+        } catch (ArithmeticException e) {
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    protected Object load(int slot) {
+        long nanos = epochNanos[slot];
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(nanos, NANOS_PER_SECOND),
+                (int) Math.floorMod(nanos, NANOS_PER_SECOND), ZoneOffset.UTC);
+    }
+
+    @Override
+    protected void ensureCapacity(int capacity) {
+        if (epochNanos.length < capacity)
+            epochNanos = Arrays.copyOf(epochNanos, capacity);
+    }
+}
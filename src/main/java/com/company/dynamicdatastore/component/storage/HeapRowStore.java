@@ -0,0 +1,62 @@
+package com.company.dynamicdatastore.component.storage;
+
+import io.jmix.core.entity.EntityValues;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Lưu nguyên object của row trên heap
+ */
+public class HeapRowStore implements RowStore {
+
+    private volatile Object[] rows = new Object[16];
+    private int size;
+    private long rowBytes;
+
+    @Override
+    public StorageMode getMode() {
+        return StorageMode.HEAP;
+    }
+
+    @Override
+    public int append(Object row) {
+        Object[] current = rows;
+        if (size == current.length) {
+            current = Arrays.copyOf(current, current.length * 2);
+        }
+        current[size] = row;
+        rows = current;
+        rowBytes += RowSizes.estimate(row);
+        return size++;
+    }
+
+    @Override
+    public Object read(int slot) {
+        return rows[slot];
+    }
+
+    @Override
+    public Object row(int slot) {
+        return rows[slot];
+    }
+
+    @Override
+    public Object value(int slot, String property) {
+        Object row = rows[slot];
+        if (row instanceof Map) {
+            return ((Map<?, ?>) row).get(property);
+        }
+        return row != null ? EntityValues.getValue(row, property) : null;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public long estimatedBytes() {
+        return rowBytes + (long) rows.length * RowSizes.REFERENCE;
+    }
+}
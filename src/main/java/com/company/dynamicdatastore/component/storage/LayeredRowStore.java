@@ -0,0 +1,65 @@
+package com.company.dynamicdatastore.component.storage;
+
+/**
+ * Ghép một RowStore chỉ đọc (ví dụ rows trong file snapshot) với RowStore nhận các row ghi thêm.
+ * Slot [0, base.size()) đọc từ base, các slot sau đó nằm trong tail.
+ * Khi phân vùng được dồn lại, rows được chép sang RowStore mới và base không còn được dùng.
+ */
+public class LayeredRowStore implements RowStore {
+
+    private final RowStore base;
+    private final RowStore tail;
+    private final int baseSize;
+
+    public LayeredRowStore(RowStore base, RowStore tail) {
+        this.base = base;
+        this.tail = tail;
+        this.baseSize = base.size();
+    }
+
+    @Override
+    public StorageMode getMode() {
+        return tail.getMode();
+    }
+
+    @Override
+    public int append(Object row) {
+        return baseSize + tail.append(row);
+    }
+
+    @Override
+    public Object read(int slot) {
+        return slot < baseSize ? base.read(slot) : tail.read(slot - baseSize);
+    }
+
+    @Override
+    public Object row(int slot) {
+        return slot < baseSize ? base.row(slot) : tail.row(slot - baseSize);
+    }
+
+    @Override
+    public Object value(int slot, String property) {
+        return slot < baseSize ? base.value(slot, property) : tail.value(slot - baseSize, property);
+    }
+
+    @Override
+    public boolean contains(int slot, String property) {
+        return slot < baseSize ? base.contains(slot, property) : tail.contains(slot - baseSize, property);
+    }
+
+    @Override
+    public int size() {
+        return baseSize + tail.size();
+    }
+
+    @Override
+    public long estimatedBytes() {
+        return base.estimatedBytes() + tail.estimatedBytes();
+    }
+
+    @Override
+    public void release() {
+        base.release();
+        tail.release();
+    }
+}
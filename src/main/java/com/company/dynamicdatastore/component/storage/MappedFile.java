@@ -0,0 +1,57 @@
+package com.company.dynamicdatastore.component.storage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * File được map vào bộ nhớ (chỉ đọc) theo từng cửa sổ 1 GB vì một MappedByteBuffer không vượt quá 2 GB.
+ * Bên ghi phải đảm bảo không bản ghi nào nằm vắt qua ranh giới giữa hai cửa sổ.
+ * Trang của file chỉ được nạp khi có truy cập, nên mở file lớn gần như không tốn thời gian.
+ */
+public class MappedFile {
+
+    public static final int WINDOW_SHIFT = 30;
+    public static final long WINDOW_SIZE = 1L << WINDOW_SHIFT;
+
+    private final MappedByteBuffer[] windows;
+    private final long size;
+
+    public MappedFile(FileChannel channel, long size) throws IOException {
+        this.size = size;
+        int count = (int) ((size + WINDOW_SIZE - 1) >>> WINDOW_SHIFT);
+        this.windows = new MappedByteBuffer[count];
+        for (int i = 0; i < count; i++) {
+            long start = (long) i << WINDOW_SHIFT;
+            windows[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(WINDOW_SIZE, size - start));
+        }
+    }
+
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Cửa sổ chứa vị trí, đọc bằng offset(position)
+     */
+    public ByteBuffer window(long position) {
+        return windows[(int) (position >>> WINDOW_SHIFT)];
+    }
+
+    public static int offset(long position) {
+        return (int) (position & (WINDOW_SIZE - 1));
+    }
+
+    public int getInt(long position) {
+        return window(position).getInt(offset(position));
+    }
+
+    public long getLong(long position) {
+        return window(position).getLong(offset(position));
+    }
+
+    public byte get(long position) {
+        return window(position).get(offset(position));
+    }
+}
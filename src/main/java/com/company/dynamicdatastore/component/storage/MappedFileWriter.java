@@ -0,0 +1,93 @@
+package com.company.dynamicdatastore.component.storage;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Ghi tuần tự một file sẽ được mở bằng MappedFile, có đếm vị trí tuyệt đối.
+ * fit() thêm byte 0 để bản ghi kế tiếp không vắt qua ranh giới cửa sổ map.
+ */
+public final class MappedFileWriter {
+
+    private final OutputStream out;
+    private final ByteBuffer scratch = ByteBuffer.allocate(Long.BYTES);
+    private long position;
+
+    public MappedFileWriter(OutputStream out) {
+        this.out = new BufferedOutputStream(out, 1 << 16);
+    }
+
+    public long position() {
+        return position;
+    }
+
+    /**
+     * Chuyển sang cửa sổ kế tiếp nếu phần còn lại của cửa sổ hiện tại không đủ length bytes
+     */
+    public void fit(int length) throws IOException {
+        long remaining = MappedFile.WINDOW_SIZE - MappedFile.offset(position);
+        if (length > remaining)
+            pad(remaining);
+    }
+
+    public void align(int alignment) throws IOException {
+        long misaligned = position % alignment;
+        if (misaligned != 0)
+            pad(alignment - misaligned);
+    }
+
+    public void write(byte value) throws IOException {
+        out.write(value);
+        position++;
+    }
+
+    public void write(byte[] bytes) throws IOException {
+        out.write(bytes);
+        position += bytes.length;
+    }
+
+    public void writeInt(int value) throws IOException {
+        scratch.clear();
+        scratch.putInt(value);
+        out.write(scratch.array(), 0, Integer.BYTES);
+        position += Integer.BYTES;
+    }
+
+    public void writeLong(long value) throws IOException {
+        scratch.clear();
+        scratch.putLong(value);
+        out.write(scratch.array(), 0, Long.BYTES);
+        position += Long.BYTES;
+    }
+
+    public void writeString(String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeInt(bytes.length);
+        write(bytes);
+    }
+
+    /**
+     * Ghi một row [độ dài][bytes] theo định dạng MappedRowStore đọc, trả về vị trí của row
+     */
+    public long writeRow(byte[] bytes) throws IOException {
+        fit(Integer.BYTES + bytes.length);
+        long start = position;
+        writeInt(bytes.length);
+        write(bytes);
+        return start;
+    }
+
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    private void pad(long length) throws IOException {
+        for (long i = 0; i < length; i++) {
+            out.write(0);
+        }
+        position += length;
+    }
+}
@@ -0,0 +1,104 @@
+package com.company.dynamicdatastore.component.storage;
+
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Rows chỉ đọc nằm trong file snapshot đã map vào bộ nhớ: [độ dài][bytes RowCodec] tại vị trí
+ * lấy từ bảng offset. Row chỉ được giải mã khi được đọc tới, không giải mã trước khi mở file.
+ */
+public class MappedRowStore implements RowStore {
+
+    private final MappedFile file;
+    private final long offsetsPosition;
+    private final int size;
+    private final RowCodec codec;
+
+    public MappedRowStore(MappedFile file, long offsetsPosition, int size, PropertyDictionary dictionary) {
+        this.file = file;
+        this.offsetsPosition = offsetsPosition;
+        this.size = size;
+        this.codec = new RowCodec(dictionary);
+    }
+
+    /**
+     * Ghi rows dạng Map ra file theo thứ tự rồi map lại, row thứ i nằm ở slot i.
+     * Từ điển tên thuộc tính chỉ nằm trong bộ nhớ nên file chỉ dùng được trong lần chạy hiện tại.
+     */
+    public static MappedRowStore spill(Path file, Iterable<?> rows) throws IOException {
+        PropertyDictionary dictionary = new PropertyDictionary();
+        RowCodec codec = new RowCodec(dictionary);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedFileWriter out = new MappedFileWriter(Channels.newOutputStream(channel));
+            long[] offsets = new long[16];
+            int count = 0;
+            for (Object row : rows) {
+                if (!(row instanceof Map))
+                    throw new IllegalArgumentException("Only map-based rows can be spilled");
+                if (count == offsets.length)
+                    offsets = Arrays.copyOf(offsets, count * 2);
+                offsets[count++] = out.writeRow(codec.encode((Map<?, ?>) row));
+            }
+            out.align(Long.BYTES);
+            long offsetsPosition = out.position();
+            for (int i = 0; i < count; i++) {
+                out.writeLong(offsets[i]);
+            }
+            out.flush();
+            return new MappedRowStore(new MappedFile(channel, out.position()), offsetsPosition, count, dictionary);
+        }
+    }
+
+    @Override
+    public StorageMode getMode() {
+        return StorageMode.OFF_HEAP;
+    }
+
+    @Override
+    public int append(Object row) {
+        throw new UnsupportedOperationException("Mapped snapshot rows are read-only");
+    }
+
+    @Override
+    public Object read(int slot) {
+        long position = rowPosition(slot);
+        return codec.decode(file.window(position), MappedFile.offset(position) + Integer.BYTES);
+    }
+
+    @Override
+    public Object value(int slot, String property) {
+        long position = rowPosition(slot);
+        return codec.decodeValue(file.window(position), MappedFile.offset(position) + Integer.BYTES, property);
+    }
+
+    @Override
+    public boolean contains(int slot, String property) {
+        long position = rowPosition(slot);
+        return codec.containsField(file.window(position), MappedFile.offset(position) + Integer.BYTES, property);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Rows nằm trong page cache của file, không tính vào bộ nhớ heap
+     */
+    @Override
+    public long estimatedBytes() {
+        return 0;
+    }
+
+    private long rowPosition(int slot) {
+        if (slot >= size)
+            throw new IndexOutOfBoundsException("Slot " + slot + " out of " + size);
+        return file.getLong(offsetsPosition + (long) slot * Long.BYTES);
+    }
+}
@@ -0,0 +1,77 @@
+package com.company.dynamicdatastore.component.storage;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+
+/**
+ * Cột số: giá trị được mã hóa vào long[] kèm một byte cho biết kiểu gốc
+ * (Integer, Long, Double, Float hoặc BigDecimal với scale 0..100) để dựng lại đúng kiểu.
+ */
+public class NumberColumn extends Column {
+
+    static final byte INT = 1;
+    static final byte LONG = 2;
+    static final byte DOUBLE = 3;
+    static final byte FLOAT = 4;
+    static final byte DECIMAL = 16;
+    private static final int MAX_DECIMAL_SCALE = 100;
+
+    private volatile long[] bits = new long[0];
+    private volatile byte[] kinds = new byte[0];
+
+    public NumberColumn(String name) {
+        super(name);
+    }
+
+    @Override
+    protected boolean store(int slot, Object value) {
+        if (value instanceof Integer) {
+            bits[slot] = (Integer) value;
+            kinds[slot] = INT;
+        } else if (value instanceof Long) {
+            bits[slot] = (Long) value;
+            kinds[slot] = LONG;
+        } else if (value instanceof Double) {
+            bits[slot] = Double.doubleToRawLongBits((Double) value);
+            kinds[slot] = DOUBLE;
+        } else if (value instanceof Float) {
+            bits[slot] = Double.doubleToRawLongBits((Float) value);
+            kinds[slot] = FLOAT;
+        } else if (value instanceof BigDecimal) {
+            BigDecimal decimal = (BigDecimal) value;
+            if (decimal.scale() < 0 || decimal.scale() > MAX_DECIMAL_SCALE
+                    || decimal.unscaledValue().bitLength() > 63)
+                return false;
+            bits[slot] = decimal.unscaledValue().longValue();
+            kinds[slot] = (byte) (DECIMAL + decimal.scale());
+        } else {
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    protected Object load(int slot) {
+        byte kind = kinds[slot];
+        switch (kind) {
+            case INT:
+                return (int) bits[slot];
+            case LONG:
+                return bits[slot];
+            case DOUBLE:
+                return Double.longBitsToDouble(bits[slot]);
+            case FLOAT:
+                return (float) Double.longBitsToDouble(bits[slot]);
+            default:
+                return BigDecimal.valueOf(bits[slot], kind - DECIMAL);
+        }
+    }
+
+    @Override
+    protected void ensureCapacity(int capacity) {
+        if (bits.length < capacity) {
+            bits = Arrays.copyOf(bits, capacity);
+            kinds = Arrays.copyOf(kinds, capacity);
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package com.company.dynamicdatastore.component.storage;
+
+import java.util.Arrays;
+
+/**
+ * Cột cho các giá trị không có biểu diễn primitive (json, object lồng nhau...)
+ */
+public class ObjectColumn extends Column {
+
+    private volatile Object[] values = new Object[0];
+
+    public ObjectColumn(String name) {
+        super(name);
+    }
+
+    @Override
+    protected boolean store(int slot, Object value) {
+        values[slot] = value;
+        return true;
+    }
+
+    @Override
+    public boolean holdsReference(int slot) {
+        return true;
+    }
+
+    @Override
+    protected Object load(int slot) {
+        return values[slot];
+    }
+
+    @Override
+    protected void ensureCapacity(int capacity) {
+        if (values.length < capacity)
+            values = Arrays.copyOf(values, capacity);
+    }
+}
@@ -0,0 +1,209 @@
+package com.company.dynamicdatastore.component.storage;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Lưu rows ngoài heap trong các slab ByteBuffer direct, mỗi row là [độ dài][bytes RowCodec].
+ * Trên heap chỉ còn mảng địa chỉ slot -> (slab, offset) và từ điển tên thuộc tính.
+ * Row đã ghi không bao giờ bị sửa tại chỗ; bytes của phiên bản cũ được thu hồi khi phân vùng
+ * dồn lại sang store mới.
+ * <p>
+ * Đọc không khóa nhưng được đếm theo dải (mỗi dải một cache line) để release chờ các lần đọc đang chạy xong rồi
+ * mới trả slab cho hệ điều hành ngay, không đợi GC. Chỉ lần xóa store gọi release: store cũ bị bỏ lại khi phân vùng
+ * dồn lại hoặc spill không có chủ sở hữu nào biết chắc khi nào hết người đọc (snapshot không giữ lại, row view trong
+ * QueryCache cùng version) nên slab của nó chờ GC thu hồi.
+ */
+public class OffHeapRowStore implements RowStore {
+
+    static final int SLAB_SIZE = 4 << 20;
+    private static final int READER_STRIPES = 16;
+    // 16 int = 64 bytes giữa hai dải để các thread đọc không tranh cùng cache line
+    private static final int STRIPE_WIDTH = 16;
+    // Unsafe.invokeCleaner tra qua reflection để không phụ thuộc API nội bộ lúc biên dịch, null nếu không có
+    private static final MethodHandle INVOKE_CLEANER = invokeCleaner();
+
+    private final PropertyDictionary dictionary = new PropertyDictionary();
+    private final RowCodec codec = new RowCodec(dictionary);
+    private volatile ByteBuffer[] slabs = new ByteBuffer[0];
+    private volatile long[] addresses = new long[16];
+    private ByteBuffer current;
+    private int size;
+    private long allocatedBytes;
+    private long usedBytes;
+    private final AtomicIntegerArray readers = new AtomicIntegerArray(READER_STRIPES * STRIPE_WIDTH);
+    private volatile boolean released;
+
+    @Override
+    public StorageMode getMode() {
+        return StorageMode.OFF_HEAP;
+    }
+
+    @Override
+    public int append(Object row) {
+        if (!(row instanceof Map))
+            throw new IllegalArgumentException("Off-heap storage only supports map-based entities");
+        checkNotReleased();
+        byte[] bytes = codec.encode((Map<?, ?>) row);
+        long[] next = addresses;
+        if (size == next.length) {
+            next = Arrays.copyOf(next, next.length * 2);
+        }
+        next[size] = write(bytes);
+        usedBytes += Integer.BYTES + bytes.length;
+        addresses = next;
+        return size++;
+    }
+
+    @Override
+    public Object read(int slot) {
+        int stripe = enter();
+        try {
+            long address = addresses[slot];
+            return codec.decode(slabs[slab(address)], offset(address) + Integer.BYTES);
+        } finally {
+            readers.decrementAndGet(stripe);
+        }
+    }
+
+    @Override
+    public Object value(int slot, String property) {
+        int stripe = enter();
+        try {
+            long address = addresses[slot];
+            return codec.decodeValue(slabs[slab(address)], offset(address) + Integer.BYTES, property);
+        } finally {
+            readers.decrementAndGet(stripe);
+        }
+    }
+
+    @Override
+    public boolean contains(int slot, String property) {
+        int stripe = enter();
+        try {
+            long address = addresses[slot];
+            return codec.containsField(slabs[slab(address)], offset(address) + Integer.BYTES, property);
+        } finally {
+            readers.decrementAndGet(stripe);
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Slab direct không nằm trên heap nhưng vẫn là bộ nhớ của tiến trình nên được tính vào giới hạn
+     */
+    @Override
+    public long estimatedBytes() {
+        return allocatedBytes + (long) addresses.length * Long.BYTES;
+    }
+
+    /**
+     * Giải phóng toàn bộ slab của store: chặn các lần đọc mới, chờ các lần đọc đang chạy xong rồi giải phóng bộ nhớ
+     * direct ngay qua Unsafe.invokeCleaner (không có jdk.unsupported thì chờ GC thu hồi các ByteBuffer).
+     * Sau khi release mọi thao tác đọc/ghi ném IllegalStateException.
+     */
+    @Override
+    public void release() {
+        if (released)
+            return;
+        released = true;
+        for (int i = 0; i < READER_STRIPES; i++) {
+            while (readers.get(i * STRIPE_WIDTH) != 0) {
+                Thread.onSpinWait();
+            }
+        }
+        ByteBuffer[] freed = slabs;
+        slabs = new ByteBuffer[0];
+        addresses = new long[0];
+        current = null;
+        size = 0;
+        allocatedBytes = 0;
+        usedBytes = 0;
+        if (INVOKE_CLEANER != null) {
+            for (ByteBuffer slab : freed) {
+                try {
+                    INVOKE_CLEANER.invokeExact(slab);
+                } catch (Throwable e) {
+                    // Slab còn lại được GC thu hồi như khi không có cleaner
+                    return;
+                }
+            }
+        }
+    }
+
+    public long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    /**
+     * Số bytes đã ghi, gồm cả các phiên bản row cũ chưa được dồn
+     */
+    public long getUsedBytes() {
+        return usedBytes;
+    }
+
+    private long write(byte[] bytes) {
+        int required = Integer.BYTES + bytes.length;
+        if (current == null || current.remaining() < required) {
+            current = ByteBuffer.allocateDirect(Math.max(SLAB_SIZE, required));
+            ByteBuffer[] next = Arrays.copyOf(slabs, slabs.length + 1);
+            next[next.length - 1] = current;
+            slabs = next;
+            allocatedBytes += current.capacity();
+        }
+        int offset = current.position();
+        current.putInt(bytes.length);
+        current.put(bytes);
+        return ((long) (slabs.length - 1) << 32) | offset;
+    }
+
+    /**
+     * Đánh dấu một lần đọc đang chạy trên dải của thread, từ chối nếu store đã release.
+     * Ghi dải trước rồi mới đọc released nên release (ghi released rồi mới đọc các dải) không bỏ sót lần đọc nào
+     */
+    private int enter() {
+        int stripe = ((int) Thread.currentThread().getId() & (READER_STRIPES - 1)) * STRIPE_WIDTH;
+        readers.incrementAndGet(stripe);
+        if (released) {
+            readers.decrementAndGet(stripe);
+            throw new IllegalStateException("Off-heap storage has been released");
+        }
+        return stripe;
+    }
+
+    private static int slab(long address) {
+        return (int) (address >>> 32);
+    }
+
+    private static int offset(long address) {
+        return (int) address;
+    }
+
+    private void checkNotReleased() {
+        if (released)
+            throw new IllegalStateException("Off-heap storage has been released");
+    }
+
+    private static MethodHandle invokeCleaner() {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            return MethodHandles.lookup()
+                    .findVirtual(unsafeClass, "invokeCleaner", MethodType.methodType(void.class, ByteBuffer.class))
+                    .bindTo(field.get(null));
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.company.dynamicdatastore.component.storage;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Từ điển tên thuộc tính -> số thứ tự, để row nhị phân không phải lặp lại chuỗi tên ở mỗi row.
+ * Tên mới hiếm khi xuất hiện nên mảng tên được copy-on-write, đọc không cần khóa.
+ */
+public class PropertyDictionary {
+
+    private final Map<String, Integer> idsByName = new ConcurrentHashMap<>();
+    private volatile String[] names = new String[0];
+
+    public synchronized int idOf(String name) {
+        Integer id = idsByName.get(name);
+        if (id == null) {
+            String[] current = names;
+            id = current.length;
+            String[] next = Arrays.copyOf(current, id + 1);
+            next[id] = name;
+            names = next;
+            idsByName.put(name, id);
+        }
+        return id;
+    }
+
+    /**
+     * Trả về -1 nếu tên chưa từng xuất hiện
+     */
+    public int find(String name) {
+        Integer id = idsByName.get(name);
+        return id != null ? id : -1;
+    }
+
+    public String nameOf(int id) {
+        return names[id];
+    }
+
+    public int size() {
+        return names.length;
+    }
+}
@@ -0,0 +1,400 @@
+package com.company.dynamicdatastore.component.storage;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Mã hóa row dạng Map thành byte nhị phân gọn:
+ * [số field][tên field | id trong từ điển][tag kiểu][giá trị]...
+ * Số nguyên và độ dài dùng varint, list/map lồng nhau (dữ liệu json) được mã hóa đệ quy.
+ * Việc đọc dùng vị trí tuyệt đối nên nhiều thread có thể đọc chung một ByteBuffer.
+ */
+public class RowCodec {
+
+    private static final byte NULL = 0;
+    private static final byte STRING = 1;
+    private static final byte INT = 2;
+    private static final byte LONG = 3;
+    private static final byte DOUBLE = 4;
+    private static final byte FLOAT = 5;
+    private static final byte TRUE = 6;
+    private static final byte FALSE = 7;
+    private static final byte DECIMAL = 8;
+    private static final byte BIG_INTEGER = 9;
+    private static final byte UUID_VALUE = 10;
+    private static final byte LOCAL_DATE = 11;
+    private static final byte LOCAL_DATE_TIME = 12;
+    private static final byte LIST = 13;
+    private static final byte MAP = 14;
+
+    private final PropertyDictionary dictionary;
+    private byte[] buffer = new byte[256];
+    private int length;
+
+    /**
+     * Codec ghi tên field trực tiếp vào từng row
+     */
+    public RowCodec() {
+        this(null);
+    }
+
+    /**
+     * Codec ghi id của tên field theo từ điển dùng chung
+     */
+    public RowCodec(PropertyDictionary dictionary) {
+        this.dictionary = dictionary;
+    }
+
+    // --- Encode ---
+
+    /**
+     * Mã hóa row, không thread-safe vì dùng chung buffer nội bộ
+     */
+    public byte[] encode(Map<?, ?> row) {
+        length = 0;
+        writeVarInt(row.size());
+        for (Map.Entry<?, ?> e : row.entrySet()) {
+            String name = String.valueOf(e.getKey());
+            if (dictionary != null)
+                writeVarInt(dictionary.idOf(name));
+            else
+                writeString(name);
+            writeValue(e.getValue());
+        }
+        return Arrays.copyOf(buffer, length);
+    }
+
+    private void writeValue(Object value) {
+        if (value == null) {
+            writeByte(NULL);
+        } else if (value instanceof String) {
+            writeByte(STRING);
+            writeString((String) value);
+        } else if (value instanceof Integer) {
+            writeByte(INT);
+            writeVarLong(zigZag((Integer) value));
+        } else if (value instanceof Long) {
+            writeByte(LONG);
+            writeVarLong(zigZag((Long) value));
+        } else if (value instanceof Double) {
+            writeByte(DOUBLE);
+            writeLong(Double.doubleToRawLongBits((Double) value));
+        } else if (value instanceof Float) {
+            writeByte(FLOAT);
+            writeLong(Float.floatToRawIntBits((Float) value));
+        } else if (value instanceof Boolean) {
+            writeByte((Boolean) value ? TRUE : FALSE);
+        } else if (value instanceof BigDecimal) {
+            BigDecimal decimal = (BigDecimal) value;
+            writeByte(DECIMAL);
+            writeVarLong(zigZag(decimal.scale()));
+            writeBytes(decimal.unscaledValue().toByteArray());
+        } else if (value instanceof BigInteger) {
+            writeByte(BIG_INTEGER);
+            writeBytes(((BigInteger) value).toByteArray());
+        } else if (value instanceof UUID) {
+            writeByte(UUID_VALUE);
+            writeLong(((UUID) value).getMostSignificantBits());
+            writeLong(((UUID) value).getLeastSignificantBits());
+        } else if (value instanceof LocalDate) {
+            writeByte(LOCAL_DATE);
+            writeVarLong(zigZag(((LocalDate) value).toEpochDay()));
+        } else if (value instanceof LocalDateTime) {
+            LocalDateTime dateTime = (LocalDateTime) value;
+            writeByte(LOCAL_DATE_TIME);
+            writeVarLong(zigZag(dateTime.toEpochSecond(ZoneOffset.UTC)));
+            writeVarInt(dateTime.getNano());
+        } else if (value instanceof List) {
+            List<?> list = (List<?>) value;
+            writeByte(LIST);
+            writeVarInt(list.size());
+            for (Object item : list) {
+                writeValue(item);
+            }
+        } else if (value instanceof Map) {
+            Map<?, ?> map = (Map<?, ?>) value;
+            writeByte(MAP);
+            writeVarInt(map.size());
+            for (Map.Entry<?, ?> e : map.entrySet()) {
+                writeString(String.valueOf(e.getKey()));
+                writeValue(e.getValue());
+            }
+        } else {
+            throw new IllegalArgumentException("Unsupported value type for binary row: " + value.getClass().getName());
+        }
+    }
+
+    private void writeString(String value) {
+        writeBytes(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void writeBytes(byte[] bytes) {
+        writeVarInt(bytes.length);
+        ensure(bytes.length);
+        System.arraycopy(bytes, 0, buffer, length, bytes.length);
+        length += bytes.length;
+    }
+
+    private void writeByte(byte b) {
+        ensure(1);
+        buffer[length++] = b;
+    }
+
+    private void writeLong(long v) {
+        ensure(8);
+        for (int i = 7; i >= 0; i--) {
+            buffer[length++] = (byte) (v >>> (i * 8));
+        }
+    }
+
+    private void writeVarInt(int v) {
+        writeVarLong(v & 0xFFFFFFFFL);
+    }
+
+    private void writeVarLong(long v) {
+        ensure(10);
+        while ((v & ~0x7FL) != 0) {
+            buffer[length++] = (byte) ((v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        buffer[length++] = (byte) v;
+    }
+
+    private void ensure(int extra) {
+        if (length + extra > buffer.length)
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + extra));
+    }
+
+    private static long zigZag(long v) {
+        return (v << 1) ^ (v >> 63);
+    }
+
+    private static long unZigZag(long v) {
+        return (v >>> 1) ^ -(v & 1);
+    }
+
+    // --- Decode ---
+
+    /**
+     * Dựng lại toàn bộ row bắt đầu tại offset
+     */
+    public Map<String, Object> decode(ByteBuffer source, int offset) {
+        Cursor in = new Cursor(source, offset);
+        int fields = in.varInt();
+        Map<String, Object> row = new HashMap<>(Math.max(4, fields * 2));
+        for (int i = 0; i < fields; i++) {
+            row.put(readName(in), readValue(in));
+        }
+        return row;
+    }
+
+    /**
+     * Đọc một field của row, các field khác được bỏ qua mà không dựng object
+     */
+    public Object decodeValue(ByteBuffer source, int offset, String property) {
+        Cursor in = new Cursor(source, offset);
+        return seek(in, property) ? readValue(in) : null;
+    }
+
+    /**
+     * Row có field property không (kể cả khi giá trị là null), không dựng object nào
+     */
+    public boolean containsField(ByteBuffer source, int offset, String property) {
+        return seek(new Cursor(source, offset), property);
+    }
+
+    /**
+     * Đưa cursor tới giá trị của field property, false nếu row không có field đó
+     */
+    private boolean seek(Cursor in, String property) {
+        int fields = in.varInt();
+        int wantedId = dictionary != null ? dictionary.find(property) : -1;
+        if (dictionary != null && wantedId < 0)
+            return false;
+        for (int i = 0; i < fields; i++) {
+            boolean match;
+            if (dictionary != null) {
+                match = in.varInt() == wantedId;
+            } else {
+                match = property.equals(in.string());
+            }
+            if (match)
+                return true;
+            skipValue(in);
+        }
+        return false;
+    }
+
+    private String readName(Cursor in) {
+        return dictionary != null ? dictionary.nameOf(in.varInt()) : in.string();
+    }
+
+    private Object readValue(Cursor in) {
+        byte tag = in.source.get(in.pos++);
+        switch (tag) {
+            case NULL:
+                return null;
+            case STRING:
+                return in.string();
+            case INT:
+                return (int) unZigZag(in.varLong());
+            case LONG:
+                return unZigZag(in.varLong());
+            case DOUBLE:
+                return Double.longBitsToDouble(in.fixedLong());
+            case FLOAT:
+                return Float.intBitsToFloat((int) in.fixedLong());
+            case TRUE:
+                return Boolean.TRUE;
+            case FALSE:
+                return Boolean.FALSE;
+            case DECIMAL: {
+                int scale = (int) unZigZag(in.varLong());
+                return new BigDecimal(new BigInteger(in.bytes()), scale);
+            }
+            case BIG_INTEGER:
+                return new BigInteger(in.bytes());
+            case UUID_VALUE:
+                return new UUID(in.fixedLong(), in.fixedLong());
+            case LOCAL_DATE:
+                return LocalDate.ofEpochDay(unZigZag(in.varLong()));
+            case LOCAL_DATE_TIME: {
+                long seconds = unZigZag(in.varLong());
+                return LocalDateTime.ofEpochSecond(seconds, in.varInt(), ZoneOffset.UTC);
+            }
+            case LIST: {
+                int size = in.varInt();
+                List<Object> list = new ArrayList<>(size);
+                for (int i = 0; i < size; i++) {
+                    list.add(readValue(in));
+                }
+                return list;
+            }
+            case MAP: {
+                int size = in.varInt();
+                Map<String, Object> map = new LinkedHashMap<>(Math.max(4, size * 2));
+                for (int i = 0; i < size; i++) {
+                    map.put(in.string(), readValue(in));
+                }
+                return map;
+            }
+            default:
+                throw new IllegalStateException("Corrupted binary row, unknown tag " + tag);
+        }
+    }
+
+    private void skipValue(Cursor in) {
+        byte tag = in.source.get(in.pos++);
+        switch (tag) {
+            case NULL:
+            case TRUE:
+            case FALSE:
+                return;
+            case STRING:
+            case BIG_INTEGER:
+                in.skipBytes();
+                return;
+            case INT:
+            case LONG:
+            case LOCAL_DATE:
+                in.varLong();
+                return;
+            case DOUBLE:
+            case FLOAT:
+                in.pos += 8;
+                return;
+            case DECIMAL:
+                in.varLong();
+                in.skipBytes();
+                return;
+            case UUID_VALUE:
+                in.pos += 16;
+                return;
+            case LOCAL_DATE_TIME:
+                in.varLong();
+                in.varInt();
+                return;
+            case LIST: {
+                int size = in.varInt();
+                for (int i = 0; i < size; i++) {
+                    skipValue(in);
+                }
+                return;
+            }
+            case MAP: {
+                int size = in.varInt();
+                for (int i = 0; i < size; i++) {
+                    in.skipBytes();
+                    skipValue(in);
+                }
+                return;
+            }
+            default:
+                throw new IllegalStateException("Corrupted binary row, unknown tag " + tag);
+        }
+    }
+
+    /**
+     * Con trỏ đọc theo vị trí tuyệt đối, không thay đổi position của ByteBuffer dùng chung
+     */
+    private static final class Cursor {
+        private final ByteBuffer source;
+        private int pos;
+
+        private Cursor(ByteBuffer source, int pos) {
+            this.source = source;
+            this.pos = pos;
+        }
+
+        int varInt() {
+            return (int) varLong();
+        }
+
+        long varLong() {
+            long result = 0;
+            int shift = 0;
+            while (true) {
+                byte b = source.get(pos++);
+                result |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0)
+                    return result;
+                shift += 7;
+            }
+        }
+
+        long fixedLong() {
+            long v = source.getLong(pos);
+            pos += 8;
+            return v;
+        }
+
+        byte[] bytes() {
+            int len = varInt();
+            byte[] bytes = new byte[len];
+            source.get(pos, bytes);
+            pos += len;
+            return bytes;
+        }
+
+        String string() {
+            return new String(bytes(), StandardCharsets.UTF_8);
+        }
+
+        void skipBytes() {
+            int len = varInt();
+            pos += len;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.company.dynamicdatastore.component.storage;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.time.temporal.Temporal;
+import java.util.Collection;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Ước tính kích thước trên heap của giá trị trong row (JVM 64 bit, compressed oops).
+ * Chỉ dùng để so với giới hạn bộ nhớ nên không cần chính xác tuyệt đối.
+ */
+public final class RowSizes {
+
+    public static final int REFERENCE = 4;
+    private static final int OBJECT_HEADER = 16;
+    private static final int MAP_ENTRY = 32;
+    private static final int MAX_DEPTH = 8;
+
+    private RowSizes() {
+    }
+
+    public static long estimate(Object value) {
+        return estimate(value, 0);
+    }
+
+    private static long estimate(Object value, int depth) {
+        if (value == null)
+            return 0;
+        if (value instanceof String)
+            return OBJECT_HEADER + 24 + ((String) value).length();
+        if (value instanceof Integer || value instanceof Boolean || value instanceof Float
+                || value instanceof Short || value instanceof Byte || value instanceof Character)
+            return OBJECT_HEADER;
+        if (value instanceof Long || value instanceof Double)
+            return OBJECT_HEADER + 8;
+        if (value instanceof UUID)
+            return OBJECT_HEADER + 16;
+        if (value instanceof BigDecimal)
+            return OBJECT_HEADER + 24 + estimate(((BigDecimal) value).unscaledValue(), depth);
+        if (value instanceof BigInteger)
+            return OBJECT_HEADER + 24 + ((BigInteger) value).bitLength() / 8;
+        if (value instanceof Temporal)
+            return 2L * OBJECT_HEADER + 16;
+        if (depth >= MAX_DEPTH)
+            return OBJECT_HEADER;
+        if (value instanceof Map) {
+            Map<?, ?> map = (Map<?, ?>) value;
+            long size = 3L * OBJECT_HEADER + (long) map.size() * (MAP_ENTRY + REFERENCE);
+            for (Map.Entry<?, ?> e : map.entrySet()) {
+                // Tên thuộc tính thường là chuỗi hằng dùng chung giữa các row
+                size += estimate(e.getValue(), depth + 1);
+            }
+            return size;
+        }
+        if (value instanceof Collection) {
+            Collection<?> collection = (Collection<?>) value;
+            long size = 2L * OBJECT_HEADER + (long) collection.size() * REFERENCE;
+            for (Object element : collection) {
+                size += estimate(element, depth + 1);
+            }
+            return size;
+        }
+        return 4L * OBJECT_HEADER;
+    }
+}
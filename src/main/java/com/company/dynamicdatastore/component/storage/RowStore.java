@@ -0,0 +1,60 @@
+package com.company.dynamicdatastore.component.storage;
+
+import java.util.Map;
+
+/**
+ * Vùng lưu rows của một entity, đánh địa chỉ theo slot và chỉ ghi thêm (append-only):
+ * cập nhật một row tạo slot mới, slot cũ vẫn đọc được cho tới khi phân vùng được dồn lại
+ * sang RowStore mới. Nhờ vậy các snapshot cũ đọc được mà không cần khóa.
+ * Chỉ một thread ghi tại một thời điểm (giữ write lock của phân vùng), nhiều thread có thể đọc đồng thời.
+ */
+public interface RowStore {
+
+    StorageMode getMode();
+
+    /**
+     * Ghi row vào slot kế tiếp và trả về slot đó
+     */
+    int append(Object row);
+
+    /**
+     * Đọc row tại slot, với storage dạng cột/ngoài heap row được dựng lại thành Map
+     */
+    Object read(int slot);
+
+    /**
+     * Đọc một thuộc tính của row mà không cần dựng lại cả row
+     */
+    Object value(int slot, String property);
+
+    /**
+     * Row có thuộc tính property không (kể cả khi giá trị là null), dùng khi value trả về null
+     */
+    default boolean contains(int slot, String property) {
+        return read(slot) instanceof Map<?, ?> row && row.containsKey(property);
+    }
+
+    /**
+     * Row để đọc theo thuộc tính: với storage dạng cột/ngoài heap là Map chỉ đọc lấy từng thuộc tính qua value,
+     * chỉ dựng lại cả row khi bị duyệt toàn bộ. Bộ lọc, chỉ mục, sắp xếp và gộp đọc row qua đây thay vì read
+     */
+    default Object row(int slot) {
+        return new StoredRow(this, slot);
+    }
+
+    /**
+     * Số slot đã cấp phát (kể cả slot của các phiên bản cũ)
+     */
+    int size();
+
+    /**
+     * Ước tính số bytes bộ nhớ mà rows đang chiếm (kể cả phiên bản cũ), dùng cho giới hạn bộ nhớ của store
+     */
+    long estimatedBytes();
+
+    /**
+     * Giải phóng toàn bộ bộ nhớ khi store bị xóa
+     */
+    default void release() {
+    }
+}
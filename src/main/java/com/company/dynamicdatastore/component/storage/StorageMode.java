@@ -0,0 +1,29 @@
+package com.company.dynamicdatastore.component.storage;
+
+/**
+ * Cách VirtualDataStore lưu trữ rows của mỗi entity
+ */
+public enum StorageMode {
+    /**
+     * Giữ nguyên object của từng row trên heap
+     */
+    HEAP,
+    /**
+     * Tách row thành các cột có kiểu theo VirtualEntityDefinition
+     */
+    COLUMNAR,
+    /**
+     * Mã hóa row nhị phân vào bộ nhớ direct ngoài heap, heap chỉ giữ chỉ mục
+     */
+    OFF_HEAP;
+
+    public static StorageMode fromString(String value) {
+        if (value == null || value.isBlank())
+            return HEAP;
+        try {
+            return valueOf(value.trim().toUpperCase().replace('-', '_'));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown storage mode: " + value);
+        }
+    }
+}
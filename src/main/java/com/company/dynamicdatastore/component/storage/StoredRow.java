@@ -0,0 +1,54 @@
+package com.company.dynamicdatastore.component.storage;
+
+import java.util.AbstractMap;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Row chỉ đọc tại một slot của RowStore dạng cột/ngoài heap. get/containsKey đọc đúng một thuộc tính qua
+ * RowStore.value/contains nên bộ lọc, chỉ mục, sắp xếp và chiếu field không dựng lại cả row; row chỉ được dựng lại (một lần) khi cần
+ * duyệt mọi field, ví dụ khi serialize hoặc so sánh bằng.
+ */
+final class StoredRow extends AbstractMap<String, Object> {
+
+    private final RowStore rows;
+    private final int slot;
+    private volatile Map<String, Object> materialized;
+
+    StoredRow(RowStore rows, int slot) {
+        this.rows = rows;
+        this.slot = slot;
+    }
+
+    @Override
+    public Object get(Object key) {
+        Map<String, Object> row = materialized;
+        if (row != null)
+            return row.get(key);
+        return key instanceof String property ? rows.value(slot, property) : null;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        Map<String, Object> row = materialized;
+        if (row != null)
+            return row.containsKey(key);
+        return key instanceof String property && rows.contains(slot, property);
+    }
+
+    @Override
+    public Set<Entry<String, Object>> entrySet() {
+        return materialize().entrySet();
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> materialize() {
+        Map<String, Object> row = materialized;
+        if (row == null) {
+            row = Collections.unmodifiableMap((Map<String, Object>) rows.read(slot));
+            materialized = row;
+        }
+        return row;
+    }
+}
@@ -0,0 +1,36 @@
+package com.company.dynamicdatastore.component.storage;
+
+import java.util.Arrays;
+
+public class StringColumn extends Column {
+
+    private volatile String[] values = new String[0];
+
+    public StringColumn(String name) {
+        super(name);
+    }
+
+    @Override
+    protected boolean store(int slot, Object value) {
+        if (!(value instanceof String))
+            return false;
+        values[slot] = (String) value;
+        return true;
+    }
+
+    @Override
+    public boolean holdsReference(int slot) {
+        return true;
+    }
+
+    @Override
+    protected Object load(int slot) {
+        return values[slot];
+    }
+
+    @Override
+    protected void ensureCapacity(int capacity) {
+        if (values.length < capacity)
+            values = Arrays.copyOf(values, capacity);
+    }
+}
@@ -0,0 +1,37 @@
+package com.company.dynamicdatastore.component.storage;
+
+import java.util.Arrays;
+import java.util.UUID;
+
+public class UuidColumn extends Column {
+
+    private volatile long[] mostSigBits = new long[0];
+    private volatile long[] leastSigBits = new long[0];
+
+    public UuidColumn(String name) {
+        super(name);
+    }
+
+    @Override
+    protected boolean store(int slot, Object value) {
+        if (!(value instanceof UUID))
+            return false;
+        UUID uuid = (UUID) value;
+        mostSigBits[slot] = uuid.getMostSignificantBits();
+        leastSigBits[slot] = uuid.getLeastSignificantBits();
+        return true;
+    }
+
+    @Override
+    protected Object load(int slot) {
+        return new UUID(mostSigBits[slot], leastSigBits[slot]);
+    }
+
+    @Override
+    protected void ensureCapacity(int capacity) {
+        if (mostSigBits.length < capacity) {
+            mostSigBits = Arrays.copyOf(mostSigBits, capacity);
+            leastSigBits = Arrays.copyOf(leastSigBits, capacity);
+        }
+    }
+}
@@ -1,8 +1,13 @@
 package com.company.dynamicdatastore.controller;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -11,10 +16,21 @@ import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import com.company.dynamicdatastore.component.datastore.EntitySnapshot;
+import com.company.dynamicdatastore.component.datastore.QueryPlan;
 import com.company.dynamicdatastore.service.AggregationService;
+import com.company.dynamicdatastore.service.GroupBy;
 import com.company.dynamicdatastore.service.ImportJsonService;
+import com.company.dynamicdatastore.service.JoinType;
+import com.company.dynamicdatastore.service.PageRequest;
+import com.company.dynamicdatastore.service.Projection;
+import com.company.dynamicdatastore.service.RowPage;
 import com.company.dynamicdatastore.service.VirtualDataStoreService;
 
 /**
@@ -27,13 +43,17 @@ public class VirtualDataStoreController {
     private final VirtualDataStoreService virtualDataStoreService;
     private final ImportJsonService importJsonService;
     private final AggregationService aggregationService;
+    // ObjectMapper của ứng dụng để dòng stream được serialize giống các response JSON khác
+    private final ObjectMapper json;
 
     public VirtualDataStoreController(VirtualDataStoreService virtualDataStoreService,
             ImportJsonService importJsonService,
-            AggregationService aggregationService) {
+            AggregationService aggregationService,
+            ObjectMapper json) {
         this.virtualDataStoreService = virtualDataStoreService;
         this.importJsonService = importJsonService;
         this.aggregationService = aggregationService;
+        this.json = json;
     }
 
     // ========== STORE MANAGEMENT ==========
@@ -50,7 +70,9 @@ public class VirtualDataStoreController {
         }
 
         try {
-            String createdStoreName = virtualDataStoreService.createStore(storeName);
+            String scanParallelism = request.get("scanParallelism");
+            String createdStoreName = virtualDataStoreService.createStore(storeName, request.get("storageMode"),
+                    scanParallelism != null ? Integer.valueOf(scanParallelism) : null);
             return ResponseEntity.ok(Map.of(
                     "message", "Store created successfully",
                     "storeName", createdStoreName));
@@ -139,7 +161,9 @@ public class VirtualDataStoreController {
                     "entityName", definition.getEntityName(),
                     "storeName", definition.getStoreName(),
                     "properties", definition.getProperties(),
-                    "primaryKeyProperties", definition.getPrimaryKeyProperties());
+                    "primaryKeyProperties", definition.getPrimaryKeyProperties(),
+                    "indexedProperties", definition.getIndexedProperties(),
+                    "textIndexedProperties", definition.getTextIndexedProperties());
 
             return ResponseEntity.ok(result);
         } catch (Exception e) {
@@ -160,7 +184,9 @@ public class VirtualDataStoreController {
                             "entityName", def.getEntityName(),
                             "storeName", def.getStoreName(),
                             "properties", def.getProperties(),
-                            "primaryKeyProperties", def.getPrimaryKeyProperties()))
+                            "primaryKeyProperties", def.getPrimaryKeyProperties(),
+                            "indexedProperties", def.getIndexedProperties(),
+                            "textIndexedProperties", def.getTextIndexedProperties()))
                     .toList();
 
             return ResponseEntity.ok(Map.of("entityDefinitions", definitions));
@@ -190,6 +216,75 @@ public class VirtualDataStoreController {
         }
     }
 
+    // ========== SECONDARY INDEXES ==========
+
+    /**
+     * Danh sách thuộc tính có chỉ mục của entity
+     */
+    @GetMapping("/stores/{storeName}/entities/{entityName}/indexes")
+    public ResponseEntity<Map<String, Object>> getIndexes(
+            @PathVariable String storeName,
+            @PathVariable String entityName) {
+
+        try {
+            return ResponseEntity.ok(Map.of(
+                    "entityName", entityName,
+                    "indexes", virtualDataStoreService.getIndexes(storeName, entityName)));
+        } catch (Exception e) {
+            return ResponseEntity.badRequest()
+                    .body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    /**
+     * Tạo chỉ mục trên một thuộc tính, body {"property": "cccd"} hoặc {"property": "name", "type": "text"}
+     */
+    @PostMapping("/stores/{storeName}/entities/{entityName}/indexes")
+    public ResponseEntity<Map<String, Object>> createIndex(
+            @PathVariable String storeName,
+            @PathVariable String entityName,
+            @RequestBody Map<String, String> request) {
+
+        String property = request.get("property");
+        if (property == null || property.trim().isEmpty()) {
+            return ResponseEntity.badRequest()
+                    .body(Map.of("error", "Property is required"));
+        }
+
+        try {
+            virtualDataStoreService.createIndex(storeName, entityName, property, request.get("type"));
+            return ResponseEntity.ok(Map.of(
+                    "message", "Index created successfully",
+                    "entityName", entityName,
+                    "property", property));
+        } catch (Exception e) {
+            return ResponseEntity.badRequest()
+                    .body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    /**
+     * Xóa chỉ mục trên một thuộc tính, ?type=text để xóa chỉ mục văn bản
+     */
+    @DeleteMapping("/stores/{storeName}/entities/{entityName}/indexes/{property}")
+    public ResponseEntity<Map<String, Object>> dropIndex(
+            @PathVariable String storeName,
+            @PathVariable String entityName,
+            @PathVariable String property,
+            @RequestParam(required = false) String type) {
+
+        try {
+            virtualDataStoreService.dropIndex(storeName, entityName, property, type);
+            return ResponseEntity.ok(Map.of(
+                    "message", "Index deleted successfully",
+                    "entityName", entityName,
+                    "property", property));
+        } catch (Exception e) {
+            return ResponseEntity.badRequest()
+                    .body(Map.of("error", e.getMessage()));
+        }
+    }
+
     // ========== ENTITY OPERATIONS ==========
 
     /**
@@ -215,26 +310,47 @@ public class VirtualDataStoreController {
     }
 
     /**
-     * Load tất cả entities của một loại
+     * Load entities của một loại, asOfVersion đọc lại đúng version đã trả về trước đó khi lần đọc đó có
+     * consistent=true (hoặc trả về nextCursor). sort ("-price,name"), offset/limit hoặc cursor
+     * (nextCursor của trang trước) để phân trang
      */
     @GetMapping("/stores/{storeName}/entities/{entityName}/data")
     public ResponseEntity<Map<String, Object>> loadAllEntities(
             @PathVariable String storeName,
-            @PathVariable String entityName) {
+            @PathVariable String entityName,
+            @RequestParam(required = false) Long asOfVersion,
+            @RequestParam(required = false) String sort,
+            @RequestParam(required = false) Integer offset,
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) String fields,
+            @RequestParam(defaultValue = "false") boolean consistent) {
 
         try {
-            List<Object> entities = virtualDataStoreService.loadAllEntities(storeName, entityName);
-            List<Map<String, Object>> entityMaps = virtualDataStoreService.entitiesToMaps(entities);
+            PageRequest request = PageRequest.of(sort, offset, limit, cursor);
+            EntitySnapshot snapshot = virtualDataStoreService.loadSnapshot(storeName, entityName,
+                    request.versionOr(asOfVersion), consistent);
+            RowPage page = virtualDataStoreService.page(storeName, entityName, snapshot, snapshot.getRows(), null, request,
+                    Projection.of(fields));
 
-            return ResponseEntity.ok(Map.of(
-                    "entities", entityMaps,
-                    "count", entityMaps.size()));
+            return ResponseEntity.ok(pageResponse(page, snapshot));
         } catch (Exception e) {
             return ResponseEntity.badRequest()
                     .body(Map.of("error", e.getMessage()));
         }
     }
 
+    private static Map<String, Object> pageResponse(RowPage page, EntitySnapshot snapshot) {
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("entities", page.getRows());
+        response.put("count", page.getRows().size());
+        response.put("total", page.getTotal());
+        response.put("version", snapshot.getVersion());
+        if (page.getNextCursor() != null)
+            response.put("nextCursor", page.getNextCursor());
+        return response;
+    }
+
     /**
      * Load một entity theo ID
      */
@@ -242,7 +358,8 @@ public class VirtualDataStoreController {
     public ResponseEntity<Map<String, Object>> loadEntity(
             @PathVariable String storeName,
             @PathVariable String entityName,
-            @PathVariable String id) {
+            @PathVariable String id,
+            @RequestParam(required = false) String fields) {
 
         try {
             Object entity = virtualDataStoreService.loadEntity(storeName, entityName, id);
@@ -250,7 +367,7 @@ public class VirtualDataStoreController {
                 return ResponseEntity.notFound().build();
             }
 
-            Map<String, Object> entityMap = virtualDataStoreService.entityToMap(entity);
+            Map<String, Object> entityMap = Projection.of(fields).apply(virtualDataStoreService.entityToMap(entity));
             return ResponseEntity.ok(Map.of("entity", entityMap));
         } catch (Exception e) {
             return ResponseEntity.badRequest()
@@ -332,21 +449,47 @@ public class VirtualDataStoreController {
         }
     }
 
+    /**
+     * Lọc rows theo bộ lọc trong body, ?explain=true trả thêm kế hoạch đã chạy (chỉ mục được chọn, số row ước lượng/thực tế).
+     * Phân trang như khi load: sort, offset/limit hoặc cursor (phải gửi lại cùng bộ lọc), consistent như khi load
+     */
     @PostMapping("/stores/{storeName}/entities/{entityName}/query")
     public ResponseEntity<Map<String, Object>> query(
             @PathVariable String storeName,
             @PathVariable String entityName,
-            @RequestBody(required = false) Map<String, Object> filters) {
+            @RequestBody(required = false) Map<String, Object> filters,
+            @RequestParam(required = false) Long asOfVersion,
+            @RequestParam(defaultValue = "false") boolean explain,
+            @RequestParam(required = false) String sort,
+            @RequestParam(required = false) Integer offset,
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) String fields,
+            @RequestParam(defaultValue = "false") boolean consistent) {
         try {
-            List<Map<String, Object>> items = virtualDataStoreService.query(storeName, entityName, filters);
-            return ResponseEntity.ok(Map.of("entities", items, "count", items.size()));
+            PageRequest request = PageRequest.of(sort, offset, limit, cursor);
+            EntitySnapshot snapshot = virtualDataStoreService.loadSnapshot(storeName, entityName,
+                    request.versionOr(asOfVersion), consistent);
+            QueryPlan plan = virtualDataStoreService.execute(storeName, entityName, snapshot, filters);
+            RowPage page = virtualDataStoreService.page(storeName, entityName, snapshot, plan.getRows(), filters, request,
+                    Projection.of(fields));
+            Map<String, Object> response = pageResponse(page, snapshot);
+            if (explain)
+                response.put("plan", plan.getExplain());
+            return ResponseEntity.ok(response);
         } catch (Exception e) {
             return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
         }
     }
 
+    /**
+     * Gộp nhiều entity theo joinKey, "joins" là kiểu join theo entity (inner, left, semi, anti; xem JoinType).
+     * Có "groupBy"/"aggregates" thì gộp theo nhóm (xem AggregationService#group);
+     * thêm "stream": true thì trả từng nhóm một dòng JSON (application/x-ndjson) ngay khi nhóm tính xong,
+     * lỗi giữa chừng là một dòng {"error": ...} cuối cùng
+     */
     @PostMapping("/stores/{storeName}/aggregate")
-    public ResponseEntity<Map<String, Object>> aggregate(
+    public ResponseEntity<?> aggregate(
             @PathVariable String storeName,
             @RequestBody Map<String, Object> body) {
         try {
@@ -357,14 +500,65 @@ public class VirtualDataStoreController {
             Map<String, String> select = (Map<String, String>) body.get("select");
             @SuppressWarnings("unchecked")
             Map<String, Object> filters = (Map<String, Object>) body.get("filters");
+            @SuppressWarnings("unchecked")
+            Map<String, JoinType> joins = JoinType.parse((Map<String, Object>) body.get("joins"));
+
+            if (body.containsKey("groupBy") || body.containsKey("aggregates")) {
+                Object fields = body.get("groupBy");
+                @SuppressWarnings("unchecked")
+                List<String> groupFields = fields instanceof List<?> list ? (List<String>) list
+                        : fields != null ? List.of(fields.toString().split("\\s*,\\s*")) : null;
+                @SuppressWarnings("unchecked")
+                GroupBy groupBy = GroupBy.of(groupFields, (Map<String, String>) body.get("aggregates"));
+                if (Boolean.TRUE.equals(body.get("stream")))
+                    return streamGroups(storeName, entities, joinKey, groupBy, filters, joins);
+                List<Map<String, Object>> groups = aggregationService.group(storeName, entities, joinKey, groupBy, filters,
+                        joins);
+                return ResponseEntity.ok(Map.of("rows", groups, "count", groups.size()));
+            }
+
+            Object fields = body.get("fields");
+            @SuppressWarnings("unchecked")
+            Projection projection = fields instanceof List<?> list
+                    ? Projection.of((List<String>) list) : Projection.of(fields != null ? fields.toString() : null);
 
-            List<Map<String, Object>> rows = aggregationService.aggregate(storeName, entities, joinKey, select, filters);
+            List<Map<String, Object>> rows = aggregationService.aggregate(storeName, entities, joinKey, select, filters,
+                    projection, joins);
             return ResponseEntity.ok(Map.of("rows", rows, "count", rows.size()));
         } catch (Exception e) {
             return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
         }
     }
 
+    private ResponseEntity<StreamingResponseBody> streamGroups(String storeName, List<String> entities, String joinKey,
+                                                               GroupBy groupBy, Map<String, Object> filters,
+                                                               Map<String, JoinType> joins) {
+        StreamingResponseBody body = out -> {
+            try {
+                aggregationService.group(storeName, entities, joinKey, groupBy, filters, joins,
+                        group -> writeLine(out, group));
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            } catch (Exception e) {
+                writeLine(out, Map.of("error", String.valueOf(e.getMessage())));
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.parseMediaType("application/x-ndjson")).body(body);
+    }
+
+    /**
+     * Ghi một dòng rồi flush để client nhận nhóm ngay, không chờ đầy buffer của response
+     */
+    private void writeLine(OutputStream out, Map<String, Object> line) {
+        try {
+            out.write(json.writeValueAsBytes(line));
+            out.write('\n');
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
     // ========== UTILITY ENDPOINTS ==========
 
     /**
@@ -373,7 +567,7 @@ public class VirtualDataStoreController {
     @GetMapping("/stores/{storeName}/statistics")
     public ResponseEntity<Map<String, Object>> getStoreStatistics(@PathVariable String storeName) {
         try {
-            Map<String, Integer> statistics = virtualDataStoreService.getStoreStatistics(storeName);
+            Map<String, Object> statistics = virtualDataStoreService.getStoreStatistics(storeName);
             return ResponseEntity.ok(Map.of("statistics", statistics));
         } catch (Exception e) {
             return ResponseEntity.badRequest()
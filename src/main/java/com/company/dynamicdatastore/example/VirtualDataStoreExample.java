@@ -165,8 +165,12 @@ public class VirtualDataStoreExample {
 
                         // 6. Thống kê
                         System.out.println("\n📊 Step 6: Store statistics...");
-                        Map<String, Integer> store1Stats = virtualDataStoreService.getStoreStatistics(storeName1);
-                        Map<String, Integer> store2Stats = virtualDataStoreService.getStoreStatistics(storeName2);
+                        @SuppressWarnings("unchecked")
+                        Map<String, Integer> store1Stats = (Map<String, Integer>) virtualDataStoreService
+                                        .getStoreStatistics(storeName1).get("entityCounts");
+                        @SuppressWarnings("unchecked")
+                        Map<String, Integer> store2Stats = (Map<String, Integer>) virtualDataStoreService
+                                        .getStoreStatistics(storeName2).get("entityCounts");
 
                         System.out.println("📈 " + storeName1 + " statistics:");
                         store1Stats.forEach(
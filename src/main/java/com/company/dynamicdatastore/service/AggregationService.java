@@ -1,20 +1,35 @@
 package com.company.dynamicdatastore.service;
 
+import com.company.dynamicdatastore.component.datastore.Accumulator;
+import com.company.dynamicdatastore.component.datastore.EntitySnapshot;
+import com.company.dynamicdatastore.component.datastore.OrderedType;
+import com.company.dynamicdatastore.component.datastore.QueryFilter;
 import org.springframework.stereotype.Service;
 
+import java.math.BigDecimal;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Objects;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 @Service("dynamicdatastore_AggregationService")
 public class AggregationService {
 
     private final VirtualDataStoreService dataService;
+    private final QueryCache cache;
 
-    public AggregationService(VirtualDataStoreService dataService) {
+    public AggregationService(VirtualDataStoreService dataService, QueryCache cache) {
         this.dataService = dataService;
+        this.cache = cache;
     }
 
     /**
@@ -22,56 +37,406 @@ public class AggregationService {
      * - entities: danh sách entity names cần gộp, ví dụ ["Citizen","Education","Health","Marriage"]
      * - joinKey: tên trường chung có mặt ở tất cả entity, ví dụ "cccd"
      * - select: map tên alias -> tham chiếu field dạng "Entity.field"
-     * - filters: bộ lọc equals theo field dạng "Entity.field" -> value
+     * - filters: bộ lọc theo field dạng "Entity.field" như của query (xem QueryFilter);
+     *   bộ lọc trên field của một entity được lọc ngay khi load entity đó (dùng được chỉ mục), còn lại lọc sau khi gộp
+     * Các entity sau entity gốc được inner join: mỗi row khớp theo joinKey sinh một row gộp
      */
     public List<Map<String, Object>> aggregate(String storeName,
                                                List<String> entities,
                                                String joinKey,
                                                Map<String, String> select,
                                                Map<String, Object> filters) {
+        return aggregate(storeName, entities, joinKey, select, filters, Projection.ALL);
+    }
+
+    /**
+     * Như trên, projection là các field gộp cần trả về ("Entity.field", "Entity.*" là cả row) khi không có select.
+     * Row gộp chỉ chép các cột cần cho join, bộ lọc còn lại và select/projection; mục nội bộ "_..." bị bỏ
+     */
+    public List<Map<String, Object>> aggregate(String storeName,
+                                               List<String> entities,
+                                               String joinKey,
+                                               Map<String, String> select,
+                                               Map<String, Object> filters,
+                                               Projection projection) {
+        return aggregate(storeName, entities, joinKey, select, filters, projection, Map.of());
+    }
+
+    /**
+     * Như trên, joins là kiểu join (xem JoinType) của các entity sau entity gốc, entity không có trong joins là INNER.
+     * Bộ lọc riêng của entity LEFT/SEMI/ANTI giới hạn các row được coi là khớp chứ không loại row gốc.
+     * Field của entity SEMI/ANTI không được tham chiếu trong select, projection hay bộ lọc sau khi gộp
+     */
+    public List<Map<String, Object>> aggregate(String storeName,
+                                               List<String> entities,
+                                               String joinKey,
+                                               Map<String, String> select,
+                                               Map<String, Object> filters,
+                                               Projection projection,
+                                               Map<String, JoinType> joins) {
         if (entities == null || entities.isEmpty()) return List.of();
 
-        // Load tất cả dữ liệu theo entity
-        Map<String, List<Map<String, Object>>> entityToRows = new HashMap<>();
+        Map<String, EntitySnapshot> snapshots = snapshots(storeName, entities);
+        Object query = Arrays.asList("aggregate", List.copyOf(entities), joinKey, QueryCache.normalize(select),
+                QueryCache.normalize(filters), QueryCache.normalize(projection.getFields()), QueryCache.normalize(joins));
+        Object tag = dataService.cacheTag(storeName, snapshots);
+        List<Map<String, Object>> cached = cache.get(storeName, query, tag);
+        if (cached != null)
+            return cached;
+        List<Map<String, Object>> result = Collections.unmodifiableList(
+                join(storeName, entities, joinKey, select, filters, projection, joins, snapshots));
+        cache.put(storeName, query, tag, result, result.size());
+        return result;
+    }
+
+    /**
+     * Gộp theo nhóm trên các entity join theo joinKey như aggregate, trong một lần duyệt tập gốc. Mỗi nhóm chỉ giữ
+     * các Accumulator (tổng long/double, số đếm...) nên không tạo row gộp nào; bộ lọc còn lại đọc thẳng các row đã join.
+     * <p>
+     * Nhóm theo một field của entity gốc có chỉ mục có thứ tự (entity gốc không có bộ lọc riêng) thì duyệt theo chỉ mục:
+     * các row cùng nhóm liền nhau nên mỗi nhóm được đưa cho sink ngay khi xong, chỉ một nhóm nằm trong bộ nhớ và kết quả
+     * theo thứ tự giá trị. Còn lại dùng bảng băm, các nhóm theo thứ tự gặp lần đầu và chỉ được đưa ra khi duyệt xong:
+     * mọi nhóm (khóa và Accumulator) nằm trong bộ nhớ tới cuối lần duyệt, bộ nhớ tỉ lệ với số nhóm chứ không phải số row
+     * và không được tràn ra đĩa.
+     * Mỗi row kết quả gồm các field nhóm rồi các alias. Trả về số nhóm
+     */
+    public long group(String storeName,
+                      List<String> entities,
+                      String joinKey,
+                      GroupBy groupBy,
+                      Map<String, Object> filters,
+                      Consumer<Map<String, Object>> sink) {
+        return group(storeName, entities, joinKey, groupBy, filters, Map.of(), sink);
+    }
+
+    /**
+     * Như trên với kiểu join của các entity sau entity gốc như aggregate; field nhóm và giá trị gộp không được
+     * tham chiếu entity SEMI/ANTI
+     */
+    public long group(String storeName,
+                      List<String> entities,
+                      String joinKey,
+                      GroupBy groupBy,
+                      Map<String, Object> filters,
+                      Map<String, JoinType> joins,
+                      Consumer<Map<String, Object>> sink) {
+        if (entities == null || entities.isEmpty())
+            throw new IllegalArgumentException("Group by needs at least one entity");
+        return group(storeName, entities, joinKey, groupBy, filters, joins, snapshots(storeName, entities), sink);
+    }
+
+    /**
+     * Như trên nhưng trả về danh sách nhóm, được cache như aggregate
+     */
+    public List<Map<String, Object>> group(String storeName,
+                                           List<String> entities,
+                                           String joinKey,
+                                           GroupBy groupBy,
+                                           Map<String, Object> filters) {
+        return group(storeName, entities, joinKey, groupBy, filters, Map.of());
+    }
+
+    public List<Map<String, Object>> group(String storeName,
+                                           List<String> entities,
+                                           String joinKey,
+                                           GroupBy groupBy,
+                                           Map<String, Object> filters,
+                                           Map<String, JoinType> joins) {
+        if (entities == null || entities.isEmpty())
+            throw new IllegalArgumentException("Group by needs at least one entity");
+        Map<String, EntitySnapshot> snapshots = snapshots(storeName, entities);
+        Object query = Arrays.asList("group", List.copyOf(entities), joinKey, groupBy.getFields(),
+                QueryCache.normalize(groupBy.getAggregates()), QueryCache.normalize(filters), QueryCache.normalize(joins));
+        Object tag = dataService.cacheTag(storeName, snapshots);
+        List<Map<String, Object>> cached = cache.get(storeName, query, tag);
+        if (cached != null)
+            return cached;
+        List<Map<String, Object>> groups = new ArrayList<>();
+        group(storeName, entities, joinKey, groupBy, filters, joins, snapshots, groups::add);
+        List<Map<String, Object>> result = Collections.unmodifiableList(groups);
+        cache.put(storeName, query, tag, result, result.size());
+        return result;
+    }
+
+    private long group(String storeName,
+                       List<String> entities,
+                       String joinKey,
+                       GroupBy groupBy,
+                       Map<String, Object> filters,
+                       Map<String, JoinType> joins,
+                       Map<String, EntitySnapshot> snapshots,
+                       Consumer<Map<String, Object>> sink) {
+        // Vị trí entity và cột của từng field nhóm, từng giá trị gộp
+        JoinType[] types = joinTypes(entities, joins);
+        List<String> fields = groupBy.getFields();
+        List<String> aliases = groupBy.aliases();
+        int[] fieldEntities = new int[fields.size()];
+        String[] fieldColumns = new String[fields.size()];
+        for (int i = 0; i < fields.size(); i++) {
+            fieldEntities[i] = projectedIndex(entities, types, fields.get(i));
+            fieldColumns[i] = column(fields.get(i));
+        }
+        int[] valueEntities = new int[aliases.size()];
+        String[] valueColumns = new String[aliases.size()];
+        Class<?>[] valueTypes = new Class<?>[aliases.size()];
+        for (int i = 0; i < aliases.size(); i++) {
+            String property = groupBy.property(i);
+            valueEntities[i] = property != null ? projectedIndex(entities, types, property) : -1;
+            valueColumns[i] = property != null ? column(property) : null;
+            valueTypes[i] = property != null ? mergedType(storeName, property) : null;
+        }
+
+        Map<String, Object> remaining = filters != null ? new HashMap<>(filters) : new HashMap<>();
+        Map<String, Map<String, Object>> entityFilters = new HashMap<>();
         for (String entity : entities) {
-            List<Object> list = dataService.loadAllEntities(storeName, entity);
-            List<Map<String, Object>> maps = dataService.entitiesToMaps(list);
-            entityToRows.put(entity, maps);
+            entityFilters.put(entity, takeEntityFilters(remaining, entity));
+        }
+        for (String property : QueryFilter.properties(remaining)) {
+            requireProjected(entities, types, property);
         }
+        QueryFilter filter = QueryFilter.compile(remaining, property -> mergedType(storeName, property));
+        boolean filtered = !remaining.isEmpty();
 
-        // Dựa trên entity đầu tiên làm tập gốc, join tuần tự các entity còn lại theo joinKey
+        // Tập gốc theo chỉ mục của field nhóm nếu có, các entity còn lại được join như aggregate
         String base = entities.get(0);
-        List<Map<String, Object>> result = new ArrayList<>();
-        for (Map<String, Object> baseRow : entityToRows.getOrDefault(base, List.of())) {
-            Object key = baseRow.get(joinKey);
-            if (key == null) continue;
+        List<?> ordered = fields.size() == 1 && fieldEntities[0] == 0 && entityFilters.get(base).isEmpty()
+                ? dataService.orderedRows(storeName, base, snapshots.get(base), fieldColumns[0])
+                : null;
+        JoinPlan plan = joinPlan(storeName, entities, joinKey, types, entityFilters, snapshots, ordered,
+                ordered != null && fieldColumns[0].equals(joinKey));
+        OrderedType orderedType = ordered != null ? OrderedType.of(mergedType(storeName, fields.get(0))) : null;
 
-            Map<String, Object> merged = new HashMap<>();
-            merged.put(base + ".*", baseRow); // giữ bản gốc để tham chiếu nếu cần
-            // copy phẳng với prefix
-            flattenInto(merged, base, baseRow);
+        Map<Object, Accumulator[]> groups = new LinkedHashMap<>();
+        if (fields.isEmpty())
+            groups.put(List.of(), accumulators(groupBy, valueTypes));
+        Accumulator[] open = null;
+        Object openValue = null;
+        Comparable<Object> openKey = null;
+        long emitted = 0;
 
-            boolean missing = false;
-            for (int i = 1; i < entities.size(); i++) {
-                String e = entities.get(i);
-                Map<String, Object> matched = findByJoinKey(entityToRows.getOrDefault(e, List.of()), joinKey, key);
-                if (matched == null) { missing = true; break; }
-                merged.put(e + ".*", matched);
-                flattenInto(merged, e, matched);
+        Fanout fanout = plan.fanout();
+        Map<String, Object>[] joined = fanout.joined;
+        // Bộ lọc còn lại đọc "Entity.field" thẳng từ các row đã join, không dựng row gộp
+        Function<String, Object> joinedValues = field -> joinedValue(entities, joined, field);
+        for (Object row : plan.baseRows) {
+            Map<String, Object> baseRow = dataService.entityToMap(row);
+            if (!fanout.start(baseRow, plan.probeKey(baseRow.get(joinKey))))
+                continue;
+            // Mỗi tổ hợp row khớp (một-nhiều) được cộng như một row gộp
+            do {
+                if (filtered && !filter.matches(joinedValues))
+                    continue;
+
+                Accumulator[] accumulators;
+                if (ordered != null) {
+                    Object value = baseRow.get(fieldColumns[0]);
+                    @SuppressWarnings("unchecked")
+                    Comparable<Object> orderedKey = (Comparable<Object>) orderedType.convert(value);
+                    if (open == null || openKey.compareTo(orderedKey) != 0) {
+                        if (open != null) {
+                            sink.accept(groupRow(fields, aliases, List.of(openValue), open));
+                            emitted++;
+                        }
+                        open = accumulators(groupBy, valueTypes);
+                        openValue = value;
+                        openKey = orderedKey;
+                    }
+                    accumulators = open;
+                } else {
+                    Object groupKey;
+                    if (fields.size() == 1) {
+                        groupKey = value(joined, fieldEntities[0], fieldColumns[0]);
+                    } else {
+                        Object[] values = new Object[fields.size()];
+                        for (int i = 0; i < values.length; i++) {
+                            values[i] = value(joined, fieldEntities[i], fieldColumns[i]);
+                        }
+                        groupKey = Arrays.asList(values);
+                    }
+                    accumulators = groups.computeIfAbsent(groupKey, k -> accumulators(groupBy, valueTypes));
+                }
+                for (int i = 0; i < accumulators.length; i++) {
+                    if (valueEntities[i] < 0)
+                        accumulators[i].addRow();
+                    else
+                        accumulators[i].add(value(joined, valueEntities[i], valueColumns[i]));
+                }
+            } while (fanout.next());
+        }
+
+        if (ordered != null) {
+            if (open != null) {
+                sink.accept(groupRow(fields, aliases, List.of(openValue), open));
+                emitted++;
             }
-            if (missing) continue;
+            return emitted;
+        }
+        for (Map.Entry<Object, Accumulator[]> group : groups.entrySet()) {
+            List<?> values = fields.size() == 1 ? Collections.singletonList(group.getKey()) : (List<?>) group.getKey();
+            sink.accept(groupRow(fields, aliases, values, group.getValue()));
+            emitted++;
+        }
+        return emitted;
+    }
+
+    private static Accumulator[] accumulators(GroupBy groupBy, Class<?>[] types) {
+        Accumulator[] accumulators = new Accumulator[types.length];
+        for (int i = 0; i < types.length; i++) {
+            accumulators[i] = new Accumulator(groupBy.function(i), groupBy.property(i), types[i]);
+        }
+        return accumulators;
+    }
+
+    private static Map<String, Object> groupRow(List<String> fields, List<String> aliases, List<?> values,
+                                                Accumulator[] accumulators) {
+        Map<String, Object> row = new LinkedHashMap<>();
+        for (int i = 0; i < fields.size(); i++) {
+            row.put(fields.get(i), values.get(i));
+        }
+        for (int i = 0; i < aliases.size(); i++) {
+            row.put(aliases.get(i), accumulators[i].result());
+        }
+        return row;
+    }
+
+    /**
+     * Vị trí entity của field nhóm/giá trị gộp; entity không được gộp hoặc được join SEMI/ANTI ném IllegalArgumentException
+     */
+    private static int projectedIndex(List<String> entities, JoinType[] types, String field) {
+        int index = entities.indexOf(field.substring(0, field.indexOf('.')));
+        if (index < 0)
+            throw new IllegalArgumentException("Group by field refers to an entity that is not aggregated: " + field);
+        requireProjected(entities, types, field);
+        return index;
+    }
 
-            if (!matchesFilters(merged, filters)) continue;
+    /**
+     * Field "Entity.field" của entity được join SEMI/ANTI không có trong row gộp nên không đọc được
+     */
+    private static void requireProjected(List<String> entities, JoinType[] types, String field) {
+        int dot = field != null ? field.indexOf('.') : -1;
+        int index = dot > 0 ? entities.indexOf(field.substring(0, dot)) : -1;
+        if (index >= 0 && !types[index].isProjected())
+            throw new IllegalArgumentException("Field of an entity joined as " + types[index] + " cannot be read: " + field);
+    }
+
+    /**
+     * Kiểu join theo vị trí entity, entity gốc (vị trí 0) và entity không có trong joins là INNER
+     */
+    private static JoinType[] joinTypes(List<String> entities, Map<String, JoinType> joins) {
+        JoinType[] types = new JoinType[entities.size()];
+        Arrays.fill(types, JoinType.INNER);
+        if (joins == null)
+            return types;
+        for (Map.Entry<String, JoinType> join : joins.entrySet()) {
+            int index = entities.indexOf(join.getKey());
+            if (index < 0)
+                throw new IllegalArgumentException("Join type refers to an entity that is not aggregated: " + join.getKey());
+            if (index == 0 && join.getValue() != JoinType.INNER)
+                throw new IllegalArgumentException("Base entity cannot be joined as " + join.getValue() + ": " + join.getKey());
+            if (join.getValue() != null)
+                types[index] = join.getValue();
+        }
+        return types;
+    }
 
-            // Ánh xạ select alias -> value từ merged
-            Map<String, Object> projection = project(merged, select);
-            result.add(projection);
+    private static Object value(Map<String, Object>[] joined, int entity, String column) {
+        Map<String, Object> row = joined[entity];
+        return row != null ? row.get(column) : null;
+    }
+
+    /**
+     * Giá trị field "Entity.column" trong các row đã join; entity LEFT không khớp để row null nên field là null
+     */
+    private static Object joinedValue(List<String> entities, Map<String, Object>[] joined, String field) {
+        int dot = field.indexOf('.');
+        int index = dot > 0 ? entities.indexOf(field.substring(0, dot)) : -1;
+        return index >= 0 ? value(joined, index, field.substring(dot + 1)) : null;
+    }
+
+    private static String column(String field) {
+        return field.substring(field.indexOf('.') + 1);
+    }
+
+    /**
+     * Đọc mọi entity trên snapshot lấy cùng lúc; kết quả gắn version của các snapshot này trong QueryCache
+     */
+    private Map<String, EntitySnapshot> snapshots(String storeName, List<String> entities) {
+        Map<String, EntitySnapshot> snapshots = new LinkedHashMap<>();
+        for (String entity : entities) {
+            snapshots.computeIfAbsent(entity, e -> dataService.snapshot(storeName, e));
+        }
+        return snapshots;
+    }
+
+    private List<Map<String, Object>> join(String storeName,
+                                           List<String> entities,
+                                           String joinKey,
+                                           Map<String, String> select,
+                                           Map<String, Object> filters,
+                                           Projection projection,
+                                           Map<String, JoinType> joins,
+                                           Map<String, EntitySnapshot> snapshots) {
+        JoinType[] types = joinTypes(entities, joins);
+        Map<String, Object> remaining = filters != null ? new HashMap<>(filters) : new HashMap<>();
+        Map<String, Map<String, Object>> entityFilters = new HashMap<>();
+        for (String entity : entities) {
+            entityFilters.put(entity, takeEntityFilters(remaining, entity));
+        }
+        Collection<String> referenced = select != null && !select.isEmpty() ? select.values()
+                : !projection.isAll() ? projection.getFields() : List.of();
+        for (String field : referenced) {
+            requireProjected(entities, types, field);
+        }
+        for (String property : QueryFilter.properties(remaining)) {
+            requireProjected(entities, types, property);
+        }
+        QueryFilter filter = QueryFilter.compile(remaining, property -> mergedType(storeName, property));
+        Map<String, Set<String>> columns = columns(entities, joinKey, select, projection, remaining);
+
+        // Dựa trên entity đầu tiên làm tập gốc, mỗi row gốc sinh một row gộp cho mỗi tổ hợp row khớp của các entity
+        // còn lại (xem joinPlan). Tập gốc lớn được chia đoạn join song song, kết quả giữ thứ tự của tập gốc
+        JoinPlan plan = joinPlan(storeName, entities, joinKey, types, entityFilters, snapshots, null, false);
+        Function<Object, List<Map<String, Object>>> joinRow = row -> {
+            Map<String, Object> baseRow = dataService.entityToMap(row);
+            Fanout fanout = plan.fanout();
+            if (!fanout.start(baseRow, plan.probeKey(baseRow.get(joinKey))))
+                return null;
+            List<Map<String, Object>> out = null;
+            do {
+                Map<String, Object> merged = new HashMap<>();
+                // copy phẳng với prefix, chỉ các cột cần; entity SEMI/ANTI không có cột nào
+                for (int i = 0; i < entities.size(); i++) {
+                    if (types[i].isProjected())
+                        flattenInto(merged, entities.get(i), fanout.joined[i], columns.get(entities.get(i)));
+                }
+                if (!filter.matches(merged))
+                    continue;
+                if (out == null)
+                    out = new ArrayList<>(1);
+                // Ánh xạ select alias -> value từ merged
+                out.add(select != null && !select.isEmpty() ? project(merged, select) : projection.apply(merged));
+            } while (fanout.next());
+            return out;
+        };
+
+        List<Map<String, Object>> result = new ArrayList<>();
+        if (plan.isMerge()) {
+            // Merge join đọc các entity theo con trỏ chỉ tiến nên tập gốc được duyệt tuần tự
+            for (Object row : plan.baseRows) {
+                List<Map<String, Object>> out = joinRow.apply(row);
+                if (out != null)
+                    result.addAll(out);
+            }
+            return result;
+        }
+        for (List<Map<String, Object>> out : dataService.scan(storeName, plan.baseRows, joinRow)) {
+            result.addAll(out);
         }
         return result;
     }
 
     private Map<String, Object> project(Map<String, Object> merged, Map<String, String> select) {
-        if (select == null || select.isEmpty()) return merged;
         Map<String, Object> out = new HashMap<>();
         for (Map.Entry<String, String> e : select.entrySet()) {
             out.put(e.getKey(), merged.get(e.getValue()));
@@ -79,31 +444,349 @@ public class AggregationService {
         return out;
     }
 
-    private void flattenInto(Map<String, Object> target, String prefix, Map<String, Object> source) {
-        for (Map.Entry<String, Object> en : source.entrySet()) {
-            target.put(prefix + "." + en.getKey(), en.getValue());
+    /**
+     * columns null là cả row: giữ bản gốc (bỏ mục nội bộ) dưới "Entity.*" và mọi field không nội bộ.
+     * source null (LEFT join không có row khớp) thì các cột là null
+     */
+    private void flattenInto(Map<String, Object> target, String prefix, Map<String, Object> source, Set<String> columns) {
+        if (source == null) {
+            if (columns == null) {
+                target.put(prefix + ".*", null);
+                return;
+            }
+            for (String column : columns) {
+                target.put(prefix + "." + column, null);
+            }
+            return;
+        }
+        if (columns == null) {
+            target.put(prefix + ".*", Projection.ALL.apply(source)); // giữ bản gốc để tham chiếu nếu cần
+            for (Map.Entry<String, Object> en : source.entrySet()) {
+                if (!Projection.isInternal(en.getKey()))
+                    target.put(prefix + "." + en.getKey(), en.getValue());
+            }
+            return;
+        }
+        for (String column : columns) {
+            target.put(prefix + "." + column, source.get(column));
         }
     }
 
-    private Map<String, Object> findByJoinKey(List<Map<String, Object>> list, String joinKey, Object key) {
-        for (Map<String, Object> m : list) {
-            if (Objects.equals(m.get(joinKey), key)) return m;
+    /**
+     * Cột cần đọc của từng entity: joinKey cùng các field "Entity.field" mà select (hoặc projection) và bộ lọc còn lại
+     * tham chiếu. Entity không có trong map (giá trị null) thì đọc cả row
+     */
+    private Map<String, Set<String>> columns(List<String> entities, String joinKey, Map<String, String> select,
+                                             Projection projection, Map<String, Object> remaining) {
+        Map<String, Set<String>> columns = new HashMap<>();
+        Collection<String> referenced;
+        if (select != null && !select.isEmpty())
+            referenced = select.values();
+        else if (!projection.isAll())
+            referenced = projection.getFields();
+        else
+            return columns;
+        Set<String> fields = new HashSet<>(referenced);
+        fields.addAll(QueryFilter.properties(remaining));
+        for (String entity : entities) {
+            Set<String> entityColumns = new LinkedHashSet<>();
+            entityColumns.add(joinKey);
+            String prefix = entity + ".";
+            boolean all = false;
+            for (String field : fields) {
+                if (field == null || !field.startsWith(prefix))
+                    continue;
+                String column = field.substring(prefix.length());
+                if (column.equals("*"))
+                    all = true;
+                entityColumns.add(column);
+            }
+            if (!all)
+                columns.put(entity, entityColumns);
         }
-        return null;
+        return columns;
     }
 
-    private boolean matchesFilters(Map<String, Object> row, Map<String, Object> filters) {
-        if (filters == null || filters.isEmpty()) return true;
-        for (Map.Entry<String, Object> f : filters.entrySet()) {
-            Object v = row.get(f.getKey());
-            if (f.getValue() == null) { if (v != null) return false; }
-            else {
-                if (v == null) return false;
-                if (!String.valueOf(v).equalsIgnoreCase(String.valueOf(f.getValue()))) return false;
+    /**
+     * Chọn tập gốc và cách join từng entity sau entity gốc, các entity đã lọc theo bộ lọc riêng của nó.
+     * <p>
+     * Khi tập gốc được duyệt theo thứ tự joinKey (chỉ mục có thứ tự phủ mọi row và không có bộ lọc riêng), entity cũng
+     * có chỉ mục như vậy trên joinKey được merge join: đọc song song theo con trỏ, không dựng bảng băm. Còn lại entity được
+     * dựng bảng băm joinKey -> row (danh sách row khi một khóa có nhiều row) một lần; entity lớn hơn tập gốc chỉ giữ các
+     * khóa có trong tập gốc nên bộ nhớ theo phía nhỏ hơn. Khóa theo kiểu có thứ tự của joinKey nên 10 và 10L khớp nhau.
+     * <p>
+     * baseRows null để tự chọn tập gốc (theo thứ tự chèn, hoặc theo joinKey nếu merge join được), keyOrdered là
+     * baseRows đã theo thứ tự joinKey
+     */
+    private JoinPlan joinPlan(String storeName,
+                              List<String> entities,
+                              String joinKey,
+                              JoinType[] types,
+                              Map<String, Map<String, Object>> entityFilters,
+                              Map<String, EntitySnapshot> snapshots,
+                              List<?> baseRows,
+                              boolean keyOrdered) {
+        String base = entities.get(0);
+        OrderedType keyType = OrderedType.of(mergedType(storeName, base + "." + joinKey));
+        List<?>[] ordered = new List<?>[entities.size()];
+        boolean merge = false;
+        if (keyType != null && (keyOrdered || (baseRows == null && entityFilters.get(base).isEmpty()))) {
+            for (int i = 1; i < entities.size(); i++) {
+                String entity = entities.get(i);
+                if (entityFilters.get(entity).isEmpty()
+                        && OrderedType.of(mergedType(storeName, entity + "." + joinKey)) == keyType)
+                    ordered[i] = dataService.orderedRows(storeName, entity, snapshots.get(entity), joinKey);
+                merge |= ordered[i] != null;
+            }
+            if (merge && !keyOrdered) {
+                baseRows = dataService.orderedRows(storeName, base, snapshots.get(base), joinKey);
+                merge = baseRows != null;
             }
         }
-        return true;
+        if (baseRows == null)
+            baseRows = dataService.query(storeName, base, snapshots.get(base), entityFilters.get(base));
+
+        JoinPlan plan = new JoinPlan(baseRows, new JoinSide[entities.size()], keyType, merge);
+        Set<Object> baseKeys = null;
+        for (int i = 1; i < entities.size(); i++) {
+            String entity = entities.get(i);
+            if (merge && ordered[i] != null) {
+                plan.sides[i] = new MergeSide(types[i], ordered[i], joinKey, keyType);
+                continue;
+            }
+            List<Map<String, Object>> rows = dataService.query(storeName, entity, snapshots.get(entity),
+                    entityFilters.get(entity));
+            if (baseKeys == null && rows.size() > baseRows.size()) {
+                baseKeys = new HashSet<>(baseRows.size() * 2);
+                for (Object row : baseRows) {
+                    Object key = plan.probeKey(dataService.entityToMap(row).get(joinKey));
+                    if (key != null)
+                        baseKeys.add(key);
+                }
+            }
+            Set<Object> keys = rows.size() > baseRows.size() ? baseKeys : null;
+            Map<Object, Object> lookup = new HashMap<>(Math.min(rows.size(), baseRows.size()) * 2);
+            for (Map<String, Object> row : rows) {
+                Object key = plan.probeKey(row.get(joinKey));
+                if (key == null || (keys != null && !keys.contains(key)))
+                    continue;
+                Object existing = lookup.putIfAbsent(key, row);
+                // SEMI/ANTI chỉ cần biết có row khớp
+                if (existing == null || !types[i].isProjected())
+                    continue;
+                if (existing instanceof Map) {
+                    List<Object> matches = new ArrayList<>(2);
+                    matches.add(existing);
+                    lookup.put(key, matches);
+                    existing = matches;
+                }
+                @SuppressWarnings("unchecked")
+                List<Object> matches = (List<Object>) existing;
+                matches.add(row);
+            }
+            plan.sides[i] = new HashSide(types[i], lookup);
+        }
+        return plan;
     }
-}
 
+    /**
+     * Kiểu khai báo của field gộp dạng "Entity.field"
+     */
+    private Class<?> mergedType(String storeName, String field) {
+        int dot = field.indexOf('.');
+        if (dot < 0)
+            return null;
+        return QueryFilter.typesOf(dataService.getEntityDefinition(storeName, field.substring(0, dot)))
+                .apply(field.substring(dot + 1));
+    }
+
+    /**
+     * Lấy ra khỏi filters các bộ lọc "entity.field" (field không chứa dấu chấm), trả về dạng field -> bộ lọc
+     */
+    private Map<String, Object> takeEntityFilters(Map<String, Object> filters, String entity) {
+        Map<String, Object> taken = new HashMap<>();
+        String prefix = entity + ".";
+        filters.entrySet().removeIf(f -> {
+            String field = f.getKey().startsWith(prefix) ? f.getKey().substring(prefix.length()) : null;
+            if (field == null || field.isEmpty() || field.contains(".") || field.equals("*")
+                    || field.equals("and") || field.equals("or") || field.equals("not"))
+                return false;
+            taken.put(field, f.getValue());
+            return true;
+        });
+        return taken;
+    }
+
+    /**
+     * Tập gốc và cách join từng entity sau nó (sides[i] của entity i, sides[0] không dùng)
+     */
+    private static final class JoinPlan {
+
+        private final List<?> baseRows;
+        private final JoinSide[] sides;
+        private final OrderedType keyType;
+        private final boolean merge;
+
+        JoinPlan(List<?> baseRows, JoinSide[] sides, OrderedType keyType, boolean merge) {
+            this.baseRows = baseRows;
+            this.sides = sides;
+            this.keyType = keyType;
+            this.merge = merge;
+        }
+
+        /**
+         * Có entity được merge join, khi đó tập gốc phải được duyệt tuần tự theo thứ tự của nó
+         */
+        boolean isMerge() {
+            return merge;
+        }
+
+        /**
+         * Khóa để so khớp: giá trị joinKey theo kiểu có thứ tự nếu joinKey có kiểu đó; null không khớp row nào
+         */
+        Object probeKey(Object value) {
+            if (value == null || keyType == null)
+                return value;
+            Object key = keyType.convert(value);
+            // BigDecimal.equals phân biệt 10 và 10.0
+            return key instanceof BigDecimal decimal ? decimal.stripTrailingZeros() : key;
+        }
+
+        Fanout fanout() {
+            return new Fanout(sides);
+        }
+    }
+
+    /**
+     * Một entity sau entity gốc: match trả về null (không có row khớp), một row hoặc danh sách row khớp với khóa
+     */
+    private abstract static class JoinSide {
+
+        final JoinType type;
+
+        JoinSide(JoinType type) {
+            this.type = type;
+        }
+
+        abstract Object match(Object key);
+    }
+
+    private static final class HashSide extends JoinSide {
+
+        private final Map<Object, Object> rows;
+
+        HashSide(JoinType type, Map<Object, Object> rows) {
+            super(type);
+            this.rows = rows;
+        }
+
+        @Override
+        Object match(Object key) {
+            return key != null ? rows.get(key) : null;
+        }
+    }
+
+    /**
+     * Rows theo thứ tự joinKey, được đọc cùng chiều với tập gốc cũng theo thứ tự joinKey: con trỏ chỉ tiến nên mỗi row
+     * được so một lần và các row cùng khóa là một đoạn liên tiếp (subList, không chép)
+     */
+    private static final class MergeSide extends JoinSide {
+
+        private final List<?> rows;
+        private final String joinKey;
+        private final OrderedType keyType;
+        private int next;
+        private Object runKey;
+        private List<?> run;
+
+        MergeSide(JoinType type, List<?> rows, String joinKey, OrderedType keyType) {
+            super(type);
+            this.rows = rows;
+            this.joinKey = joinKey;
+            this.keyType = keyType;
+        }
 
+        @Override
+        @SuppressWarnings("unchecked")
+        Object match(Object key) {
+            if (key == null)
+                return null;
+            Comparable<Object> probe = (Comparable<Object>) key;
+            if (runKey == null || probe.compareTo(runKey) != 0) {
+                while (next < rows.size() && probe.compareTo(key(next)) > 0)
+                    next++;
+                int start = next;
+                while (next < rows.size() && probe.compareTo(key(next)) == 0)
+                    next++;
+                runKey = key;
+                run = rows.subList(start, next);
+            }
+            return run.isEmpty() ? null : run;
+        }
+
+        private Object key(int position) {
+            return keyType.convert(((Map<?, ?>) rows.get(position)).get(joinKey));
+        }
+    }
+
+    /**
+     * Các tổ hợp row khớp của một row gốc qua mọi entity, duyệt như bộ đếm (entity sau cùng đổi nhanh nhất) nên không
+     * dựng tích trung gian. joined[i] là row của entity i trong tổ hợp hiện tại, null khi entity LEFT không có row khớp
+     * hoặc entity được join SEMI/ANTI
+     */
+    private static final class Fanout {
+
+        private final JoinSide[] sides;
+        private final Object[] matches;
+        private final int[] cursor;
+        final Map<String, Object>[] joined;
+
+        @SuppressWarnings("unchecked")
+        Fanout(JoinSide[] sides) {
+            this.sides = sides;
+            this.matches = new Object[sides.length];
+            this.cursor = new int[sides.length];
+            this.joined = new Map[sides.length];
+        }
+
+        /**
+         * Đặt tổ hợp đầu tiên của row gốc, false nếu row gốc bị loại bởi kiểu join của một entity
+         */
+        boolean start(Map<String, Object> baseRow, Object key) {
+            joined[0] = baseRow;
+            for (int i = 1; i < sides.length; i++) {
+                JoinType type = sides[i].type;
+                Object match = sides[i].match(key);
+                boolean found = match != null;
+                if (found ? type == JoinType.ANTI : type == JoinType.INNER || type == JoinType.SEMI)
+                    return false;
+                matches[i] = type.isProjected() ? match : null;
+                cursor[i] = 0;
+                joined[i] = row(matches[i], 0);
+            }
+            return true;
+        }
+
+        /**
+         * Chuyển sang tổ hợp kế tiếp, false nếu đã hết
+         */
+        boolean next() {
+            for (int i = sides.length - 1; i >= 1; i--) {
+                if (matches[i] instanceof List<?> list && cursor[i] + 1 < list.size()) {
+                    joined[i] = row(list, ++cursor[i]);
+                    return true;
+                }
+                cursor[i] = 0;
+                joined[i] = row(matches[i], 0);
+            }
+            return false;
+        }
+
+        @SuppressWarnings("unchecked")
+        private static Map<String, Object> row(Object match, int index) {
+            if (match instanceof List<?> list)
+                return (Map<String, Object>) list.get(index);
+            return (Map<String, Object>) match;
+        }
+    }
+}
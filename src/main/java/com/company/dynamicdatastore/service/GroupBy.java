@@ -0,0 +1,96 @@
+package com.company.dynamicdatastore.service;
+
+import com.company.dynamicdatastore.component.datastore.Accumulator;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Phần group by của aggregate: các field nhóm dạng "Entity.field" và các giá trị gộp alias -> "count(*)" hoặc
+ * "hàm(Entity.field)" với hàm là count, sum, avg, min, max (xem Accumulator). Không có field nhóm là một nhóm duy nhất.
+ */
+public final class GroupBy {
+
+    private static final Pattern AGGREGATE = Pattern.compile("\\s*(\\w+)\\s*\\(\\s*([^()\\s]+)\\s*\\)\\s*");
+
+    private final List<String> fields;
+    private final Map<String, String> aggregates;
+    private final List<String> functions = new ArrayList<>();
+    private final List<String> properties = new ArrayList<>();
+
+    private GroupBy(List<String> fields, Map<String, String> aggregates) {
+        this.fields = fields;
+        this.aggregates = aggregates;
+    }
+
+    /**
+     * Định nghĩa sai (field không có dạng "Entity.field", hàm không biết, alias trùng field nhóm) ném IllegalArgumentException
+     */
+    public static GroupBy of(List<String> fields, Map<String, String> aggregates) {
+        List<String> groupFields = fields != null ? List.copyOf(fields) : List.of();
+        for (String field : groupFields) {
+            requireField(field);
+        }
+        Map<String, String> named = aggregates != null ? new LinkedHashMap<>(aggregates) : new LinkedHashMap<>();
+        if (groupFields.isEmpty() && named.isEmpty())
+            throw new IllegalArgumentException("Group by needs groupBy fields or aggregates");
+        GroupBy groupBy = new GroupBy(groupFields, named);
+        for (Map.Entry<String, String> aggregate : named.entrySet()) {
+            if (groupFields.contains(aggregate.getKey()))
+                throw new IllegalArgumentException("Aggregate alias " + aggregate.getKey() + " is also a groupBy field");
+            Matcher matcher = AGGREGATE.matcher(aggregate.getValue() != null ? aggregate.getValue() : "");
+            if (!matcher.matches())
+                throw new IllegalArgumentException("Invalid aggregate " + aggregate.getKey() + ": " + aggregate.getValue());
+            String function = matcher.group(1).toLowerCase(Locale.ROOT);
+            String property = matcher.group(2).equals("*") ? null : requireField(matcher.group(2));
+            if (!Accumulator.FUNCTIONS.contains(function))
+                throw new IllegalArgumentException("Unknown aggregate function: " + function);
+            if (property == null && !function.equals("count"))
+                throw new IllegalArgumentException(function + "(*) is not supported");
+            groupBy.functions.add(function);
+            groupBy.properties.add(property);
+        }
+        return groupBy;
+    }
+
+    private static String requireField(String field) {
+        int dot = field != null ? field.indexOf('.') : -1;
+        if (dot <= 0 || dot == field.length() - 1)
+            throw new IllegalArgumentException("Group by field must have form Entity.field: " + field);
+        return field;
+    }
+
+    public List<String> getFields() {
+        return fields;
+    }
+
+    /**
+     * alias -> định nghĩa, theo thứ tự yêu cầu
+     */
+    public Map<String, String> getAggregates() {
+        return aggregates;
+    }
+
+    /**
+     * Hàm của giá trị gộp thứ i
+     */
+    String function(int i) {
+        return functions.get(i);
+    }
+
+    /**
+     * Field "Entity.field" của giá trị gộp thứ i, null với count(*)
+     */
+    String property(int i) {
+        return properties.get(i);
+    }
+
+    List<String> aliases() {
+        return new ArrayList<>(aggregates.keySet());
+    }
+}
@@ -0,0 +1,50 @@
+package com.company.dynamicdatastore.service;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Kiểu join của một entity sau entity gốc trong aggregate, theo joinKey:
+ * INNER giữ row gốc có row khớp và sinh một row gộp cho mỗi row khớp; LEFT như INNER nhưng row gốc không có row khớp
+ * vẫn được giữ với các field của entity là null; SEMI giữ row gốc có ít nhất một row khớp, ANTI giữ row gốc không có
+ * row khớp nào (hai kiểu này không thêm field và không nhân row).
+ */
+public enum JoinType {
+
+    INNER, LEFT, SEMI, ANTI;
+
+    /**
+     * Tên không phân biệt hoa thường: inner, left (left_outer, left outer), semi, anti. null là INNER
+     */
+    public static JoinType of(String name) {
+        if (name == null)
+            return INNER;
+        String normalized = name.trim().toLowerCase(Locale.ROOT).replace('_', ' ');
+        return switch (normalized) {
+            case "inner" -> INNER;
+            case "left", "left outer" -> LEFT;
+            case "semi" -> SEMI;
+            case "anti" -> ANTI;
+            default -> throw new IllegalArgumentException("Unknown join type: " + name);
+        };
+    }
+
+    /**
+     * "joins" của body: entity -> tên kiểu join
+     */
+    public static Map<String, JoinType> parse(Map<String, ?> joins) {
+        Map<String, JoinType> parsed = new LinkedHashMap<>();
+        if (joins != null) {
+            joins.forEach((entity, type) -> parsed.put(entity, of(type != null ? type.toString() : null)));
+        }
+        return parsed;
+    }
+
+    /**
+     * Row của entity có được đưa vào row gộp không (INNER, LEFT)
+     */
+    boolean isProjected() {
+        return this == INNER || this == LEFT;
+    }
+}
@@ -0,0 +1,124 @@
+package com.company.dynamicdatastore.service;
+
+import com.company.dynamicdatastore.component.datastore.RowSort;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
+/**
+ * Tham số phân trang của loadAll/query: sort dạng "-price,name" ("-" là giảm dần), offset/limit hoặc cursor.
+ * <p>
+ * Cursor là "version:chỉ số row cuối:sort:hash bộ lọc" (base64url): trang sau đọc lại đúng snapshot đó, lọc lại
+ * như cũ rồi lấy các row đứng sau row cuối theo cùng thứ tự, nên không phải đổi offset khi dữ liệu thay đổi.
+ */
+public final class PageRequest {
+
+    public static final PageRequest ALL = new PageRequest(List.of(), 0, -1, null, -1, 0);
+
+    private final List<RowSort.Order> orders;
+    private final int offset;
+    private final int limit;
+    private final Long version;
+    private final int after;
+    private final int filterHash;
+
+    private PageRequest(List<RowSort.Order> orders, int offset, int limit, Long version, int after, int filterHash) {
+        this.orders = orders;
+        this.offset = offset;
+        this.limit = limit;
+        this.version = version;
+        this.after = after;
+        this.filterHash = filterHash;
+    }
+
+    /**
+     * Các tham số đều có thể null, cursor phải đi cùng đúng sort đã tạo ra nó
+     */
+    public static PageRequest of(String sort, Integer offset, Integer limit, String cursor) {
+        if (offset != null && offset < 0)
+            throw new IllegalArgumentException("offset must be >= 0: " + offset);
+        if (limit != null && limit < 0)
+            throw new IllegalArgumentException("limit must be >= 0: " + limit);
+        List<RowSort.Order> orders = parseSort(sort);
+        Long version = null;
+        int after = -1;
+        int filterHash = 0;
+        if (cursor != null && !cursor.isBlank()) {
+            String[] parts;
+            try {
+                parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split(":", 4);
+                version = Long.parseLong(parts[0]);
+                after = Integer.parseInt(parts[1]);
+                filterHash = Integer.parseInt(parts[3]);
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("Invalid cursor: " + cursor);
+            }
+            if (!parts[2].equals(spec(orders)))
+                throw new IllegalArgumentException("Cursor was created with sort '" + parts[2] + "'");
+        }
+        return new PageRequest(orders, offset != null ? offset : 0, limit != null ? limit : -1, version, after, filterHash);
+    }
+
+    private static List<RowSort.Order> parseSort(String sort) {
+        List<RowSort.Order> orders = new ArrayList<>();
+        if (sort == null)
+            return orders;
+        for (String part : sort.split(",")) {
+            String property = part.trim();
+            boolean descending = property.startsWith("-");
+            if (descending || property.startsWith("+"))
+                property = property.substring(1).trim();
+            if (property.isEmpty())
+                throw new IllegalArgumentException("Invalid sort: " + sort);
+            orders.add(new RowSort.Order(property, descending));
+        }
+        return orders;
+    }
+
+    private static String spec(List<RowSort.Order> orders) {
+        return orders.stream().map(RowSort.Order::toString).collect(Collectors.joining(","));
+    }
+
+    static String cursor(long version, int after, List<RowSort.Order> orders, Object filters) {
+        String value = version + ":" + after + ":" + spec(orders) + ":" + Objects.hashCode(filters);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public List<RowSort.Order> getOrders() {
+        return orders;
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    /**
+     * -1 là không giới hạn
+     */
+    public int getLimit() {
+        return limit;
+    }
+
+    /**
+     * Version cần đọc: của cursor nếu có, không thì asOfVersion
+     */
+    public Long versionOr(Long asOfVersion) {
+        return version != null ? version : asOfVersion;
+    }
+
+    int getAfter() {
+        return after;
+    }
+
+    int getFilterHash() {
+        return filterHash;
+    }
+
+    boolean hasCursor() {
+        return version != null;
+    }
+}
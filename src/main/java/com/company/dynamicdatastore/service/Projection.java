@@ -0,0 +1,98 @@
+package com.company.dynamicdatastore.service;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Các field cần trả về của một row (tham số fields). Không chỉ định thì trả về mọi field trừ các mục nội bộ
+ * bắt đầu bằng "_" (như _definition của RuntimeEntityFactory); các mục nội bộ chỉ trả về khi được nêu tên.
+ * <p>
+ * Chỉ row của trang được chiếu. Row đọc từ RowStore dạng cột/ngoài heap là view theo thuộc tính (RowStore#row)
+ * nên khi chọn field, apply chỉ đọc các field đó (get/containsKey) mà không dựng lại cả row; không chọn field thì
+ * row được dựng lại một lần để duyệt mọi field.
+ */
+public final class Projection {
+
+    public static final Projection ALL = new Projection(null);
+
+    private final Set<String> fields;
+
+    private Projection(Set<String> fields) {
+        this.fields = fields;
+    }
+
+    /**
+     * Danh sách field cách nhau bởi dấu phẩy, null hoặc rỗng là tất cả
+     */
+    public static Projection of(String fields) {
+        if (fields == null || fields.isBlank())
+            return ALL;
+        return of(Arrays.asList(fields.split(",")));
+    }
+
+    public static Projection of(Collection<String> fields) {
+        if (fields == null || fields.isEmpty())
+            return ALL;
+        Set<String> names = new LinkedHashSet<>();
+        for (String field : fields) {
+            String name = field != null ? field.trim() : "";
+            if (name.isEmpty())
+                throw new IllegalArgumentException("Invalid fields: " + fields);
+            names.add(name);
+        }
+        return new Projection(names);
+    }
+
+    public boolean isAll() {
+        return fields == null;
+    }
+
+    /**
+     * Các field đã chọn theo thứ tự yêu cầu, null nếu là tất cả
+     */
+    public Set<String> getFields() {
+        return fields;
+    }
+
+    public boolean includes(String field) {
+        return fields != null ? fields.contains(field) : !isInternal(field);
+    }
+
+    /**
+     * Bản chiếu của row; row không có mục nội bộ và không chọn field thì trả về chính nó
+     */
+    public Map<String, Object> apply(Map<String, Object> row) {
+        if (fields == null) {
+            boolean internal = false;
+            for (String key : row.keySet()) {
+                if (isInternal(key)) {
+                    internal = true;
+                    break;
+                }
+            }
+            if (!internal)
+                return row;
+            Map<String, Object> out = new LinkedHashMap<>(row.size() * 4 / 3 + 1);
+            for (Map.Entry<String, Object> e : row.entrySet()) {
+                if (!isInternal(e.getKey()))
+                    out.put(e.getKey(), e.getValue());
+            }
+            return out;
+        }
+        Map<String, Object> out = new LinkedHashMap<>(fields.size() * 4 / 3 + 1);
+        for (String field : fields) {
+            Object value = row.get(field);
+            if (value != null || row.containsKey(field))
+                out.put(field, value);
+        }
+        return out;
+    }
+
+    static boolean isInternal(String key) {
+        return key.startsWith("_");
+    }
+}
@@ -0,0 +1,157 @@
+package com.company.dynamicdatastore.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cache kết quả query/aggregate, khóa theo store và query đã chuẩn hóa (entity, bộ lọc, projection...).
+ * <p>
+ * Mỗi kết quả được gắn version của snapshot từng entity đã đọc (version tăng sau mọi saveEntity/deleteEntity/update),
+ * cùng instance store và definition của entity. Lần đọc sau chỉ trúng cache khi mọi thứ đó không đổi, nên không bao
+ * giờ trả về kết quả cũ mà không cần lắng nghe các thao tác ghi. Giới hạn theo tổng số row của các kết quả,
+ * vượt giới hạn thì bỏ kết quả ít dùng nhất; 0 là tắt cache.
+ */
+@Component
+public class QueryCache {
+
+    private final long maxRows;
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private long rows;
+
+    public QueryCache(@Value("${virtual-datastore.query-cache.max-rows:100000}") long maxRows) {
+        this.maxRows = Math.max(0, maxRows);
+    }
+
+    public boolean isEnabled() {
+        return maxRows > 0;
+    }
+
+    /**
+     * Kết quả đã cache của query, null nếu chưa có hoặc tag (version các entity) đã khác
+     */
+    @SuppressWarnings("unchecked")
+    <T> T get(String storeName, Object query, Object tag) {
+        if (!isEnabled())
+            return null;
+        Key key = new Key(storeName, query);
+        synchronized (entries) {
+            Entry entry = entries.get(key);
+            if (entry != null && entry.tag.equals(tag)) {
+                hits.increment();
+                return (T) entry.value;
+            }
+            if (entry != null)
+                remove(key);
+        }
+        misses.increment();
+        return null;
+    }
+
+    /**
+     * Lưu kết quả có size row, tính trên đúng các version trong tag. Kết quả lớn hơn cả cache thì không lưu
+     */
+    void put(String storeName, Object query, Object tag, Object value, int size) {
+        if (!isEnabled() || size > maxRows)
+            return;
+        Key key = new Key(storeName, query);
+        synchronized (entries) {
+            remove(key);
+            entries.put(key, new Entry(tag, value, size));
+            rows += size;
+            Iterator<Entry> eldest = entries.values().iterator();
+            while (rows > maxRows && eldest.hasNext()) {
+                rows -= eldest.next().size;
+                eldest.remove();
+                evictions.increment();
+            }
+        }
+    }
+
+    /**
+     * Bỏ mọi kết quả của store, ví dụ khi store bị xóa
+     */
+    public void invalidate(String storeName) {
+        synchronized (entries) {
+            Iterator<Map.Entry<Key, Entry>> it = entries.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<Key, Entry> e = it.next();
+                if (e.getKey().storeName.equals(storeName)) {
+                    rows -= e.getValue().size;
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    public Map<String, Object> getStatistics() {
+        synchronized (entries) {
+            Map<String, Object> statistics = new LinkedHashMap<>();
+            statistics.put("enabled", isEnabled());
+            statistics.put("entries", entries.size());
+            statistics.put("rows", rows);
+            statistics.put("maxRows", maxRows);
+            statistics.put("hits", hits.sum());
+            statistics.put("misses", misses.sum());
+            statistics.put("evictions", evictions.sum());
+            return statistics;
+        }
+    }
+
+    private void remove(Key key) {
+        Entry previous = entries.remove(key);
+        if (previous != null)
+            rows -= previous.size;
+    }
+
+    /**
+     * Bản chỉ đọc của bộ lọc/projection để làm khóa: map được sắp theo khóa, số nguyên đưa về Long
+     * nên {"a": 1, "b": 2} và {"b": 2L, "a": 1} là cùng một khóa; sửa map gốc sau đó không ảnh hưởng khóa
+     */
+    static Object normalize(Object value) {
+        if (value instanceof Map<?, ?> map) {
+            TreeMap<String, Object> normalized = new TreeMap<>();
+            for (Map.Entry<?, ?> e : map.entrySet()) {
+                normalized.put(String.valueOf(e.getKey()), normalize(e.getValue()));
+            }
+            return normalized;
+        }
+        if (value instanceof Collection<?> list) {
+            List<Object> normalized = new ArrayList<>(list.size());
+            for (Object item : list) {
+                normalized.add(normalize(item));
+            }
+            return normalized;
+        }
+        if (value instanceof Integer || value instanceof Short || value instanceof Byte)
+            return ((Number) value).longValue();
+        return value;
+    }
+
+    private record Key(String storeName, Object query) {
+    }
+
+    private static final class Entry {
+
+        private final Object tag;
+        private final Object value;
+        private final int size;
+
+        Entry(Object tag, Object value, int size) {
+            this.tag = tag;
+            this.value = value;
+            this.size = size;
+        }
+    }
+}
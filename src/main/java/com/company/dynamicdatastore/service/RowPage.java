@@ -0,0 +1,32 @@
+package com.company.dynamicdatastore.service;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Một trang rows: total là số row khớp trước khi cắt trang, nextCursor null khi đã hết
+ */
+public final class RowPage {
+
+    private final List<Map<String, Object>> rows;
+    private final int total;
+    private final String nextCursor;
+
+    RowPage(List<Map<String, Object>> rows, int total, String nextCursor) {
+        this.rows = rows;
+        this.total = total;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<Map<String, Object>> getRows() {
+        return rows;
+    }
+
+    public int getTotal() {
+        return total;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+}
@@ -1,23 +1,35 @@
 package com.company.dynamicdatastore.service;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
 import java.util.UUID;
+import java.util.function.Function;
 
 import org.springframework.stereotype.Service;
 
+import com.company.dynamicdatastore.component.datastore.EntitySnapshot;
+import com.company.dynamicdatastore.component.datastore.PropertyStatistics;
+import com.company.dynamicdatastore.component.datastore.QueryFilter;
+import com.company.dynamicdatastore.component.datastore.QueryPlan;
+import com.company.dynamicdatastore.component.datastore.QueryPlanner;
+import com.company.dynamicdatastore.component.datastore.RowSort;
 import com.company.dynamicdatastore.component.datastore.VirtualDataStore;
 import com.company.dynamicdatastore.component.datastore.VirtualDataStoreManager;
 import com.company.dynamicdatastore.component.entity.VirtualEntityDefinition;
+import com.company.dynamicdatastore.component.storage.StorageMode;
 
 @Service("dynamicdatastore_VirtualDataStoreService")
 public class VirtualDataStoreService {
 
     private final VirtualDataStoreManager manager;
-    private final java.util.concurrent.ConcurrentHashMap<String, java.util.concurrent.ConcurrentHashMap<String, VirtualEntityDefinition>> definitionsByStore = new java.util.concurrent.ConcurrentHashMap<>();
+    private final QueryCache cache;
 
-    public VirtualDataStoreService(VirtualDataStoreManager manager) {
+    public VirtualDataStoreService(VirtualDataStoreManager manager, QueryCache cache) {
         this.manager = manager;
+        this.cache = cache;
     }
 
     // Store ops
@@ -26,12 +38,51 @@ public class VirtualDataStoreService {
         return storeName;
     }
 
+    /**
+     * storageMode rỗng là giữ store hiện có (hoặc HEAP khi tạo mới); store đã tồn tại với storage mode khác
+     * ném IllegalArgumentException
+     */
+    public String createStore(String storeName, String storageMode) {
+        return createStore(storeName, storageMode, null);
+    }
+
+    /**
+     * scanParallelism giới hạn số thread khi quét entity lớn của store (null giữ nguyên, 0 theo cấu hình chung)
+     */
+    public String createStore(String storeName, String storageMode, Integer scanParallelism) {
+        manager.createStore(storeName,
+                storageMode == null || storageMode.isBlank() ? null : StorageMode.fromString(storageMode), scanParallelism);
+        return storeName;
+    }
+
     // Definition ops
     public void registerEntityDefinition(String storeName, String entityName, Map<String, Object> properties) {
-        manager.createStore(storeName);
-        var defs = definitionsByStore.computeIfAbsent(storeName, s -> new java.util.concurrent.ConcurrentHashMap<>());
+        VirtualDataStore store = manager.createStore(storeName);
         var def = new VirtualEntityDefinition(entityName, storeName);
-        defs.put(entityName, def);
+        // Đăng ký lại (ví dụ khi import) giữ các chỉ mục đã tạo, chỉ mục chỉ bị bỏ qua dropIndex
+        var existing = store.getEntityDefinition(entityName);
+        if (existing != null) {
+            existing.getIndexedProperties().forEach(def::addIndexedProperty);
+            existing.getTextIndexedProperties().forEach(def::addTextIndexedProperty);
+        }
+        if (properties != null) {
+            for (Map.Entry<String, Object> p : properties.entrySet()) {
+                String type = null;
+                boolean nullable = true;
+                if (p.getValue() instanceof Map<?, ?> spec) {
+                    type = spec.get("type") != null ? String.valueOf(spec.get("type")) : null;
+                    nullable = !Boolean.FALSE.equals(spec.get("nullable"));
+                    if (Boolean.TRUE.equals(spec.get("indexed")))
+                        def.addIndexedProperty(p.getKey());
+                    if (Boolean.TRUE.equals(spec.get("textIndexed")))
+                        def.addTextIndexedProperty(p.getKey());
+                } else if (p.getValue() != null) {
+                    type = String.valueOf(p.getValue());
+                }
+                def.addProperty(p.getKey(), VirtualEntityDefinition.resolveType(type), nullable);
+            }
+        }
+        store.registerEntityDefinition(def);
     }
 
     // Entity ops
@@ -52,42 +103,144 @@ public class VirtualDataStoreService {
         VirtualDataStore store = manager.getStore(storeName);
         if (store == null)
             throw new IllegalArgumentException("Store not found: " + storeName);
-        int count = 0;
+        List<Map<String, Object>> entities = new java.util.ArrayList<>(rows.size());
         for (Map<String, Object> row : rows) {
             java.util.HashMap<String, Object> entityData = new java.util.HashMap<>();
             if (row != null) entityData.putAll(row);
             if (entityData.get("id") == null) {
                 entityData.put("id", UUID.randomUUID());
             }
-            store.saveEntity(entityName, entityData);
-            count++;
+            entities.add(entityData);
         }
-        return count;
+        // Ghi cả lô trong một lần khóa, các thread đọc thấy toàn bộ lô hoặc chưa thấy gì
+        store.saveEntities(entityName, entities);
+        return entities.size();
     }
 
     public List<Map<String, Object>> query(String storeName, String entityName, Map<String, Object> filters) {
         VirtualDataStore store = manager.getStore(storeName);
         if (store == null)
             throw new IllegalArgumentException("Store not found: " + storeName);
-        List<Object> list = store.loadAllEntities(entityName);
-        return list.stream()
-                .map(this::entityToMap)
-                .filter(m -> matchesFilters(m, filters))
-                .toList();
+        return query(storeName, entityName, store.snapshot(entityName), filters);
     }
 
-    private boolean matchesFilters(Map<String, Object> entity, Map<String, Object> filters) {
-        if (filters == null || filters.isEmpty()) return true;
-        for (Map.Entry<String, Object> f : filters.entrySet()) {
-            Object v = entity.get(f.getKey());
-            if (f.getValue() == null) {
-                if (v != null) return false;
-            } else {
-                if (v == null) return false;
-                if (!String.valueOf(v).equalsIgnoreCase(String.valueOf(f.getValue()))) return false;
-            }
+    /**
+     * Lọc rows của snapshot theo bộ lọc (xem QueryFilter), bộ lọc được dịch một lần theo kiểu khai báo của entity
+     */
+    public List<Map<String, Object>> query(String storeName, String entityName, EntitySnapshot snapshot,
+                                           Map<String, Object> filters) {
+        return execute(storeName, entityName, snapshot, filters).getRows();
+    }
+
+    /**
+     * Như query nhưng trả về cả kế hoạch đã chạy. Nếu snapshot là bản hiện tại, QueryPlanner chọn giữa quét toàn bộ
+     * và tra/giao/hợp các chỉ mục theo chi phí ước lượng từ thống kê của chỉ mục
+     */
+    public QueryPlan execute(String storeName, String entityName, EntitySnapshot snapshot, Map<String, Object> filters) {
+        VirtualDataStore store = manager.getStore(storeName);
+        if (store == null)
+            throw new IllegalArgumentException("Store not found: " + storeName);
+        // Không lọc thì kết quả là cả snapshot, cache không tiết kiệm được gì
+        boolean cacheable = filters != null && !filters.isEmpty();
+        Object query = cacheable ? List.of("query", entityName, QueryCache.normalize(filters)) : null;
+        Object tag = cacheable ? cacheTag(storeName, Map.of(entityName, snapshot)) : null;
+        QueryPlan cached = cacheable ? cache.get(storeName, query, tag) : null;
+        if (cached != null)
+            return cached.fromCache();
+        QueryFilter filter = QueryFilter.compile(filters, QueryFilter.typesOf(store.getEntityDefinition(entityName)));
+        QueryPlan plan = new QueryPlanner(store, entityName, snapshot).execute(filters, filter, this::entityToMap);
+        if (cacheable)
+            cache.put(storeName, query, tag, plan, plan.getRows().size());
+        return plan;
+    }
+
+    /**
+     * Tag của QueryCache cho kết quả tính trên các snapshot này: instance store, version và definition của từng entity.
+     * Ghi vào entity, đăng ký lại definition hay tạo lại store đều làm tag khác đi
+     */
+    Object cacheTag(String storeName, Map<String, EntitySnapshot> snapshots) {
+        VirtualDataStore store = manager.getStore(storeName);
+        if (store == null)
+            throw new IllegalArgumentException("Store not found: " + storeName);
+        List<Object> tag = new ArrayList<>();
+        tag.add(store);
+        for (Map.Entry<String, EntitySnapshot> e : new TreeMap<>(snapshots).entrySet()) {
+            tag.add(e.getKey());
+            tag.add(e.getValue().getVersion());
+            tag.add(store.getEntityDefinition(e.getKey()));
         }
-        return true;
+        return tag;
+    }
+
+    /**
+     * Snapshot hiện tại của entity (không giữ lại như loadSnapshot)
+     */
+    public EntitySnapshot snapshot(String storeName, String entityName) {
+        VirtualDataStore store = manager.getStore(storeName);
+        if (store == null)
+            throw new IllegalArgumentException("Store not found: " + storeName);
+        return store.snapshot(entityName);
+    }
+
+    /**
+     * Cắt một trang từ rows (toàn bộ snapshot hoặc kết quả query trên snapshot đó) theo sort/offset/limit/cursor.
+     * Có sort thì chỉ giữ offset + limit + 1 row đầu bằng heap (xem RowSort); filters phải giống lúc tạo cursor.
+     * Khi còn trang sau, snapshot được giữ lại để cursor đọc lại được.
+     * Chỉ các row của trang được chiếu theo projection
+     */
+    public RowPage page(String storeName, String entityName, EntitySnapshot snapshot, List<?> rows,
+                        Map<String, Object> filters, PageRequest request, Projection projection) {
+        VirtualDataStore store = manager.getStore(storeName);
+        if (store == null)
+            throw new IllegalArgumentException("Store not found: " + storeName);
+        if (request.hasCursor() && request.getFilterHash() != Objects.hashCode(filters))
+            throw new IllegalArgumentException("Cursor was created with different filters");
+        if (request.getAfter() >= rows.size())
+            throw new IllegalArgumentException("Invalid cursor for version " + snapshot.getVersion());
+        Function<String, Class<?>> types = QueryFilter.typesOf(store.getEntityDefinition(entityName));
+        RowSort sort = new RowSort(request.getOrders(), types);
+        int limit = request.getLimit();
+        // Lấy dư một row để biết còn trang sau hay không
+        List<Integer> indexes = sort.page(rows, request.getAfter(), request.getOffset(), limit < 0 ? -1 : limit + 1);
+        String nextCursor = null;
+        if (limit >= 0 && indexes.size() > limit) {
+            indexes = indexes.subList(0, limit);
+            int last = indexes.isEmpty() ? request.getAfter() : indexes.get(limit - 1);
+            nextCursor = PageRequest.cursor(snapshot.getVersion(), last, request.getOrders(), filters);
+            // Trang sau đọc lại đúng version này
+            store.retainSnapshot(entityName, snapshot);
+        }
+        List<Map<String, Object>> page = new ArrayList<>(indexes.size());
+        for (int index : indexes) {
+            page.add(projection.apply(entityToMap(rows.get(index))));
+        }
+        return new RowPage(page, rows.size(), nextCursor);
+    }
+
+    /**
+     * Rows của snapshot theo thứ tự giá trị của property, đọc từ chỉ mục có thứ tự nên không phải sắp xếp.
+     * null nếu property không có chỉ mục có thứ tự, chỉ mục không chứa mọi row (có row rỗng hoặc sai kiểu)
+     * hoặc snapshot không còn là snapshot hiện tại
+     */
+    public List<Object> orderedRows(String storeName, String entityName, EntitySnapshot snapshot, String property) {
+        VirtualDataStore store = manager.getStore(storeName);
+        if (store == null)
+            throw new IllegalArgumentException("Store not found: " + storeName);
+        PropertyStatistics statistics = store.getStatistics(entityName).get(property);
+        if (statistics == null || !statistics.getIndexType().startsWith("range") || statistics.getValues() != snapshot.size())
+            return null;
+        List<Object> rows = store.orderedScan(entityName, snapshot, property, null, false, null, false, false, Integer.MAX_VALUE);
+        return rows != null && rows.size() == snapshot.size() ? rows : null;
+    }
+
+    /**
+     * Quét rows theo cấu hình song song của store (xem VirtualDataStore#scan)
+     */
+    public <T, R> List<R> scan(String storeName, List<T> rows, Function<? super T, ? extends R> mapper) {
+        VirtualDataStore store = manager.getStore(storeName);
+        if (store == null)
+            throw new IllegalArgumentException("Store not found: " + storeName);
+        return store.scan(rows, mapper);
     }
 
     public List<Object> loadAllEntities(String storeName, String entityName) {
@@ -97,6 +250,27 @@ public class VirtualDataStoreService {
         return store.loadAllEntities(entityName);
     }
 
+    /**
+     * Snapshot của entity tại asOfVersion, không truyền thì là snapshot mới nhất (không giữ lại)
+     */
+    public EntitySnapshot loadSnapshot(String storeName, String entityName, Long asOfVersion) {
+        return loadSnapshot(storeName, entityName, asOfVersion, false);
+    }
+
+    /**
+     * Như trên; consistent giữ lại snapshot mới nhất để các request sau đọc lại được theo version của nó.
+     * Snapshot giữ lại ghim cả RowStore của nó nên chỉ giữ khi client cần đọc nhất quán; cursor của page tự giữ
+     * snapshot của nó
+     */
+    public EntitySnapshot loadSnapshot(String storeName, String entityName, Long asOfVersion, boolean consistent) {
+        VirtualDataStore store = manager.getStore(storeName);
+        if (store == null)
+            throw new IllegalArgumentException("Store not found: " + storeName);
+        if (asOfVersion != null)
+            return store.snapshot(entityName, asOfVersion);
+        return consistent ? store.retainSnapshot(entityName) : store.snapshot(entityName);
+    }
+
     public Object loadEntity(String storeName, String entityName, String id) {
         VirtualDataStore store = manager.getStore(storeName);
         if (store == null)
@@ -105,20 +279,27 @@ public class VirtualDataStoreService {
     }
 
     public Object updateEntity(String storeName, String entityName, String id, Map<String, Object> data) {
-        Object entity = loadEntity(storeName, entityName, id);
-        @SuppressWarnings("unchecked")
-        Map<String, Object> entityMap = (Map<String, Object>) entity;
-        entityMap.putAll(data);
         VirtualDataStore store = manager.getStore(storeName);
-        store.saveEntity(entityName, entityMap);
-        return entityMap;
+        if (store == null)
+            throw new IllegalArgumentException("Store not found: " + storeName);
+        Object updated = store.updateEntity(entityName, UUID.fromString(id), data);
+        if (updated == null)
+            throw new IllegalArgumentException("Entity not found: " + id);
+        return updated;
     }
 
-    public Map<String, Integer> getStoreStatistics(String storeName) {
+    /**
+     * Số entity theo loại, thống kê bộ nhớ (hit/miss/spill) của store và thống kê xấp xỉ
+     * (số giá trị khác nhau, phân vị) theo entity -> thuộc tính
+     */
+    public Map<String, Object> getStoreStatistics(String storeName) {
         VirtualDataStore store = manager.getStore(storeName);
         if (store == null)
             throw new IllegalArgumentException("Store not found: " + storeName);
-        return store.getEntityCounts();
+        return Map.of("entityCounts", store.getEntityCounts(),
+                "memory", store.getMemoryStatistics(),
+                "queryCache", cache.getStatistics(),
+                "properties", store.getPropertySummaries());
     }
 
     public Map<String, Object> entityToMap(Object entity) {
@@ -135,32 +316,78 @@ public class VirtualDataStoreService {
         return manager.getAllStores().entrySet().stream()
                 .collect(java.util.stream.Collectors.toMap(
                         Map.Entry::getKey,
-                        e -> Map.of("name", e.getKey(), "entityCounts", e.getValue().getEntityCounts())));
+                        e -> Map.of("name", e.getKey(),
+                                "storageMode", e.getValue().getStorageMode().name(),
+                                "scanParallelism", e.getValue().getScanParallelism(),
+                                "entityCounts", e.getValue().getEntityCounts())));
     }
 
     public void deleteStore(String storeName) {
-        manager.getAllStores().remove(storeName);
+        manager.removeStore(storeName);
+        cache.invalidate(storeName);
     }
 
     // Entity definition stubs
     public VirtualEntityDefinition getEntityDefinition(String storeName, String entityName) {
-        var defs = definitionsByStore.get(storeName);
-        if (defs == null)
+        VirtualDataStore store = manager.getStore(storeName);
+        if (store == null)
             return null;
-        return defs.get(entityName);
+        return store.getEntityDefinition(entityName);
     }
 
     public java.util.List<VirtualEntityDefinition> getEntityDefinitions(String storeName) {
-        var defs = definitionsByStore.get(storeName);
-        if (defs == null)
+        VirtualDataStore store = manager.getStore(storeName);
+        if (store == null)
             return java.util.List.of();
-        return new java.util.ArrayList<>(defs.values());
+        return new java.util.ArrayList<>(store.getEntityDefinitions().values());
     }
 
     public void deleteEntityDefinition(String storeName, String entityName) {
-        var defs = definitionsByStore.get(storeName);
-        if (defs != null)
-            defs.remove(entityName);
+        VirtualDataStore store = manager.getStore(storeName);
+        if (store != null)
+            store.removeEntityDefinition(entityName);
+    }
+
+    /**
+     * Thuộc tính có chỉ mục -> các loại chỉ mục trên thuộc tính đó
+     */
+    public Map<String, List<String>> getIndexes(String storeName, String entityName) {
+        VirtualDataStore store = manager.getStore(storeName);
+        if (store == null)
+            throw new IllegalArgumentException("Store not found: " + storeName);
+        return store.getIndexTypes(entityName);
+    }
+
+    /**
+     * Tạo chỉ mục, type "text" là chỉ mục văn bản, null là chỉ mục theo kiểu thuộc tính (băm hoặc có thứ tự)
+     */
+    public void createIndex(String storeName, String entityName, String property, String type) {
+        VirtualDataStore store = manager.getStore(storeName);
+        if (store == null)
+            throw new IllegalArgumentException("Store not found: " + storeName);
+        if (isTextIndex(type))
+            store.createTextIndex(entityName, property);
+        else
+            store.createIndex(entityName, property);
+    }
+
+    public void dropIndex(String storeName, String entityName, String property, String type) {
+        VirtualDataStore store = manager.getStore(storeName);
+        if (store == null)
+            throw new IllegalArgumentException("Store not found: " + storeName);
+        boolean dropped = isTextIndex(type)
+                ? store.dropTextIndex(entityName, property)
+                : store.dropIndex(entityName, property);
+        if (!dropped)
+            throw new IllegalArgumentException("Index not found: " + entityName + "." + property);
+    }
+
+    private static boolean isTextIndex(String type) {
+        if (type == null || type.isBlank())
+            return false;
+        if ("text".equalsIgnoreCase(type.trim()))
+            return true;
+        throw new IllegalArgumentException("Unsupported index type: " + type);
     }
 
     public void deleteEntity(String storeName, String entityName, String id) {
@@ -112,6 +112,13 @@ public class VirtualStoreTestView extends StandardView {
 
     private java.util.LinkedHashSet<String> lastAggregateFields = new java.util.LinkedHashSet<>();
 
+    // Tham số của lần aggregate gần nhất, dùng lại khi áp dụng bộ lọc cột
+    private String lastStore;
+    private List<String> lastEntities = List.of();
+    private String lastJoinKey;
+    private java.util.Map<String, String> lastSelect = java.util.Map.of();
+    private java.util.Map<String, Object> lastFilters = java.util.Map.of();
+
     private void loadAll() {
         String store = storeNameField.getValue();
         String entity = entityNameField.getValue();
@@ -154,6 +161,11 @@ public class VirtualStoreTestView extends StandardView {
         java.util.Map<String, Object> filters = parseMapObj(filtersJsonField.getValue());
 
         List<java.util.Map<String, Object>> rows = aggregationService.aggregate(store, entities, joinKey, select, filters);
+        lastStore = store;
+        lastEntities = entities;
+        lastJoinKey = joinKey;
+        lastSelect = select;
+        lastFilters = filters;
         aggregateDc.getMutableItems().clear();
         for (java.util.Map<String, Object> m : rows) {
             KeyValueEntity e = new KeyValueEntity();
@@ -204,27 +216,29 @@ public class VirtualStoreTestView extends StandardView {
                     String id = tf.getId().orElse("");
                     if (id.startsWith("filter_")) {
                         String field = id.substring("filter_".length());
-                        filters.put(field, tf.getValue());
+                        filters.put(field, tf.getValue().trim());
                     }
                 }
             }
         }
 
-        // filter current aggregate rows in-memory and rebuild columns to selected subset
-        java.util.List<java.util.Map<String, Object>> current = new java.util.ArrayList<>();
-        for (KeyValueEntity kv : aggregateDc.getItems()) {
-            java.util.Map<String, Object> m = new java.util.HashMap<>();
-            for (String k : lastAggregateFields) m.put(k, kv.getValue(k));
-            current.add(m);
+        if (lastStore == null) {
+            Notification.show("Aggregate first to configure");
+            return;
+        }
+        // aggregate lại phía server với bộ lọc contains trên field gốc của từng cột (dùng được chỉ mục văn bản)
+        java.util.Map<String, Object> combined = new java.util.HashMap<>(lastFilters);
+        for (var e : filters.entrySet()) {
+            String path = lastSelect.getOrDefault(e.getKey(), e.getKey());
+            combined.put(path, java.util.Map.of("contains", e.getValue()));
+        }
+        java.util.List<java.util.Map<String, Object>> filtered;
+        try {
+            filtered = aggregationService.aggregate(lastStore, lastEntities, lastJoinKey, lastSelect, combined);
+        } catch (IllegalArgumentException ex) {
+            Notification.show(ex.getMessage());
+            return;
         }
-        java.util.List<java.util.Map<String, Object>> filtered = current.stream().filter(m -> {
-            for (var e : filters.entrySet()) {
-                Object v = m.get(e.getKey());
-                if (v == null) return false;
-                if (!String.valueOf(v).toLowerCase().contains(String.valueOf(e.getValue()).toLowerCase())) return false;
-            }
-            return true;
-        }).toList();
 
         aggregateDc.getMutableItems().clear();
         for (java.util.Map<String, Object> m : filtered) {
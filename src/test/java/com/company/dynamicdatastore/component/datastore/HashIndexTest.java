@@ -0,0 +1,117 @@
+package com.company.dynamicdatastore.component.datastore;
+
+import com.company.dynamicdatastore.component.entity.VirtualEntityDefinition;
+import com.company.dynamicdatastore.component.storage.StorageMode;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static com.company.dynamicdatastore.component.datastore.VirtualDataStoreTest.idOf;
+import static com.company.dynamicdatastore.component.datastore.VirtualDataStoreTest.row;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Kiểm tra chỉ mục băm phụ được cập nhật theo mọi lần ghi và khi phân vùng được dồn lại.
+ */
+public class HashIndexTest {
+
+    @Test
+    void test_indexFollowsWritesAndCompaction() {
+        VirtualDataStore store = new VirtualDataStore("test", null, StorageMode.COLUMNAR);
+        VirtualEntityDefinition definition = new VirtualEntityDefinition("Citizen", "test");
+        definition.addProperty("name", String.class);
+        definition.addProperty("price", Integer.class);
+        store.registerEntityDefinition(definition);
+        List<Object> rows = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            Map<String, Object> row = row(i);
+            row.put("cccd", "CD" + i);
+            row.put("group", i % 10);
+            rows.add(row);
+        }
+        store.saveEntities("Citizen", rows);
+        store.createIndex("Citizen", "cccd");
+        store.createIndex("Citizen", "group");
+
+        assertThat(store.getIndexedProperties("Citizen")).containsExactly("cccd", "group");
+        assertThat(lookup(store, "cccd", "cd42")).containsExactly(rows.get(42));
+        assertThat(lookup(store, "group", "3")).hasSize(100);
+
+        EntitySnapshot before = store.snapshot("Citizen");
+        store.updateEntity("Citizen", idOf(42), Map.of("cccd", "NEW42"));
+        assertThat(store.lookup("Citizen", before, "cccd", "CD42")).isNull();
+        assertThat(lookup(store, "cccd", "CD42")).isEmpty();
+        assertThat(lookup(store, "cccd", "new42")).containsExactly(store.loadEntity("Citizen", idOf(42)));
+
+        // Xóa quá nửa phân vùng để nó được dồn lại, vị trí trong chỉ mục phải được đánh lại
+        for (int i = 0; i < 700; i++) {
+            store.deleteEntity("Citizen", idOf(i));
+        }
+        assertThat(lookup(store, "cccd", "CD42")).isEmpty();
+        assertThat(lookup(store, "cccd", "CD999")).containsExactly(rows.get(999));
+        assertThat(lookup(store, "group", 3)).hasSize(30)
+                .allMatch(r -> ((Integer) ((Map<?, ?>) r).get("group")) == 3);
+
+        store.saveEntity("Citizen", row(5000));
+        assertThat(lookup(store, "group", null)).containsExactly(row(5000));
+
+        assertThat(store.dropIndex("Citizen", "group")).isTrue();
+        assertThat(lookup(store, "group", "3")).isNull();
+        assertThat(store.getEntityDefinition("Citizen").getIndexedProperties()).containsExactly("cccd");
+    }
+
+    @Test
+    void test_indexDeclaredInDefinitionAppliesToNewPartition() {
+        VirtualDataStore store = new VirtualDataStore("test", null);
+        VirtualEntityDefinition definition = new VirtualEntityDefinition("Citizen", "test");
+        definition.addIndexedProperty("name");
+        store.registerEntityDefinition(definition);
+        for (int i = 0; i < 50; i++) {
+            store.saveEntity("Citizen", row(i));
+        }
+
+        assertThat(lookup(store, "name", "ITEM-7")).containsExactly(row(7));
+        assertThat(lookup(store, "price", 7)).isNull();
+    }
+
+    @Test
+    void test_indexChangeRegistersCopyOfDefinition() {
+        VirtualDataStore store = new VirtualDataStore("test", null);
+        VirtualEntityDefinition definition = new VirtualEntityDefinition("Citizen", "test");
+        definition.addProperty("name", String.class);
+        store.registerEntityDefinition(definition);
+        store.saveEntity("Citizen", row(1));
+
+        store.createIndex("Citizen", "name");
+        VirtualEntityDefinition indexed = store.getEntityDefinition("Citizen");
+        assertThat(indexed).isNotSameAs(definition);
+        assertThat(indexed.getIndexedProperties()).containsExactly("name");
+        assertThat(indexed.getProperty("name").getType()).isEqualTo(String.class);
+        assertThat(definition.getIndexedProperties()).isEmpty();
+
+        // Listener từ chối definition mới: definition đang dùng và chỉ mục giữ nguyên
+        store.addChangeListener(new StoreChangeListener() {
+            @Override
+            public void onChanges(long version, List<EntityChange> changes) {
+            }
+
+            @Override
+            public void onDefinitionRegistered(VirtualEntityDefinition changed) {
+                throw new IllegalStateException("rejected");
+            }
+        });
+        assertThatThrownBy(() -> store.dropIndex("Citizen", "name")).isInstanceOf(IllegalStateException.class);
+        assertThatThrownBy(() -> store.createIndex("Citizen", "price")).isInstanceOf(IllegalStateException.class);
+        assertThat(store.getEntityDefinition("Citizen")).isSameAs(indexed);
+        assertThat(indexed.getIndexedProperties()).containsExactly("name");
+        assertThat(lookup(store, "name", "ITEM-1")).containsExactly(row(1));
+        assertThat(lookup(store, "price", 1)).isNull();
+    }
+
+    private static List<Object> lookup(VirtualDataStore store, String property, Object value) {
+        return store.lookup("Citizen", store.snapshot("Citizen"), property, value);
+    }
+}
@@ -0,0 +1,64 @@
+package com.company.dynamicdatastore.component.datastore;
+
+import io.jmix.core.querycondition.LogicalCondition;
+import io.jmix.core.querycondition.PropertyCondition;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static com.company.dynamicdatastore.test_support.TestCitizens.store;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Kiểm tra điều kiện Jmix của loadAll/countAll được dịch sang bộ lọc của query.
+ */
+public class JmixConditionsTest {
+
+    @Test
+    void test_translate() {
+        assertThat(JmixConditions.toFilters(PropertyCondition.equal("cccd", "CD1"), null))
+                .isEqualTo(Map.of("cccd", Map.of("eq", "CD1")));
+        assertThat(JmixConditions.toFilters(LogicalCondition.or(
+                PropertyCondition.greater("price", 5), PropertyCondition.notInList("group", List.of(1, 2))), null))
+                .isEqualTo(Map.of("or", List.of(Map.of("price", Map.of("gt", 5)),
+                        Map.of("not", Map.of("group", Map.of("in", List.of(1, 2)))))));
+        assertThat(JmixConditions.toFilters(PropertyCondition.isNotSet("group"), null))
+                .isEqualTo(Map.of("group", Map.of("isNull", true)));
+
+        // Giá trị lấy từ tham số; điều kiện không có giá trị bị bỏ như Jmix
+        PropertyCondition byName = PropertyCondition.createWithParameterName("name", PropertyCondition.Operation.STARTS_WITH, "prefix");
+        assertThat(JmixConditions.toFilters(byName, Map.of("prefix", "item-1")))
+                .isEqualTo(Map.of("name", Map.of("startsWith", "item-1")));
+        assertThat(JmixConditions.toFilters(LogicalCondition.and(byName, PropertyCondition.less("price", 3)), Map.of()))
+                .isEqualTo(Map.of("price", Map.of("lt", 3)));
+        assertThat(JmixConditions.toFilters(byName, Map.of())).isEmpty();
+
+        assertThatThrownBy(() -> JmixConditions.toFilters(
+                PropertyCondition.create("tags", PropertyCondition.Operation.MEMBER_OF_COLLECTION, "x"), null))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void test_loadAndCount() {
+        VirtualDataStore store = store(2_000, "group");
+
+        LogicalCondition condition = LogicalCondition.and(
+                PropertyCondition.equal("group", 3),
+                PropertyCondition.lessOrEqual("price", 500));
+        List<Object> rows = store.load("Citizen", condition, Map.of());
+        assertThat(rows).hasSize(50).allMatch(row -> ((Map<?, ?>) row).get("group").equals(3));
+        assertThat(store.count("Citizen", condition, Map.of())).isEqualTo(50);
+
+        PropertyCondition endsWith = PropertyCondition.endsWith("name", "99");
+        List<String> names = store.load("Citizen", endsWith, Map.of()).stream().map(row -> (String) ((Map<?, ?>) row).get("name")).toList();
+        assertThat(names).hasSize(20).startsWith("item-99", "item-199", "item-299").endsWith("item-1999");
+        // Mọi row có tên kết thúc bằng 99 đều có group rỗng
+        assertThat(store.count("Citizen", LogicalCondition.or(endsWith, PropertyCondition.isNotSet("group")), Map.of()))
+                .isEqualTo(200);
+        // Các số từ 0 đến 999 không có chữ số 1
+        assertThat(store.count("Citizen", PropertyCondition.notContains("name", "1"), Map.of())).isEqualTo(729);
+        assertThat(store.count("Citizen", null, Map.of())).isEqualTo(2_000);
+    }
+}
@@ -0,0 +1,71 @@
+package com.company.dynamicdatastore.component.datastore;
+
+import com.company.dynamicdatastore.component.storage.StorageMode;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static com.company.dynamicdatastore.component.datastore.VirtualDataStoreTest.idOf;
+import static com.company.dynamicdatastore.component.datastore.VirtualDataStoreTest.row;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Kiểm tra spill ra file khi vượt giới hạn bộ nhớ và đọc/ghi trên entity đã spill.
+ */
+public class MemoryBudgetTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void test_coldEntitiesAreSpilledAndStillReadable() throws Exception {
+        MemoryBudget budget = new MemoryBudget(DataSize.ofKilobytes(768), DataSize.ofBytes(0), directory.toString());
+        VirtualDataStore store = new VirtualDataStore("test", null, StorageMode.HEAP, budget);
+        budget.register(store);
+        List<String> entities = List.of("Product", "Order", "Customer", "Invoice");
+        for (String entity : entities) {
+            List<Object> rows = new ArrayList<>();
+            for (int i = 0; i < 3000; i++) {
+                rows.add(row(i));
+            }
+            store.saveEntities(entity, rows);
+        }
+        budget.awaitEviction();
+
+        Map<String, Object> statistics = store.getMemoryStatistics();
+        assertThat((Long) statistics.get("spills")).isPositive();
+        assertThat((Integer) statistics.get("spilledEntities")).isPositive();
+        assertThat((Long) statistics.get("residentBytes")).isLessThanOrEqualTo(DataSize.ofKilobytes(768).toBytes());
+        assertThat(spillFiles()).isNotEmpty();
+
+        for (String entity : entities) {
+            assertThat(store.loadAllEntities(entity)).hasSize(3000);
+            assertThat(store.loadEntity(entity, idOf(2999))).isEqualTo(row(2999));
+        }
+        assertThat((Long) store.getMemoryStatistics().get("misses")).isPositive();
+
+        store.updateEntity("Product", idOf(1), Map.of("name", "updated"));
+        store.deleteEntity("Product", idOf(2));
+        store.saveEntity("Product", row(9000));
+        assertThat(((Map<?, ?>) store.loadEntity("Product", idOf(1))).get("name")).isEqualTo("updated");
+        assertThat(store.loadEntity("Product", idOf(2))).isNull();
+        assertThat(store.loadAllEntities("Product")).hasSize(3000).contains(row(9000));
+
+        store.release();
+        budget.close();
+        assertThat(spillFiles()).isEmpty();
+    }
+
+    private List<Path> spillFiles() throws Exception {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.toList();
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.company.dynamicdatastore.component.datastore;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Kiểm tra quét song song cho cùng kết quả và cùng thứ tự như quét tuần tự.
+ */
+public class ParallelScanTest {
+
+    @Test
+    void test_sameOrderAsSequential() {
+        ParallelScan scan = new ParallelScan(4, 10_000);
+        try {
+            List<Integer> rows = new ArrayList<>();
+            for (int i = 0; i < 200_000; i++) {
+                rows.add(i);
+            }
+            Set<String> threads = ConcurrentHashMap.newKeySet();
+            List<Integer> even = scan.collect(rows, 0, row -> {
+                record(threads, row);
+                return row % 2 == 0 ? row * 10 : null;
+            });
+
+            assertThat(even).hasSize(100_000);
+            for (int i = 0; i < even.size(); i++) {
+                assertThat(even.get(i)).isEqualTo(i * 20);
+            }
+            assertThat(threads).allMatch(name -> name.startsWith("virtual-datastore-scan-"));
+
+            // Giới hạn 1 thread hoặc dưới ngưỡng thì quét ngay trên thread gọi
+            threads.clear();
+            assertThat(scan.collect(rows, 1, row -> record(threads, row))).hasSize(200_000);
+            assertThat(threads).containsExactly(Thread.currentThread().getName());
+            threads.clear();
+            scan.collect(rows.subList(0, 5_000), 0, row -> record(threads, row));
+            assertThat(threads).containsExactly(Thread.currentThread().getName());
+
+            assertThatThrownBy(() -> scan.collect(rows, 0, row -> {
+                if (row == 150_000)
+                    throw new IllegalArgumentException("bad row");
+                return row;
+            })).isInstanceOf(IllegalArgumentException.class).hasMessageContaining("bad row");
+        } finally {
+            scan.close();
+        }
+    }
+
+    @Test
+    void test_storeParallelism() {
+        ParallelScan scan = new ParallelScan(4, 10_000);
+        try {
+            VirtualDataStore store = new VirtualDataStore("test", null, null, null, scan);
+            List<Integer> rows = new ArrayList<>();
+            for (int i = 0; i < 100_000; i++) {
+                rows.add(i);
+            }
+            store.setScanParallelism(1);
+            Set<String> threads = ConcurrentHashMap.newKeySet();
+            assertThat(store.scan(rows, row -> record(threads, row)))
+                    .containsExactlyElementsOf(rows);
+            assertThat(threads).containsExactly(Thread.currentThread().getName());
+
+            store.setScanParallelism(0);
+            assertThat(store.scan(rows, row -> row % 3 == 0 ? row : null)).hasSize(33_334).startsWith(0, 3, 6);
+            assertThatThrownBy(() -> store.setScanParallelism(-1)).isInstanceOf(IllegalArgumentException.class);
+        } finally {
+            scan.close();
+        }
+    }
+
+    private static Integer record(Set<String> threads, Integer row) {
+        threads.add(Thread.currentThread().getName());
+        return row;
+    }
+}
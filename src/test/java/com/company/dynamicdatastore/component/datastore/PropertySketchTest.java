@@ -0,0 +1,132 @@
+package com.company.dynamicdatastore.component.datastore;
+
+import com.company.dynamicdatastore.component.entity.VirtualEntityDefinition;
+import com.company.dynamicdatastore.component.registy.DataStoreRegistry;
+import com.company.dynamicdatastore.component.storage.StorageMode;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static com.company.dynamicdatastore.component.datastore.VirtualDataStoreTest.idOf;
+import static com.company.dynamicdatastore.component.datastore.VirtualDataStoreTest.row;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+import static org.assertj.core.api.InstanceOfAssertFactories.MAP;
+
+/**
+ * Kiểm tra sai số của HyperLogLog/KLL, gộp sketch và sketch theo thuộc tính được duy trì khi ghi.
+ */
+public class PropertySketchTest {
+
+    @Test
+    void test_distinctAndQuantiles() {
+        HyperLogLog hll = new HyperLogLog();
+        KllSketch kll = new KllSketch();
+        for (int i = 0; i < 100_000; i++) {
+            hll.add("CD" + i);
+            kll.add(i);
+        }
+        assertThat(hll.estimate()).isCloseTo(100_000L, within(5_000L));
+        // Số nguyên cùng giá trị được coi là một
+        HyperLogLog small = new HyperLogLog();
+        for (int i = 0; i < 1_000; i++) {
+            small.add(i % 100);
+            small.add((long) (i % 100));
+        }
+        assertThat(small.estimate()).isCloseTo(100L, within(3L));
+
+        assertThat(kll.retained()).isLessThan(4 * KllSketch.K);
+        assertThat(kll.quantile(0.5)).isCloseTo(50_000, within(2_000.0));
+        assertThat(kll.quantile(0.9)).isCloseTo(90_000, within(2_000.0));
+        assertThat(kll.quantile(0)).isEqualTo(0);
+        assertThat(kll.quantile(1)).isEqualTo(99_999);
+        assertThat(kll.rank(25_000, true)).isCloseTo(0.25, within(0.02));
+    }
+
+    @Test
+    void test_merge() {
+        HyperLogLog left = new HyperLogLog();
+        HyperLogLog right = new HyperLogLog();
+        HyperLogLog all = new HyperLogLog();
+        KllSketch lower = new KllSketch();
+        KllSketch upper = new KllSketch();
+        for (int i = 0; i < 20_000; i++) {
+            (i % 2 == 0 ? left : right).add(i);
+            all.add(i);
+            (i < 10_000 ? lower : upper).add(i);
+        }
+        left.merge(right);
+        // Gộp bằng max từng thanh ghi nên giống hệt sketch dựng từ toàn bộ
+        assertThat(left.estimate()).isEqualTo(all.estimate());
+
+        lower.merge(upper);
+        assertThat(lower.getCount()).isEqualTo(20_000);
+        assertThat(lower.quantile(0.5)).isCloseTo(10_000, within(600.0));
+        assertThat(lower.retained()).isLessThan(4 * KllSketch.K);
+    }
+
+    @Test
+    void test_sketchesFollowWritesAndCompaction() {
+        VirtualDataStore store = new VirtualDataStore("test", null, StorageMode.HEAP);
+        VirtualEntityDefinition definition = new VirtualEntityDefinition("Citizen", "test");
+        definition.addProperty("name", String.class);
+        definition.addProperty("price", Integer.class);
+        store.registerEntityDefinition(definition);
+        List<Object> rows = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            Map<String, Object> row = row(i);
+            row.put("group", i % 10);
+            rows.add(row);
+        }
+        store.saveEntities("Citizen", rows);
+
+        Map<String, PropertySketch> sketches = store.getPropertySketches("Citizen");
+        assertThat(sketches).containsKeys("id", "name", "price", "group");
+        assertThat(sketches.get("group").getDistinct()).isEqualTo(10);
+        assertThat(sketches.get("name").getNumbers()).isNull();
+        assertThat(sketches.get("price").summary()).containsEntry("values", 1000L);
+        assertThat(sketches.get("price").summary().get("quantiles")).asInstanceOf(MAP).containsEntry("max", 999.0);
+
+        // Xóa chưa dồn: giá trị của row đã xóa vẫn còn trong sketch
+        for (int i = 0; i < 500; i++) {
+            store.deleteEntity("Citizen", idOf(i));
+        }
+        assertThat(store.getPropertySketch("Citizen", "price").getValues()).isEqualTo(1000);
+
+        // Row rác vượt quá row sống thì phân vùng được dồn lại, sketch dựng lại từ các row còn sống
+        store.deleteEntity("Citizen", idOf(500));
+        PropertySketch price = store.getPropertySketch("Citizen", "price");
+        assertThat(price.getValues()).isEqualTo(499);
+        assertThat(price.getNumbers().getMin()).isEqualTo(501);
+        assertThat(price.getDistinct()).isCloseTo(499L, within(15L));
+        assertThat(store.getPropertySketch("Citizen", "missing")).isNull();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void test_registryReportsSketchesPerStore() {
+        VirtualDataStore hanoi = new VirtualDataStore("hanoi", null);
+        VirtualDataStore hue = new VirtualDataStore("hue", null);
+        for (int i = 0; i < 100; i++) {
+            hanoi.saveEntity("Citizen", row(i));
+            Map<String, Object> repeated = row(i);
+            repeated.put("name", "item-" + i % 10);
+            hue.saveEntity("Citizen", repeated);
+        }
+        DataStoreRegistry registry = new DataStoreRegistry();
+        registry.register(hanoi);
+        registry.register(hue);
+
+        // Citizen của hai store là dữ liệu khác nhau: mỗi store có sketch riêng, không cộng dồn
+        Map<String, Object> details = (Map<String, Object>) registry.getRegistryStatistics().get("virtualStoreDetails");
+        assertThat(details).extractingByKey("hanoi", MAP).extractingByKey("properties", MAP)
+                .extractingByKey("Citizen", MAP).extractingByKey("name", MAP)
+                .containsEntry("values", 100L).hasEntrySatisfying("distinct", d -> assertThat((Long) d).isBetween(97L, 103L));
+        assertThat(details).extractingByKey("hue", MAP).extractingByKey("properties", MAP)
+                .extractingByKey("Citizen", MAP).extractingByKey("name", MAP)
+                .containsEntry("values", 100L).containsEntry("distinct", 10L);
+        assertThat(registry.getRegistryStatistics()).doesNotContainKey("properties");
+    }
+}
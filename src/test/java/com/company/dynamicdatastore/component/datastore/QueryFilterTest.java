@@ -0,0 +1,163 @@
+package com.company.dynamicdatastore.component.datastore;
+
+import com.company.dynamicdatastore.component.entity.VirtualEntityDefinition;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Kiểm tra bộ lọc đã dịch cho cùng kết quả dù thuộc tính có khai báo kiểu hay không.
+ */
+public class QueryFilterTest {
+
+    private static final VirtualEntityDefinition DEFINITION = definition();
+
+    @Test
+    void test_operators() {
+        List<Map<String, Object>> rows = rows();
+
+        assertThat(ids(rows, Map.of("age", 30))).containsExactly(3);
+        assertThat(ids(rows, Map.of("age", Map.of("eq", "30")))).containsExactly(3);
+        assertThat(ids(rows, Map.of("age", Map.of("eq", "30.0")))).isEmpty();
+        assertThat(ids(rows, Map.of("age", Map.of("ne", 30)))).containsExactly(0, 1, 2, 4, 5, 6, 7, 8);
+        assertThat(ids(rows, Map.of("age", Map.of("gt", 45.5)))).containsExactly(5, 6, 7, 8);
+        assertThat(ids(rows, Map.of("age", Map.of("gte", "40", "lt", 60)))).containsExactly(4, 5);
+        assertThat(ids(rows, Map.of("age", Map.of("between", List.of(10, 20.5))))).containsExactly(1, 2);
+        assertThat(ids(rows, Map.of("age", Map.of("in", Arrays.asList(0, "20", 70, null))))).containsExactly(0, 2, 7, 9);
+        assertThat(ids(rows, Map.of("age", Map.of("isNull", true)))).containsExactly(9);
+        assertThat(ids(rows, Map.of("score", Map.of("lte", 0.3)))).containsExactly(0, 1, 2, 3);
+        assertThat(ids(rows, Map.of("score", Map.of("eq", 0.5)))).containsExactly(5);
+        assertThat(ids(rows, Map.of("bornOn", Map.of("lt", "2000-01-04")))).containsExactly(0, 1, 2);
+        assertThat(ids(rows, Map.of("name", "PERSON-4"))).containsExactly(4);
+        assertThat(ids(rows, Map.of("name", Map.of("in", List.of("person-1", "Person-2"))))).containsExactly(1, 2);
+        assertThat(ids(rows, Map.of("name", Map.of("startsWith", "PERSON-1")))).containsExactly(1);
+        assertThat(ids(rows, Map.of("name", Map.of("contains", "son-8")))).containsExactly(8);
+    }
+
+    @Test
+    void test_logicalOperators() {
+        List<Map<String, Object>> rows = rows();
+
+        assertThat(ids(rows, Map.of("or", List.of(Map.of("age", 10), Map.of("name", "person-8")))))
+                .containsExactly(1, 8);
+        assertThat(ids(rows, Map.of("not", Map.of("age", Map.of("lt", 50)), "age", Map.of("isNull", false))))
+                .containsExactly(5, 6, 7, 8);
+        assertThat(ids(rows, Map.of("and", List.of(Map.of("age", Map.of("gte", 20)), Map.of("age", Map.of("lte", 30))),
+                "or", List.of(Map.of("name", Map.of("contains", "3")), Map.of("score", 0.2)))))
+                .containsExactly(2, 3);
+
+        // Đọc giá trị qua hàm thay vì Map: thuộc tính không có giá trị là null
+        QueryFilter filter = QueryFilter.compile(Map.of("or", List.of(Map.of("A.age", Map.of("gte", 40)),
+                Map.of("B.cost", Map.of("isNull", true)))), property -> null);
+        assertThat(filter.matches(field -> field.equals("A.age") ? 41 : null)).isTrue();
+        assertThat(filter.matches(field -> field.equals("A.age") ? 39 : 5)).isFalse();
+        assertThat(filter.matches(field -> null)).isTrue();
+    }
+
+    @Test
+    void test_sameResultWithoutDeclaredTypes() {
+        List<Map<String, Object>> rows = rows();
+        List<Map<String, Object>> filters = List.of(
+                Map.of("age", Map.of("gt", 45.5)),
+                Map.of("age", Map.of("in", List.of(0, "20", 70))),
+                Map.of("age", Map.of("ne", "30")),
+                Map.of("score", Map.of("between", List.of("0.2", 0.6))),
+                Map.of("bornOn", Map.of("gte", "2000-01-05")));
+        for (Map<String, Object> filter : filters) {
+            QueryFilter untyped = QueryFilter.compile(filter, property -> null);
+            assertThat(ids(rows, filter)).as(filter.toString())
+                    .containsExactlyElementsOf(rows.stream().filter(untyped::matches).map(r -> (Integer) r.get("id")).toList());
+        }
+    }
+
+    @Test
+    void test_typedEqualityMatchesStringForm() {
+        List<Map<String, Object>> rows = rows();
+        String key3 = new UUID(0xABL, 3).toString();
+
+        assertThat(ids(rows, Map.of("key", key3.toUpperCase()))).containsExactly(3);
+        assertThat(ids(rows, Map.of("key", Map.of("in", List.of(key3, new UUID(0xABL, 8), "not-a-uuid")))))
+                .containsExactly(3, 8);
+        assertThat(ids(rows, Map.of("cost", Map.of("eq", "2.50")))).containsExactly(2);
+        assertThat(ids(rows, Map.of("cost", Map.of("eq", "2.5")))).isEmpty();
+        assertThat(ids(rows, Map.of("cost", Map.of("in", List.of(new BigDecimal("1.50"), "8.50", "4.500"))))).containsExactly(1, 8);
+        assertThat(ids(rows, Map.of("score", Map.of("in", List.of(0.2, "0.40", "0.6"))))).containsExactly(2, 6);
+        assertThat(ids(rows, Map.of("bornOn", Map.of("in", List.of("2000-01-02", LocalDate.of(2000, 1, 4)))))).containsExactly(1, 3);
+
+        List<Map<String, Object>> filters = List.of(
+                Map.of("key", key3.toUpperCase()),
+                Map.of("key", Map.of("ne", key3)),
+                Map.of("cost", Map.of("in", List.of("1.50", "8.50", "1E+1"))),
+                Map.of("score", Map.of("eq", "0.30")),
+                Map.of("bornOn", Map.of("in", List.of("2000-01-02", "2000-1-3"))));
+        for (Map<String, Object> filter : filters) {
+            QueryFilter untyped = QueryFilter.compile(filter, property -> null);
+            assertThat(ids(rows, filter)).as(filter.toString())
+                    .containsExactlyElementsOf(rows.stream().filter(untyped::matches).map(r -> (Integer) r.get("id")).toList());
+        }
+    }
+
+    @Test
+    void test_invalidFilters() {
+        assertThatThrownBy(() -> compile(Map.of("age", Map.of("like", "3"))))
+                .isInstanceOf(IllegalArgumentException.class).hasMessageContaining("like");
+        assertThatThrownBy(() -> compile(Map.of("age", Map.of("between", List.of(1)))))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> compile(Map.of("age", Map.of("gt", 1, "gte", 2))))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> compile(Map.of("or", List.of())))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> compile(Map.of("not", List.of(Map.of("age", 1)))))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static List<Integer> ids(List<Map<String, Object>> rows, Map<String, Object> filters) {
+        QueryFilter filter = compile(filters);
+        return rows.stream().filter(filter::matches).map(r -> (Integer) r.get("id")).toList();
+    }
+
+    private static QueryFilter compile(Map<String, Object> filters) {
+        return QueryFilter.compile(filters, QueryFilter.typesOf(DEFINITION));
+    }
+
+    private static List<Map<String, Object>> rows() {
+        List<Map<String, Object>> rows = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            Map<String, Object> row = new HashMap<>();
+            row.put("id", i);
+            row.put("name", "Person-" + i);
+            row.put("age", i < 9 ? (i % 2 == 0 ? Integer.valueOf(i * 10) : Long.valueOf(i * 10)) : null);
+            row.put("score", i / 10.0);
+            row.put("bornOn", LocalDate.of(2000, 1, i + 1));
+            row.put("key", new UUID(0xABL, i));
+            row.put("cost", new BigDecimal(i + ".50"));
+            rows.add(row);
+        }
+        rows.get(7).put("age", new BigDecimal("70"));
+        // Giá trị không đúng kiểu khai báo vẫn được so theo dạng chuỗi
+        rows.get(8).put("key", new UUID(0xABL, 8).toString().toUpperCase());
+        rows.get(8).put("cost", "8.50");
+        return rows;
+    }
+
+    private static VirtualEntityDefinition definition() {
+        VirtualEntityDefinition definition = new VirtualEntityDefinition("Person", "test");
+        definition.addProperty("name", String.class);
+        definition.addProperty("age", Long.class);
+        definition.addProperty("score", Double.class);
+        definition.addProperty("bornOn", LocalDate.class);
+        definition.addProperty("key", UUID.class);
+        definition.addProperty("cost", BigDecimal.class);
+        return definition;
+    }
+}
@@ -0,0 +1,116 @@
+package com.company.dynamicdatastore.component.datastore;
+
+import com.company.dynamicdatastore.test_support.TestCitizens;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static com.company.dynamicdatastore.test_support.TestCitizens.citizen;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Kiểm tra planner chọn đúng đường truy cập và kết quả luôn giống quét toàn bộ.
+ */
+public class QueryPlannerTest {
+
+    @Test
+    void test_choosesIndexesByCost() {
+        VirtualDataStore store = store(10_000);
+
+        QueryPlan plan = execute(store, Map.of("cccd", "cd42"));
+        assertThat(plan.getExplain()).containsEntry("access", "index").containsEntry("actualRows", 1);
+        assertThat(node(plan)).containsEntry("type", "index").containsEntry("index", "hash")
+                .containsEntry("estimatedRows", 1L).containsEntry("actualRows", 1L);
+
+        plan = execute(store, Map.of("group", 3, "price", Map.of("lt", 100)));
+        assertThat(node(plan)).containsEntry("type", "and").containsEntry("actualRows", 10L);
+        assertThat(plan.getRows()).hasSize(10);
+
+        plan = execute(store, Map.of("or", List.of(Map.of("cccd", "CD1"), Map.of("name", Map.of("startsWith", "item-999")))));
+        assertThat(node(plan)).containsEntry("type", "or");
+        assertThat(plan.getRows()).hasSize(12);
+
+        plan = execute(store, Map.of("cccd", Map.of("in", List.of("CD5", "CD6", "CD7"))));
+        assertThat(node(plan)).containsEntry("type", "or").containsEntry("actualRows", 3L);
+
+        // Khoảng gần như toàn bộ bảng: quét rẻ hơn
+        plan = execute(store, Map.of("price", Map.of("gte", 10)));
+        assertThat(plan.getExplain()).containsEntry("access", "scan");
+        assertThat(plan.getRows()).hasSize(9_990);
+
+        // Một nhánh or không có chỉ mục thì cả or phải quét
+        plan = execute(store, Map.of("or", List.of(Map.of("cccd", "CD1"), Map.of("note", "x"))));
+        assertThat(plan.getExplain()).containsEntry("access", "scan").doesNotContainKey("indexPlan");
+    }
+
+    @Test
+    void test_sameRowsAsScan() {
+        VirtualDataStore store = store(2_000);
+        List<Map<String, Object>> filters = List.of(
+                Map.of("group", 7),
+                Map.of("group", Map.of("isNull", true)),
+                Map.of("price", Map.of("between", List.of(100, 120)), "name", Map.of("contains", "item-1")),
+                Map.of("and", List.of(Map.of("price", Map.of("gt", 1500)), Map.of("group", Map.of("ne", 2)))),
+                Map.of("or", List.of(Map.of("price", Map.of("lt", 5)), Map.of("group", Map.of("in", List.of(1, 2))))),
+                Map.of("not", Map.of("group", 1), "cccd", Map.of("startsWith", "CD1")));
+        for (Map<String, Object> filter : filters) {
+            QueryFilter compiled = QueryFilter.compile(filter, QueryFilter.typesOf(store.getEntityDefinition("Citizen")));
+            List<Map<String, Object>> scanned = store.snapshot("Citizen").getRows().stream()
+                    .map(QueryPlannerTest::map).filter(compiled::matches).toList();
+            assertThat(execute(store, filter).getRows()).as(filter.toString()).containsExactlyElementsOf(scanned);
+        }
+
+        // Snapshot cũ không dùng được chỉ mục
+        EntitySnapshot before = store.snapshot("Citizen");
+        store.saveEntity("Citizen", citizen(5000));
+        QueryPlan plan = new QueryPlanner(store, "Citizen", before)
+                .execute(Map.of("cccd", "CD5"), QueryFilter.compile(Map.of("cccd", "CD5"), p -> null), QueryPlannerTest::map);
+        assertThat(plan.getExplain()).containsEntry("access", "scan");
+        assertThat(plan.getRows()).hasSize(1);
+    }
+
+    @Test
+    void test_statistics() {
+        VirtualDataStore store = store(1_000);
+        Map<String, PropertyStatistics> statistics = store.getStatistics("Citizen");
+
+        assertThat(statistics).containsOnlyKeys("cccd", "group", "price");
+        assertThat(statistics.get("group").getDistinct()).isEqualTo(9);
+        assertThat(statistics.get("group").getNullFraction()).isEqualTo(0.1);
+        assertThat(statistics.get("price").getMin()).isEqualTo(BigDecimal.ZERO);
+        assertThat(statistics.get("price").getMax()).isEqualTo(BigDecimal.valueOf(999));
+
+        for (int i = 0; i < 100; i++) {
+            store.deleteEntity("Citizen", new UUID(0L, i));
+        }
+        assertThat(store.getStatistics("Citizen").get("cccd").getDistinct()).isEqualTo(900);
+        assertThat(store.getStatistics("Citizen").get("price").getMin()).isEqualTo(BigDecimal.valueOf(100));
+    }
+
+    private static QueryPlan execute(VirtualDataStore store, Map<String, Object> filters) {
+        QueryFilter filter = QueryFilter.compile(filters, QueryFilter.typesOf(store.getEntityDefinition("Citizen")));
+        return new QueryPlanner(store, "Citizen", store.snapshot("Citizen")).execute(filters, filter, QueryPlannerTest::map);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> node(QueryPlan plan) {
+        return (Map<String, Object>) plan.getExplain().get("indexPlan");
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> map(Object row) {
+        return (Map<String, Object>) row;
+    }
+
+    /**
+     * Chỉ mục group được tạo sau khi đã có dữ liệu
+     */
+    private static VirtualDataStore store(int size) {
+        VirtualDataStore store = TestCitizens.store(size, "cccd", "price");
+        store.createIndex("Citizen", "group");
+        return store;
+    }
+}
@@ -0,0 +1,78 @@
+package com.company.dynamicdatastore.component.datastore;
+
+import com.company.dynamicdatastore.component.entity.VirtualEntityDefinition;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static com.company.dynamicdatastore.component.datastore.VirtualDataStoreTest.idOf;
+import static com.company.dynamicdatastore.component.datastore.VirtualDataStoreTest.row;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Kiểm tra chỉ mục có thứ tự: lọc theo khoảng, min/max và duyệt theo thứ tự giá trị.
+ */
+public class RangeIndexTest {
+
+    @Test
+    void test_rangeMinMaxAndOrderedScan() {
+        VirtualDataStore store = new VirtualDataStore("test", null);
+        VirtualEntityDefinition definition = new VirtualEntityDefinition("Product", "test");
+        definition.addProperty("price", Integer.class);
+        definition.addProperty("releasedOn", LocalDate.class);
+        definition.addIndexedProperty("price");
+        definition.addIndexedProperty("releasedOn");
+        store.registerEntityDefinition(definition);
+        List<Object> rows = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            Map<String, Object> row = row(i);
+            // Giá không theo thứ tự chèn để kiểm tra thứ tự của chỉ mục
+            row.put("price", (i * 7) % 1000);
+            row.put("releasedOn", LocalDate.of(2024, 1, 1).plusDays(i));
+            rows.add(row);
+        }
+        store.saveEntities("Product", rows);
+
+        assertThat(store.getIndexTypes("Product"))
+                .containsEntry("price", List.of("range(NUMBER)"))
+                .containsEntry("releasedOn", List.of("range(DATE)"));
+        // Lọc theo khoảng giữ thứ tự chèn như khi quét
+        assertThat(range(store, "price", 10, true, 20, false))
+                .containsExactlyElementsOf(rows.stream().filter(r -> price(r) >= 10 && price(r) < 20).toList());
+        assertThat(range(store, "price", new BigDecimal("989.5"), false, null, true)).hasSize(10);
+        assertThat(range(store, "releasedOn", "2024-12-31", true, null, true))
+                .hasSize(1000 - 365);
+        assertThat(range(store, "price", "abc", true, null, true)).isNull();
+
+        EntitySnapshot snapshot = store.snapshot("Product");
+        assertThat(store.orderedScan("Product", snapshot, "price", null, true, null, true, false, 1))
+                .extracting(RangeIndexTest::price).containsExactly(0);
+        assertThat(store.orderedScan("Product", snapshot, "price", null, true, null, true, true, 3))
+                .extracting(RangeIndexTest::price).containsExactly(999, 998, 997);
+
+        store.updateEntity("Product", idOf(0), Map.of("price", 5000));
+        for (int i = 1; i < 700; i++) {
+            store.deleteEntity("Product", idOf(i));
+        }
+        snapshot = store.snapshot("Product");
+        assertThat(store.orderedScan("Product", snapshot, "price", null, true, null, true, true, 1))
+                .extracting(RangeIndexTest::price).containsExactly(5000);
+        List<Object> ordered = store.orderedScan("Product", snapshot, "price", null, true, null, true, false, Integer.MAX_VALUE);
+        assertThat(ordered).hasSize(301).extracting(RangeIndexTest::price).isSorted();
+        assertThat(range(store, "releasedOn", LocalDate.of(2024, 1, 1), true, LocalDate.of(2024, 1, 1), true))
+                .containsExactly(store.loadEntity("Product", idOf(0)));
+    }
+
+    private static List<Object> range(VirtualDataStore store, String property, Object from, boolean fromInclusive,
+                                      Object to, boolean toInclusive) {
+        return store.range("Product", store.snapshot("Product"), property, from, fromInclusive, to, toInclusive);
+    }
+
+    private static int price(Object row) {
+        return (Integer) ((Map<?, ?>) row).get("price");
+    }
+}
@@ -0,0 +1,108 @@
+package com.company.dynamicdatastore.component.datastore;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Kiểm tra sắp xếp nhiều thuộc tính và trang lấy bằng heap giống hệt cắt từ danh sách đã sắp xếp.
+ */
+public class RowSortTest {
+
+    private static final Map<String, Class<?>> TYPES = Map.of("price", Integer.class, "name", String.class);
+
+    @Test
+    void test_multiFieldSortWithNulls() {
+        List<Map<String, Object>> rows = List.of(
+                row("b", 10), row("a", 10), row(null, 5), row("c", null), row("a", 20));
+        RowSort sort = new RowSort(List.of(new RowSort.Order("price", true), new RowSort.Order("name", false)), TYPES::get);
+
+        // Giảm dần: null đứng đầu, cùng price thì name tăng dần, null name đứng cuối
+        assertThat(sort.page(rows, -1, 0, -1)).containsExactly(3, 4, 1, 0, 2);
+        assertThat(sort.page(rows, -1, 1, 2)).containsExactly(4, 1);
+
+        RowSort byName = new RowSort(List.of(new RowSort.Order("name", false)), TYPES::get);
+        assertThat(byName.page(rows, -1, 0, -1)).containsExactly(1, 4, 0, 3, 2);
+    }
+
+    @Test
+    void test_heapMatchesFullSort() {
+        Random random = new Random(42);
+        List<Map<String, Object>> rows = new ArrayList<>();
+        for (int i = 0; i < 2_000; i++) {
+            rows.add(row("n" + random.nextInt(50), random.nextInt(10) == 0 ? null : random.nextInt(100)));
+        }
+        RowSort sort = new RowSort(List.of(new RowSort.Order("price", false), new RowSort.Order("name", true)), TYPES::get);
+        List<Integer> sorted = sort.page(rows, -1, 0, -1);
+
+        assertThat(sort.page(rows, -1, 0, 10)).containsExactlyElementsOf(sorted.subList(0, 10));
+        assertThat(sort.page(rows, -1, 300, 25)).containsExactlyElementsOf(sorted.subList(300, 325));
+        assertThat(sort.page(rows, -1, 1_990, 25)).containsExactlyElementsOf(sorted.subList(1_990, 2_000));
+        assertThat(sort.page(rows, -1, 0, 0)).isEmpty();
+
+        // Đi hết các trang bằng cursor (row cuối của trang trước) ra đúng thứ tự sắp xếp
+        List<Integer> walked = new ArrayList<>();
+        int after = -1;
+        while (true) {
+            List<Integer> page = sort.page(rows, after, 0, 137);
+            if (page.isEmpty())
+                break;
+            walked.addAll(page);
+            after = page.get(page.size() - 1);
+        }
+        assertThat(walked).containsExactlyElementsOf(sorted);
+    }
+
+    @Test
+    void test_unsortedPagesKeepInsertionOrder() {
+        List<Map<String, Object>> rows = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            rows.add(row("n" + i, i));
+        }
+        RowSort none = new RowSort(List.of(), TYPES::get);
+
+        assertThat(none.page(rows, -1, 2, 3)).containsExactly(2, 3, 4);
+        assertThat(none.page(rows, 4, 0, 3)).containsExactly(5, 6, 7);
+        assertThat(none.page(rows, 8, 0, 3)).containsExactly(9);
+    }
+
+    @Test
+    void test_untypedMixedValuesSortTransitively() {
+        // Không khai báo kiểu: số (theo giá trị), rồi ngày, rồi chuỗi, null cuối
+        List<Map<String, Object>> rows = new ArrayList<>();
+        for (Object value : new Object[]{"10", 9, null, "abc", LocalDate.of(2024, 1, 2), 10.5,
+                LocalDateTime.of(2024, 1, 1, 12, 0), "9", new BigDecimal("-1")}) {
+            Map<String, Object> row = new HashMap<>();
+            row.put("value", value);
+            rows.add(row);
+        }
+        RowSort sort = new RowSort(List.of(new RowSort.Order("value", false)), property -> null);
+
+        assertThat(sort.page(rows, -1, 0, -1)).containsExactly(8, 1, 5, 6, 4, 0, 7, 3, 2);
+        for (Map<String, Object> a : rows) {
+            for (Map<String, Object> b : rows) {
+                assertThat(Integer.signum(sort.compare(a, b))).isEqualTo(-Integer.signum(sort.compare(b, a)));
+                for (Map<String, Object> c : rows) {
+                    if (sort.compare(a, b) <= 0 && sort.compare(b, c) <= 0)
+                        assertThat(sort.compare(a, c)).isLessThanOrEqualTo(0);
+                }
+            }
+        }
+    }
+
+    private static Map<String, Object> row(String name, Integer price) {
+        Map<String, Object> row = new HashMap<>();
+        row.put("name", name);
+        row.put("price", price);
+        return row;
+    }
+}
@@ -0,0 +1,82 @@
+package com.company.dynamicdatastore.component.datastore;
+
+import com.company.dynamicdatastore.component.entity.VirtualEntityDefinition;
+import com.company.dynamicdatastore.component.storage.StorageMode;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static com.company.dynamicdatastore.component.datastore.VirtualDataStoreTest.idOf;
+import static com.company.dynamicdatastore.component.datastore.VirtualDataStoreTest.row;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Kiểm tra chỉ mục văn bản: ứng viên tra được luôn chứa mọi row khớp, kể cả sau khi ghi đè, xóa và dồn phân vùng.
+ */
+public class TextIndexTest {
+
+    private static final String[] CITIES = {"Hà Nội", "Hải Phòng", "Hồ Chí Minh", "Đà Nẵng", "Cần Thơ"};
+
+    @Test
+    void test_searchFollowsWritesAndCompaction() {
+        VirtualDataStore store = new VirtualDataStore("test", null, StorageMode.COLUMNAR);
+        VirtualEntityDefinition definition = new VirtualEntityDefinition("Citizen", "test");
+        definition.addProperty("address", String.class);
+        store.registerEntityDefinition(definition);
+        List<Object> rows = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            Map<String, Object> row = row(i);
+            row.put("address", "Số " + i + " Phố Huế, " + CITIES[i % CITIES.length]);
+            rows.add(row);
+        }
+        store.saveEntities("Citizen", rows);
+        store.createTextIndex("Citizen", "address");
+
+        assertThat(store.getIndexTypes("Citizen")).containsEntry("address", List.of("text"));
+        assertSearch(store, TextSearch.CONTAINS, "hải phòng", 200);
+        assertSearch(store, TextSearch.CONTAINS, "PHỐ HUẾ", 1000);
+        assertSearch(store, TextSearch.STARTS_WITH, "số 42 ", 1);
+        assertSearch(store, TextSearch.MATCH, "nẵng số 8", 1);
+        assertSearch(store, TextSearch.CONTAINS, "Vinh", 0);
+        assertThat(search(store, TextSearch.CONTAINS, "hà")).isNull();
+        assertThat(search(store, TextSearch.MATCH, ", ")).isNull();
+
+        EntitySnapshot before = store.snapshot("Citizen");
+        store.updateEntity("Citizen", idOf(1), Map.of("address", "Số 1 Lê Lợi, Vinh"));
+        assertThat(store.search("Citizen", before, "address", TextSearch.CONTAINS, "Vinh")).isNull();
+        assertSearch(store, TextSearch.CONTAINS, "vinh", 1);
+        assertSearch(store, TextSearch.CONTAINS, "hải phòng", 199);
+
+        // Xóa quá nửa phân vùng để nó được dồn lại, chỉ mục được dựng lại theo vị trí mới
+        for (int i = 0; i < 700; i++) {
+            store.deleteEntity("Citizen", idOf(i));
+        }
+        assertSearch(store, TextSearch.CONTAINS, "vinh", 0);
+        assertSearch(store, TextSearch.CONTAINS, "hải phòng", 60);
+        assertThat(search(store, TextSearch.STARTS_WITH, "số 999")).containsExactly(rows.get(999));
+
+        assertThat(store.dropTextIndex("Citizen", "address")).isTrue();
+        assertThat(search(store, TextSearch.CONTAINS, "phố")).isNull();
+        assertThat(store.getEntityDefinition("Citizen").getTextIndexedProperties()).isEmpty();
+    }
+
+    /**
+     * Ứng viên đã lọc lại phải đúng bằng kết quả quét toàn bộ
+     */
+    private static void assertSearch(VirtualDataStore store, TextSearch search, String text, int expected) {
+        List<Object> candidates = search(store, search, text);
+        assertThat(candidates).isNotNull();
+        List<Object> scanned = store.snapshot("Citizen").getRows().stream()
+                .filter(r -> search.matches(((Map<?, ?>) r).get("address"), text))
+                .toList();
+        assertThat(candidates.stream().filter(r -> search.matches(((Map<?, ?>) r).get("address"), text)).toList())
+                .containsExactlyElementsOf(scanned)
+                .hasSize(expected);
+    }
+
+    private static List<Object> search(VirtualDataStore store, TextSearch search, String text) {
+        return store.search("Citizen", store.snapshot("Citizen"), "address", search, text);
+    }
+}
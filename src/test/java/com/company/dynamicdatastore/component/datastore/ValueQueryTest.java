@@ -0,0 +1,83 @@
+package com.company.dynamicdatastore.component.datastore;
+
+import io.jmix.core.querycondition.PropertyCondition;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+
+import static com.company.dynamicdatastore.test_support.TestCitizens.store;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Kiểm tra cú pháp và cách tính query giá trị của loadAllValues/countAllValues.
+ */
+public class ValueQueryTest {
+
+    @Test
+    void test_parseWhere() {
+        ValueQuery query = ValueQuery.parse("SELECT name FROM Citizen WHERE price >= :min and (name like 'item-1%' or group is null)"
+                + " AND group NOT IN (1, 2) and name <> 'it''s'", Map.of("min", 3));
+        assertThat(query.getEntityName()).isEqualTo("Citizen");
+        assertThat(query.isAggregate()).isFalse();
+        assertThat(query.getFilters()).isEqualTo(Map.of("and", List.of(
+                Map.of("price", Map.of("gte", 3)),
+                Map.of("or", List.of(Map.of("name", Map.of("startsWith", "item-1")), Map.of("group", Map.of("isNull", true)))),
+                Map.of("not", Map.of("group", Map.of("in", List.of(1L, 2L)))),
+                Map.of("name", Map.of("ne", "it's")))));
+
+        // Chỉ tên entity như trước
+        assertThat(ValueQuery.parse("Citizen", null).getColumns()).isEmpty();
+
+        assertThatThrownBy(() -> ValueQuery.parse("select name, sum(price) from Citizen", null))
+                .isInstanceOf(IllegalArgumentException.class).hasMessageContaining("group by");
+        assertThatThrownBy(() -> ValueQuery.parse("select name from Citizen where price > :missing", Map.of()))
+                .isInstanceOf(IllegalArgumentException.class).hasMessageContaining("missing");
+        assertThatThrownBy(() -> ValueQuery.parse("select name from Citizen where name like 'a%b'", null))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> ValueQuery.parse("select name from Citizen order by price", null))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void test_groupBy() {
+        VirtualDataStore store = store(1_000, "group");
+        ValueQuery query = ValueQuery.parse("select group, count(*) as n, sum(price) as total, avg(price), min(name), "
+                + "max(amount), count(group) from Citizen where price < :limit group by group", Map.of("limit", 100));
+        List<Map<String, Object>> rows = store.values(query, null, Map.of());
+
+        // Nhóm theo thứ tự gặp lần đầu, nhóm rỗng (null) nằm cuối vì row 9 gặp sau row 0..8
+        assertThat(rows).hasSize(10);
+        assertThat(rows.get(0)).containsExactly(Map.entry("group", 0), Map.entry("n", 10L), Map.entry("total", 450L),
+                Map.entry("avg(price)", 45.0), Map.entry("min(name)", "item-0"), Map.entry("max(amount)", new BigDecimal("45.0")),
+                Map.entry("count(group)", 10L));
+        assertThat(rows.get(9)).containsEntry("group", null).containsEntry("total", 540L).containsEntry("count(group)", 0L);
+
+        // Điều kiện Jmix được "và" với where
+        rows = store.values(ValueQuery.parse("select count(*), sum(amount) as amount from Citizen", null),
+                PropertyCondition.less("price", 10), Map.of());
+        assertThat(rows).containsExactly(Map.of("count(*)", 10L, "amount", new BigDecimal("22.5")));
+
+        // Không có row nào vẫn trả một row
+        rows = store.values(ValueQuery.parse("select count(*), sum(price), max(price) from Citizen where price < 0", null), null, Map.of());
+        assertThat(rows).hasSize(1);
+        assertThat(rows.get(0)).containsEntry("count(*)", 0L).containsEntry("sum(price)", null).containsEntry("max(price)", null);
+    }
+
+    @Test
+    void test_orderAndSelect() {
+        VirtualDataStore store = store(1_000, "group");
+        ValueQuery query = ValueQuery.parse("select group, sum(price) as total from Citizen group by group order by total desc", null);
+        List<Map<String, Object>> rows = store.values(query, null, Map.of());
+        List<Integer> page = new RowSort(query.getOrderBy(), property -> null).page(rows, -1, 0, 3);
+        assertThat(page).extracting(i -> rows.get(i).get("total")).containsExactly(50_400L, 50_300L, 50_200L);
+
+        List<Map<String, Object>> names = store.values(
+                ValueQuery.parse("select name, price from Citizen where name like '%99'", null), null, Map.of());
+        assertThat(names).hasSize(10).first().isEqualTo(Map.of("name", "item-99", "price", 99));
+        assertThat(store.values(ValueQuery.parse("Citizen", null), null, Map.of()).get(0))
+                .containsOnlyKeys("id", "cccd", "name", "price", "group", "amount");
+    }
+}
@@ -0,0 +1,119 @@
+package com.company.dynamicdatastore.component.datastore;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Đo thông lượng của VirtualDataStore khi nhiều thread cùng ghi/đọc.
+ * Chỉ chạy khi đặt biến môi trường VDS_BENCHMARK=true, ví dụ:
+ * VDS_BENCHMARK=true ./gradlew test --tests '*ContentionBenchmark'
+ */
+@EnabledIfEnvironmentVariable(named = "VDS_BENCHMARK", matches = "true")
+public class VirtualDataStoreContentionBenchmark {
+
+    private static final int KEYS = 10_000;
+    private static final long RUN_MILLIS = 1_000;
+
+    @Test
+    void benchmark_writersOnDifferentEntitiesScale() throws Exception {
+        int cores = Runtime.getRuntime().availableProcessors();
+        double single = 0;
+        double best = 0;
+        for (int threads = 1; threads <= cores; threads *= 2) {
+            VirtualDataStore store = new VirtualDataStore("bench", null);
+            double opsPerSec = run(threads, (thread, random) ->
+                    store.saveEntity("Entity" + thread, row(random.nextInt(KEYS))));
+            System.out.printf("disjoint writers  threads=%-3d %,12.0f ops/s%n", threads, opsPerSec);
+            if (threads == 1)
+                single = opsPerSec;
+            best = Math.max(best, opsPerSec);
+        }
+        if (cores >= 4)
+            assertThat(best).isGreaterThan(single * 1.5);
+    }
+
+    @Test
+    void benchmark_readersOnSharedEntityScale() throws Exception {
+        int cores = Runtime.getRuntime().availableProcessors();
+        VirtualDataStore store = new VirtualDataStore("bench", null);
+        for (int i = 0; i < KEYS; i++) {
+            store.saveEntity("Shared", row(i));
+        }
+        double single = 0;
+        double best = 0;
+        for (int threads = 1; threads <= cores; threads *= 2) {
+            double opsPerSec = run(threads, (thread, random) -> {
+                int key = random.nextInt(KEYS);
+                if (random.nextInt(10) == 0)
+                    store.saveEntity("Shared", row(key));
+                else
+                    store.loadEntity("Shared", new UUID(0L, key));
+            });
+            System.out.printf("shared 90%% reads  threads=%-3d %,12.0f ops/s%n", threads, opsPerSec);
+            if (threads == 1)
+                single = opsPerSec;
+            best = Math.max(best, opsPerSec);
+        }
+        if (cores >= 4)
+            assertThat(best).isGreaterThan(single * 1.5);
+    }
+
+    private double run(int threads, Operation operation) throws InterruptedException {
+        LongAdder ops = new LongAdder();
+        AtomicBoolean running = new AtomicBoolean(true);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            Thread worker = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                long local = 0;
+                while (running.get()) {
+                    operation.apply(thread, random);
+                    local++;
+                }
+                ops.add(local);
+            });
+            worker.start();
+            workers.add(worker);
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        Thread.sleep(RUN_MILLIS);
+        running.set(false);
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        return ops.sum() / ((System.nanoTime() - begin) / 1e9);
+    }
+
+    private static Map<String, Object> row(int key) {
+        Map<String, Object> row = new HashMap<>();
+        row.put("id", new UUID(0L, key));
+        row.put("cccd", String.valueOf(key));
+        row.put("score", key);
+        return row;
+    }
+
+    @FunctionalInterface
+    private interface Operation {
+        void apply(int thread, ThreadLocalRandom random);
+    }
+}
@@ -0,0 +1,301 @@
+package com.company.dynamicdatastore.component.datastore;
+
+import com.company.dynamicdatastore.component.entity.VirtualEntityDefinition;
+import com.company.dynamicdatastore.component.persistence.DatabaseWriteBehind;
+import com.company.dynamicdatastore.component.persistence.VirtualStorePersistence;
+import com.company.dynamicdatastore.component.storage.ColumnarRowStore;
+import com.company.dynamicdatastore.component.storage.StorageMode;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Kiểm tra các thao tác CRUD runtime của VirtualDataStore.
+ */
+public class VirtualDataStoreTest {
+
+    @Test
+    void test_upsertKeepsPositionAndDeleteKeepsOrder() {
+        VirtualDataStore store = new VirtualDataStore("test", null);
+        for (int i = 0; i < 100; i++) {
+            store.saveEntity("Product", row(i));
+        }
+        Map<String, Object> first = row(0);
+        first.put("name", "updated");
+        store.saveEntity("Product", first);
+        for (int i = 1; i < 80; i++) {
+            store.deleteEntity("Product", idOf(i));
+        }
+
+        List<Object> rows = store.loadAllEntities("Product");
+        assertThat(rows).hasSize(21);
+        assertThat(((Map<?, ?>) rows.get(0)).get("name")).isEqualTo("updated");
+        assertThat(((Map<?, ?>) rows.get(1)).get("id")).isEqualTo(idOf(80));
+        assertThat(store.loadEntity("Product", idOf(99))).isNotNull();
+        assertThat(store.loadEntity("Product", idOf(5))).isNull();
+        assertThat(store.getEntityCounts()).containsEntry("Product", 21);
+    }
+
+    @Test
+    void test_saveAssignsIdWhenMissing() {
+        VirtualDataStore store = new VirtualDataStore("test", null);
+        Map<String, Object> row = new HashMap<>();
+        row.put("name", "no id");
+        store.saveEntity("Product", row);
+
+        assertThat(row.get("id")).isInstanceOf(UUID.class);
+        assertThat(store.loadEntity("Product", (UUID) row.get("id"))).isNotNull();
+    }
+
+    @Test
+    void test_columnarRoundTripKeepsValuesAndTypes() {
+        VirtualDataStore store = new VirtualDataStore("test", null, StorageMode.COLUMNAR);
+        VirtualEntityDefinition definition = new VirtualEntityDefinition("Product", "test");
+        definition.addProperty("name", String.class);
+        definition.addProperty("price", BigDecimal.class);
+        definition.addProperty("quantity", Integer.class);
+        definition.addProperty("inStock", Boolean.class);
+        definition.addProperty("releasedOn", LocalDate.class);
+        store.registerEntityDefinition(definition);
+
+        Map<String, Object> typed = row(1);
+        typed.put("price", new BigDecimal("999.99"));
+        typed.put("quantity", 5);
+        typed.put("inStock", true);
+        typed.put("releasedOn", LocalDate.of(2024, 1, 15));
+        typed.put("description", null);
+        store.saveEntity("Product", typed);
+
+        Map<String, Object> loose = row(2);
+        loose.put("price", "1999.99");
+        loose.put("tags", List.of("a", "b"));
+        store.saveEntity("Product", loose);
+
+        assertThat(store.loadEntity("Product", idOf(1))).isEqualTo(typed);
+        assertThat(store.loadEntity("Product", idOf(2))).isEqualTo(loose);
+        assertThat(store.loadAllEntities("Product")).containsExactly(typed, loose);
+    }
+
+    @Test
+    void test_columnarRowsAreReadByProperty() {
+        int[] reads = new int[1];
+        ColumnarRowStore rows = new ColumnarRowStore(null) {
+            @Override
+            public Object read(int slot) {
+                reads[0]++;
+                return super.read(slot);
+            }
+        };
+        for (int i = 0; i < 10; i++) {
+            rows.append(row(i));
+        }
+        QueryFilter filter = QueryFilter.compile(Map.of("price", Map.of("gte", 5), "name", Map.of("startsWith", "item")),
+                property -> null);
+        long matched = 0;
+        for (int slot = 0; slot < rows.size(); slot++) {
+            @SuppressWarnings("unchecked")
+            Map<String, Object> row = (Map<String, Object>) rows.row(slot);
+            if (filter.matches(row))
+                matched++;
+        }
+        assertThat(matched).isEqualTo(5);
+        assertThat(reads[0]).isZero();
+
+        // Duyệt cả row thì dựng lại một lần
+        Object row = rows.row(3);
+        assertThat(row).isEqualTo(row(3));
+        assertThat(row.hashCode()).isEqualTo(row(3).hashCode());
+        assertThat(reads[0]).isEqualTo(1);
+    }
+
+    @Test
+    void test_offHeapRoundTripAndRelease() {
+        VirtualDataStore store = new VirtualDataStore("test", null, StorageMode.OFF_HEAP);
+        Map<String, Object> nested = row(1);
+        nested.put("price", new BigDecimal("12.50"));
+        nested.put("address", Map.of("city", "Hà Nội", "zip", 100000));
+        nested.put("tags", List.of("x", 2L, true));
+        nested.put("note", null);
+        store.saveEntity("Citizen", nested);
+        for (int round = 0; round < 3; round++) {
+            for (int i = 2; i < 2000; i++) {
+                store.saveEntity("Citizen", row(i));
+            }
+        }
+
+        assertThat(store.loadEntity("Citizen", idOf(1))).isEqualTo(nested);
+        assertThat(store.loadAllEntities("Citizen")).hasSize(1999);
+
+        // Slab được giải phóng ngay khi release, snapshot cũ đọc sau đó bị từ chối
+        EntitySnapshot snapshot = store.snapshot("Citizen");
+        long before = directMemoryUsed();
+        store.release();
+        assertThat(store.loadAllEntities("Citizen")).isEmpty();
+        assertThat(directMemoryUsed()).isLessThan(before);
+        assertThatThrownBy(() -> ((Map<?, ?>) snapshot.getRows().get(0)).get("name"))
+                .isInstanceOf(IllegalStateException.class);
+    }
+
+    private static long directMemoryUsed() {
+        return ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class).stream()
+                .filter(pool -> pool.getName().equals("direct"))
+                .mapToLong(BufferPoolMXBean::getMemoryUsed).sum();
+    }
+
+    @Test
+    void test_concurrentWritesAndReadsOnSameEntity() throws Exception {
+        VirtualDataStore store = new VirtualDataStore("test", null);
+        Thread[] writers = new Thread[4];
+        for (int t = 0; t < writers.length; t++) {
+            int offset = t * 1000;
+            writers[t] = new Thread(() -> {
+                for (int i = 0; i < 1000; i++) {
+                    store.saveEntity("Product", row(offset + i));
+                    if (i % 3 == 0)
+                        store.deleteEntity("Product", idOf(offset + i));
+                }
+            });
+            writers[t].start();
+        }
+        while (isAnyAlive(writers)) {
+            for (Object row : store.loadAllEntities("Product")) {
+                assertThat(row).isNotNull();
+            }
+        }
+        assertThat(store.loadAllEntities("Product")).hasSize(4 * 666);
+        assertThat(store.getEntityCounts()).containsEntry("Product", 4 * 666);
+    }
+
+    @Test
+    void test_snapshotIsUnaffectedByLaterWrites() {
+        VirtualDataStore store = new VirtualDataStore("test", null, StorageMode.COLUMNAR);
+        for (int i = 0; i < 3000; i++) {
+            store.saveEntity("Product", row(i));
+        }
+        EntitySnapshot retained = store.retainSnapshot("Product");
+        List<Object> before = store.loadAllEntities("Product");
+
+        for (int i = 0; i < 3000; i += 2) {
+            store.deleteEntity("Product", idOf(i));
+        }
+        store.updateEntity("Product", idOf(1), Map.of("name", "updated"));
+        store.saveEntity("Product", row(5000));
+
+        assertThat(before).hasSize(3000);
+        assertThat(((Map<?, ?>) before.get(0)).get("id")).isEqualTo(idOf(0));
+        assertThat(((Map<?, ?>) before.get(1)).get("name")).isEqualTo("item-1");
+        EntitySnapshot asOf = store.snapshot("Product", retained.getVersion());
+        assertThat(asOf.getRows()).hasSize(3000);
+        assertThat(asOf.getRows().get(2999)).isEqualTo(row(2999));
+
+        EntitySnapshot latest = store.snapshot("Product");
+        assertThat(latest.getVersion()).isGreaterThan(retained.getVersion());
+        assertThat(latest.getRows()).hasSize(1501);
+        assertThat(((Map<?, ?>) latest.getRows().get(0)).get("name")).isEqualTo("updated");
+        assertThat(latest.getRows().get(1500)).isEqualTo(row(5000));
+    }
+
+    @Test
+    void test_onlyRetainedSnapshotsPinOldVersions() {
+        VirtualDataStore store = new VirtualDataStore("test", null, StorageMode.COLUMNAR);
+        for (int i = 0; i < 1000; i++) {
+            store.saveEntity("Product", row(i));
+        }
+        // Đọc thường không giữ lại snapshot
+        EntitySnapshot plain = store.snapshot("Product");
+        store.saveEntity("Product", row(1000));
+        assertThatThrownBy(() -> store.snapshot("Product", plain.getVersion())).isInstanceOf(IllegalArgumentException.class);
+
+        // Giữ lại đúng snapshot đã đọc (trang có cursor), kể cả khi đã có ghi mới
+        EntitySnapshot paged = store.snapshot("Product");
+        store.saveEntity("Product", row(1001));
+        store.retainSnapshot("Product", paged);
+        long unpinned = (Long) store.getMemoryStatistics().get("residentBytes");
+
+        // Dồn phân vùng sang RowStore mới: RowStore cũ vẫn bị snapshot giữ lại ghim và được tính vào bộ nhớ
+        for (int i = 0; i < 600; i++) {
+            store.deleteEntity("Product", idOf(i));
+        }
+        assertThat(store.snapshot("Product", paged.getVersion()).getRows()).hasSize(1001);
+        assertThat((Long) store.getMemoryStatistics().get("residentBytes")).isGreaterThan(unpinned);
+    }
+
+    @Test
+    void test_transactionPublishesOnCommitAndDiscardsOnRollback() {
+        VirtualDataStore store = new VirtualDataStore("test", null);
+        store.saveEntity("Product", row(1));
+        long before = store.snapshot("Product").getVersion();
+
+        Object tx = store.beginSaveTransaction(false);
+        store.saveEntity("Product", row(2));
+        store.saveEntity("Order", row(3));
+        store.deleteEntity("Product", idOf(1));
+        assertThat(store.loadEntity("Product", idOf(2))).isEqualTo(row(2));
+        assertThat(store.loadEntity("Product", idOf(1))).isNull();
+        assertThat(store.loadAllEntities("Product")).containsExactly(row(1));
+        store.commitTransaction(tx);
+        store.rollbackTransaction(tx);
+
+        assertThat(store.loadAllEntities("Product")).containsExactly(row(2));
+        assertThat(store.loadAllEntities("Order")).containsExactly(row(3));
+        long committed = store.snapshot("Product").getVersion();
+        assertThat(committed).isEqualTo(before + 1);
+        assertThat(store.snapshot("Order").getVersion()).isEqualTo(committed);
+
+        Object failed = store.beginSaveTransaction(false);
+        store.saveEntity("Product", row(4));
+        store.rollbackTransaction(failed);
+        assertThat(store.loadAllEntities("Product")).containsExactly(row(2));
+
+        store.saveEntity("Product", row(5));
+        assertThat(store.loadEntity("Product", idOf(5))).isEqualTo(row(5));
+    }
+
+    @Test
+    void test_createStoreRejectsDifferentStorageMode() {
+        VirtualDataStoreManager manager = new VirtualDataStoreManager(null,
+                new VirtualStorePersistence(false, "", 4, 5, true, 0, 0),
+                new DatabaseWriteBehind(null, false, 100, 10_000, 100_000),
+                new MemoryBudget(DataSize.ofBytes(0), DataSize.ofBytes(0), ""), ParallelScan.SEQUENTIAL);
+        VirtualDataStore store = manager.createStore("x", StorageMode.COLUMNAR);
+
+        assertThat(manager.createStore("x", StorageMode.COLUMNAR)).isSameAs(store);
+        assertThat(manager.createStore("x")).isSameAs(store);
+        assertThat(manager.createStore("x", null, 2)).isSameAs(store);
+        assertThatThrownBy(() -> manager.createStore("x", StorageMode.HEAP))
+                .isInstanceOf(IllegalArgumentException.class).hasMessageContaining("COLUMNAR");
+        assertThat(manager.getStore("x").getStorageMode()).isEqualTo(StorageMode.COLUMNAR);
+        assertThat(manager.createStore("y").getStorageMode()).isEqualTo(StorageMode.HEAP);
+    }
+
+    private static boolean isAnyAlive(Thread[] threads) {
+        for (Thread thread : threads) {
+            if (thread.isAlive())
+                return true;
+        }
+        return false;
+    }
+
+    static Map<String, Object> row(int i) {
+        Map<String, Object> row = new HashMap<>();
+        row.put("id", idOf(i));
+        row.put("name", "item-" + i);
+        row.put("price", i);
+        return row;
+    }
+
+    static UUID idOf(int i) {
+        return new UUID(0L, i);
+    }
+}
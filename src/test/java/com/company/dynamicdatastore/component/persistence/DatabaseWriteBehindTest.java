@@ -0,0 +1,138 @@
+package com.company.dynamicdatastore.component.persistence;
+
+import com.company.dynamicdatastore.component.datastore.VirtualDataStore;
+import com.company.dynamicdatastore.component.entity.VirtualEntityDefinition;
+import com.company.dynamicdatastore.component.storage.StorageMode;
+import com.company.dynamicdatastore.test_support.TestRows;
+import liquibase.Contexts;
+import liquibase.Liquibase;
+import liquibase.database.Database;
+import liquibase.database.DatabaseFactory;
+import liquibase.database.jvm.JdbcConnection;
+import liquibase.resource.ClassLoaderResourceAccessor;
+import org.hsqldb.jdbc.JDBCDataSource;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.UUID;
+
+import static com.company.dynamicdatastore.test_support.TestRows.idOf;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Kiểm tra ghi write-behind xuống HSQLDB và nạp lại store từ database.
+ */
+public class DatabaseWriteBehindTest {
+
+    private static final String CHANGELOG = "com/company/dynamicdatastore/liquibase/changelog/020-virtual-datastore.xml";
+
+    private JDBCDataSource dataSource;
+
+    @BeforeEach
+    void createTables() throws Exception {
+        dataSource = new JDBCDataSource();
+        dataSource.setUrl("jdbc:hsqldb:mem:vds-" + UUID.randomUUID());
+        dataSource.setUser("sa");
+        // Bảng được tạo bằng đúng changelog Liquibase đi kèm ứng dụng
+        try (Connection connection = dataSource.getConnection()) {
+            Database database = DatabaseFactory.getInstance()
+                    .findCorrectDatabaseImplementation(new JdbcConnection(connection));
+            new Liquibase(CHANGELOG, new ClassLoaderResourceAccessor(), database).update(new Contexts());
+        }
+    }
+
+    @Test
+    void test_changesAreCoalescedAndRestored() throws Exception {
+        DatabaseWriteBehind writeBehind = writeBehind();
+        VirtualDataStore store = new VirtualDataStore("shop", null);
+        writeBehind.attach(store);
+        VirtualEntityDefinition definition = new VirtualEntityDefinition("Product", "shop");
+        definition.addProperty("price", BigDecimal.class);
+        definition.addProperty("releasedOn", LocalDate.class);
+        store.registerEntityDefinition(definition);
+        for (int i = 0; i < 1200; i++) {
+            store.saveEntity("Product", row(i));
+        }
+        for (int round = 0; round < 50; round++) {
+            store.updateEntity("Product", idOf(1), Map.of("name", "updated-" + round));
+        }
+        store.deleteEntity("Product", idOf(2));
+        writeBehind.flush();
+
+        assertThat(writeBehind.getPendingCount()).isZero();
+        assertThat(count("SELECT COUNT(*) FROM VDS_ENTITY_ROW")).isEqualTo(1199);
+        assertThat(count("SELECT COUNT(*) FROM VDS_ENTITY_ROW WHERE ID = '" + idOf(2) + "'")).isZero();
+
+        store.saveEntity("Product", row(5000));
+        writeBehind.close();
+
+        DatabaseWriteBehind reopened = writeBehind();
+        assertThat(reopened.findStores()).containsExactly(
+                Map.entry("shop", new DatabaseWriteBehind.StoreSettings(StorageMode.HEAP, 0)));
+        VirtualDataStore restored = new VirtualDataStore("shop", null);
+        reopened.attach(restored);
+        assertThat(restored.loadAllEntities("Product")).hasSize(1200);
+        assertThat(restored.loadEntity("Product", idOf(7))).isEqualTo(row(7));
+        assertThat(((Map<?, ?>) restored.loadEntity("Product", idOf(1))).get("name")).isEqualTo("updated-49");
+        assertThat(restored.loadEntity("Product", idOf(5000))).isEqualTo(row(5000));
+
+        reopened.drop("shop");
+        assertThat(count("SELECT COUNT(*) FROM VDS_ENTITY_ROW")).isZero();
+        reopened.close();
+    }
+
+    @Test
+    void test_storeSettingsAreRestored() throws Exception {
+        DatabaseWriteBehind writeBehind = writeBehind();
+        VirtualDataStore store = new VirtualDataStore("archive", null, StorageMode.COLUMNAR);
+        store.setScanParallelism(2);
+        writeBehind.attach(store);
+        store.saveEntity("Product", row(1));
+        store.setScanParallelism(3);
+        writeBehind.saveSettings(store);
+        writeBehind.close();
+
+        // Store không có dòng cấu hình (ghi trước khi có VDS_STORE) được coi là HEAP
+        try (Connection connection = dataSource.getConnection();
+             Statement statement = connection.createStatement()) {
+            statement.executeUpdate("INSERT INTO VDS_ENTITY_DEFINITION (STORE_NAME, ENTITY_NAME, DATA) "
+                    + "VALUES ('legacy', 'Product', '{\"entity\": \"Product\"}')");
+        }
+        DatabaseWriteBehind reopened = writeBehind();
+        assertThat(reopened.findStores()).containsExactly(
+                Map.entry("archive", new DatabaseWriteBehind.StoreSettings(StorageMode.COLUMNAR, 3)),
+                Map.entry("legacy", new DatabaseWriteBehind.StoreSettings(StorageMode.HEAP, 0)));
+
+        reopened.drop("archive");
+        assertThat(count("SELECT COUNT(*) FROM VDS_STORE")).isZero();
+        reopened.close();
+    }
+
+    private DatabaseWriteBehind writeBehind() {
+        return new DatabaseWriteBehind(dataSource, true, 100, 10_000, 100_000);
+    }
+
+    private long count(String sql) throws Exception {
+        try (Connection connection = dataSource.getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery(sql)) {
+            rs.next();
+            return rs.getLong(1);
+        }
+    }
+
+    /**
+     * Row mẫu có thêm ngày để kiểm tra kiểu được khôi phục từ JSON
+     */
+    private static Map<String, Object> row(int i) {
+        Map<String, Object> row = TestRows.row(i);
+        row.put("releasedOn", LocalDate.of(2024, 1, 1).plusDays(i));
+        return row;
+    }
+}
@@ -0,0 +1,85 @@
+package com.company.dynamicdatastore.component.persistence;
+
+import com.company.dynamicdatastore.component.datastore.VirtualDataStore;
+import com.company.dynamicdatastore.component.entity.VirtualEntityDefinition;
+import com.company.dynamicdatastore.component.storage.StorageMode;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static com.company.dynamicdatastore.test_support.TestRows.idOf;
+import static com.company.dynamicdatastore.test_support.TestRows.row;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Kiểm tra chụp snapshot và khởi động lại store từ snapshot cộng phần log phía sau.
+ */
+public class StoreSnapshotTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void test_restartFromSnapshotAndLogTail() throws Exception {
+        VirtualStorePersistence persistence = persistence();
+        VirtualDataStore store = new VirtualDataStore("shop", null, StorageMode.COLUMNAR);
+        persistence.attach(store);
+        VirtualEntityDefinition definition = new VirtualEntityDefinition("Product", "shop");
+        definition.addProperty("price", BigDecimal.class);
+        store.registerEntityDefinition(definition);
+        for (int i = 0; i < 1000; i++) {
+            store.saveEntity("Product", row(i));
+        }
+        store.saveEntity("Order", row(9000));
+        persistence.checkpoint("shop");
+
+        store.updateEntity("Product", idOf(1), Map.of("name", "updated"));
+        store.deleteEntity("Product", idOf(2));
+        store.saveEntity("Product", row(5000));
+        persistence.checkpoint("shop");
+        store.saveEntity("Product", row(5001));
+        persistence.close();
+
+        assertThat(files("snapshot-")).hasSize(1);
+        assertThat(files("wal-")).hasSize(1);
+
+        VirtualStorePersistence reopened = persistence();
+        VirtualDataStore restored = new VirtualDataStore("shop", null, StorageMode.COLUMNAR);
+        reopened.attach(restored);
+
+        assertThat(restored.getEntityDefinition("Product").getProperty("price").getType()).isEqualTo(BigDecimal.class);
+        assertThat(restored.loadAllEntities("Product")).hasSize(1001);
+        assertThat(((Map<?, ?>) restored.loadEntity("Product", idOf(1))).get("name")).isEqualTo("updated");
+        assertThat(restored.loadEntity("Product", idOf(2))).isNull();
+        assertThat(restored.loadEntity("Product", idOf(999))).isEqualTo(row(999));
+        assertThat(restored.loadEntity("Product", idOf(5001))).isEqualTo(row(5001));
+        assertThat(restored.loadAllEntities("Order")).containsExactly(row(9000));
+
+        restored.saveEntity("Product", row(7000));
+        for (int i = 3; i < 600; i++) {
+            restored.deleteEntity("Product", idOf(i));
+        }
+        assertThat(restored.loadAllEntities("Product")).hasSize(405);
+        assertThat(restored.loadEntity("Product", idOf(7000))).isEqualTo(row(7000));
+        reopened.close();
+    }
+
+    private List<String> files(String prefix) throws Exception {
+        try (Stream<Path> files = Files.walk(directory)) {
+            return files.map(p -> p.getFileName().toString())
+                    .filter(name -> name.startsWith(prefix))
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private VirtualStorePersistence persistence() {
+        return new VirtualStorePersistence(true, directory.toString(), 4, 5, true, 0, 0);
+    }
+}
@@ -0,0 +1,145 @@
+package com.company.dynamicdatastore.component.persistence;
+
+import com.company.dynamicdatastore.component.datastore.EntityChange;
+import com.company.dynamicdatastore.component.datastore.StoreChangeListener;
+import com.company.dynamicdatastore.component.datastore.VirtualDataStore;
+import com.company.dynamicdatastore.component.entity.VirtualEntityDefinition;
+import com.company.dynamicdatastore.component.storage.StorageMode;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static com.company.dynamicdatastore.test_support.TestRows.idOf;
+import static com.company.dynamicdatastore.test_support.TestRows.row;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Kiểm tra ghi và đọc lại write-ahead log của VirtualDataStore.
+ */
+public class WriteAheadLogTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void test_replayRestoresRowsAndDefinitions() throws Exception {
+        VirtualStorePersistence persistence = persistence();
+        VirtualDataStore store = new VirtualDataStore("shop", null, StorageMode.COLUMNAR);
+        persistence.attach(store);
+        VirtualEntityDefinition definition = new VirtualEntityDefinition("Product", "shop");
+        definition.addProperty("price", BigDecimal.class);
+        store.registerEntityDefinition(definition);
+        for (int i = 0; i < 500; i++) {
+            store.saveEntity("Product", row(i));
+        }
+        store.updateEntity("Product", idOf(1), Map.of("name", "updated"));
+        store.deleteEntity("Product", idOf(2));
+        store.saveEntities("Order", List.of(row(1000), row(1001)));
+        persistence.close();
+
+        VirtualStorePersistence reopened = persistence();
+        assertThat(reopened.findStores()).containsEntry("shop", StorageMode.COLUMNAR);
+        VirtualDataStore restored = new VirtualDataStore("shop", null, StorageMode.COLUMNAR);
+        reopened.attach(restored);
+
+        assertThat(restored.getEntityDefinition("Product").getProperty("price").getType()).isEqualTo(BigDecimal.class);
+        assertThat(restored.loadAllEntities("Product")).hasSize(499);
+        assertThat(((Map<?, ?>) restored.loadEntity("Product", idOf(1))).get("name")).isEqualTo("updated");
+        assertThat(restored.loadEntity("Product", idOf(2))).isNull();
+        assertThat(restored.loadAllEntities("Order")).containsExactly(row(1000), row(1001));
+        reopened.close();
+    }
+
+    @Test
+    void test_tornTailIsDiscarded() throws Exception {
+        VirtualStorePersistence persistence = persistence();
+        VirtualDataStore store = new VirtualDataStore("shop", null);
+        persistence.attach(store);
+        store.saveEntity("Product", row(1));
+        store.saveEntity("Product", row(2));
+        persistence.close();
+
+        Path segment;
+        try (Stream<Path> files = Files.walk(directory)) {
+            segment = files.filter(p -> p.getFileName().toString().startsWith("wal-")).findFirst().orElseThrow();
+        }
+        try (OutputStream out = Files.newOutputStream(segment, StandardOpenOption.APPEND)) {
+            out.write(new byte[]{0, 0, 0, 40, 1, 2, 3});
+        }
+
+        VirtualStorePersistence reopened = persistence();
+        VirtualDataStore restored = new VirtualDataStore("shop", null);
+        reopened.attach(restored);
+        restored.saveEntity("Product", row(3));
+        reopened.close();
+
+        VirtualDataStore again = new VirtualDataStore("shop", null);
+        VirtualStorePersistence last = persistence();
+        last.attach(again);
+        assertThat(again.loadAllEntities("Product")).containsExactly(row(1), row(2), row(3));
+        last.close();
+    }
+
+    @Test
+    void test_failedWriteIsCutBeforeLaterRecords() throws Exception {
+        boolean[] failNext = new boolean[1];
+        WriteAheadLog wal = new WriteAheadLog(directory, 1, 0, true) {
+            @Override
+            int write(FileChannel target, ByteBuffer record) throws IOException {
+                if (!failNext[0])
+                    return super.write(target, record);
+                // Ghi được nửa record rồi lỗi (ví dụ hết chỗ trên đĩa)
+                failNext[0] = false;
+                ByteBuffer half = record.duplicate();
+                half.limit(record.position() + record.remaining() / 2);
+                int written = target.write(half);
+                record.position(record.position() + written);
+                throw new IOException("No space left on device");
+            }
+        };
+        wal.replay(0, new StoreChangeListener() {
+            @Override
+            public void onChanges(long version, List<EntityChange> changes) {
+            }
+        });
+        wal.start();
+        wal.onDefinitionRemoved("A");
+        failNext[0] = true;
+        assertThatThrownBy(() -> wal.onDefinitionRemoved("B")).isInstanceOf(UncheckedIOException.class);
+        wal.onDefinitionRemoved("C");
+        wal.afterChanges();
+        wal.close();
+
+        // Record sau lần ghi lỗi vẫn được đọc lại
+        List<String> removed = new ArrayList<>();
+        new WriteAheadLog(directory, 1, 0, true).replay(0, new StoreChangeListener() {
+            @Override
+            public void onChanges(long version, List<EntityChange> changes) {
+            }
+
+            @Override
+            public void onDefinitionRemoved(String entityName) {
+                removed.add(entityName);
+            }
+        });
+        assertThat(removed).containsExactly("A", "C");
+    }
+
+    private VirtualStorePersistence persistence() {
+        return new VirtualStorePersistence(true, directory.toString(), 4, 5, true, 0, 0);
+    }
+}
@@ -0,0 +1,161 @@
+package com.company.dynamicdatastore.service;
+
+import com.company.dynamicdatastore.component.datastore.MemoryBudget;
+import com.company.dynamicdatastore.component.datastore.ParallelScan;
+import com.company.dynamicdatastore.component.datastore.VirtualDataStoreManager;
+import com.company.dynamicdatastore.component.persistence.DatabaseWriteBehind;
+import com.company.dynamicdatastore.component.persistence.VirtualStorePersistence;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Kiểm tra join theo joinKey của aggregate: bảng băm (phía dựng bảng lớn hơn hoặc nhỏ hơn tập gốc), merge join
+ * theo chỉ mục có thứ tự, một-nhiều và các kiểu join.
+ */
+public class AggregationJoinTest {
+
+    private VirtualDataStoreService dataService;
+    private AggregationService aggregationService;
+
+    @BeforeEach
+    void setUp() {
+        VirtualDataStoreManager manager = new VirtualDataStoreManager(null,
+                new VirtualStorePersistence(false, "", 4, 5, true, 0, 0),
+                new DatabaseWriteBehind(null, false, 100, 10_000, 100_000),
+                new MemoryBudget(DataSize.ofBytes(0), DataSize.ofBytes(0), ""), ParallelScan.SEQUENTIAL);
+        QueryCache cache = new QueryCache(10_000);
+        dataService = new VirtualDataStoreService(manager, cache);
+        aggregationService = new AggregationService(dataService, cache);
+
+        dataService.registerEntityDefinition("s", "Citizen", Map.of("cccd", "String", "province", "String"));
+        dataService.registerEntityDefinition("s", "Health", Map.of("cccd", "String", "cost", "Integer"));
+        List<Map<String, Object>> citizens = new ArrayList<>();
+        List<Map<String, Object>> health = new ArrayList<>();
+        for (int i = 0; i < 1_000; i++) {
+            citizens.add(new HashMap<>(Map.of("cccd", "CD" + i, "province", i % 3 == 0 ? "HN" : "HCM")));
+            // Chỉ công dân chẵn có hồ sơ sức khỏe
+            if (i % 2 == 0)
+                health.add(new HashMap<>(Map.of("cccd", "CD" + i, "cost", i)));
+        }
+        dataService.bulkCreateEntities("s", "Citizen", citizens);
+        dataService.bulkCreateEntities("s", "Health", health);
+    }
+
+    @Test
+    void test_hashJoin() {
+        List<Map<String, Object>> rows = aggregationService.aggregate("s", List.of("Citizen", "Health"), "cccd",
+                Map.of("cccd", "Citizen.cccd", "cost", "Health.cost"), null);
+
+        // Theo thứ tự tập gốc, chỉ các row có hồ sơ ở mọi entity
+        assertThat(rows).hasSize(500);
+        assertThat(rows).extracting(r -> r.get("cccd")).startsWith("CD0", "CD2", "CD4").endsWith("CD998");
+        assertThat(rows).allMatch(r -> r.get("cccd").equals("CD" + r.get("cost")));
+
+        // Tập gốc (334 công dân HN) nhỏ hơn Health: bảng băm chỉ giữ khóa của tập gốc
+        List<Map<String, Object>> hanoi = aggregationService.aggregate("s", List.of("Citizen", "Health"), "cccd",
+                Map.of("cccd", "Citizen.cccd", "cost", "Health.cost"),
+                Map.of("Citizen.province", "HN", "Health.cost", Map.of("lt", 100)));
+        assertThat(hanoi).extracting(r -> r.get("cost")).containsExactly(0, 6, 12, 18, 24, 30, 36, 42, 48, 54,
+                60, 66, 72, 78, 84, 90, 96);
+
+        // Đổi vai: Health làm tập gốc
+        assertThat(aggregationService.aggregate("s", List.of("Health", "Citizen"), "cccd",
+                Map.of("province", "Citizen.province"), Map.of("Health.cost", Map.of("lt", 4))))
+                .extracting(r -> r.get("province")).containsExactly("HN", "HCM");
+    }
+
+    @Test
+    void test_joinTypes() {
+        // CD0 có thêm hai hồ sơ sức khỏe
+        dataService.bulkCreateEntities("s", "Health", List.of(
+                new HashMap<>(Map.of("cccd", "CD0", "cost", 2000)), new HashMap<>(Map.of("cccd", "CD0", "cost", 1000))));
+        Map<String, String> select = Map.of("cccd", "Citizen.cccd", "cost", "Health.cost");
+
+        // Inner: mỗi row khớp một row gộp, theo thứ tự chèn
+        List<Map<String, Object>> inner = aggregationService.aggregate("s", List.of("Citizen", "Health"), "cccd",
+                select, null);
+        assertThat(inner).hasSize(502);
+        assertThat(inner.subList(0, 4)).extracting(r -> r.get("cost")).containsExactly(0, 2000, 1000, 2);
+
+        // Left: công dân lẻ vẫn có, với cost null
+        List<Map<String, Object>> left = aggregationService.aggregate("s", List.of("Citizen", "Health"), "cccd",
+                select, null, Projection.ALL, Map.of("Health", JoinType.LEFT));
+        assertThat(left).hasSize(1_002);
+        assertThat(left.get(3)).containsEntry("cccd", "CD1").containsEntry("cost", null);
+
+        // Bộ lọc riêng của entity LEFT/SEMI/ANTI giới hạn row được coi là khớp
+        List<Map<String, Object>> semi = aggregationService.aggregate("s", List.of("Citizen", "Health"), "cccd",
+                Map.of("cccd", "Citizen.cccd"), Map.of("Health.cost", Map.of("gte", 990)), Projection.ALL,
+                Map.of("Health", JoinType.SEMI));
+        assertThat(semi).extracting(r -> r.get("cccd")).containsExactly("CD0", "CD990", "CD992", "CD994", "CD996", "CD998");
+        List<Map<String, Object>> anti = aggregationService.aggregate("s", List.of("Citizen", "Health"), "cccd",
+                Map.of("cccd", "Citizen.cccd"), null, Projection.ALL, Map.of("Health", JoinType.ANTI));
+        assertThat(anti).hasSize(500).allMatch(r -> Integer.parseInt(((String) r.get("cccd")).substring(2)) % 2 == 1);
+
+        // Gộp theo nhóm đếm cả các row nhân ra và row LEFT không khớp
+        List<Map<String, Object>> groups = aggregationService.group("s", List.of("Citizen", "Health"), "cccd",
+                GroupBy.of(null, Map.of("n", "count(*)", "costs", "count(Health.cost)")), null,
+                Map.of("Health", JoinType.LEFT));
+        assertThat(groups.get(0)).containsEntry("n", 1_002L).containsEntry("costs", 502L);
+
+        // Bộ lọc "or" trên entity LEFT được tính trên row gộp: row không khớp có cost null thay vì lỗi
+        List<Map<String, Object>> cheapOrMissing = aggregationService.group("s", List.of("Citizen", "Health"), "cccd",
+                GroupBy.of(List.of("Citizen.province"), Map.of("n", "count(*)")),
+                Map.of("or", List.of(Map.of("Health.cost", Map.of("lt", 10)), Map.of("Health.cost", Map.of("isNull", true)))),
+                Map.of("Health", JoinType.LEFT));
+        assertThat(cheapOrMissing).containsExactly(
+                Map.of("Citizen.province", "HN", "n", 169L), Map.of("Citizen.province", "HCM", "n", 336L));
+
+        assertThatThrownBy(() -> aggregationService.aggregate("s", List.of("Citizen", "Health"), "cccd", select, null,
+                Projection.ALL, Map.of("Health", JoinType.ANTI))).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> aggregationService.aggregate("s", List.of("Citizen", "Health"), "cccd", select, null,
+                Projection.ALL, Map.of("Citizen", JoinType.LEFT))).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> JoinType.of("outer")).isInstanceOf(IllegalArgumentException.class);
+        assertThat(JoinType.parse(Map.of("Health", "LEFT_OUTER"))).containsEntry("Health", JoinType.LEFT);
+    }
+
+    @Test
+    void test_mergeJoin() {
+        dataService.registerEntityDefinition("s", "Person", Map.of("no", Map.of("type", "Integer", "indexed", true)));
+        dataService.registerEntityDefinition("s", "Orders", Map.of(
+                "no", Map.of("type", "Long", "indexed", true), "amount", "Integer"));
+        List<Map<String, Object>> people = new ArrayList<>();
+        List<Map<String, Object>> orders = new ArrayList<>();
+        // Chèn ngược thứ tự khóa; người thứ i có i % 3 đơn hàng
+        for (int i = 99; i >= 0; i--) {
+            people.add(new HashMap<>(Map.of("no", i)));
+            for (int k = 0; k < i % 3; k++) {
+                orders.add(new HashMap<>(Map.of("no", (long) i, "amount", i * 10 + k)));
+            }
+        }
+        dataService.bulkCreateEntities("s", "Person", people);
+        dataService.bulkCreateEntities("s", "Orders", orders);
+
+        // Cả hai phía có chỉ mục có thứ tự trên joinKey: kết quả theo thứ tự khóa, 10 (Integer) khớp 10L
+        List<Map<String, Object>> rows = aggregationService.aggregate("s", List.of("Person", "Orders"), "no",
+                Map.of("no", "Person.no", "amount", "Orders.amount"), null, Projection.ALL, Map.of("Orders", JoinType.LEFT));
+        assertThat(rows).hasSize(34 + 33 * 2 + 33);
+        assertThat(rows.subList(0, 5)).extracting(r -> r.get("amount")).containsExactly(null, 10, 20, 21, null);
+        assertThat(rows).extracting(r -> (Integer) r.get("no")).isSorted();
+
+        // Bộ lọc riêng trên tập gốc thì dùng bảng băm, cùng các row theo thứ tự chèn
+        List<Map<String, Object>> hashed = aggregationService.aggregate("s", List.of("Person", "Orders"), "no",
+                Map.of("no", "Person.no", "amount", "Orders.amount"), Map.of("Person.no", Map.of("gte", 0)),
+                Projection.ALL, Map.of("Orders", JoinType.LEFT));
+        assertThat(hashed).containsExactlyInAnyOrderElementsOf(rows);
+        assertThat(hashed.get(0)).containsEntry("no", 99);
+
+        assertThat(aggregationService.aggregate("s", List.of("Person", "Orders"), "no",
+                Map.of("no", "Person.no"), null, Projection.ALL, Map.of("Orders", JoinType.ANTI)))
+                .extracting(r -> r.get("no")).startsWith(0, 3, 6).hasSize(34);
+    }
+}
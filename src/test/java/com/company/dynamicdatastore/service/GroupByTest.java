@@ -0,0 +1,117 @@
+package com.company.dynamicdatastore.service;
+
+import com.company.dynamicdatastore.component.datastore.MemoryBudget;
+import com.company.dynamicdatastore.component.datastore.ParallelScan;
+import com.company.dynamicdatastore.component.datastore.VirtualDataStoreManager;
+import com.company.dynamicdatastore.component.persistence.DatabaseWriteBehind;
+import com.company.dynamicdatastore.component.persistence.VirtualStorePersistence;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Kiểm tra gộp theo nhóm của aggregate: bảng băm, duyệt theo chỉ mục có thứ tự và đưa nhóm ra ngay khi xong.
+ */
+public class GroupByTest {
+
+    private VirtualDataStoreService dataService;
+    private AggregationService aggregationService;
+
+    @BeforeEach
+    void setUp() {
+        VirtualDataStoreManager manager = new VirtualDataStoreManager(null,
+                new VirtualStorePersistence(false, "", 4, 5, true, 0, 0),
+                new DatabaseWriteBehind(null, false, 100, 10_000, 100_000),
+                new MemoryBudget(DataSize.ofBytes(0), DataSize.ofBytes(0), ""), ParallelScan.SEQUENTIAL);
+        QueryCache cache = new QueryCache(10_000);
+        dataService = new VirtualDataStoreService(manager, cache);
+        aggregationService = new AggregationService(dataService, cache);
+
+        dataService.registerEntityDefinition("s", "Citizen", Map.of(
+                "cccd", "String", "province", "String", "age", Map.of("type", "Integer", "indexed", true)));
+        dataService.registerEntityDefinition("s", "Health", Map.of("cccd", "String", "cost", "BigDecimal"));
+        List<Map<String, Object>> citizens = new ArrayList<>();
+        List<Map<String, Object>> health = new ArrayList<>();
+        for (int i = 0; i < 1_000; i++) {
+            Map<String, Object> citizen = new HashMap<>();
+            citizen.put("cccd", "CD" + i);
+            citizen.put("province", i % 3 == 0 ? "HN" : i % 3 == 1 ? "HCM" : "DN");
+            citizen.put("age", 49 - i % 50);
+            citizens.add(citizen);
+            // Chỉ công dân chẵn có hồ sơ sức khỏe
+            if (i % 2 == 0)
+                health.add(new HashMap<>(Map.of("cccd", "CD" + i, "cost", new BigDecimal(i % 10))));
+        }
+        dataService.bulkCreateEntities("s", "Citizen", citizens);
+        dataService.bulkCreateEntities("s", "Health", health);
+    }
+
+    @Test
+    void test_hashGroup() {
+        GroupBy groupBy = GroupBy.of(List.of("Citizen.province"), Map.of("n", "count(*)", "total", "sum(Health.cost)"));
+        List<Map<String, Object>> groups = aggregationService.group("s", List.of("Citizen", "Health"), "cccd", groupBy,
+                Map.of("Citizen.age", Map.of("lt", 10)));
+
+        // Thứ tự gặp lần đầu: CD40 (HCM), CD42 (HN), CD44 (DN)
+        assertThat(groups).extracting(g -> g.get("Citizen.province")).containsExactly("HCM", "HN", "DN");
+        long rows = groups.stream().mapToLong(g -> (Long) g.get("n")).sum();
+        // Công dân chẵn có tuổi < 10: 5 tuổi trong mỗi 50 công dân
+        assertThat(rows).isEqualTo(100);
+        assertThat(groups.get(0)).containsOnlyKeys("Citizen.province", "n", "total");
+
+        // Không có field nhóm là một nhóm, kể cả khi không row nào khớp
+        GroupBy total = GroupBy.of(null, Map.of("n", "count(*)", "avgAge", "avg(Citizen.age)", "maxCost", "max(Health.cost)"));
+        assertThat(aggregationService.group("s", List.of("Citizen", "Health"), "cccd", total,
+                Map.of("Citizen.age", Map.of("gt", 100))))
+                .containsExactly(mapOf("n", 0L, "avgAge", null, "maxCost", null));
+        assertThat(aggregationService.group("s", List.of("Citizen"), "cccd",
+                GroupBy.of(null, Map.of("n", "count(*)", "avgAge", "avg(Citizen.age)")), null).get(0))
+                .containsEntry("n", 1_000L).containsEntry("avgAge", 24.5);
+    }
+
+    @Test
+    void test_indexedGroupStreams() {
+        GroupBy groupBy = GroupBy.of(List.of("Citizen.age"), Map.of("n", "count(*)", "cost", "sum(Health.cost)"));
+        List<Map<String, Object>> streamed = new ArrayList<>();
+        long count = aggregationService.group("s", List.of("Citizen", "Health"), "cccd", groupBy,
+                Map.of("or", List.of(Map.of("Health.cost", Map.of("gte", 8)), Map.of("Citizen.province", "HN"))),
+                streamed::add);
+
+        // Duyệt theo chỉ mục nên nhóm theo thứ tự tuổi tăng dần (bảng băm sẽ cho 49, 47, ...);
+        // tuổi chẵn không có hồ sơ sức khỏe
+        assertThat(count).isEqualTo(25);
+        assertThat(streamed).extracting(g -> g.get("Citizen.age")).startsWith(1, 3, 5).endsWith(49);
+
+        // Cùng kết quả với bảng băm (nhóm theo hai field không dùng được chỉ mục)
+        GroupBy hashed = GroupBy.of(List.of("Citizen.age", "Citizen.cccd"), Map.of("n", "count(*)"));
+        long hashedRows = aggregationService.group("s", List.of("Citizen", "Health"), "cccd", hashed,
+                Map.of("or", List.of(Map.of("Health.cost", Map.of("gte", 8)), Map.of("Citizen.province", "HN")))).size();
+        assertThat(streamed.stream().mapToLong(g -> (Long) g.get("n")).sum()).isEqualTo(hashedRows);
+    }
+
+    @Test
+    void test_invalid() {
+        assertThatThrownBy(() -> GroupBy.of(List.of("province"), Map.of())).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> GroupBy.of(null, Map.of("x", "median(Citizen.age)"))).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> GroupBy.of(null, Map.of("x", "sum(*)"))).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> aggregationService.group("s", List.of("Citizen"), "cccd",
+                GroupBy.of(List.of("Health.cost"), Map.of()), null)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static Map<String, Object> mapOf(Object... entries) {
+        Map<String, Object> map = new HashMap<>();
+        for (int i = 0; i < entries.length; i += 2) {
+            map.put((String) entries[i], entries[i + 1]);
+        }
+        return map;
+    }
+}
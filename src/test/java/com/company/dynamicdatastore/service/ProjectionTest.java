@@ -0,0 +1,86 @@
+package com.company.dynamicdatastore.service;
+
+import com.company.dynamicdatastore.component.datastore.QueryFilter;
+import com.company.dynamicdatastore.component.storage.ColumnarRowStore;
+import com.company.dynamicdatastore.component.storage.RowCodec;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.AbstractMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Kiểm tra chiếu field của row và các field bộ lọc tham chiếu.
+ */
+public class ProjectionTest {
+
+    @Test
+    void test_apply() {
+        Map<String, Object> row = new HashMap<>();
+        row.put("id", 1);
+        row.put("name", "a");
+        row.put("note", null);
+        row.put("_definition", new Object());
+        row.put("_entityName", "Citizen");
+
+        assertThat(Projection.ALL.apply(row)).containsOnlyKeys("id", "name", "note");
+        assertThat(Projection.of(" name, id,missing ").apply(row)).containsExactly(Map.entry("name", "a"), Map.entry("id", 1));
+        assertThat(Projection.of("note,_entityName").apply(row)).containsOnlyKeys("note", "_entityName");
+
+        // Không có mục nội bộ thì không chép
+        Map<String, Object> plain = Map.of("id", 1);
+        assertThat(Projection.ALL.apply(plain)).isSameAs(plain);
+        assertThat(Projection.of("")).isSameAs(Projection.ALL);
+        assertThatThrownBy(() -> Projection.of("id,,name")).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void test_selectedFieldsAreReadWithoutRebuildingRow() {
+        int[] reads = new int[1];
+        ColumnarRowStore rows = new ColumnarRowStore(null) {
+            @Override
+            public Object read(int slot) {
+                reads[0]++;
+                return super.read(slot);
+            }
+        };
+        Map<String, Object> row = new HashMap<>();
+        row.put("id", 1);
+        row.put("name", "a");
+        row.put("note", null);
+        row.put("price", 10);
+        rows.append(row);
+        rows.append(Map.of("name", "b"));
+
+        @SuppressWarnings("unchecked")
+        Map<String, Object> stored = (Map<String, Object>) rows.row(0);
+        assertThat(Projection.of("name,note,missing").apply(stored)).containsExactly(
+                Map.entry("name", "a"), new AbstractMap.SimpleEntry<>("note", null));
+        @SuppressWarnings("unchecked")
+        Map<String, Object> other = (Map<String, Object>) rows.row(1);
+        assertThat(Projection.of("note,name").apply(other)).containsOnlyKeys("name");
+        assertThat(reads[0]).isZero();
+
+        // Row mã hóa (ngoài heap/file ánh xạ): biết field có mặt mà không giải mã giá trị
+        RowCodec codec = new RowCodec();
+        ByteBuffer encoded = ByteBuffer.wrap(codec.encode(row));
+        assertThat(codec.containsField(encoded, 0, "note")).isTrue();
+        assertThat(codec.containsField(encoded, 0, "missing")).isFalse();
+        assertThat(codec.decodeValue(encoded, 0, "price")).isEqualTo(10);
+    }
+
+    @Test
+    void test_filterProperties() {
+        Map<String, Object> filters = Map.of(
+                "Citizen.cccd", "CD1",
+                "or", List.of(Map.of("Health.status", "ok"), Map.of("not", Map.of("Education.level", Map.of("gte", 3)))));
+
+        assertThat(QueryFilter.properties(filters)).containsExactlyInAnyOrder("Citizen.cccd", "Health.status", "Education.level");
+        assertThat(QueryFilter.properties(null)).isEmpty();
+    }
+}
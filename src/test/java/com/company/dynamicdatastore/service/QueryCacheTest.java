@@ -0,0 +1,93 @@
+package com.company.dynamicdatastore.service;
+
+import com.company.dynamicdatastore.component.datastore.VirtualDataStore;
+import com.company.dynamicdatastore.component.entity.VirtualEntityDefinition;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Kiểm tra khóa chuẩn hóa, tag version và giới hạn số row của QueryCache.
+ */
+public class QueryCacheTest {
+
+    @Test
+    void test_versionTag() {
+        QueryCache cache = new QueryCache(1_000);
+        VirtualDataStore store = new VirtualDataStore("test", null);
+        store.registerEntityDefinition(new VirtualEntityDefinition("Citizen", "test"));
+        store.saveEntity("Citizen", row(1));
+        Object query = List.of("query", "Citizen", QueryCache.normalize(Map.of("cccd", "CD1")));
+
+        Object tag = List.of(store, store.snapshot("Citizen").getVersion());
+        cache.put("test", query, tag, "result", 1);
+        assertThat(cache.<String>get("test", query, List.of(store, store.snapshot("Citizen").getVersion()))).isEqualTo("result");
+
+        // Mọi thao tác ghi tăng version nên kết quả cũ không bao giờ được trả về
+        store.saveEntity("Citizen", row(2));
+        assertThat(cache.<String>get("test", query, List.of(store, store.snapshot("Citizen").getVersion()))).isNull();
+        cache.put("test", query, List.of(store, store.snapshot("Citizen").getVersion()), "result", 1);
+        store.deleteEntity("Citizen", new UUID(0L, 1));
+        assertThat(cache.<String>get("test", query, List.of(store, store.snapshot("Citizen").getVersion()))).isNull();
+
+        assertThat(cache.getStatistics()).containsEntry("hits", 1L).containsEntry("misses", 2L).containsEntry("entries", 0);
+    }
+
+    @Test
+    void test_normalizedKey() {
+        Map<String, Object> filters = new LinkedHashMap<>();
+        filters.put("price", Map.of("gte", 10));
+        filters.put("or", List.of(Map.of("group", 1), Map.of("group", 2L)));
+        Map<String, Object> reordered = new HashMap<>();
+        reordered.put("or", List.of(Map.of("group", 1L), Map.of("group", (short) 2)));
+        reordered.put("price", Map.of("gte", 10L));
+
+        assertThat(QueryCache.normalize(filters)).isEqualTo(QueryCache.normalize(reordered));
+        assertThat(QueryCache.normalize(Map.of("price", Map.of("gte", 11)))).isNotEqualTo(QueryCache.normalize(Map.of("price", Map.of("gte", 10))));
+
+        // Sửa map gốc sau khi cache không làm hỏng khóa
+        QueryCache cache = new QueryCache(1_000);
+        cache.put("test", QueryCache.normalize(filters), "v1", "result", 1);
+        filters.put("price", Map.of("gte", 99));
+        assertThat(cache.<String>get("test", QueryCache.normalize(reordered), "v1")).isEqualTo("result");
+    }
+
+    @Test
+    void test_evictionBySize() {
+        QueryCache cache = new QueryCache(100);
+        cache.put("s", "a", "v", "A", 40);
+        cache.put("s", "b", "v", "B", 40);
+        assertThat(cache.<String>get("s", "a", "v")).isEqualTo("A");
+        // "b" ít được dùng nhất nên bị bỏ trước
+        cache.put("s", "c", "v", "C", 40);
+        assertThat(cache.<String>get("s", "b", "v")).isNull();
+        assertThat(cache.<String>get("s", "a", "v")).isEqualTo("A");
+        assertThat(cache.<String>get("s", "c", "v")).isEqualTo("C");
+
+        // Lớn hơn cả cache thì không lưu
+        cache.put("s", "d", "v", "D", 101);
+        assertThat(cache.<String>get("s", "d", "v")).isNull();
+        assertThat(cache.getStatistics()).containsEntry("rows", 80L).containsEntry("evictions", 1L);
+
+        cache.put("other", "a", "v", "X", 10);
+        cache.invalidate("s");
+        assertThat(cache.getStatistics()).containsEntry("entries", 1).containsEntry("rows", 10L);
+
+        QueryCache disabled = new QueryCache(0);
+        disabled.put("s", "a", "v", "A", 1);
+        assertThat(disabled.<String>get("s", "a", "v")).isNull();
+    }
+
+    private static Map<String, Object> row(int i) {
+        Map<String, Object> row = new HashMap<>();
+        row.put("id", new UUID(0L, i));
+        row.put("cccd", "CD" + i);
+        return row;
+    }
+}
@@ -0,0 +1,55 @@
+package com.company.dynamicdatastore.test_support;
+
+import com.company.dynamicdatastore.component.datastore.VirtualDataStore;
+import com.company.dynamicdatastore.component.entity.VirtualEntityDefinition;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Entity Citizen mẫu dùng chung cho các test query: row thứ i có id idOf(i), cccd "CDi", name "item-i", price i,
+ * group i % 10 (rỗng khi là 9) và amount i / 2. name luôn có chỉ mục văn bản.
+ */
+public final class TestCitizens {
+
+    private TestCitizens() {
+    }
+
+    /**
+     * Store "test" có size citizen, indexed là các thuộc tính được khai báo chỉ mục trong definition
+     */
+    public static VirtualDataStore store(int size, String... indexed) {
+        VirtualDataStore store = new VirtualDataStore("test", null);
+        VirtualEntityDefinition definition = new VirtualEntityDefinition("Citizen", "test");
+        definition.addProperty("cccd", String.class);
+        definition.addProperty("name", String.class);
+        definition.addProperty("price", Integer.class);
+        definition.addProperty("group", Integer.class);
+        definition.addProperty("amount", BigDecimal.class);
+        for (String property : indexed) {
+            definition.addIndexedProperty(property);
+        }
+        definition.addTextIndexedProperty("name");
+        store.registerEntityDefinition(definition);
+        List<Object> rows = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            rows.add(citizen(i));
+        }
+        store.saveEntities("Citizen", rows);
+        return store;
+    }
+
+    public static Map<String, Object> citizen(int i) {
+        Map<String, Object> row = new HashMap<>();
+        row.put("id", TestRows.idOf(i));
+        row.put("cccd", "CD" + i);
+        row.put("name", "item-" + i);
+        row.put("price", i);
+        row.put("group", i % 10 == 9 ? null : i % 10);
+        row.put("amount", new BigDecimal(i).divide(BigDecimal.valueOf(2)).setScale(1));
+        return row;
+    }
+}
@@ -0,0 +1,27 @@
+package com.company.dynamicdatastore.test_support;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Row mẫu dùng chung cho các test lưu trữ: row thứ i có id cố định (xem idOf), name "item-i" và price i.50.
+ */
+public final class TestRows {
+
+    private TestRows() {
+    }
+
+    public static Map<String, Object> row(int i) {
+        Map<String, Object> row = new HashMap<>();
+        row.put("id", idOf(i));
+        row.put("name", "item-" + i);
+        row.put("price", new BigDecimal(i + ".50"));
+        return row;
+    }
+
+    public static UUID idOf(int i) {
+        return new UUID(0L, i);
+    }
+}